@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014-2018 Cask Data, Inc.
+ * Copyright © 2014-2019 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -21,6 +21,10 @@ import io.cdap.cdap.api.common.Bytes;
 import io.cdap.cdap.api.data.schema.Schema;
 import io.cdap.cdap.api.data.schema.Schema.LogicalType;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.math.BigDecimal;
 import java.math.BigInteger;
@@ -32,10 +36,16 @@ import java.time.LocalTime;
 import java.time.ZoneId;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Set;
 import java.util.TimeZone;
@@ -43,23 +53,39 @@ import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 
 /**
- * Instance of a record structured by a {@link Schema}. Fields are accessible by name.
+ * Instance of a record structured by a {@link Schema}. Fields are accessible by name, or by their position in
+ * {@link Schema#getFields()}. Field values are stored positionally, with field names resolved to positions once
+ * per {@link Schema}.
  */
 @Beta
 public class StructuredRecord implements Serializable {
   private static final SimpleDateFormat DEFAULT_FORMAT = new SimpleDateFormat("YYYY-MM-DD'T'HH:mm:ss z");
-  private final Schema schema;
-  private final Map<String, Object> fields;
+  // Marker for fields that are not set in the builder
+  private static final Object UNSET = new Object();
+
+  // Not final because of the custom serialization
+  private Schema schema;
+  // A map view of the values, which keeps the form of the record serialized by reflection, such as with Gson,
+  // the same as the map based representation used in earlier releases
+  private Map<String, Object> fields;
+  private transient Object[] values;
 
   private static final long serialVersionUID = -6547770456592865613L;
 
+  // Keeps the serialized form compatible with the map based representation used in earlier releases
+  private static final ObjectStreamField[] serialPersistentFields = {
+    new ObjectStreamField("schema", Schema.class),
+    new ObjectStreamField("fields", Map.class)
+  };
+
   {
     DEFAULT_FORMAT.setTimeZone(TimeZone.getTimeZone("UTC"));
   }
 
-  private StructuredRecord(Schema schema, Map<String, Object> fields) {
+  private StructuredRecord(Schema schema, Object[] values) {
     this.schema = schema;
-    this.fields = fields;
+    this.fields = new FieldMap(schema.getFields(), values);
+    this.values = values;
   }
 
   /**
@@ -81,7 +107,22 @@ public class StructuredRecord implements Serializable {
   @SuppressWarnings("unchecked")
   @Nullable
   public <T> T get(String fieldName) {
-    return (T) fields.get(fieldName);
+    int index = schema.getFieldIndex(fieldName);
+    return index < 0 ? null : (T) getValues()[index];
+  }
+
+  /**
+   * Get the value of a field in the record by the field position.
+   *
+   * @param fieldIndex position of the field in the {@link Schema#getFields()} of the record schema.
+   * @param <T> type of object of the field value.
+   * @return value of the field.
+   * @throws IndexOutOfBoundsException if there is no field at the given position
+   */
+  @SuppressWarnings("unchecked")
+  @Nullable
+  public <T> T get(int fieldIndex) {
+    return (T) getValues()[fieldIndex];
   }
 
   /**
@@ -95,7 +136,7 @@ public class StructuredRecord implements Serializable {
   public LocalDate getDate(String fieldName) {
     Schema logicalTypeSchema = validateAndGetLogicalTypeSchema(schema.getField(fieldName),
                                                                EnumSet.of(LogicalType.DATE));
-    Integer value = (Integer) fields.get(fieldName);
+    Integer value = get(fieldName);
     return (value == null || logicalTypeSchema == null) ? null : LocalDate.ofEpochDay(value.longValue());
   }
 
@@ -113,7 +154,7 @@ public class StructuredRecord implements Serializable {
     Schema logicalTypeSchema = validateAndGetLogicalTypeSchema(schema.getField(fieldName),
                                                                EnumSet.of(LogicalType.TIME_MILLIS,
                                                                           LogicalType.TIME_MICROS));
-    Object value = fields.get(fieldName);
+    Object value = get(fieldName);
     if (value == null || logicalTypeSchema == null) {
       return null;
     }
@@ -156,7 +197,7 @@ public class StructuredRecord implements Serializable {
     Schema logicalTypeSchema = validateAndGetLogicalTypeSchema(schema.getField(fieldName),
                                                                EnumSet.of(LogicalType.TIMESTAMP_MILLIS,
                                                                           LogicalType.TIMESTAMP_MICROS));
-    Object value = fields.get(fieldName);
+    Object value = get(fieldName);
     if (value == null || logicalTypeSchema == null) {
       return null;
     }
@@ -179,7 +220,7 @@ public class StructuredRecord implements Serializable {
   public BigDecimal getDecimal(String fieldName) {
     Schema logicalTypeSchema = validateAndGetLogicalTypeSchema(schema.getField(fieldName),
                                                                EnumSet.of(LogicalType.DECIMAL));
-    Object value = fields.get(fieldName);
+    Object value = get(fieldName);
     if (value == null || logicalTypeSchema == null) {
       return null;
     }
@@ -284,11 +325,16 @@ public class StructuredRecord implements Serializable {
    */
   public static class Builder {
     private final Schema schema;
-    private Map<String, Object> fields;
+    private final List<Schema.Field> fields;
+    private Object[] values;
+    // true if the values array is shared with a record built by this builder
+    private boolean built;
 
     private Builder(Schema schema) {
       this.schema = schema;
-      this.fields = new HashMap<>();
+      this.fields = schema.getFields();
+      this.values = new Object[fields.size()];
+      Arrays.fill(values, UNSET);
     }
 
     /**
@@ -301,8 +347,25 @@ public class StructuredRecord implements Serializable {
      *                                   value is given
      */
     public Builder set(String fieldName, @Nullable Object value) {
-      validateAndGetField(fieldName, value);
-      fields.put(fieldName, value);
+      put(validateAndGetIndex(fieldName, value), value);
+      return this;
+    }
+
+    /**
+     * Set the field at the given position to the given value.
+     *
+     * @param fieldIndex position of the field in the {@link Schema#getFields()} of the record schema
+     * @param value value for the field
+     * @return this builder
+     * @throws UnexpectedFormatException if there is no field at the given position, or the field is not nullable but
+     *                                   a null value is given
+     */
+    public Builder set(int fieldIndex, @Nullable Object value) {
+      if (fieldIndex < 0 || fieldIndex >= values.length) {
+        throw new UnexpectedFormatException("field index " + fieldIndex + " is not in the schema.");
+      }
+      validateNullable(fields.get(fieldIndex), value);
+      put(fieldIndex, value);
       return this;
     }
 
@@ -316,13 +379,14 @@ public class StructuredRecord implements Serializable {
      *                                   value is given or if the provided date is an invalid date
      */
     public Builder setDate(String fieldName, @Nullable LocalDate localDate) {
-      validateAndGetLogicalTypeSchema(validateAndGetField(fieldName, localDate), EnumSet.of(LogicalType.DATE));
+      int index = validateAndGetIndex(fieldName, localDate);
+      validateAndGetLogicalTypeSchema(fields.get(index), EnumSet.of(LogicalType.DATE));
       if (localDate == null) {
-        fields.put(fieldName, null);
+        put(index, null);
         return this;
       }
       try {
-        fields.put(fieldName, Math.toIntExact(localDate.toEpochDay()));
+        put(index, Math.toIntExact(localDate.toEpochDay()));
       } catch (ArithmeticException e) {
         // Highest integer is 2,147,483,647 which is Jan 1 2038.
         throw new UnexpectedFormatException(String.format("Field %s was set to a date that is too large." +
@@ -341,12 +405,13 @@ public class StructuredRecord implements Serializable {
      *                                   value is given
      */
     public Builder setTime(String fieldName, @Nullable LocalTime localTime) {
-      Schema logicalTypeSchema = validateAndGetLogicalTypeSchema(validateAndGetField(fieldName, localTime),
+      int index = validateAndGetIndex(fieldName, localTime);
+      Schema logicalTypeSchema = validateAndGetLogicalTypeSchema(fields.get(index),
                                                                  EnumSet.of(LogicalType.TIME_MILLIS,
                                                                             LogicalType.TIME_MICROS));
 
       if (localTime == null) {
-        fields.put(fieldName, null);
+        put(index, null);
         return this;
       }
 
@@ -355,7 +420,7 @@ public class StructuredRecord implements Serializable {
       if (logicalTypeSchema.getLogicalType() == LogicalType.TIME_MILLIS) {
         try {
           int millis = Math.toIntExact(TimeUnit.NANOSECONDS.toMillis(nanos));
-          fields.put(fieldName, millis);
+          put(index, millis);
         } catch (ArithmeticException e) {
           throw new UnexpectedFormatException(String.format("Field %s was set to a time that is too large.",
                                                             fieldName));
@@ -364,7 +429,7 @@ public class StructuredRecord implements Serializable {
       }
 
       long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
-      fields.put(fieldName, micros);
+      put(index, micros);
       return this;
     }
 
@@ -379,12 +444,13 @@ public class StructuredRecord implements Serializable {
      *                                   value is given or if the provided date is an invalid timestamp
      */
     public Builder setTimestamp(String fieldName, @Nullable ZonedDateTime zonedDateTime) {
-      Schema logicalTypeSchema = validateAndGetLogicalTypeSchema(validateAndGetField(fieldName, zonedDateTime),
+      int index = validateAndGetIndex(fieldName, zonedDateTime);
+      Schema logicalTypeSchema = validateAndGetLogicalTypeSchema(fields.get(index),
                                                                  EnumSet.of(LogicalType.TIMESTAMP_MILLIS,
                                                                             LogicalType.TIMESTAMP_MICROS));
 
       if (zonedDateTime == null) {
-        fields.put(fieldName, null);
+        put(index, null);
         return this;
       }
 
@@ -393,13 +459,13 @@ public class StructuredRecord implements Serializable {
         if (logicalTypeSchema.getLogicalType() == LogicalType.TIMESTAMP_MILLIS) {
           long millis = TimeUnit.SECONDS.toMillis(instant.getEpochSecond());
           long tsMillis = Math.addExact(millis, TimeUnit.NANOSECONDS.toMillis(instant.getNano()));
-          fields.put(fieldName, tsMillis);
+          put(index, tsMillis);
           return this;
         }
 
         long micros = TimeUnit.SECONDS.toMicros(instant.getEpochSecond());
         long tsMicros = Math.addExact(micros, TimeUnit.NANOSECONDS.toMicros(instant.getNano()));
-        fields.put(fieldName, tsMicros);
+        put(index, tsMicros);
         return this;
       } catch (ArithmeticException e) {
         throw new UnexpectedFormatException(String.format("Field %s was set to a timestamp that is too large.",
@@ -418,10 +484,10 @@ public class StructuredRecord implements Serializable {
      *                                   value is given or if the provided decimal is invalid
      */
     public Builder setDecimal(String fieldName, @Nullable BigDecimal decimal) {
-      Schema logicalSchema = validateAndGetLogicalTypeSchema(validateAndGetField(fieldName, decimal),
-                                                             EnumSet.of(LogicalType.DECIMAL));
+      int index = validateAndGetIndex(fieldName, decimal);
+      Schema logicalSchema = validateAndGetLogicalTypeSchema(fields.get(index), EnumSet.of(LogicalType.DECIMAL));
       if (decimal == null) {
-        fields.put(fieldName, null);
+        put(index, null);
         return this;
       }
 
@@ -437,7 +503,7 @@ public class StructuredRecord implements Serializable {
                         fieldName, decimal.scale(), logicalSchema.getScale()));
       }
 
-      fields.put(fieldName, decimal.unscaledValue().toByteArray());
+      put(index, decimal.unscaledValue().toByteArray());
       return this;
     }
 
@@ -478,19 +544,20 @@ public class StructuredRecord implements Serializable {
     @Deprecated
     public Builder convertAndSet(String fieldName, @Nullable Date date,
                                  @Nullable DateFormat dateFormat) throws UnexpectedFormatException {
-      Schema.Field field = validateAndGetField(fieldName, date);
+      int index = validateAndGetIndex(fieldName, date);
+      Schema.Field field = fields.get(index);
       boolean isNullable = field.getSchema().isNullable();
       if (isNullable && date == null) {
-        fields.put(fieldName, null);
+        put(index, null);
         return this;
       }
 
       Schema.Type fieldType = isNullable ? field.getSchema().getNonNullable().getType() : field.getSchema().getType();
       if (fieldType == Schema.Type.LONG) {
-        fields.put(fieldName, date.getTime());
+        put(index, date.getTime());
       } else if (fieldType == Schema.Type.STRING) {
         DateFormat format = dateFormat == null ? DEFAULT_FORMAT : dateFormat;
-        fields.put(fieldName, format.format(date));
+        put(index, format.format(date));
       } else {
         throw new UnexpectedFormatException("Date must be either a long or a string, not a " + fieldType);
       }
@@ -508,8 +575,8 @@ public class StructuredRecord implements Serializable {
      *                                   value is given, or the string cannot be converted to the type for the field
      */
     public Builder convertAndSet(String fieldName, @Nullable String strVal) throws UnexpectedFormatException {
-      Schema.Field field = validateAndGetField(fieldName, strVal);
-      fields.put(fieldName, convertString(field.getSchema(), strVal));
+      int index = validateAndGetIndex(fieldName, strVal);
+      put(index, convertString(fields.get(index).getSchema(), strVal));
       return this;
     }
 
@@ -521,19 +588,30 @@ public class StructuredRecord implements Serializable {
      */
     public StructuredRecord build() throws UnexpectedFormatException {
       // check that all non-nullable fields have a value.
-      for (Schema.Field field : schema.getFields()) {
-        String fieldName = field.getName();
-        if (!fields.containsKey(fieldName)) {
+      for (int i = 0; i < values.length; i++) {
+        if (values[i] == UNSET) {
+          Schema.Field field = fields.get(i);
           // if the field is not nullable and there is no value set for the field, this is invalid.
           if (!field.getSchema().isNullable()) {
-            throw new UnexpectedFormatException("Field " + fieldName + " must contain a value.");
+            throw new UnexpectedFormatException("Field " + field.getName() + " must contain a value.");
           } else {
             // otherwise, set the value for the field to null
-            fields.put(fieldName, null);
+            values[i] = null;
           }
         }
       }
-      return new StructuredRecord(schema, fields);
+      // The values array is handed to the record without copying. It is copied on the next modification
+      // through this builder, so that records already built are not affected.
+      built = true;
+      return new StructuredRecord(schema, values);
+    }
+
+    private void put(int index, @Nullable Object value) {
+      if (built) {
+        values = values.clone();
+        built = false;
+      }
+      values[index] = value;
     }
 
     private Object convertString(Schema schema, String strVal) throws UnexpectedFormatException {
@@ -575,27 +653,32 @@ public class StructuredRecord implements Serializable {
       }
     }
 
-    private Schema.Field validateAndGetField(String fieldName, Object val) {
-      Schema.Field field = schema.getField(fieldName);
-      if (field == null) {
+    private int validateAndGetIndex(String fieldName, Object val) {
+      int index = schema.getFieldIndex(fieldName);
+      if (index < 0) {
         throw new UnexpectedFormatException("field " + fieldName + " is not in the schema.");
       }
+      validateNullable(fields.get(index), val);
+      return index;
+    }
+
+    private void validateNullable(Schema.Field field, Object val) {
+      if (val != null) {
+        return;
+      }
       Schema fieldSchema = field.getSchema();
-      if (val == null) {
-        if (fieldSchema.getType() == Schema.Type.NULL) {
-          return field;
-        }
-        if (fieldSchema.getType() != Schema.Type.UNION) {
-          throw new UnexpectedFormatException("field " + fieldName + " cannot be set to a null value.");
-        }
-        for (Schema unionSchema : fieldSchema.getUnionSchemas()) {
-          if (unionSchema.getType() == Schema.Type.NULL) {
-            return field;
-          }
+      if (fieldSchema.getType() == Schema.Type.NULL) {
+        return;
+      }
+      if (fieldSchema.getType() != Schema.Type.UNION) {
+        throw new UnexpectedFormatException("field " + field.getName() + " cannot be set to a null value.");
+      }
+      for (Schema unionSchema : fieldSchema.getUnionSchemas()) {
+        if (unionSchema.getType() == Schema.Type.NULL) {
+          return;
         }
-        throw new UnexpectedFormatException("field " + fieldName + " cannot be set to a null value.");
       }
-      return field;
+      throw new UnexpectedFormatException("field " + field.getName() + " cannot be set to a null value.");
     }
   }
 
@@ -610,12 +693,108 @@ public class StructuredRecord implements Serializable {
 
     StructuredRecord that = (StructuredRecord) o;
 
-    return Objects.equals(schema, that.schema) && Objects.equals(fields, that.fields);
+    // Records with the same schema have the same fields in the same order
+    return Objects.equals(schema, that.schema) && Arrays.equals(getValues(), that.getValues());
 
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(schema, fields);
+    // Same as the hash code of a map from field name to value, which was the representation in earlier releases
+    int fieldsHash = 0;
+    List<Schema.Field> schemaFields = schema.getFields();
+    Object[] values = getValues();
+    for (int i = 0; i < values.length; i++) {
+      fieldsHash += schemaFields.get(i).getName().hashCode() ^ Objects.hashCode(values[i]);
+    }
+    return Objects.hash(schema, fieldsHash);
+  }
+
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    ObjectOutputStream.PutField putField = out.putFields();
+    putField.put("schema", schema);
+    putField.put("fields", new HashMap<>(new FieldMap(schema.getFields(), getValues())));
+    out.writeFields();
+  }
+
+  @SuppressWarnings("unchecked")
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    ObjectInputStream.GetField getField = in.readFields();
+    schema = (Schema) getField.get("schema", null);
+    values = toValues(schema.getFields(), (Map<String, Object>) getField.get("fields", null));
+    fields = new FieldMap(schema.getFields(), values);
+  }
+
+  /**
+   * Returns the values of the fields, ordered by the field positions in the schema.
+   */
+  private Object[] getValues() {
+    Object[] values = this.values;
+    if (values == null) {
+      // The record was created by a reflection based deserializer, such as Gson, which only sets the schema
+      // and the fields map
+      this.values = values = toValues(schema.getFields(), fields);
+    }
+    return values;
+  }
+
+  /**
+   * Converts a map from field name to value to an array of values, ordered by the given fields.
+   */
+  private static Object[] toValues(List<Schema.Field> schemaFields, @Nullable Map<String, Object> fields) {
+    Object[] values = new Object[schemaFields.size()];
+    if (fields != null) {
+      for (int i = 0; i < values.length; i++) {
+        values[i] = fields.get(schemaFields.get(i).getName());
+      }
+    }
+    return values;
+  }
+
+  /**
+   * An unmodifiable {@link Map} from field name to value, backed by the values array of a record.
+   */
+  private static final class FieldMap extends AbstractMap<String, Object> {
+
+    private final List<Schema.Field> schemaFields;
+    private final Object[] values;
+
+    FieldMap(List<Schema.Field> schemaFields, Object[] values) {
+      this.schemaFields = schemaFields;
+      this.values = values;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+      return new AbstractSet<Entry<String, Object>>() {
+        @Override
+        public Iterator<Entry<String, Object>> iterator() {
+          return new Iterator<Entry<String, Object>>() {
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+              return index < values.length;
+            }
+
+            @Override
+            public Entry<String, Object> next() {
+              if (!hasNext()) {
+                throw new NoSuchElementException();
+              }
+              Entry<String, Object> entry = new SimpleImmutableEntry<>(schemaFields.get(index).getName(),
+                                                                       values[index]);
+              index++;
+              return entry;
+            }
+          };
+        }
+
+        @Override
+        public int size() {
+          return values.length;
+        }
+      };
+    }
   }
 }
@@ -0,0 +1,170 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.internal.io;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonDeserializationContext;
+import com.google.gson.JsonDeserializer;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSerializationContext;
+import com.google.gson.JsonSerializer;
+import io.cdap.cdap.api.common.Bytes;
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.format.UnexpectedFormatException;
+import io.cdap.cdap.api.data.schema.Schema;
+
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Class for serialize/deserialize {@link StructuredRecord} to/from json through {@link com.google.gson.Gson Gson}.
+ * A record is serialized as a json object with the record schema and an object of the values of the fields that
+ * are not null:
+ *
+ * <pre>
+ *   { "schema": { ... }, "fields": { "name": value, ... } }
+ * </pre>
+ *
+ * Field values are converted to the types of the field schema when deserializing.
+ */
+public final class StructuredRecordCodec implements JsonSerializer<StructuredRecord>,
+                                                    JsonDeserializer<StructuredRecord> {
+
+  private static final SchemaTypeAdapter SCHEMA_TYPE_ADAPTER = new SchemaTypeAdapter();
+  private static final String SCHEMA = "schema";
+  private static final String FIELDS = "fields";
+
+  @Override
+  public JsonElement serialize(StructuredRecord src, Type typeOfSrc, JsonSerializationContext context) {
+    JsonObject json = new JsonObject();
+    json.add(SCHEMA, SCHEMA_TYPE_ADAPTER.toJsonTree(src.getSchema()));
+    JsonObject fields = new JsonObject();
+    //noinspection ConstantConditions
+    for (Schema.Field field : src.getSchema().getFields()) {
+      Object value = src.get(field.getName());
+      if (value != null) {
+        // serialize ByteBuffer the same as byte[]
+        fields.add(field.getName(), context.serialize(value instanceof ByteBuffer
+                                                        ? Bytes.toBytes((ByteBuffer) value) : value));
+      }
+    }
+    json.add(FIELDS, fields);
+    return json;
+  }
+
+  @Override
+  public StructuredRecord deserialize(JsonElement json, Type typeOfT,
+                                      JsonDeserializationContext context) throws JsonParseException {
+    if (!json.isJsonObject()) {
+      throw new JsonParseException("Expected a json object for StructuredRecord. Got: " + json);
+    }
+    JsonObject jsonObj = json.getAsJsonObject();
+    JsonElement schemaJson = jsonObj.get(SCHEMA);
+    if (schemaJson == null) {
+      throw new JsonParseException("Missing schema for StructuredRecord: " + json);
+    }
+    return decodeRecord(jsonObj, SCHEMA_TYPE_ADAPTER.fromJsonTree(schemaJson));
+  }
+
+  private StructuredRecord decodeRecord(JsonObject json, Schema schema) {
+    JsonElement fieldsJson = json.get(FIELDS);
+    JsonObject fields = fieldsJson == null || fieldsJson.isJsonNull() ? new JsonObject() : fieldsJson.getAsJsonObject();
+    StructuredRecord.Builder builder = StructuredRecord.builder(schema);
+    try {
+      //noinspection ConstantConditions
+      for (Schema.Field field : schema.getFields()) {
+        JsonElement value = fields.get(field.getName());
+        if (value != null) {
+          builder.set(field.getName(), decode(value, field.getSchema()));
+        }
+      }
+      return builder.build();
+    } catch (UnexpectedFormatException e) {
+      throw new JsonParseException("Invalid StructuredRecord: " + json, e);
+    }
+  }
+
+  @Nullable
+  private Object decode(JsonElement json, Schema schema) {
+    if (json.isJsonNull()) {
+      return null;
+    }
+    switch (schema.getType()) {
+      case NULL:
+        return null;
+      case BOOLEAN:
+        return json.getAsBoolean();
+      case INT:
+        return json.getAsInt();
+      case LONG:
+        return json.getAsLong();
+      case FLOAT:
+        return json.getAsFloat();
+      case DOUBLE:
+        return json.getAsDouble();
+      case BYTES:
+        JsonArray bytesJson = json.getAsJsonArray();
+        byte[] bytes = new byte[bytesJson.size()];
+        for (int i = 0; i < bytes.length; i++) {
+          bytes[i] = bytesJson.get(i).getAsByte();
+        }
+        return bytes;
+      case STRING:
+      case ENUM:
+        return json.getAsString();
+      case ARRAY:
+        List<Object> array = new ArrayList<>();
+        for (JsonElement element : json.getAsJsonArray()) {
+          array.add(decode(element, schema.getComponentSchema()));
+        }
+        return array;
+      case MAP:
+        //noinspection ConstantConditions
+        Map.Entry<Schema, Schema> mapSchema = schema.getMapSchema();
+        Map<Object, Object> map = new LinkedHashMap<>();
+        for (Map.Entry<String, JsonElement> entry : json.getAsJsonObject().entrySet()) {
+          map.put(decode(new JsonPrimitive(entry.getKey()), mapSchema.getKey()),
+                  decode(entry.getValue(), mapSchema.getValue()));
+        }
+        return map;
+      case RECORD:
+        return decodeRecord(json.getAsJsonObject(), schema);
+      case UNION:
+        //noinspection ConstantConditions
+        for (Schema unionSchema : schema.getUnionSchemas()) {
+          if (unionSchema.getType() == Schema.Type.NULL) {
+            continue;
+          }
+          try {
+            return decode(json, unionSchema);
+          } catch (RuntimeException e) {
+            // try the next schema in the union
+          }
+        }
+        throw new JsonParseException("Value " + json + " does not match any schema of the union " + schema);
+    }
+    throw new JsonParseException("Unsupported schema: " + schema);
+  }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.api.data.format;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.cdap.internal.io.SchemaTypeAdapter;
+import io.cdap.cdap.internal.io.StructuredRecordCodec;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Tests for {@link StructuredRecord}.
+ */
+public class StructuredRecordTest {
+
+  private static final Schema SCHEMA = Schema.recordOf(
+    "rec",
+    Schema.Field.of("id", Schema.of(Schema.Type.LONG)),
+    Schema.Field.of("name", Schema.nullableOf(Schema.of(Schema.Type.STRING))),
+    Schema.Field.of("date", Schema.nullableOf(Schema.of(Schema.LogicalType.DATE))));
+
+  @Test
+  public void testPositionalAccess() {
+    Assert.assertEquals(0, SCHEMA.getFieldIndex("id"));
+    Assert.assertEquals(2, SCHEMA.getFieldIndex("date"));
+    Assert.assertEquals(-1, SCHEMA.getFieldIndex("unknown"));
+
+    LocalDate date = LocalDate.of(2019, 5, 1);
+    StructuredRecord record = StructuredRecord.builder(SCHEMA)
+      .set(0, 1L)
+      .set("name", "n")
+      .setDate("date", date)
+      .build();
+
+    Assert.assertEquals(1L, (long) record.get("id"));
+    Assert.assertEquals("n", record.get(1));
+    Assert.assertEquals(date, record.getDate("date"));
+    Assert.assertNull(record.get("unknown"));
+
+    StructuredRecord expected = StructuredRecord.builder(SCHEMA)
+      .set("id", 1L)
+      .set(1, "n")
+      .setDate("date", date)
+      .build();
+    Assert.assertEquals(expected, record);
+    Assert.assertEquals(expected.hashCode(), record.hashCode());
+  }
+
+  @Test
+  public void testInvalidPositionalSet() {
+    StructuredRecord.Builder builder = StructuredRecord.builder(SCHEMA);
+    try {
+      builder.set(3, "x");
+      Assert.fail("Expected failure when setting a field out of range");
+    } catch (UnexpectedFormatException e) {
+      // expected
+    }
+    try {
+      builder.set(0, null);
+      Assert.fail("Expected failure when setting a non-nullable field to null");
+    } catch (UnexpectedFormatException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testBuilderReuse() {
+    StructuredRecord.Builder builder = StructuredRecord.builder(SCHEMA).set("id", 1L);
+    StructuredRecord record1 = builder.build();
+    StructuredRecord record2 = builder.set("name", "n").build();
+
+    // modifying the builder after build must not change records already built
+    Assert.assertNull(record1.get("name"));
+    Assert.assertEquals("n", record2.get("name"));
+    Assert.assertEquals(1L, (long) record2.get("id"));
+  }
+
+  @Test
+  public void testHashCodeCompatibility() {
+    StructuredRecord record = StructuredRecord.builder(SCHEMA).set("id", 1L).set("name", "n").build();
+
+    Map<String, Object> fields = new HashMap<>();
+    fields.put("id", 1L);
+    fields.put("name", "n");
+    fields.put("date", null);
+    Assert.assertEquals(Objects.hash(SCHEMA, fields), record.hashCode());
+  }
+
+  @Test
+  public void testJavaSerialization() throws Exception {
+    StructuredRecord record = StructuredRecord.builder(SCHEMA).set("id", 1L).set("name", "n").build();
+
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    try (ObjectOutputStream os = new ObjectOutputStream(bos)) {
+      os.writeObject(record);
+    }
+    try (ObjectInputStream is = new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray()))) {
+      StructuredRecord copy = (StructuredRecord) is.readObject();
+      Assert.assertEquals(record, copy);
+      Assert.assertEquals("n", copy.get("name"));
+    }
+  }
+
+  @Test
+  public void testReflectiveGsonSerialization() {
+    // The default Gson without a StructuredRecord type adapter serializes the record by reflection,
+    // as in the preview tracer and the http handlers
+    Gson gson = new Gson();
+    StructuredRecord record = StructuredRecord.builder(SCHEMA).set("id", 1L).set("name", "n").build();
+
+    JsonObject json = gson.toJsonTree(record).getAsJsonObject();
+    JsonObject fields = json.getAsJsonObject("fields");
+    Assert.assertEquals(1L, fields.get("id").getAsLong());
+    Assert.assertEquals("n", fields.get("name").getAsString());
+
+    StructuredRecord copy = gson.fromJson(gson.toJson(record), StructuredRecord.class);
+    Assert.assertEquals(1L, ((Number) copy.get("id")).longValue());
+    Assert.assertEquals("n", copy.get(1));
+    Assert.assertNull(copy.get("date"));
+
+    // Values that keep their type in json round trip to an equal record
+    Schema schema = Schema.recordOf(
+      "strings",
+      Schema.Field.of("s", Schema.of(Schema.Type.STRING)),
+      Schema.Field.of("b", Schema.nullableOf(Schema.of(Schema.Type.BOOLEAN))));
+    StructuredRecord stringRecord = StructuredRecord.builder(schema).set("s", "x").set("b", true).build();
+    StructuredRecord stringCopy = gson.fromJson(gson.toJson(stringRecord), StructuredRecord.class);
+    Assert.assertEquals(stringRecord, stringCopy);
+    Assert.assertEquals(stringRecord.hashCode(), stringCopy.hashCode());
+  }
+
+  @Test
+  public void testGsonSerialization() {
+    Gson gson = new GsonBuilder()
+      .registerTypeAdapter(Schema.class, new SchemaTypeAdapter())
+      .registerTypeAdapter(StructuredRecord.class, new StructuredRecordCodec())
+      .create();
+    Schema innerSchema = Schema.recordOf("inner", Schema.Field.of("x", Schema.of(Schema.Type.INT)));
+    Schema schema = Schema.recordOf(
+      "outer",
+      Schema.Field.of("rec", SCHEMA),
+      Schema.Field.of("inner", Schema.nullableOf(innerSchema)),
+      Schema.Field.of("d", Schema.of(Schema.Type.DOUBLE)),
+      Schema.Field.of("list", Schema.arrayOf(Schema.of(Schema.Type.STRING))),
+      Schema.Field.of("map", Schema.mapOf(Schema.of(Schema.Type.STRING), Schema.of(Schema.Type.LONG))));
+
+    StructuredRecord record = StructuredRecord.builder(schema)
+      .set("rec", StructuredRecord.builder(SCHEMA).set("id", 1L).setDate("date", LocalDate.of(2019, 5, 1)).build())
+      .set("inner", StructuredRecord.builder(innerSchema).set("x", 5).build())
+      .set("d", 0.5d)
+      .set("list", Arrays.asList("a", "b"))
+      .set("map", Collections.singletonMap("k", 2L))
+      .build();
+
+    // The values of the fields are serialized along with the schema
+    JsonObject json = gson.toJsonTree(record).getAsJsonObject();
+    Assert.assertEquals(schema, gson.fromJson(json.get("schema"), Schema.class));
+    JsonObject fields = json.getAsJsonObject("fields");
+    Assert.assertEquals(0.5d, fields.get("d").getAsDouble(), 0d);
+    Assert.assertEquals(5, fields.getAsJsonObject("inner").getAsJsonObject("fields").get("x").getAsInt());
+    Assert.assertFalse(fields.getAsJsonObject("rec").getAsJsonObject("fields").has("name"));
+
+    Assert.assertEquals(record, gson.fromJson(gson.toJson(record), StructuredRecord.class));
+  }
+}
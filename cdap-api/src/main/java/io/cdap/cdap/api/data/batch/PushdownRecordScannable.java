@@ -0,0 +1,62 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.api.data.batch;
+
+import io.cdap.cdap.api.annotation.Beta;
+
+import java.util.List;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link RecordScannable} that can read only part of its records, so that a query engine can push the key
+ * predicates and the column projection of a query down to the dataset.
+ * <p>
+ * Pushdown is best effort: the dataset may return more records or more fields than requested, hence the caller
+ * must still apply the predicates and the projection on the records it reads.
+ * </p>
+ * @param <RECORD> the type of objects that represents a single record
+ */
+@Beta
+public interface PushdownRecordScannable<RECORD> extends RecordScannable<RECORD> {
+
+  /**
+   * Returns the name of the record field that holds the key of the records. Only predicates on that field
+   * can be pushed down through {@link #getSplits(RecordKeyRange)}.
+   *
+   * @return the name of the key field, or {@code null} if the records have no key field
+   */
+  @Nullable
+  String getRecordKeyField();
+
+  /**
+   * Returns the splits for reading the records with key in the given range.
+   *
+   * @param keyRange the range of the record keys to read
+   * @return A list of {@link Split}s, which covers at least all the records in the key range
+   */
+  List<Split> getSplits(RecordKeyRange keyRange);
+
+  /**
+   * Creates a reader for the split of a dataset, which only needs to read the given fields of the records.
+   *
+   * @param split The split to create a reader for.
+   * @param fields The names of the fields to read.
+   * @return The instance of a {@link RecordScanner}.
+   */
+  RecordScanner<RECORD> createSplitRecordScanner(Split split, Set<String> fields);
+}
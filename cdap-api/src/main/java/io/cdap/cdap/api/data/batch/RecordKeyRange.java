@@ -0,0 +1,136 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.api.data.batch;
+
+import io.cdap.cdap.api.annotation.Beta;
+
+import java.util.Arrays;
+import java.util.Objects;
+import javax.annotation.Nullable;
+
+/**
+ * A range of record keys, as pushed down to a {@link PushdownRecordScannable}. Each bound is either the value of
+ * the record key field, inclusive or exclusive, or {@code null} if the range is unbounded on that side.
+ */
+@Beta
+public final class RecordKeyRange {
+
+  private static final RecordKeyRange ALL = new RecordKeyRange(null, false, null, false);
+
+  private final Object lower;
+  private final boolean lowerInclusive;
+  private final Object upper;
+  private final boolean upperInclusive;
+
+  /**
+   * Returns the range of all keys.
+   */
+  public static RecordKeyRange all() {
+    return ALL;
+  }
+
+  /**
+   * Returns the range that only contains the given key.
+   */
+  public static RecordKeyRange singleton(Object key) {
+    return new RecordKeyRange(key, true, key, true);
+  }
+
+  /**
+   * Creates a range with the given bounds.
+   *
+   * @param lower the lower bound, or {@code null} if there is no lower bound
+   * @param lowerInclusive whether the lower bound is included in the range
+   * @param upper the upper bound, or {@code null} if there is no upper bound
+   * @param upperInclusive whether the upper bound is included in the range
+   */
+  public RecordKeyRange(@Nullable Object lower, boolean lowerInclusive,
+                        @Nullable Object upper, boolean upperInclusive) {
+    this.lower = lower;
+    this.lowerInclusive = lower != null && lowerInclusive;
+    this.upper = upper;
+    this.upperInclusive = upper != null && upperInclusive;
+  }
+
+  /**
+   * @return the lower bound of the range, or {@code null} if there is no lower bound
+   */
+  @Nullable
+  public Object getLower() {
+    return lower;
+  }
+
+  /**
+   * @return whether the lower bound is included in the range
+   */
+  public boolean isLowerInclusive() {
+    return lowerInclusive;
+  }
+
+  /**
+   * @return the upper bound of the range, or {@code null} if there is no upper bound
+   */
+  @Nullable
+  public Object getUpper() {
+    return upper;
+  }
+
+  /**
+   * @return whether the upper bound is included in the range
+   */
+  public boolean isUpperInclusive() {
+    return upperInclusive;
+  }
+
+  /**
+   * @return whether the range only contains a single key
+   */
+  public boolean isSingleton() {
+    return lower != null && lowerInclusive && upperInclusive && Objects.deepEquals(lower, upper);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    RecordKeyRange that = (RecordKeyRange) o;
+    return lowerInclusive == that.lowerInclusive && upperInclusive == that.upperInclusive
+      && Objects.deepEquals(lower, that.lower) && Objects.deepEquals(upper, that.upper);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(lowerInclusive, upperInclusive, deepHashCode(lower), deepHashCode(upper));
+  }
+
+  @Override
+  public String toString() {
+    return (lowerInclusive ? "[" : "(") + toString(lower) + ", " + toString(upper) + (upperInclusive ? "]" : ")");
+  }
+
+  private static int deepHashCode(@Nullable Object obj) {
+    return obj instanceof byte[] ? Arrays.hashCode((byte[]) obj) : Objects.hashCode(obj);
+  }
+
+  private static String toString(@Nullable Object obj) {
+    return obj instanceof byte[] ? Arrays.toString((byte[]) obj) : String.valueOf(obj);
+  }
+}
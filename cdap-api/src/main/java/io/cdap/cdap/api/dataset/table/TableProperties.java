@@ -47,6 +47,23 @@ public class TableProperties {
   @Beta
   public static final String PROPERTY_TABLE_PERMISSIONS = "dataset.table.permissions.grants";
 
+  /**
+   * The maximum size in bytes of the per-transaction cache of rows read from the persistent store of the table.
+   * The cache only lives for the duration of a transaction, hence repeated reads of the same row within a
+   * long transaction don't go to the persistent store again. A zero or negative value disables the cache,
+   * which is the default.
+   */
+  @Beta
+  public static final String PROPERTY_READ_CACHE_SIZE = "dataset.table.read.cache.size.bytes";
+
+  /**
+   * The estimated size in bytes of the changes buffered in memory by a transaction, at which the buffered changes are
+   * spilled to local disk. This bounds the memory used by transactions that write a lot of data, such as batch jobs.
+   * A zero or negative value disables spilling, which is the default.
+   */
+  @Beta
+  public static final String PROPERTY_BUFFER_SPILL_THRESHOLD = "dataset.table.buffer.spill.threshold.bytes";
+
   /**
    * Set a conflict detection level in dataset properties.
    */
@@ -258,6 +275,78 @@ public class TableProperties {
     builder.add(PROPERTY_TABLE_PERMISSIONS, GSON.toJson(permissions));
   }
 
+  /**
+   * Set the maximum size in bytes of the per-transaction read cache of the table. A zero or negative value
+   * disables the cache.
+   */
+  @Beta
+  public static void setReadCacheSize(DatasetProperties.Builder builder, long sizeBytes) {
+    builder.add(PROPERTY_READ_CACHE_SIZE, sizeBytes);
+  }
+
+  /**
+   * @return the maximum size in bytes of the per-transaction read cache of the table, or zero if the cache
+   *         is disabled.
+   *
+   * @throws NumberFormatException if the value is not a valid long.
+   */
+  @Beta
+  public static long getReadCacheSize(DatasetProperties props) {
+    return getReadCacheSize(props.getProperties());
+  }
+
+  /**
+   * @return the maximum size in bytes of the per-transaction read cache of the table, or zero if the cache
+   *         is disabled.
+   *
+   * @throws NumberFormatException if the value is not a valid long.
+   */
+  @Beta
+  public static long getReadCacheSize(Map<String, String> props) {
+    String stringValue = props.get(PROPERTY_READ_CACHE_SIZE);
+    if (stringValue == null) {
+      return 0L;
+    }
+    long size = Long.parseLong(stringValue);
+    return size > 0L ? size : 0L;
+  }
+
+  /**
+   * Set the estimated size in bytes of the in-memory buffer of changes at which they are spilled to local disk.
+   * A zero or negative value disables spilling.
+   */
+  @Beta
+  public static void setBufferSpillThreshold(DatasetProperties.Builder builder, long sizeBytes) {
+    builder.add(PROPERTY_BUFFER_SPILL_THRESHOLD, sizeBytes);
+  }
+
+  /**
+   * @return the estimated size in bytes of the in-memory buffer of changes at which they are spilled to local disk,
+   *         or zero if spilling is disabled.
+   *
+   * @throws NumberFormatException if the value is not a valid long.
+   */
+  @Beta
+  public static long getBufferSpillThreshold(DatasetProperties props) {
+    return getBufferSpillThreshold(props.getProperties());
+  }
+
+  /**
+   * @return the estimated size in bytes of the in-memory buffer of changes at which they are spilled to local disk,
+   *         or zero if spilling is disabled.
+   *
+   * @throws NumberFormatException if the value is not a valid long.
+   */
+  @Beta
+  public static long getBufferSpillThreshold(Map<String, String> props) {
+    String stringValue = props.get(PROPERTY_BUFFER_SPILL_THRESHOLD);
+    if (stringValue == null) {
+      return 0L;
+    }
+    long threshold = Long.parseLong(stringValue);
+    return threshold > 0L ? threshold : 0L;
+  }
+
   public static Builder builder() {
     return new Builder();
   }
@@ -347,5 +436,26 @@ public class TableProperties {
       TableProperties.setTablePermissions(this, permissions);
       return (B) this;
     }
+
+    /**
+     * Set the maximum size in bytes of the per-transaction read cache. A zero or negative value disables the cache.
+     */
+    @SuppressWarnings("unchecked")
+    @Beta
+    public B setReadCacheSize(long sizeBytes) {
+      TableProperties.setReadCacheSize(this, sizeBytes);
+      return (B) this;
+    }
+
+    /**
+     * Set the estimated size in bytes of the in-memory buffer of changes at which they are spilled to local disk.
+     * A zero or negative value disables spilling.
+     */
+    @SuppressWarnings("unchecked")
+    @Beta
+    public B setBufferSpillThreshold(long sizeBytes) {
+      TableProperties.setBufferSpillThreshold(this, sizeBytes);
+      return (B) this;
+    }
   }
 }
@@ -17,6 +17,7 @@
 package io.cdap.cdap.app.preview;
 
 import com.google.common.util.concurrent.AbstractIdleService;
+import com.google.common.util.concurrent.Service;
 import com.google.inject.Inject;
 import io.cdap.cdap.api.metrics.MetricsCollectionService;
 import io.cdap.cdap.common.conf.CConfiguration;
@@ -47,12 +48,14 @@ public class PreviewHttpServer extends AbstractIdleService {
 
   private final DiscoveryService discoveryService;
   private final NettyHttpService httpService;
+  private final PreviewManager previewManager;
   private Cancellable cancelHttpService;
 
   @Inject
   PreviewHttpServer(CConfiguration cConf, DiscoveryService discoveryService, PreviewHttpHandler previewHttpHandler,
-                    MetricsCollectionService metricsCollectionService) {
+                    MetricsCollectionService metricsCollectionService, PreviewManager previewManager) {
     this.discoveryService = discoveryService;
+    this.previewManager = previewManager;
     this.httpService = new CommonNettyHttpServiceBuilder(cConf, Constants.Service.PREVIEW_HTTP)
       .setHost(cConf.get(Constants.Preview.ADDRESS))
       .setPort(cConf.getInt(Constants.Preview.PORT))
@@ -75,6 +78,9 @@ public class PreviewHttpServer extends AbstractIdleService {
                                                                        Constants.Logging.COMPONENT_NAME,
                                                                        Constants.Service.PREVIEW_HTTP));
 
+    if (previewManager instanceof Service) {
+      ((Service) previewManager).startAndWait();
+    }
     httpService.start();
     cancelHttpService = discoveryService.register(
       ResolvingDiscoverable.of(new Discoverable(Constants.Service.PREVIEW_HTTP, httpService.getBindAddress())));
@@ -86,7 +92,13 @@ public class PreviewHttpServer extends AbstractIdleService {
     try {
       cancelHttpService.cancel();
     } finally {
-      httpService.stop();
+      try {
+        httpService.stop();
+      } finally {
+        if (previewManager instanceof Service) {
+          ((Service) previewManager).stopAndWait();
+        }
+      }
     }
     LOG.info("Preview HTTP server stopped");
   }
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016 Cask Data, Inc.
+ * Copyright © 2016-2019 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -63,6 +63,15 @@ public interface PreviewRunner {
    */
   Map<String, List<JsonElement>> getData(String tracerName);
 
+  /**
+   * Get a page of the data associated with the preview run represented by this {@link PreviewRunner}.
+   * @param tracerName the name of the tracer used for preview
+   * @param offset the number of values traced to skip
+   * @param limit the maximum number of values to return
+   * @return the {@link Map} of properties associated with the tracer for the requested page
+   */
+  Map<String, List<JsonElement>> getData(String tracerName, int offset, int limit);
+
   /**
    * Get the run id of the program executed as a part of preview.
    * @return the {@link ProgramRunId} associated with the preview
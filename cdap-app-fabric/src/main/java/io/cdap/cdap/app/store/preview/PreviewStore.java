@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016 Cask Data, Inc.
+ * Copyright © 2016-2019 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -46,6 +46,18 @@ public interface PreviewStore {
    */
   Map<String, List<JsonElement>> get(ApplicationId applicationId, String tracerName);
 
+  /**
+   * Get a page of the preview data associated with the given application id. Values are counted across all the
+   * properties of the tracer, in the order they were added.
+   *
+   * @param applicationId the id of the preview for which preview data to be fetched
+   * @param tracerName the name of the tracer used to put the preview data
+   * @param offset the number of values to skip
+   * @param limit the maximum number of values to return
+   * @return the {@link Map} of property and associated values in the requested page
+   */
+  Map<String, List<JsonElement>> get(ApplicationId applicationId, String tracerName, int offset, int limit);
+
   /**
    * Removes the preview data stored by specified application id
    *
@@ -128,10 +128,20 @@ public class PreviewHttpHandler extends AbstractLogHandler {
   public void getData(HttpRequest request, HttpResponder responder,
                       @PathParam("namespace-id") String namespaceId,
                       @PathParam("preview-id") String previewId,
-                      @PathParam("tracer-id") String tracerId) throws Exception {
+                      @PathParam("tracer-id") String tracerId,
+                      @QueryParam("offset") @DefaultValue("0") int offset,
+                      // 2147483647 is Integer.MAX_VALUE
+                      @QueryParam("limit") @DefaultValue("2147483647") int limit) throws Exception {
+    if (offset < 0) {
+      throw new BadRequestException("Offset cannot be negative.");
+    }
+    if (limit < 0) {
+      throw new BadRequestException("Limit cannot be negative.");
+    }
     NamespaceId namespace = new NamespaceId(namespaceId);
     ApplicationId application = namespace.app(previewId);
-    responder.sendJson(HttpResponseStatus.OK, GSON.toJson(previewManager.getRunner(application).getData(tracerId)));
+    responder.sendJson(HttpResponseStatus.OK,
+                       GSON.toJson(previewManager.getRunner(application).getData(tracerId, offset, limit)));
   }
 
   @POST
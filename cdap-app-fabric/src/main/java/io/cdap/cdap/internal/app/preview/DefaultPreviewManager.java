@@ -21,6 +21,8 @@ import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.RemovalListener;
 import com.google.common.cache.RemovalNotification;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.AbstractIdleService;
 import com.google.common.util.concurrent.Service;
 import com.google.inject.AbstractModule;
 import com.google.inject.Guice;
@@ -30,6 +32,8 @@ import com.google.inject.Provides;
 import com.google.inject.Scopes;
 import com.google.inject.name.Named;
 import com.google.inject.name.Names;
+import io.cdap.cdap.api.metrics.MetricsCollectionService;
+import io.cdap.cdap.api.metrics.MetricsContext;
 import io.cdap.cdap.api.security.store.SecureStore;
 import io.cdap.cdap.app.guice.AppFabricServiceRuntimeModule;
 import io.cdap.cdap.app.guice.ProgramRunnerRuntimeModule;
@@ -37,8 +41,10 @@ import io.cdap.cdap.app.preview.PreviewManager;
 import io.cdap.cdap.app.preview.PreviewRequest;
 import io.cdap.cdap.app.preview.PreviewRunner;
 import io.cdap.cdap.app.preview.PreviewRunnerModule;
+import io.cdap.cdap.app.preview.PreviewStatus;
 import io.cdap.cdap.common.BadRequestException;
 import io.cdap.cdap.common.NotFoundException;
+import io.cdap.cdap.common.ServiceUnavailableException;
 import io.cdap.cdap.common.conf.CConfiguration;
 import io.cdap.cdap.common.conf.Constants;
 import io.cdap.cdap.common.guice.ConfigModule;
@@ -77,10 +83,12 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.CommonConfigurationKeysPublic;
 import org.apache.hadoop.mapreduce.MRConfig;
 import org.apache.tephra.TransactionSystemClient;
+import org.apache.twill.common.Threads;
 import org.apache.twill.discovery.DiscoveryService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
@@ -88,13 +96,30 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.StreamSupport;
 import javax.annotation.ParametersAreNonnullByDefault;
 
 /**
  * Class responsible for creating the injector for preview and starting it.
+ * <p>
+ * Creating the injector and starting the services of a preview takes a few seconds. To not have every preview wait
+ * for that, a pool of environments that are already created and started is kept ready, and refilled in the background
+ * whenever a preview takes one. An environment is only used for a single preview, because its services are stopped
+ * once the preview completes, and its data is kept for reading the results of the preview. It is stopped and its
+ * data directory is deleted when the preview is evicted from the cache.
+ * <p>
+ * The pool is filled when this service starts. When it stops, all the environments are stopped and their data
+ * directories are deleted.
  */
-public class DefaultPreviewManager implements PreviewManager {
+public class DefaultPreviewManager extends AbstractIdleService implements PreviewManager {
 
   private static final Logger LOG = LoggerFactory.getLogger(DefaultPreviewManager.class);
   private static final String PREFIX = "preview-";
@@ -111,8 +136,17 @@ public class DefaultPreviewManager implements PreviewManager {
   private final AuthorizerInstantiator authorizerInstantiator;
   private final PrivilegesManager privilegesManager;
   private final AuthorizationEnforcer authorizationEnforcer;
-  private final Cache<ApplicationId, Injector> appInjectors;
+  private final Cache<ApplicationId, PreviewEnvironment> appEnvironments;
   private final Path previewDataDir;
+  private final int poolSize;
+  private final int maxConcurrentRuns;
+  private final Queue<PreviewEnvironment> idleEnvironments;
+  private final AtomicInteger pendingEnvironments;
+  private final ExecutorService poolExecutor;
+  private final MetricsContext metricsContext;
+  private volatile boolean stopping;
+  // number of previews being started, which are not in the appEnvironments cache yet. Guarded by this.
+  private int startingRuns;
 
   @Inject
   DefaultPreviewManager(final CConfiguration cConf, Configuration hConf, DiscoveryService discoveryService,
@@ -120,7 +154,8 @@ public class DefaultPreviewManager implements PreviewManager {
                         PreferencesService preferencesService, SecureStore secureStore,
                         TransactionSystemClient transactionSystemClient, ArtifactRepository artifactRepository,
                         ArtifactStore artifactStore, AuthorizerInstantiator authorizerInstantiator,
-                        PrivilegesManager privilegesManager, AuthorizationEnforcer authorizationEnforcer) {
+                        PrivilegesManager privilegesManager, AuthorizationEnforcer authorizationEnforcer,
+                        MetricsCollectionService metricsCollectionService) {
     this.cConf = cConf;
     this.hConf = hConf;
     this.datasetFramework = datasetFramework;
@@ -134,69 +169,206 @@ public class DefaultPreviewManager implements PreviewManager {
     this.privilegesManager = privilegesManager;
     this.authorizationEnforcer = authorizationEnforcer;
     this.previewDataDir = Paths.get(cConf.get(Constants.CFG_LOCAL_DATA_DIR), "preview").toAbsolutePath();
+    this.poolSize = cConf.getInt(Constants.Preview.RUNNER_POOL_SIZE, 0);
+    this.maxConcurrentRuns = cConf.getInt(Constants.Preview.MAX_CONCURRENT_RUNS, Integer.MAX_VALUE);
+    this.idleEnvironments = new ConcurrentLinkedQueue<>();
+    this.pendingEnvironments = new AtomicInteger();
+    this.poolExecutor = Executors.newSingleThreadExecutor(Threads.createDaemonThreadFactory("preview-runner-pool"));
+    this.metricsContext = metricsCollectionService.getContext(ImmutableMap.of(
+      Constants.Metrics.Tag.NAMESPACE, NamespaceId.SYSTEM.getNamespace(),
+      Constants.Metrics.Tag.COMPONENT, Constants.Service.PREVIEW_HTTP));
 
-    this.appInjectors = CacheBuilder.newBuilder()
+    this.appEnvironments = CacheBuilder.newBuilder()
       .maximumSize(cConf.getInt(Constants.Preview.PREVIEW_CACHE_SIZE, 10))
-      .removalListener(new RemovalListener<ApplicationId, Injector>() {
+      .removalListener(new RemovalListener<ApplicationId, PreviewEnvironment>() {
         @Override
         @ParametersAreNonnullByDefault
-        public void onRemoval(RemovalNotification<ApplicationId, Injector> notification) {
-          Injector injector = notification.getValue();
-          if (injector != null) {
-            PreviewRunner runner = injector.getInstance(PreviewRunner.class);
-            if (runner instanceof Service) {
-              stopQuietly((Service) runner);
-            }
+        public void onRemoval(RemovalNotification<ApplicationId, PreviewEnvironment> notification) {
+          PreviewEnvironment environment = notification.getValue();
+          if (environment != null) {
+            environment.destroy();
           }
           ApplicationId application = notification.getKey();
-          if (application == null) {
-            return;
+          if (application != null) {
+            DataTracerFactoryProvider.removeDataTracerFactory(application);
           }
-          removePreviewDir(application);
         }
       })
       .build();
   }
 
+  @Override
+  protected void startUp() throws Exception {
+    // The data directories of the previews from the previous run of this service are not used anymore
+    File[] staleDirs = previewDataDir.toFile().listFiles(file -> file.getName().startsWith(PREFIX));
+    if (staleDirs != null) {
+      for (File staleDir : staleDirs) {
+        try {
+          DirUtils.deleteDirectoryContents(staleDir);
+        } catch (IOException e) {
+          LOG.warn("Failed to delete the stale preview directory {}", staleDir, e);
+        }
+      }
+    }
+    fillPool();
+  }
+
+  @Override
+  protected void shutDown() throws Exception {
+    stopping = true;
+    // Let the environment being created finish, instead of interrupting its startup
+    poolExecutor.shutdown();
+    if (!poolExecutor.awaitTermination(5, TimeUnit.MINUTES)) {
+      LOG.warn("Timeout in waiting for the preview environment creation to complete");
+    }
+    PreviewEnvironment environment = idleEnvironments.poll();
+    while (environment != null) {
+      environment.destroy();
+      environment = idleEnvironments.poll();
+    }
+    appEnvironments.invalidateAll();
+  }
+
   @Override
   public ApplicationId start(NamespaceId namespace, AppRequest<?> appRequest) throws Exception {
     ApplicationId previewApp = namespace.app(PREFIX + System.currentTimeMillis());
-    Injector injector = createPreviewInjector(previewApp);
-    PreviewRunner runner = injector.getInstance(PreviewRunner.class);
-    if (runner instanceof Service) {
-      ((Service) runner).startAndWait();
-    }
+    ProgramId programId = getProgramIdFromRequest(previewApp, appRequest);
+
+    admit();
     try {
-      runner.startPreview(new PreviewRequest<>(getProgramIdFromRequest(previewApp, appRequest), appRequest));
-    } catch (Exception e) {
-      if (runner instanceof Service) {
-        stopQuietly((Service) runner);
+      PreviewEnvironment environment = acquireEnvironment();
+      try {
+        environment.getRunner().startPreview(new PreviewRequest<>(programId, appRequest));
+      } catch (Exception e) {
+        environment.destroy();
+        DataTracerFactoryProvider.removeDataTracerFactory(previewApp);
+        throw e;
+      }
+      appEnvironments.put(previewApp, environment);
+    } finally {
+      synchronized (this) {
+        startingRuns--;
       }
-      removePreviewDir(previewApp);
-      throw e;
     }
-    appInjectors.put(previewApp, injector);
+    emitPoolMetrics();
     return previewApp;
   }
 
   @Override
   public PreviewRunner getRunner(ApplicationId preview) throws NotFoundException {
-    Injector injector = appInjectors.getIfPresent(preview);
-    if (injector == null) {
-      throw new NotFoundException(preview);
-    }
-
-    return injector.getInstance(PreviewRunner.class);
+    return getEnvironment(preview).getRunner();
   }
 
   @Override
   public LogReader getLogReader(ApplicationId preview) throws NotFoundException {
-    Injector injector = appInjectors.getIfPresent(preview);
-    if (injector == null) {
+    return getEnvironment(preview).injector.getInstance(LogReader.class);
+  }
+
+  private PreviewEnvironment getEnvironment(ApplicationId preview) throws NotFoundException {
+    PreviewEnvironment environment = appEnvironments.getIfPresent(preview);
+    if (environment == null) {
       throw new NotFoundException(preview);
     }
+    return environment;
+  }
+
+  /**
+   * Admits a new preview run if less than the maximum number of previews are running, or throws
+   * {@link ServiceUnavailableException} otherwise. The caller must decrement {@link #startingRuns} once the
+   * preview is started or failed to start.
+   */
+  private synchronized void admit() throws ServiceUnavailableException {
+    long runs = startingRuns + appEnvironments.asMap().values().stream().filter(PreviewEnvironment::isRunning).count();
+    if (runs >= maxConcurrentRuns) {
+      metricsContext.increment("preview.run.rejected", 1L);
+      throw new ServiceUnavailableException(Constants.Service.PREVIEW_HTTP, String.format(
+        "There are already %d previews running, which is the maximum allowed. " +
+          "Please retry once one of them has completed.", runs));
+    }
+    startingRuns++;
+  }
+
+  /**
+   * Takes an idle environment from the pool, or creates a new one if the pool is empty, and refills the pool.
+   */
+  private PreviewEnvironment acquireEnvironment() throws IOException {
+    PreviewEnvironment environment = idleEnvironments.poll();
+    if (environment == null) {
+      metricsContext.increment("preview.runner.pool.misses", 1L);
+      environment = createEnvironment();
+    } else {
+      metricsContext.increment("preview.runner.pool.hits", 1L);
+    }
+    fillPool();
+    return environment;
+  }
+
+  /**
+   * Returns the number of idle environments in the pool.
+   */
+  @VisibleForTesting
+  int getIdleEnvironmentCount() {
+    return idleEnvironments.size();
+  }
+
+  /**
+   * Creates environments in the background until the pool has the configured number of idle environments.
+   */
+  private void fillPool() {
+    while (!stopping) {
+      int pending = pendingEnvironments.get();
+      if (idleEnvironments.size() + pending >= poolSize) {
+        return;
+      }
+      if (!pendingEnvironments.compareAndSet(pending, pending + 1)) {
+        continue;
+      }
+      try {
+        poolExecutor.execute(this::addPoolEnvironment);
+      } catch (RejectedExecutionException e) {
+        // The executor is shutdown when this service stops
+        pendingEnvironments.decrementAndGet();
+        return;
+      }
+    }
+  }
+
+  private void addPoolEnvironment() {
+    try {
+      if (!stopping) {
+        idleEnvironments.add(createEnvironment());
+      }
+    } catch (Exception e) {
+      LOG.warn("Failed to create a preview environment for the pool", e);
+    } finally {
+      pendingEnvironments.decrementAndGet();
+    }
+    emitPoolMetrics();
+  }
 
-    return injector.getInstance(LogReader.class);
+  private void emitPoolMetrics() {
+    metricsContext.gauge("preview.runner.pool.idle", idleEnvironments.size());
+    metricsContext.gauge("preview.run.active",
+                         appEnvironments.asMap().values().stream().filter(PreviewEnvironment::isRunning).count());
+  }
+
+  /**
+   * Creates the injector of a new preview environment with its own data directory, and starts the preview runner.
+   */
+  @VisibleForTesting
+  PreviewEnvironment createEnvironment() throws IOException {
+    Path previewDir = Files.createDirectories(previewDataDir.resolve(PREFIX + UUID.randomUUID()));
+    PreviewEnvironment environment = new PreviewEnvironment(createPreviewInjector(previewDir), previewDir);
+    try {
+      PreviewRunner runner = environment.getRunner();
+      if (runner instanceof Service) {
+        ((Service) runner).startAndWait();
+      }
+    } catch (Exception e) {
+      environment.destroy();
+      throw e;
+    }
+    return environment;
   }
 
   /**
@@ -204,6 +376,13 @@ public class DefaultPreviewManager implements PreviewManager {
    */
   @VisibleForTesting
   Injector createPreviewInjector(ApplicationId applicationId) throws IOException {
+    return createPreviewInjector(Files.createDirectories(previewDataDir.resolve(applicationId.getApplication())));
+  }
+
+  /**
+   * Create injector for a preview environment that uses the given data directory.
+   */
+  private Injector createPreviewInjector(Path previewDir) {
     CConfiguration previewCConf = CConfiguration.copy(cConf);
 
     // Change all services bind address to local host
@@ -213,9 +392,10 @@ public class DefaultPreviewManager implements PreviewManager {
       .filter(s -> s.endsWith(".bind.address"))
       .forEach(key -> previewCConf.set(key, localhost));
 
-    Path previewDir = Files.createDirectories(previewDataDir.resolve(applicationId.getApplication()));
-
     previewCConf.set(Constants.CFG_LOCAL_DATA_DIR, previewDir.toString());
+    // Share the unpacked artifacts with the other previews and the host, instead of unpacking under the preview dir
+    previewCConf.set(Constants.AppFabric.ARTIFACT_CACHE_DIR,
+                     Paths.get(cConf.get(Constants.AppFabric.ARTIFACT_CACHE_DIR)).toAbsolutePath().toString());
     previewCConf.setIfUnset(Constants.CFG_DATA_LEVELDB_DIR, previewDir.toString());
     previewCConf.setBoolean(Constants.Explore.EXPLORE_ENABLED, false);
     // Use No-SQL store for preview data
@@ -284,22 +464,47 @@ public class DefaultPreviewManager implements PreviewManager {
     return preview.program(programType, programName);
   }
 
-  private void stopQuietly(Service service) {
-    try {
-      service.stopAndWait();
-    } catch (Exception e) {
-      LOG.debug("Error stopping the preview runner.", e);
+  /**
+   * The injector of a preview and its data directory.
+   */
+  static final class PreviewEnvironment {
+    private final Injector injector;
+    private final Path previewDir;
+
+    PreviewEnvironment(Injector injector, Path previewDir) {
+      this.injector = injector;
+      this.previewDir = previewDir;
     }
-  }
 
-  private void removePreviewDir(ApplicationId applicationId) {
-    Path previewDirPath = previewDataDir.resolve(applicationId.getApplication());
+    PreviewRunner getRunner() {
+      return injector.getInstance(PreviewRunner.class);
+    }
 
-    try {
-      DataTracerFactoryProvider.removeDataTracerFactory(applicationId);
-      DirUtils.deleteDirectoryContents(previewDirPath.toFile());
-    } catch (IOException e) {
-      LOG.debug("Error deleting the preview directory {}", previewDirPath, e);
+    /**
+     * Returns whether the preview of this environment is being started or is running.
+     */
+    boolean isRunning() {
+      PreviewStatus status = getRunner().getStatus();
+      return status == null || status.getStatus() == PreviewStatus.Status.RUNNING;
+    }
+
+    /**
+     * Stops the preview runner and deletes the data directory.
+     */
+    void destroy() {
+      PreviewRunner runner = getRunner();
+      if (runner instanceof Service) {
+        try {
+          ((Service) runner).stopAndWait();
+        } catch (Exception e) {
+          LOG.debug("Error stopping the preview runner.", e);
+        }
+      }
+      try {
+        DirUtils.deleteDirectoryContents(previewDir.toFile());
+      } catch (IOException e) {
+        LOG.debug("Error deleting the preview directory {}", previewDir, e);
+      }
     }
   }
 }
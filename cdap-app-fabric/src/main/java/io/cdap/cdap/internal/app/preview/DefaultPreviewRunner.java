@@ -245,6 +245,11 @@ public class DefaultPreviewRunner extends AbstractIdleService implements Preview
     return previewStore.get(programId.getParent(), tracerName);
   }
 
+  @Override
+  public Map<String, List<JsonElement>> getData(String tracerName, int offset, int limit) {
+    return previewStore.get(programId.getParent(), tracerName, offset, limit);
+  }
+
   @Override
   public ProgramRunId getProgramRunId() {
     return runId;
@@ -21,16 +21,10 @@ import io.cdap.cdap.api.artifact.ArtifactInfo;
 import io.cdap.cdap.api.artifact.ArtifactManager;
 import io.cdap.cdap.api.artifact.CloseableClassLoader;
 import io.cdap.cdap.common.conf.CConfiguration;
-import io.cdap.cdap.common.conf.Constants;
 import io.cdap.cdap.common.lang.DirectoryClassLoader;
-import io.cdap.cdap.common.lang.jar.BundleJarUtil;
-import io.cdap.cdap.common.utils.DirUtils;
 import org.apache.twill.filesystem.Location;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
-import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.net.URLClassLoader;
@@ -41,15 +35,11 @@ import javax.annotation.Nullable;
  */
 public abstract class AbstractArtifactManager implements ArtifactManager {
 
-  private static final Logger LOG = LoggerFactory.getLogger(AbstractArtifactManager.class);
-
-  private final File tmpDir;
+  private final UnpackedArtifactCache artifactCache;
   private final ClassLoader bootstrapClassLoader;
 
   protected AbstractArtifactManager(CConfiguration cConf) {
-    File tmpDir = new File(cConf.get(Constants.CFG_LOCAL_DATA_DIR),
-                           cConf.get(Constants.AppFabric.TEMP_DIR)).getAbsoluteFile();
-    this.tmpDir = DirUtils.createTempDir(tmpDir);
+    this.artifactCache = UnpackedArtifactCache.get(cConf);
     this.bootstrapClassLoader = new URLClassLoader(new URL[0], null);
   }
 
@@ -67,8 +57,8 @@ public abstract class AbstractArtifactManager implements ArtifactManager {
   /**
    * Create a class loader with artifact jar unpacked contents and parent for this classloader is the supplied
    * parentClassLoader, if that parent classloader is null, bootstrap classloader is used as parent.
-   * This is a closeable classloader, caller should call close when he is done using it, during close directory
-   * cleanup will be performed.
+   * This is a closeable classloader, caller should call close when he is done using it, during close the unpacked
+   * artifact will be released.
    *
    * @param artifactInfo artifact info whose artifact will be unpacked to create classloader
    * @param parentClassLoader  optional parent classloader, if null bootstrap classloader will be used
@@ -84,34 +74,29 @@ public abstract class AbstractArtifactManager implements ArtifactManager {
   @Override
   public CloseableClassLoader createClassLoader(@Nullable String namespace, ArtifactInfo artifactInfo,
                                                 @Nullable ClassLoader parentClassLoader) throws IOException {
-    File unpackedDir = DirUtils.createTempDir(tmpDir);
-    BundleJarUtil.unJar(getArtifactLocation(artifactInfo, namespace), unpackedDir);
+    UnpackedArtifactCache.Lease lease = artifactCache.unpack(getArtifactLocation(artifactInfo, namespace));
     DirectoryClassLoader directoryClassLoader =
-      new DirectoryClassLoader(unpackedDir,
+      new DirectoryClassLoader(lease.getDirectory(),
                                parentClassLoader == null ? bootstrapClassLoader : parentClassLoader, "lib");
-    return new CloseableClassLoader(directoryClassLoader, new ClassLoaderCleanup(directoryClassLoader, unpackedDir));
+    return new CloseableClassLoader(directoryClassLoader, new ClassLoaderCleanup(directoryClassLoader, lease));
   }
 
   /**
-   * Helper class to cleanup temporary directory created for artifact classloader.
+   * Helper class to release the unpacked artifact used by the artifact classloader.
    */
   private static final class ClassLoaderCleanup implements Closeable {
-    private final File directory;
+    private final UnpackedArtifactCache.Lease lease;
     private final DirectoryClassLoader directoryClassLoader;
 
-    private ClassLoaderCleanup(DirectoryClassLoader directoryClassLoader, File directory) {
+    private ClassLoaderCleanup(DirectoryClassLoader directoryClassLoader, UnpackedArtifactCache.Lease lease) {
       this.directoryClassLoader = directoryClassLoader;
-      this.directory = directory;
+      this.lease = lease;
     }
 
     @Override
-    public void close() throws IOException {
-      try {
-        Closeables.closeQuietly(directoryClassLoader);
-        DirUtils.deleteDirectoryContents(directory);
-      } catch (IOException e) {
-        LOG.warn("Failed to delete directory {}", directory, e);
-      }
+    public void close() {
+      Closeables.closeQuietly(directoryClassLoader);
+      lease.close();
     }
   }
 }
@@ -95,11 +95,13 @@ final class ArtifactInspector {
 
   private final CConfiguration cConf;
   private final ArtifactClassLoaderFactory artifactClassLoaderFactory;
+  private final UnpackedArtifactCache artifactCache;
   private final ReflectionSchemaGenerator schemaGenerator;
 
   ArtifactInspector(CConfiguration cConf, ArtifactClassLoaderFactory artifactClassLoaderFactory) {
     this.cConf = cConf;
     this.artifactClassLoaderFactory = artifactClassLoaderFactory;
+    this.artifactCache = UnpackedArtifactCache.get(cConf);
     this.schemaGenerator = new ReflectionSchemaGenerator(false);
   }
 
@@ -125,10 +127,9 @@ final class ArtifactInspector {
 
     Path stageDir = Files.createTempDirectory(tmpDir, artifactFile.getName());
     try {
-      File unpackedDir = BundleJarUtil.unJar(artifactLocation,
-                                             Files.createTempDirectory(stageDir, "unpacked-").toFile());
       try (
-        CloseableClassLoader artifactClassLoader = artifactClassLoaderFactory.createClassLoader(unpackedDir);
+        UnpackedArtifactCache.Lease lease = artifactCache.unpack(artifactLocation);
+        CloseableClassLoader artifactClassLoader = artifactClassLoaderFactory.createClassLoader(lease.getDirectory());
         PluginInstantiator pluginInstantiator =
           new PluginInstantiator(cConf, parentClassLoader == null ? artifactClassLoader : parentClassLoader,
                                  Files.createTempDirectory(stageDir, "plugins-").toFile(),
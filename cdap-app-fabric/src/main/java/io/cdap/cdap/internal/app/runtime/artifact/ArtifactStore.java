@@ -74,8 +74,10 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -84,6 +86,9 @@ import java.util.Set;
 import java.util.SortedMap;
 import java.util.Spliterators;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BinaryOperator;
 import java.util.function.Function;
 import java.util.function.Predicate;
@@ -165,7 +170,8 @@ import javax.annotation.Nullable;
  * universal_plugin_data             default, jdbc, yusql, default, mysql-driver, 5.0.0           {@link PluginData}
  *
  * With this schema we can perform a scan to look up AppClasses, a scan to look up plugins that extend a specific
- * artifact, and a scan to look up artifacts.
+ * artifact, and a scan to look up artifacts. Plugin lookups are served from an in-memory catalog, which is loaded
+ * from the tables on demand and invalidated on every modification made through this class.
  *
  * In order to prevent deadlock if the storage backend is SQL, if a transaction needs to use multiple tables, the order
  * to use the table will be: artifact_data -> app_data -> plugin_data -> universal_plugin_data
@@ -183,6 +189,7 @@ public class ArtifactStore {
   private final Impersonator impersonator;
   private final Set<String> requirementBlacklist;
   private final TransactionRunner transactionRunner;
+  private final PluginCatalog pluginCatalog;
 
   @Inject
   ArtifactStore(CConfiguration cConf,
@@ -197,6 +204,7 @@ public class ArtifactStore {
       new HashSet<>(cConf.getTrimmedStringCollection(Constants.REQUIREMENTS_DATASET_TYPE_EXCLUDE))
         .stream().map(String::toLowerCase).collect(Collectors.toSet());
     this.transactionRunner = transactionRunner;
+    this.pluginCatalog = new PluginCatalog();
   }
 
   /**
@@ -483,40 +491,25 @@ public class ArtifactStore {
                                                                           @Nullable String type)
     throws ArtifactNotFoundException, IOException {
 
-    return TransactionRunners.run(transactionRunner, context -> {
-      StructuredTable artifactDataTable = getTable(context, StoreDefinition.ArtifactStore.ARTIFACT_DATA_TABLE);
-      SortedMap<ArtifactDescriptor, Set<PluginClass>> plugins =
-        getPluginsInArtifact(artifactDataTable, parentArtifactId,
-                             input -> (type == null || type.equals(input.getType())) && isAllowed(input));
-
-      // Scan plugins
-      StructuredTable pluginTable = getTable(context, StoreDefinition.ArtifactStore.PLUGIN_DATA_TABLE);
-      try (CloseableIterator<StructuredRow> iterator =
-             pluginTable.scan(createPluginScanRange(parentArtifactId, type), Integer.MAX_VALUE)) {
-        while (iterator.hasNext()) {
-          StructuredRow row = iterator.next();
-          addPluginToMap(namespace, parentArtifactId, plugins, row);
-        }
-      }
+    ParentArtifact parent = pluginCatalog.getParentArtifact(parentArtifactId.getNamespace().getId(),
+                                                            parentArtifactId.getName());
+    SortedMap<ArtifactDescriptor, Set<PluginClass>> plugins =
+      getPluginsInArtifact(parent, parentArtifactId,
+                           input -> (type == null || type.equals(input.getType())) && isAllowed(input));
 
-      // Scan universal plugins
-      StructuredTable uniPluginTable = getTable(context, StoreDefinition.ArtifactStore.UNIV_PLUGIN_DATA_TABLE);
-      List<Range> ranges = Arrays.asList(
-        createUniversalPluginScanRange(namespace.getNamespace(), type),
-        createUniversalPluginScanRange(NamespaceId.SYSTEM.getNamespace(), type)
-      );
+    // Add plugins that extend the parent artifact
+    for (PluginEntry entry : parent.plugins.getPlugins(type)) {
+      addPluginToMap(namespace, parentArtifactId, plugins, entry);
+    }
 
-      for (Range range : ranges) {
-        try (CloseableIterator<StructuredRow> iterator = uniPluginTable.scan(range, Integer.MAX_VALUE)) {
-          while (iterator.hasNext()) {
-            StructuredRow row = iterator.next();
-            addPluginToMap(namespace, parentArtifactId, plugins, row);
-          }
-        }
+    // Add universal plugins
+    for (String ns : Arrays.asList(namespace.getNamespace(), NamespaceId.SYSTEM.getNamespace())) {
+      for (PluginEntry entry : pluginCatalog.getUniversalPlugins(ns).getPlugins(type)) {
+        addPluginToMap(namespace, parentArtifactId, plugins, entry);
       }
+    }
 
-      return Collections.unmodifiableSortedMap(plugins);
-    }, ArtifactNotFoundException.class, IOException.class);
+    return Collections.unmodifiableSortedMap(plugins);
   }
 
   /**
@@ -567,55 +560,42 @@ public class ArtifactStore {
     @Nullable final Predicate<io.cdap.cdap.proto.id.ArtifactId> pluginRange, int limit, ArtifactSortOrder order)
     throws IOException, ArtifactNotFoundException, PluginNotExistsException {
 
-    SortedMap<ArtifactDescriptor, PluginClass> result = TransactionRunners.run(transactionRunner, context -> {
-      StructuredTable artifactDataTable = getTable(context, StoreDefinition.ArtifactStore.ARTIFACT_DATA_TABLE);
-      List<ArtifactDetail> parentArtifactDetails = getArtifacts(artifactDataTable, parentArtifactRange,
-                                                                Integer.MAX_VALUE, null);
-
-      if (parentArtifactDetails.isEmpty()) {
-        throw new ArtifactNotFoundException(parentArtifactRange.getNamespace(), parentArtifactRange.getName());
-      }
+    ParentArtifact parent = pluginCatalog.getParentArtifact(parentArtifactRange.getNamespace(),
+                                                            parentArtifactRange.getName());
+    List<ArtifactDetail> parentArtifactDetails = parent.getArtifacts(parentArtifactRange);
+    if (parentArtifactDetails.isEmpty()) {
+      throw new ArtifactNotFoundException(parentArtifactRange.getNamespace(), parentArtifactRange.getName());
+    }
 
-      SortedMap<ArtifactDescriptor, PluginClass> plugins = order == ArtifactSortOrder.DESC ?
-        new TreeMap<>(Collections.reverseOrder()) :
-        new TreeMap<>();
+    SortedMap<ArtifactDescriptor, PluginClass> plugins = order == ArtifactSortOrder.DESC ?
+      new TreeMap<>(Collections.reverseOrder()) :
+      new TreeMap<>();
 
-      List<Id.Artifact> parentArtifacts = new ArrayList<>();
-      for (ArtifactDetail parentArtifactDetail : parentArtifactDetails) {
-        parentArtifacts.add(Id.Artifact.from(Id.Namespace.from(parentArtifactRange.getNamespace()),
-                                             parentArtifactDetail.getDescriptor().getArtifactId()));
+    List<Id.Artifact> parentArtifacts = new ArrayList<>();
+    for (ArtifactDetail parentArtifactDetail : parentArtifactDetails) {
+      parentArtifacts.add(Id.Artifact.from(Id.Namespace.from(parentArtifactRange.getNamespace()),
+                                           parentArtifactDetail.getDescriptor().getArtifactId()));
 
-        Set<PluginClass> parentPlugins = parentArtifactDetail.getMeta().getClasses().getPlugins();
-        for (PluginClass pluginClass : parentPlugins) {
-          if (pluginClass.getName().equals(name) && pluginClass.getType().equals(type) && isAllowed(pluginClass)) {
-            plugins.put(parentArtifactDetail.getDescriptor(), pluginClass);
-            break;
-          }
+      Set<PluginClass> parentPlugins = parentArtifactDetail.getMeta().getClasses().getPlugins();
+      for (PluginClass pluginClass : parentPlugins) {
+        if (pluginClass.getName().equals(name) && pluginClass.getType().equals(type) && isAllowed(pluginClass)) {
+          plugins.put(parentArtifactDetail.getDescriptor(), pluginClass);
+          break;
         }
       }
+    }
 
-      // Add all plugins that extends from the given set of parents
-      StructuredTable pluginTable = getTable(context, StoreDefinition.ArtifactStore.PLUGIN_DATA_TABLE);
-      PluginKeyPrefix pluginKey = new PluginKeyPrefix(parentArtifactRange.getNamespace(),
-                                                      parentArtifactRange.getName(), type, name);
-      try (CloseableIterator<StructuredRow> iterator =
-             pluginTable.scan(Range.singleton(pluginKey.keys), Integer.MAX_VALUE)) {
-        addPluginsInRangeToMap(namespace, parentArtifacts, iterator, plugins, pluginRange, limit);
-      }
-
-      // Add all universal plugins
-      StructuredTable uniPluginTable = getTable(context, StoreDefinition.ArtifactStore.UNIV_PLUGIN_DATA_TABLE);
-      for (String ns : Arrays.asList(namespace.getNamespace(), NamespaceId.SYSTEM.getNamespace())) {
-        UniversalPluginKeyPrefix universalPluginKey = new UniversalPluginKeyPrefix(ns, type, name);
-        try (CloseableIterator<StructuredRow> iterator =
-               uniPluginTable.scan(Range.singleton(universalPluginKey.keys), Integer.MAX_VALUE)) {
-          addPluginsInRangeToMap(namespace, parentArtifacts, iterator, plugins, pluginRange, limit);
-        }
-      }
+    // Add all plugins that extends from the given set of parents
+    addPluginsInRangeToMap(namespace, parentArtifacts, parent.plugins.getPlugins(type, name),
+                           plugins, pluginRange, limit);
 
-      return Collections.unmodifiableSortedMap(plugins);
-    }, IOException.class, ArtifactNotFoundException.class);
+    // Add all universal plugins
+    for (String ns : Arrays.asList(namespace.getNamespace(), NamespaceId.SYSTEM.getNamespace())) {
+      addPluginsInRangeToMap(namespace, parentArtifacts, pluginCatalog.getUniversalPlugins(ns).getPlugins(type, name),
+                             plugins, pluginRange, limit);
+    }
 
+    SortedMap<ArtifactDescriptor, PluginClass> result = Collections.unmodifiableSortedMap(plugins);
     if (result.isEmpty()) {
       throw new PluginNotExistsException(new NamespaceId(parentArtifactRange.getNamespace()), type, name);
     }
@@ -656,6 +636,7 @@ public class ArtifactStore {
         .build();
       artifactDataTable.upsert(fields);
     }, ArtifactNotFoundException.class, IOException.class);
+    pluginCatalog.invalidate();
   }
 
   /**
@@ -726,6 +707,8 @@ public class ArtifactStore {
       // TODO: CDAP-14672 define TransactionConflictException for the SPI
       // should throw WriteConflictException(artifactId) on transaction conflict
       throw TransactionRunners.propagate(e, ArtifactAlreadyExistsException.class, IOException.class);
+    } finally {
+      pluginCatalog.invalidate();
     }
   }
 
@@ -768,6 +751,7 @@ public class ArtifactStore {
                  GSON.fromJson(optional.get().getString(StoreDefinition.ArtifactStore.ARTIFACT_DATA_FIELD),
                                ArtifactData.class));
     }, IOException.class, ArtifactNotFoundException.class);
+    pluginCatalog.invalidate();
   }
 
   /**
@@ -820,6 +804,7 @@ public class ArtifactStore {
         }
       }
     }, IOException.class);
+    pluginCatalog.invalidate();
   }
 
   private void deleteRangeFromTable(StructuredTable table, Range range) throws IOException {
@@ -978,71 +963,46 @@ public class ArtifactStore {
     }
   }
 
-  private SortedMap<ArtifactDescriptor, Set<PluginClass>> getPluginsInArtifact(StructuredTable artifactDataTable,
+  private SortedMap<ArtifactDescriptor, Set<PluginClass>> getPluginsInArtifact(ParentArtifact parent,
                                                                                Id.Artifact artifactId,
                                                                                Predicate<PluginClass> filter)
-    throws ArtifactNotFoundException, IOException {
+    throws ArtifactNotFoundException {
     SortedMap<ArtifactDescriptor, Set<PluginClass>> result = new TreeMap<>();
 
     // Make sure the artifact exists
-    ArtifactCell artifactCell = new ArtifactCell(artifactId);
-    Optional<StructuredRow> row = artifactDataTable.read(artifactCell.keys);
-    if (!row.isPresent()) {
+    ArtifactDetail artifactDetail = parent.versions.get(artifactId.getVersion().getVersion());
+    if (artifactDetail == null) {
       throw new ArtifactNotFoundException(artifactId.toEntityId());
     }
     // include any plugin classes that are inside the artifact itself and is accepted by the filter
-    ArtifactData artifactData = GSON.fromJson(row.get().getString(StoreDefinition.ArtifactStore.ARTIFACT_DATA_FIELD),
-                                              ArtifactData.class);
-    Set<PluginClass> plugins = artifactData.meta.getClasses().getPlugins().stream()
+    Set<PluginClass> plugins = artifactDetail.getMeta().getClasses().getPlugins().stream()
       .filter(filter).collect(Collectors.toCollection(LinkedHashSet::new));
 
     if (!plugins.isEmpty()) {
-      Location location = Locations.getLocationFromAbsolutePath(locationFactory, artifactData.getLocationPath());
-      ArtifactDescriptor descriptor = new ArtifactDescriptor(artifactId.toArtifactId(), location);
-      result.put(descriptor, plugins);
+      result.put(artifactDetail.getDescriptor(), plugins);
     }
     return result;
   }
 
-  // this method examines the plugin in the given row and checks if they extend the given parent artifact
-  // and are from an artifact in the given namespace.
+  // this method examines the given plugin and checks if it extends the given parent artifact
+  // and is from an artifact in the given namespace.
   // if so, information about the plugin artifact and the plugin details are added to the given map.
   private void addPluginToMap(NamespaceId namespace, Id.Artifact parentArtifactId,
                               SortedMap<ArtifactDescriptor, Set<PluginClass>> map,
-                              StructuredRow row) {
-    ImmutablePair<ArtifactDescriptor, PluginClass> pluginEntry = getPluginEntry(namespace, parentArtifactId, row);
-    if (pluginEntry != null && isAllowed(pluginEntry.getSecond())) {
-      map.computeIfAbsent(pluginEntry.getFirst(), k -> new HashSet<>()).add(pluginEntry.getSecond());
-    }
-  }
-
-  /**
-   * Decode the PluginClass from the table column if it is from an artifact in the given namespace and
-   * extends the given parent artifact. If the plugin's artifact is not in the given namespace, or it does not
-   * extend the given parent artifact, return null.
-   */
-  @Nullable
-  private ImmutablePair<ArtifactDescriptor, PluginClass> getPluginEntry(
-    NamespaceId namespace, Id.Artifact parentArtifactId, StructuredRow row) {
-    ImmutablePair<ArtifactDescriptor, PluginData> pluginPair = getPlugin(row, artifactId -> {
-      NamespaceId namespaceId = artifactId.getNamespaceId();
-      return NamespaceId.SYSTEM.equals(namespaceId) || namespace.equals(namespaceId);
-    });
-
-    if (pluginPair == null) {
-      return null;
+                              PluginEntry entry) {
+    NamespaceId pluginNamespace = entry.artifactId.getNamespaceId();
+    if (!NamespaceId.SYSTEM.equals(pluginNamespace) && !namespace.equals(pluginNamespace)) {
+      return;
     }
-
-    PluginData pluginData = pluginPair.getSecond();
+    PluginData pluginData = entry.pluginData;
     // filter out plugins that don't extend this version of the parent artifact
-    if (pluginData.isUsableBy(parentArtifactId.toEntityId())) {
-      return ImmutablePair.of(pluginPair.getFirst(), pluginData.pluginClass);
+    if (pluginData.isUsableBy(parentArtifactId.toEntityId()) && isAllowed(pluginData.pluginClass)) {
+      map.computeIfAbsent(entry.descriptor, k -> new HashSet<>()).add(pluginData.pluginClass);
     }
-    return null;
   }
 
   private void addPluginsInRangeToMap(final NamespaceId namespace, List<Id.Artifact> parentArtifacts,
-                                      Iterator<StructuredRow> iterator,
+                                      Collection<PluginEntry> entries,
                                       SortedMap<ArtifactDescriptor, PluginClass> plugins,
                                       @Nullable Predicate<io.cdap.cdap.proto.id.ArtifactId> range,
                                       int limit) {
@@ -1052,18 +1012,16 @@ public class ArtifactStore {
       ? range
       : input -> NamespaceId.SYSTEM.equals(input.getParent()) || input.getParent().equals(namespace);
 
-    while (iterator.hasNext()) {
-      StructuredRow row = iterator.next();
-      ImmutablePair<ArtifactDescriptor, PluginData> pluginPair = getPlugin(row, range);
-      if (pluginPair == null) {
+    for (PluginEntry entry : entries) {
+      if (!range.test(entry.artifactId)) {
         continue;
       }
 
-      PluginData pluginData = pluginPair.getSecond();
+      PluginData pluginData = entry.pluginData;
       // filter out plugins that don't extend this version of the parent artifact
       for (Id.Artifact parentArtifactId : parentArtifacts) {
         if (pluginData.isUsableBy(parentArtifactId.toEntityId()) && isAllowed(pluginData.pluginClass)) {
-          plugins.put(pluginPair.getFirst(), pluginData.pluginClass);
+          plugins.put(entry.descriptor, pluginData.pluginClass);
           break;
         }
       }
@@ -1073,25 +1031,19 @@ public class ArtifactStore {
     }
   }
 
-  @Nullable
-  private ImmutablePair<ArtifactDescriptor, PluginData> getPlugin(StructuredRow row,
-                                                                  Predicate<io.cdap.cdap.proto.id.ArtifactId> range) {
+  private PluginEntry getPluginEntry(StructuredRow row) {
     // column is the artifact namespace, name, and version. value is the serialized PluginData
     Id.Namespace artifactNamespace =
       Id.Namespace.from(row.getString(StoreDefinition.ArtifactStore.ARTIFACT_NAMESPACE_FIELD));
     Id.Artifact artifactId =
       Id.Artifact.from(artifactNamespace, row.getString(StoreDefinition.ArtifactStore.ARTIFACT_NAME_FIELD),
                        row.getString(StoreDefinition.ArtifactStore.ARTIFACT_VER_FIELD));
-
-    if (!range.test(artifactId.toEntityId())) {
-      return null;
-    }
     PluginData pluginData = GSON.fromJson(row.getString(StoreDefinition.ArtifactStore.PLUGIN_DATA_FIELD),
                                           PluginData.class);
-    return ImmutablePair.of(new ArtifactDescriptor(
+    ArtifactDescriptor descriptor = new ArtifactDescriptor(
       artifactId.toArtifactId(),
-      Locations.getLocationFromAbsolutePath(locationFactory, pluginData.getArtifactLocationPath())), pluginData);
-
+      Locations.getLocationFromAbsolutePath(locationFactory, pluginData.getArtifactLocationPath()));
+    return new PluginEntry(artifactId.toEntityId(), descriptor, pluginData);
   }
 
   private Range createArtifactScanRange(NamespaceId namespace) {
@@ -1100,15 +1052,10 @@ public class ArtifactStore {
     return Range.singleton(Collections.singleton(stringField));
   }
 
-  private Range createPluginScanRange(Id.Artifact parentArtifactId, @Nullable String type) {
-    List<Field<?>> keys = new ArrayList<>();
-    keys.add(Fields.stringField(StoreDefinition.ArtifactStore.PARENT_NAMESPACE_FIELD,
-                                parentArtifactId.getNamespace().getId()));
-    keys.add(Fields.stringField(StoreDefinition.ArtifactStore.PARENT_NAME_FIELD, parentArtifactId.getName()));
-    if (type != null) {
-      keys.add(Fields.stringField(StoreDefinition.ArtifactStore.PLUGIN_TYPE_FIELD, type));
-    }
-    return Range.singleton(keys);
+  private Range createPluginScanRange(String parentNamespace, String parentName) {
+    return Range.singleton(Arrays.asList(
+      Fields.stringField(StoreDefinition.ArtifactStore.PARENT_NAMESPACE_FIELD, parentNamespace),
+      Fields.stringField(StoreDefinition.ArtifactStore.PARENT_NAME_FIELD, parentName)));
   }
 
   private Range createUniversalPluginScanRange(String namespace, @Nullable String type) {
@@ -1156,6 +1103,174 @@ public class ArtifactStore {
     return pluginClass.getRequirements().getDatasetTypes().stream().noneMatch(requirementBlacklist::contains);
   }
 
+  /**
+   * An in-memory catalog of the plugins in the store, so that plugin lookups don't have to scan the tables and decode
+   * the artifact and plugin data on every call. The catalog is populated lazily, for each parent artifact name and
+   * for the universal plugins of each namespace. Every modification of the store bumps the generation of the
+   * catalog, which invalidates everything loaded before.
+   */
+  private final class PluginCatalog {
+
+    private final AtomicLong generation = new AtomicLong();
+    private final ConcurrentMap<ImmutablePair<String, String>, ParentArtifact> parentArtifacts =
+      new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, PluginIndex> universalPlugins = new ConcurrentHashMap<>();
+
+    /**
+     * Returns all versions of the given parent artifact and the plugins that extend it.
+     */
+    ParentArtifact getParentArtifact(String namespace, String name) throws IOException {
+      long gen = generation.get();
+      ImmutablePair<String, String> key = ImmutablePair.of(namespace, name);
+      ParentArtifact parent = parentArtifacts.get(key);
+      if (parent != null && parent.generation == gen) {
+        return parent;
+      }
+      parent = TransactionRunners.run(transactionRunner, context -> {
+        return loadParentArtifact(context, namespace, name, gen);
+      }, IOException.class);
+      // Never replace what is loaded by a newer generation
+      parentArtifacts.merge(key, parent, (oldValue, newValue) ->
+        oldValue.generation > newValue.generation ? oldValue : newValue);
+      return parent;
+    }
+
+    /**
+     * Returns the universal plugins in the given namespace.
+     */
+    PluginIndex getUniversalPlugins(String namespace) throws IOException {
+      long gen = generation.get();
+      PluginIndex plugins = universalPlugins.get(namespace);
+      if (plugins != null && plugins.generation == gen) {
+        return plugins;
+      }
+      plugins = TransactionRunners.run(transactionRunner, context -> {
+        StructuredTable uniPluginTable = getTable(context, StoreDefinition.ArtifactStore.UNIV_PLUGIN_DATA_TABLE);
+        return loadPlugins(uniPluginTable, createUniversalPluginScanRange(namespace, null), gen);
+      }, IOException.class);
+      universalPlugins.merge(namespace, plugins, (oldValue, newValue) ->
+        oldValue.generation > newValue.generation ? oldValue : newValue);
+      return plugins;
+    }
+
+    /**
+     * Invalidates the catalog. Must be called after the artifact metadata is modified.
+     */
+    void invalidate() {
+      generation.incrementAndGet();
+      parentArtifacts.clear();
+      universalPlugins.clear();
+    }
+
+    private ParentArtifact loadParentArtifact(StructuredTableContext context, String namespace,
+                                              String name, long gen) throws IOException {
+      StructuredTable artifactDataTable = getTable(context, StoreDefinition.ArtifactStore.ARTIFACT_DATA_TABLE);
+      Collection<Field<?>> keys =
+        Arrays.asList(Fields.stringField(StoreDefinition.ArtifactStore.ARTIFACT_NAMESPACE_FIELD, namespace),
+                      Fields.stringField(StoreDefinition.ArtifactStore.ARTIFACT_NAME_FIELD, name));
+      Map<String, ArtifactDetail> versions = new LinkedHashMap<>();
+      try (CloseableIterator<StructuredRow> iterator = artifactDataTable.scan(Range.singleton(keys),
+                                                                              Integer.MAX_VALUE)) {
+        for (ArtifactDetail detail : getArtifacts(iterator, Integer.MAX_VALUE, ArtifactSortOrder.UNORDERED, null)) {
+          versions.put(detail.getDescriptor().getArtifactId().getVersion().getVersion(), detail);
+        }
+      }
+
+      StructuredTable pluginTable = getTable(context, StoreDefinition.ArtifactStore.PLUGIN_DATA_TABLE);
+      return new ParentArtifact(gen, versions, loadPlugins(pluginTable, createPluginScanRange(namespace, name), gen));
+    }
+
+    private PluginIndex loadPlugins(StructuredTable table, Range range, long gen) throws IOException {
+      Map<String, Map<String, List<PluginEntry>>> plugins = new HashMap<>();
+      try (CloseableIterator<StructuredRow> iterator = table.scan(range, Integer.MAX_VALUE)) {
+        while (iterator.hasNext()) {
+          StructuredRow row = iterator.next();
+          plugins
+            .computeIfAbsent(row.getString(StoreDefinition.ArtifactStore.PLUGIN_TYPE_FIELD), k -> new LinkedHashMap<>())
+            .computeIfAbsent(row.getString(StoreDefinition.ArtifactStore.PLUGIN_NAME_FIELD), k -> new ArrayList<>())
+            .add(getPluginEntry(row));
+        }
+      }
+      return new PluginIndex(gen, plugins);
+    }
+  }
+
+  /**
+   * All versions of a parent artifact, together with the plugins that extend it, as loaded in the
+   * {@link PluginCatalog}.
+   */
+  private static final class ParentArtifact {
+    private final long generation;
+    // Artifact versions by version string
+    private final Map<String, ArtifactDetail> versions;
+    private final PluginIndex plugins;
+
+    private ParentArtifact(long generation, Map<String, ArtifactDetail> versions, PluginIndex plugins) {
+      this.generation = generation;
+      this.versions = versions;
+      this.plugins = plugins;
+    }
+
+    /**
+     * Returns the versions of the artifact in the given range.
+     */
+    List<ArtifactDetail> getArtifacts(ArtifactRange range) {
+      return versions.values().stream()
+        .filter(detail -> range.versionIsInRange(detail.getDescriptor().getArtifactId().getVersion()))
+        .collect(Collectors.toList());
+    }
+  }
+
+  /**
+   * Plugins indexed by plugin type and plugin name, as loaded in the {@link PluginCatalog}. The plugins of the same
+   * type and name are kept in the table order.
+   */
+  private static final class PluginIndex {
+    private final long generation;
+    private final Map<String, Map<String, List<PluginEntry>>> plugins;
+
+    private PluginIndex(long generation, Map<String, Map<String, List<PluginEntry>>> plugins) {
+      this.generation = generation;
+      this.plugins = plugins;
+    }
+
+    /**
+     * Returns the plugins of the given type, or all plugins if the type is {@code null}.
+     */
+    List<PluginEntry> getPlugins(@Nullable String type) {
+      Collection<Map<String, List<PluginEntry>>> byName = type == null
+        ? plugins.values()
+        : Collections.singleton(plugins.getOrDefault(type, Collections.emptyMap()));
+      return byName.stream()
+        .flatMap(map -> map.values().stream())
+        .flatMap(List::stream)
+        .collect(Collectors.toList());
+    }
+
+    /**
+     * Returns the plugins of the given type and name.
+     */
+    List<PluginEntry> getPlugins(String type, String name) {
+      return plugins.getOrDefault(type, Collections.emptyMap()).getOrDefault(name, Collections.emptyList());
+    }
+  }
+
+  /**
+   * A plugin together with the artifact containing it.
+   */
+  private static final class PluginEntry {
+    private final io.cdap.cdap.proto.id.ArtifactId artifactId;
+    private final ArtifactDescriptor descriptor;
+    private final PluginData pluginData;
+
+    private PluginEntry(io.cdap.cdap.proto.id.ArtifactId artifactId,
+                        ArtifactDescriptor descriptor, PluginData pluginData) {
+      this.artifactId = artifactId;
+      this.descriptor = descriptor;
+      this.pluginData = pluginData;
+    }
+  }
+
   private static class AppClassKey {
     private final Collection<Field<?>> keys;
 
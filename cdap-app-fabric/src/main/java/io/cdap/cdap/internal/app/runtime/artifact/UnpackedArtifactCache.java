@@ -0,0 +1,313 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.internal.app.runtime.artifact;
+
+import com.google.common.annotations.VisibleForTesting;
+import io.cdap.cdap.api.common.Bytes;
+import io.cdap.cdap.common.conf.CConfiguration;
+import io.cdap.cdap.common.conf.Constants;
+import io.cdap.cdap.common.lang.jar.BundleJarUtil;
+import io.cdap.cdap.common.utils.DirUtils;
+import org.apache.twill.filesystem.Location;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A cache of unpacked artifact jars on the local disk, shared by all the ClassLoaders created from artifacts
+ * in a process. Unpacked artifacts are keyed by the SHA-256 checksum of the artifact jar, so that the same jar is
+ * only unpacked once, no matter which location it is read from. A jar is first unpacked to a temporary directory,
+ * which is moved to the directory of the checksum once complete.
+ * <p>
+ * An unpacked artifact is used through a {@link Lease}, which must be closed once the directory is not used anymore.
+ * When the total size of the unpacked artifacts exceeds the configured limit, the least recently used artifacts
+ * that are not leased are deleted. The cache directory must not be shared between processes.
+ */
+@ThreadSafe
+public final class UnpackedArtifactCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(UnpackedArtifactCache.class);
+  private static final ConcurrentMap<Path, UnpackedArtifactCache> CACHES = new ConcurrentHashMap<>();
+  private static final String TEMP_PREFIX = ".tmp-";
+
+  private final Path cacheDir;
+  private final long maxSizeBytes;
+  // Checksums of the jars unpacked before, keyed by the location, size and modification time of the jar
+  private final ConcurrentMap<String, String> checksums;
+  private final ConcurrentMap<String, Object> unpackLocks;
+  // The unpacked artifacts by checksum in least recently used order. Guarded by this.
+  private final Map<String, Entry> entries;
+  private long totalSizeBytes;
+
+  /**
+   * Returns the {@link UnpackedArtifactCache} of the process for the cache directory in the given configuration.
+   */
+  public static UnpackedArtifactCache get(CConfiguration cConf) {
+    Path cacheDir = Paths.get(cConf.get(Constants.AppFabric.ARTIFACT_CACHE_DIR)).toAbsolutePath().normalize();
+    long maxSizeBytes = cConf.getLong(Constants.AppFabric.ARTIFACT_CACHE_SIZE_MB) * 1024L * 1024L;
+    return CACHES.computeIfAbsent(cacheDir, dir -> new UnpackedArtifactCache(dir, maxSizeBytes));
+  }
+
+  @VisibleForTesting
+  UnpackedArtifactCache(Path cacheDir, long maxSizeBytes) {
+    this.cacheDir = cacheDir;
+    this.maxSizeBytes = maxSizeBytes;
+    this.checksums = new ConcurrentHashMap<>();
+    this.unpackLocks = new ConcurrentHashMap<>();
+    this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    loadEntries();
+  }
+
+  /**
+   * Returns the unpacked directory of the given artifact jar, unpacking it if it is not in the cache.
+   *
+   * @param artifactLocation the {@link Location} of the artifact jar
+   * @return a {@link Lease} on the unpacked directory, which must be closed when the directory is not used anymore
+   * @throws IOException if failed to unpack the artifact
+   */
+  public Lease unpack(Location artifactLocation) throws IOException {
+    String key = artifactLocation.toURI() + "@" + artifactLocation.length() + "@" + artifactLocation.lastModified();
+    Lease lease = lease(checksums.get(key));
+    if (lease != null) {
+      return lease;
+    }
+
+    // Only unpack the same location once at a time
+    synchronized (unpackLocks.computeIfAbsent(key, k -> new Object())) {
+      lease = lease(checksums.get(key));
+      if (lease == null) {
+        lease = unpackAndLease(artifactLocation);
+        checksums.put(key, lease.checksum);
+      }
+    }
+    evict();
+    return lease;
+  }
+
+  @VisibleForTesting
+  synchronized long getTotalSizeBytes() {
+    return totalSizeBytes;
+  }
+
+  /**
+   * Leases the unpacked artifact of the given checksum if it is in the cache.
+   */
+  @Nullable
+  private synchronized Lease lease(@Nullable String checksum) {
+    Entry entry = checksum == null ? null : entries.get(checksum);
+    if (entry == null) {
+      return null;
+    }
+    entry.leases++;
+    return new Lease(checksum, entry);
+  }
+
+  private Lease unpackAndLease(Location artifactLocation) throws IOException {
+    Files.createDirectories(cacheDir);
+    Path tempDir = Files.createTempDirectory(cacheDir, TEMP_PREFIX);
+    try {
+      MessageDigest digest = createDigest();
+      try (InputStream is = new DigestInputStream(new BufferedInputStream(artifactLocation.getInputStream()),
+                                                  digest)) {
+        BundleJarUtil.unJar(is, tempDir.toFile());
+      }
+      String checksum = Bytes.toHexString(digest.digest());
+      long size = getSize(tempDir);
+
+      synchronized (this) {
+        Entry entry = entries.get(checksum);
+        if (entry == null) {
+          Path dir = cacheDir.resolve(checksum);
+          if (Files.exists(dir)) {
+            // Left over by a failed eviction
+            DirUtils.deleteDirectoryContents(dir.toFile());
+          }
+          Files.move(tempDir, dir, StandardCopyOption.ATOMIC_MOVE);
+          entry = new Entry(dir.toFile(), size);
+          entries.put(checksum, entry);
+          totalSizeBytes += size;
+          LOG.debug("Unpacked artifact {} to {}", artifactLocation, dir);
+        }
+        entry.leases++;
+        return new Lease(checksum, entry);
+      }
+    } finally {
+      if (Files.exists(tempDir)) {
+        DirUtils.deleteDirectoryContents(tempDir.toFile());
+      }
+    }
+  }
+
+  /**
+   * Deletes the least recently used artifacts that are not leased until the cache is within the size limit.
+   */
+  private void evict() {
+    List<File> evicted = new ArrayList<>();
+    synchronized (this) {
+      Iterator<Entry> iterator = entries.values().iterator();
+      while (totalSizeBytes > maxSizeBytes && iterator.hasNext()) {
+        Entry entry = iterator.next();
+        if (entry.leases > 0) {
+          continue;
+        }
+        iterator.remove();
+        totalSizeBytes -= entry.size;
+        // Move the directory out of the way first, so that the same artifact can be unpacked again right away
+        try {
+          Path tempDir = cacheDir.resolve(TEMP_PREFIX + UUID.randomUUID());
+          Files.move(entry.dir.toPath(), tempDir, StandardCopyOption.ATOMIC_MOVE);
+          evicted.add(tempDir.toFile());
+        } catch (IOException e) {
+          LOG.warn("Failed to move directory {} for deletion", entry.dir, e);
+        }
+      }
+    }
+    for (File dir : evicted) {
+      try {
+        DirUtils.deleteDirectoryContents(dir);
+      } catch (IOException e) {
+        LOG.warn("Failed to delete directory {}", dir, e);
+      }
+    }
+  }
+
+  /**
+   * Loads the artifacts unpacked in the cache directory by a previous process, and deletes the incomplete ones.
+   */
+  private void loadEntries() {
+    if (!Files.isDirectory(cacheDir)) {
+      return;
+    }
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(cacheDir)) {
+      for (Path dir : stream) {
+        String name = dir.getFileName().toString();
+        if (!Files.isDirectory(dir)) {
+          Files.delete(dir);
+          continue;
+        }
+        if (name.startsWith(TEMP_PREFIX)) {
+          DirUtils.deleteDirectoryContents(dir.toFile());
+          continue;
+        }
+        long size = getSize(dir);
+        entries.put(name, new Entry(dir.toFile(), size));
+        totalSizeBytes += size;
+      }
+    } catch (IOException e) {
+      LOG.warn("Failed to load unpacked artifacts from {}", cacheDir, e);
+    }
+    evict();
+  }
+
+  private static MessageDigest createDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      // This shouldn't happen as SHA-256 is supported by all JVMs
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static long getSize(Path dir) throws IOException {
+    AtomicLong size = new AtomicLong();
+    Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+        size.addAndGet(attrs.size());
+        return FileVisitResult.CONTINUE;
+      }
+    });
+    return size.get();
+  }
+
+  /**
+   * An unpacked artifact in the cache.
+   */
+  private static final class Entry {
+    private final File dir;
+    private final long size;
+    // Number of leases not yet closed. Guarded by the cache.
+    private int leases;
+
+    Entry(File dir, long size) {
+      this.dir = dir;
+      this.size = size;
+    }
+  }
+
+  /**
+   * A lease on an unpacked artifact. The unpacked directory is not deleted until the lease is closed.
+   */
+  public final class Lease implements Closeable {
+
+    private final String checksum;
+    private final Entry entry;
+    private final AtomicBoolean closed;
+
+    private Lease(String checksum, Entry entry) {
+      this.checksum = checksum;
+      this.entry = entry;
+      this.closed = new AtomicBoolean();
+    }
+
+    /**
+     * Returns the directory where the artifact is unpacked. The directory must not be modified.
+     */
+    public File getDirectory() {
+      return entry.dir;
+    }
+
+    @Override
+    public void close() {
+      if (!closed.compareAndSet(false, true)) {
+        return;
+      }
+      synchronized (UnpackedArtifactCache.this) {
+        entry.leases--;
+      }
+      evict();
+    }
+  }
+}
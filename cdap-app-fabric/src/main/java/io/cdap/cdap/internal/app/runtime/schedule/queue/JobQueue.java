@@ -59,8 +59,11 @@ public interface JobQueue {
    *
    * @param schedule the schedule for which jobs will be update
    * @param notification the new notification to update the schedule jobs with
+   * @return the {@link JobKey} of the job that the notification was added to, or {@code null} if the schedule
+   *         is not enabled and the notification was ignored
    */
-  void addNotification(ProgramScheduleRecord schedule, Notification notification) throws IOException;
+  @Nullable
+  JobKey addNotification(ProgramScheduleRecord schedule, Notification notification) throws IOException;
 
   /**
    * Marks all jobs associated with the given schedule Id for deletion, recording the time of deletion.
@@ -16,7 +16,6 @@
 
 package io.cdap.cdap.internal.app.runtime.schedule.queue;
 
-import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Iterators;
@@ -49,6 +48,7 @@ import io.cdap.cdap.store.StoreDefinition;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -138,17 +138,19 @@ public class JobQueueTable implements JobQueue {
     return newJob;
   }
 
+  @Nullable
   @Override
-  public void addNotification(ProgramScheduleRecord record, Notification notification) throws IOException {
-    boolean jobExists = false;
+  public JobKey addNotification(ProgramScheduleRecord record, Notification notification) throws IOException {
+    JobKey jobKey = null;
     ProgramSchedule schedule = record.getSchedule();
 
     // Only add notifications for enabled schedules
     if (record.getMeta().getStatus() != ProgramScheduleStatus.SCHEDULED) {
-      return;
+      return null;
     }
 
     int nextGenerationId = 0;
+    List<Collection<Field<?>>> obsoleteJobs = new ArrayList<>();
     try (CloseableIterator<Job> jobs = getJobsForSchedule(schedule.getScheduleId())) {
       while (jobs.hasNext()) {
         Job job = jobs.next();
@@ -165,26 +167,30 @@ public class JobQueueTable implements JobQueue {
           long scheduleLastUpdated = record.getMeta().getLastUpdated();
           if (job.getScheduleLastUpdatedTime() != scheduleLastUpdated) {
             // schedule has changed: this job is obsolete
-            writeJobObsolete(job, System.currentTimeMillis());
+            obsoleteJobs.add(getJobObsoleteFields(job, System.currentTimeMillis()));
           } else if (System.currentTimeMillis() - job.getCreationTime() > job.getSchedule().getTimeoutMillis()) {
             // job has timed out; mark it obsolete
-            writeJobObsolete(job, System.currentTimeMillis());
+            obsoleteJobs.add(getJobObsoleteFields(job, System.currentTimeMillis()));
           } else {
-            jobExists = true;
+            jobKey = job.getJobKey();
             addNotification(job, notification);
             break;
           }
         }
       }
     }
+    jobQueueTable.multiUpsert(obsoleteJobs);
     // if no job exists for the scheduleId, add a new job with the first notification
-    if (!jobExists) {
+    if (jobKey == null) {
       List<Notification> notifications = Collections.singletonList(notification);
       Job.State jobState = isTriggerSatisfied(schedule, notifications)
         ? Job.State.PENDING_CONSTRAINT : Job.State.PENDING_TRIGGER;
-      writeJob(new SimpleJob(schedule, nextGenerationId, System.currentTimeMillis(), notifications, jobState,
-                        record.getMeta().getLastUpdated()));
+      Job job = new SimpleJob(schedule, nextGenerationId, System.currentTimeMillis(), notifications, jobState,
+                              record.getMeta().getLastUpdated());
+      writeJob(job);
+      jobKey = job.getJobKey();
     }
+    return jobKey;
   }
 
   private void addNotification(Job job, Notification notification) throws IOException {
@@ -207,6 +213,7 @@ public class JobQueueTable implements JobQueue {
 
   @Override
   public void markJobsForDeletion(ScheduleId scheduleId, long markedTime) throws IOException {
+    List<Collection<Field<?>>> deletedJobs = new ArrayList<>();
     try (CloseableIterator<Job> iterator =
            createJobIterator(jobQueueTable.scan(Range.singleton(getScheduleScanKeys(scheduleId)), Integer.MAX_VALUE))) {
       while (iterator.hasNext()) {
@@ -214,10 +221,11 @@ public class JobQueueTable implements JobQueue {
         // only mark jobs that are not marked yet to avoid chance of conflict with concurrent delete
         if (job.getState() != Job.State.PENDING_LAUNCH && !job.isToBeDeleted()) {
           // jobs that are pending launch will be deleted by the launcher anyway
-          writeJobDelete(job, markedTime);
+          deletedJobs.add(getJobDeleteFields(job, markedTime));
         }
       }
     }
+    jobQueueTable.multiUpsert(deletedJobs);
   }
 
   @Override
@@ -354,24 +362,25 @@ public class JobQueueTable implements JobQueue {
     Collection<Field<?>> fields = getJobKeys(job.getSchedule().getScheduleId(), job.getGenerationId(),
                                              StoreDefinition.JobQueueStore.RowType.JOB);
     fields.add(Fields.stringField(StoreDefinition.JobQueueStore.JOB, GSON.toJson(job)));
-    jobQueueTable.upsert(fields);
     if (job.isToBeDeleted()) {
-      writeJobDelete(job, job.getDeleteTimeMillis());
+      jobQueueTable.multiUpsert(Arrays.asList(fields, getJobDeleteFields(job, job.getDeleteTimeMillis())));
+    } else {
+      jobQueueTable.upsert(fields);
     }
   }
 
-  private void writeJobDelete(Job job, Long deleteTime) throws IOException {
+  private Collection<Field<?>> getJobDeleteFields(Job job, Long deleteTime) {
     Collection<Field<?>> fields = getJobKeys(job.getSchedule().getScheduleId(), job.getGenerationId(),
                                              StoreDefinition.JobQueueStore.RowType.DELETE);
     fields.add(Fields.longField(StoreDefinition.JobQueueStore.DELETE_TIME, deleteTime));
-    jobQueueTable.upsert(fields);
+    return fields;
   }
 
-  private void writeJobObsolete(Job job, long obsoleteTime) throws IOException {
+  private Collection<Field<?>> getJobObsoleteFields(Job job, long obsoleteTime) {
     Collection<Field<?>> fields = getJobKeys(job.getSchedule().getScheduleId(), job.getGenerationId(),
                                              StoreDefinition.JobQueueStore.RowType.OBSOLETE);
     fields.add(Fields.longField(StoreDefinition.JobQueueStore.OBSOLETE_TIME, obsoleteTime));
-    jobQueueTable.upsert(fields);
+    return fields;
   }
 
   private Collection<Field<?>> getJobKeys(ScheduleId scheduleId, int generationId,
@@ -400,8 +409,10 @@ public class JobQueueTable implements JobQueue {
     return keys;
   }
 
-  @VisibleForTesting
-  int getPartition(ScheduleId scheduleId) {
+  /**
+   * Returns the partition of the job queue that the jobs of the given schedule are stored in.
+   */
+  public int getPartition(ScheduleId scheduleId) {
     // Similar to ScheduleId#hashCode, but that is not consistent across runtimes due to how Enum#hashCode works.
     // Ensure that the hash won't change across runtimes:
     int hash = Hashing.murmur3_32().newHasher()
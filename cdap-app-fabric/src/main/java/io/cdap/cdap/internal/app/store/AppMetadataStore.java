@@ -913,13 +913,43 @@ public class AppMetadataStore {
 
   public Map<ProgramRunId, RunRecordMeta> getRuns(Set<ProgramRunId> programRunIds)
     throws IOException {
-    Map<ProgramRunId, RunRecordMeta> result = new HashMap();
+    Map<ProgramRunId, RunRecordMeta> result = new HashMap<>();
+    // Query active run records first, then query completed run records for the runs that are not active
+    List<List<Field<?>>> activeKeys = new ArrayList<>(programRunIds.size());
     for (ProgramRunId runId : programRunIds) {
-      result.put(runId, getRun(runId));
+      result.put(runId, null);
+      activeKeys.add(getProgramRunInvertedTimeKey(TYPE_RUN_RECORD_ACTIVE, runId,
+                                                  RunIds.getTime(runId.getRun(), TimeUnit.SECONDS)));
+    }
+    readRunRecordMetas(activeKeys, result);
+
+    List<List<Field<?>>> completedKeys = new ArrayList<>();
+    for (Map.Entry<ProgramRunId, RunRecordMeta> entry : result.entrySet()) {
+      if (entry.getValue() == null) {
+        ProgramRunId runId = entry.getKey();
+        completedKeys.add(getProgramRunInvertedTimeKey(TYPE_RUN_RECORD_COMPLETED, runId,
+                                                       RunIds.getTime(runId.getRun(), TimeUnit.SECONDS)));
+      }
     }
+    readRunRecordMetas(completedKeys, result);
     return result;
   }
 
+  /**
+   * Reads the run records of the given keys with a single multi read, and puts the ones that are found
+   * into the given result map.
+   */
+  private void readRunRecordMetas(List<List<Field<?>>> keys, Map<ProgramRunId, RunRecordMeta> result)
+    throws IOException {
+    if (keys.isEmpty()) {
+      return;
+    }
+    for (StructuredRow row : getRunRecordsTable().multiRead(keys)) {
+      RunRecordMeta meta = deserializeRunRecordMeta(row);
+      result.put(meta.getProgramRunId(), meta);
+    }
+  }
+
   /**
    * Get active runs in the given set of namespaces that satisfies a filter, active runs means program run with status
    * STARTING, PENDING, RUNNING or SUSPENDED.
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016 Cask Data, Inc.
+ * Copyright © 2016-2019 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -19,43 +19,86 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSerializationContext;
+import com.google.gson.JsonSerializer;
 import com.google.inject.Inject;
 import io.cdap.cdap.api.common.Bytes;
+import io.cdap.cdap.api.data.format.StructuredRecord;
 import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.cdap.api.data.schema.SchemaHash;
 import io.cdap.cdap.api.dataset.table.Row;
 import io.cdap.cdap.api.dataset.table.Scanner;
 import io.cdap.cdap.app.store.preview.PreviewStore;
+import io.cdap.cdap.common.conf.CConfiguration;
+import io.cdap.cdap.common.conf.Constants;
+import io.cdap.cdap.common.io.BinaryDecoder;
+import io.cdap.cdap.common.io.BinaryEncoder;
 import io.cdap.cdap.data2.dataset2.lib.table.MDSKey;
 import io.cdap.cdap.data2.dataset2.lib.table.leveldb.LevelDBTableCore;
 import io.cdap.cdap.data2.dataset2.lib.table.leveldb.LevelDBTableService;
+import io.cdap.cdap.format.io.StructuredRecordDatumReader;
+import io.cdap.cdap.format.io.StructuredRecordDatumWriter;
 import io.cdap.cdap.internal.io.SchemaTypeAdapter;
+import io.cdap.cdap.internal.io.StructuredRecordCodec;
 import io.cdap.cdap.proto.id.ApplicationId;
 import io.cdap.cdap.proto.id.DatasetId;
 import io.cdap.cdap.proto.id.NamespaceId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.Set;
+import java.util.TreeMap;
 
 /**
  * Default implementation of the {@link PreviewStore} that stores data in a level db table.
+ * <p>
+ * {@link StructuredRecord StructuredRecords} are stored as the hash of the schema followed by the binary encoding
+ * of the record, and each schema is stored once for each tracer of a preview. Other values are stored as json.
+ * Values are buffered in memory and written in batches, and the buffer is always written before reading or removing
+ * the data of a preview. Values traced after the data of a preview reaches the configured limits are dropped.
  */
 public class DefaultPreviewStore implements PreviewStore {
+  private static final Logger LOG = LoggerFactory.getLogger(DefaultPreviewStore.class);
   private static final DatasetId PREVIEW_TABLE_ID = NamespaceId.SYSTEM.dataset("preview.table");
-  private static final byte[] TRACER = Bytes.toBytes("t");
   private static final byte[] PROPERTY = Bytes.toBytes("p");
   private static final byte[] VALUE = Bytes.toBytes("v");
+  private static final byte[] RECORD = Bytes.toBytes("r");
+  private static final byte[] SCHEMA = Bytes.toBytes("s");
 
-  private final AtomicLong counter = new AtomicLong(0L);
+  private static final Gson GSON = new GsonBuilder()
+    .registerTypeAdapter(Schema.class, new SchemaTypeAdapter())
+    .registerTypeAdapter(StructuredRecord.class, new StructuredRecordCodec())
+    .registerTypeHierarchyAdapter(ByteBuffer.class, new ByteBufferSerializer())
+    .create();
+  private static final StructuredRecordDatumWriter RECORD_WRITER = new StructuredRecordDatumWriter();
+  private static final StructuredRecordDatumReader RECORD_READER = new StructuredRecordDatumReader();
 
   private final LevelDBTableCore table;
   private final LevelDBTableService service;
+  private final long maxRecords;
+  private final long maxSizeBytes;
+  private final int writeBatchSize;
+
+  // All the fields below are guarded by this
+  private final Map<byte[], Map<byte[], byte[]>> pendingWrites = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+  private final Map<ApplicationId, PreviewUsage> usages = new HashMap<>();
+  private long counter;
 
   @Inject
-  DefaultPreviewStore(LevelDBTableService service) {
+  DefaultPreviewStore(CConfiguration cConf, LevelDBTableService service) {
     try {
       this.service = service;
       service.ensureTableExists(PREVIEW_TABLE_ID.getDataset());
@@ -63,47 +106,99 @@ public class DefaultPreviewStore implements PreviewStore {
     } catch (IOException e) {
       throw new RuntimeException("Error creating preview table", e);
     }
+    this.maxRecords = cConf.getLong(Constants.Preview.DATA_MAX_RECORDS, Long.MAX_VALUE);
+    this.maxSizeBytes = cConf.getLong(Constants.Preview.DATA_MAX_SIZE_MB, Long.MAX_VALUE / 1024 / 1024) * 1024 * 1024;
+    this.writeBatchSize = cConf.getInt(Constants.Preview.DATA_WRITE_BATCH_SIZE, 1);
   }
 
   @Override
   public void put(ApplicationId applicationId, String tracerName, String propertyName, Object value) {
-    // PreviewStore is a singleton and we have to create gson for each operation since gson is not thread safe.
-    Gson gson = new GsonBuilder().registerTypeAdapter(Schema.class, new SchemaTypeAdapter()).create();
-    MDSKey mdsKey = new MDSKey.Builder().add(applicationId.getNamespace())
-      .add(applicationId.getApplication()).add(tracerName).add(counter.getAndIncrement()).build();
+    Map<byte[], byte[]> columns = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+    columns.put(PROPERTY, Bytes.toBytes(propertyName));
+    Schema schema = null;
+    if (value instanceof StructuredRecord) {
+      schema = ((StructuredRecord) value).getSchema();
+      byte[] encoded = encodeRecord((StructuredRecord) value);
+      if (encoded != null) {
+        columns.put(RECORD, encoded);
+      } else {
+        schema = null;
+      }
+    }
+    if (schema == null) {
+      columns.put(VALUE, Bytes.toBytes(GSON.toJson(value)));
+    }
+    long size = 0L;
+    for (byte[] column : columns.values()) {
+      size += column.length;
+    }
 
-    try {
-      table.put(mdsKey.getKey(), TRACER, Bytes.toBytes(tracerName), 1L);
-      table.put(mdsKey.getKey(), PROPERTY, Bytes.toBytes(propertyName), 1L);
-      table.put(mdsKey.getKey(), VALUE, Bytes.toBytes(gson.toJson(value)), 1L);
-    } catch (IOException e) {
-      String message = String.format("Error while putting property '%s' for application '%s' and tracer '%s' in" +
-                                       " preview table.", propertyName, applicationId, tracerName);
-      throw new RuntimeException(message, e);
+    synchronized (this) {
+      PreviewUsage usage = usages.computeIfAbsent(applicationId, id -> new PreviewUsage());
+      if (usage.records >= maxRecords || usage.sizeBytes + size > maxSizeBytes) {
+        if (!usage.limitReached) {
+          usage.limitReached = true;
+          LOG.warn("The data traced by preview '{}' reached the limit of {} values or {} bytes. " +
+                     "Values traced after that are not stored.", applicationId, maxRecords, maxSizeBytes);
+        }
+        return;
+      }
+      usage.records++;
+      usage.sizeBytes += size;
+
+      if (schema != null && usage.tracerSchemas.computeIfAbsent(tracerName, name -> new HashSet<>())
+        .add(schema.getSchemaHash())) {
+        // Write the schema before the first record of the schema, such that it is read first
+        Map<byte[], byte[]> schemaColumns = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+        schemaColumns.put(SCHEMA, Bytes.toBytes(schema.toString()));
+        pendingWrites.put(getRowKey(applicationId, tracerName, counter++), schemaColumns);
+      }
+      pendingWrites.put(getRowKey(applicationId, tracerName, counter++), columns);
+      if (pendingWrites.size() >= writeBatchSize) {
+        flush();
+      }
     }
   }
 
   @Override
   public Map<String, List<JsonElement>> get(ApplicationId applicationId, String tracerName) {
-    // PreviewStore is a singleton and we have to create gson for each operation since gson is not thread safe.
-    Gson gson = new GsonBuilder().registerTypeAdapter(Schema.class, new SchemaTypeAdapter()).create();
+    return get(applicationId, tracerName, 0, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public Map<String, List<JsonElement>> get(ApplicationId applicationId, String tracerName, int offset, int limit) {
+    synchronized (this) {
+      flush();
+    }
     byte[] startRowKey = new MDSKey.Builder().add(applicationId.getNamespace())
       .add(applicationId.getApplication()).add(tracerName).build().getKey();
     byte[] stopRowKey = new MDSKey(Bytes.stopKeyForPrefix(startRowKey)).getKey();
 
     Map<String, List<JsonElement>> result = new HashMap<>();
+    Map<SchemaHash, Schema> schemas = new HashMap<>();
+    Map<SchemaHash, JsonElement> schemaJsons = new HashMap<>();
+    long end = (long) offset + limit;
+    long index = 0;
     try (Scanner scanner = table.scan(startRowKey, stopRowKey, null, null, null)) {
       Row indexRow;
-      while ((indexRow = scanner.next()) != null) {
+      while (index < end && (indexRow = scanner.next()) != null) {
         Map<byte[], byte[]> columns = indexRow.getColumns();
-        String propertyName = Bytes.toString(columns.get(PROPERTY));
-        JsonElement value = gson.fromJson(Bytes.toString(columns.get(VALUE)), JsonElement.class);
-        List<JsonElement> values = result.get(propertyName);
-        if (values == null) {
-          values = new ArrayList<>();
-          result.put(propertyName, values);
+        byte[] schemaBytes = columns.get(SCHEMA);
+        if (schemaBytes != null) {
+          Schema schema = Schema.parseJson(Bytes.toString(schemaBytes));
+          schemas.put(schema.getSchemaHash(), schema);
+          continue;
         }
-        values.add(value);
+        // Only decode the values in the requested page
+        if (index++ < offset) {
+          continue;
+        }
+        String propertyName = Bytes.toString(columns.get(PROPERTY));
+        byte[] record = columns.get(RECORD);
+        JsonElement value = record == null
+          ? new JsonParser().parse(Bytes.toString(columns.get(VALUE)))
+          : decodeRecord(record, schemas, schemaJsons);
+        result.computeIfAbsent(propertyName, name -> new ArrayList<>()).add(value);
       }
     } catch (IOException e) {
       String message = String.format("Error while reading preview data for application '%s' and tracer '%s'.",
@@ -119,6 +214,10 @@ public class DefaultPreviewStore implements PreviewStore {
       .add(applicationId.getApplication()).build().getKey();
     byte[] stopRowKey = new MDSKey(Bytes.stopKeyForPrefix(startRowKey)).getKey();
     try {
+      synchronized (this) {
+        flush();
+        usages.remove(applicationId);
+      }
       table.deleteRange(startRowKey, stopRowKey, null, null);
     } catch (IOException e) {
       String message = String.format("Error while removing preview data for application '%s'.", applicationId);
@@ -128,7 +227,93 @@ public class DefaultPreviewStore implements PreviewStore {
 
   @VisibleForTesting
   void clear() throws IOException {
+    synchronized (this) {
+      pendingWrites.clear();
+      usages.clear();
+    }
     service.dropTable(PREVIEW_TABLE_ID.getDataset());
     service.ensureTableExists(PREVIEW_TABLE_ID.getDataset());
   }
+
+  /**
+   * Writes all the buffered values to the table. Must be called while holding the lock of this store.
+   */
+  private void flush() {
+    if (pendingWrites.isEmpty()) {
+      return;
+    }
+    try {
+      table.persist(pendingWrites, 1L);
+    } catch (IOException e) {
+      throw new RuntimeException("Error while writing preview data in preview table.", e);
+    } finally {
+      pendingWrites.clear();
+    }
+  }
+
+  private static byte[] getRowKey(ApplicationId applicationId, String tracerName, long id) {
+    return new MDSKey.Builder().add(applicationId.getNamespace())
+      .add(applicationId.getApplication()).add(tracerName).add(id).build().getKey();
+  }
+
+  /**
+   * Encodes a record as the hash of its schema followed by the binary encoding of the record. Returns {@code null}
+   * if the record cannot be encoded with its schema, in which case it is stored as json instead.
+   */
+  private static byte[] encodeRecord(StructuredRecord record) {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    try {
+      os.write(record.getSchema().getSchemaHash().toByteArray());
+      RECORD_WRITER.encode(record, new BinaryEncoder(os));
+    } catch (IOException | RuntimeException e) {
+      LOG.trace("Failed to encode record with schema {}, storing it as json", record.getSchema(), e);
+      return null;
+    }
+    return os.toByteArray();
+  }
+
+  private static JsonElement decodeRecord(byte[] encoded, Map<SchemaHash, Schema> schemas,
+                                          Map<SchemaHash, JsonElement> schemaJsons) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(encoded);
+    SchemaHash schemaHash = new SchemaHash(buffer);
+    Schema schema = schemas.get(schemaHash);
+    if (schema == null) {
+      throw new IOException("Missing schema with hash " + schemaHash + " for preview record");
+    }
+    StructuredRecord record = RECORD_READER.read(
+      new BinaryDecoder(new ByteArrayInputStream(encoded, buffer.position(), buffer.remaining())), schema);
+    // Serialize the schema once for all the records with the same schema
+    JsonObject json = new JsonObject();
+    json.add("schema", schemaJsons.computeIfAbsent(schemaHash, hash -> GSON.toJsonTree(schema, Schema.class)));
+    json.add("fields", GSON.toJsonTree(getFields(record)));
+    return json;
+  }
+
+  private static Map<String, Object> getFields(StructuredRecord record) {
+    Map<String, Object> fields = new LinkedHashMap<>();
+    for (Schema.Field field : record.getSchema().getFields()) {
+      fields.put(field.getName(), record.get(field.getName()));
+    }
+    return fields;
+  }
+
+  /**
+   * The data traced by a preview.
+   */
+  private static final class PreviewUsage {
+    private final Map<String, Set<SchemaHash>> tracerSchemas = new HashMap<>();
+    private long records;
+    private long sizeBytes;
+    private boolean limitReached;
+  }
+
+  /**
+   * Serializes a {@link ByteBuffer} the same as a byte array.
+   */
+  private static final class ByteBufferSerializer implements JsonSerializer<ByteBuffer> {
+    @Override
+    public JsonElement serialize(ByteBuffer src, Type typeOfSrc, JsonSerializationContext context) {
+      return context.serialize(Bytes.toBytes(src));
+    }
+  }
 }
@@ -31,9 +31,11 @@ import io.cdap.cdap.common.namespace.NamespaceQueryAdmin;
 import io.cdap.cdap.common.service.RetryStrategy;
 import io.cdap.cdap.internal.app.runtime.schedule.ScheduleTaskRunner;
 import io.cdap.cdap.internal.app.runtime.schedule.constraint.CheckableConstraint;
+import io.cdap.cdap.internal.app.runtime.schedule.constraint.ConcurrencyConstraint;
 import io.cdap.cdap.internal.app.runtime.schedule.constraint.ConstraintContext;
 import io.cdap.cdap.internal.app.runtime.schedule.constraint.ConstraintResult;
 import io.cdap.cdap.internal.app.runtime.schedule.queue.Job;
+import io.cdap.cdap.internal.app.runtime.schedule.queue.JobKey;
 import io.cdap.cdap.internal.app.runtime.schedule.queue.JobQueue;
 import io.cdap.cdap.internal.app.runtime.schedule.queue.JobQueueTable;
 import io.cdap.cdap.internal.app.runtime.schedule.store.Schedulers;
@@ -49,12 +51,15 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.util.ArrayDeque;
 import java.util.Deque;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Set;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 /**
- * Polls the JobQueue, checks the jobs for constraint satisfaction, and launches them.
+ * Checks the jobs in the JobQueue for constraint satisfaction, and launches them. Rather than polling the JobQueue,
+ * a job is only checked again when the {@link JobWakeupIndex} signals that its constraints may have become satisfied.
  */
 class ConstraintCheckerService extends AbstractIdleService {
   private static final Logger LOG = LoggerFactory.getLogger(ConstraintCheckerService.class);
@@ -65,6 +70,7 @@ class ConstraintCheckerService extends AbstractIdleService {
   private final NamespaceQueryAdmin namespaceQueryAdmin;
   private final CConfiguration cConf;
   private final TransactionRunner transactionRunner;
+  private final JobWakeupIndex wakeupIndex;
   private ScheduleTaskRunner taskRunner;
   private ListeningExecutorService taskExecutorService;
   private volatile boolean stopping = false;
@@ -74,13 +80,15 @@ class ConstraintCheckerService extends AbstractIdleService {
                            ProgramLifecycleService lifecycleService, PropertiesResolver propertiesResolver,
                            NamespaceQueryAdmin namespaceQueryAdmin,
                            CConfiguration cConf,
-                           TransactionRunner transactionRunner) {
+                           TransactionRunner transactionRunner,
+                           JobWakeupIndex wakeupIndex) {
     this.store = store;
     this.lifecycleService = lifecycleService;
     this.propertiesResolver = propertiesResolver;
     this.namespaceQueryAdmin = namespaceQueryAdmin;
     this.cConf = cConf;
     this.transactionRunner = transactionRunner;
+    this.wakeupIndex = wakeupIndex;
   }
 
   @Override
@@ -118,7 +126,11 @@ class ConstraintCheckerService extends AbstractIdleService {
   private class ConstraintCheckerThread implements Runnable {
     private final RetryStrategy scheduleStrategy;
     private final int partition;
+    private final long rescanIntervalMillis;
     private final Deque<Job> readyJobs = new ArrayDeque<>();
+    // Jobs signaled by the wakeup index that are yet to be checked
+    private final Set<JobKey> dueJobs = new HashSet<>();
+    private boolean scanPending;
     private Job lastConsumed;
     private int failureCount;
 
@@ -127,6 +139,7 @@ class ConstraintCheckerService extends AbstractIdleService {
       scheduleStrategy =
         io.cdap.cdap.common.service.RetryStrategies.exponentialDelay(100, 30000, TimeUnit.MILLISECONDS);
       this.partition = partition;
+      this.rescanIntervalMillis = cConf.getLong(Constants.Scheduler.JOB_QUEUE_RESCAN_INTERVAL_MILLIS);
     }
 
     @Override
@@ -135,6 +148,11 @@ class ConstraintCheckerService extends AbstractIdleService {
 
       while (!stopping) {
         try {
+          if (!scanPending && dueJobs.isEmpty()) {
+            JobWakeupIndex.Wakeup wakeup = wakeupIndex.await(partition, rescanIntervalMillis);
+            scanPending = wakeup.isRescan();
+            dueJobs.addAll(wakeup.getJobKeys());
+          }
           long sleepTime = checkJobQueue();
           // Don't sleep if sleepTime returned is 0
           if (sleepTime > 0) {
@@ -147,16 +165,23 @@ class ConstraintCheckerService extends AbstractIdleService {
     }
 
     /**
-     * Check jobs in job queue for constraint satisfaction.
+     * Check the due jobs, and if a scan is pending, the jobs in the job queue partition for constraint satisfaction.
      *
-     * @return sleep time in milliseconds before next fetch
+     * @return sleep time in milliseconds before next check
      */
     private long checkJobQueue() {
-      boolean emptyFetch = false;
+      // Must be fetched before reading any job, so that program status changes during the check are not missed
+      long programStatusCount = wakeupIndex.getProgramStatusCount(partition);
       try {
-        emptyFetch = TransactionRunners.run(transactionRunner, context -> {
-          return checkJobConstraints(JobQueueTable.getJobQueue(context, cConf));
+        boolean scanCompleted = TransactionRunners.run(transactionRunner, context -> {
+          JobQueue jobQueue = JobQueueTable.getJobQueue(context, cConf);
+          checkDueJobs(jobQueue, programStatusCount);
+          return !scanPending || checkJobConstraints(jobQueue, programStatusCount);
         });
+        dueJobs.clear();
+        if (scanCompleted) {
+          scanPending = false;
+        }
 
         // run any ready jobs
         runReadyJobs();
@@ -172,31 +197,45 @@ class ConstraintCheckerService extends AbstractIdleService {
         return scheduleStrategy.nextRetry(failureCount, 0);
       }
 
-      // Sleep for 2 seconds if there's no jobs in the queue
-      return emptyFetch && readyJobs.isEmpty() ? 2000L : 0L;
+      // No need to sleep, since the next check waits for a wakeup from the JobWakeupIndex
+      return 0L;
     }
 
-    private boolean checkJobConstraints(JobQueue jobQueue) throws IOException {
-      boolean emptyScan = true;
+    private void checkDueJobs(JobQueue jobQueue, long programStatusCount) throws IOException {
+      for (JobKey jobKey : dueJobs) {
+        Job job = jobQueue.getJob(jobKey);
+        if (job != null) {
+          checkAndUpdateJob(jobQueue, job, programStatusCount);
+        }
+      }
+    }
 
+    /**
+     * Scans the job queue partition for a limited time, continuing from the last job consumed.
+     *
+     * @return whether the scan reached the end of the partition
+     */
+    private boolean checkJobConstraints(JobQueue jobQueue, long programStatusCount) throws IOException {
       try (CloseableIterator<Job> jobQueueIter = jobQueue.getJobs(partition, lastConsumed)) {
         Stopwatch stopWatch = new Stopwatch().start();
         // limit the batches of the scan to 1000ms
         while (!stopping && stopWatch.elapsedMillis() < 1000) {
           if (!jobQueueIter.hasNext()) {
             lastConsumed = null;
-            return emptyScan;
+            return true;
           }
           Job job = jobQueueIter.next();
           lastConsumed = job;
-          emptyScan = false;
-          checkAndUpdateJob(jobQueue, job);
+          // Jobs that are due have already been checked in this transaction
+          if (!dueJobs.contains(job.getJobKey())) {
+            checkAndUpdateJob(jobQueue, job, programStatusCount);
+          }
         }
       }
-      return emptyScan;
+      return false;
     }
 
-    private void checkAndUpdateJob(JobQueue jobQueue, Job job) throws IOException {
+    private void checkAndUpdateJob(JobQueue jobQueue, Job job, long programStatusCount) throws IOException {
       long now = System.currentTimeMillis();
       if (job.isToBeDeleted()) {
         // only delete jobs that are pending trigger or pending constraint. If pending launch, the launcher will delete
@@ -209,19 +248,24 @@ class ConstraintCheckerService extends AbstractIdleService {
           (job.getState() == Job.State.PENDING_TRIGGER &&
             now - job.getDeleteTimeMillis() > 2 * Schedulers.SUBSCRIBER_TX_TIMEOUT_MILLIS))) {
           jobQueue.deleteJob(job);
+        } else if (job.getState() == Job.State.PENDING_TRIGGER) {
+          wakeupIndex.scheduleCheck(partition, job.getJobKey(),
+                                    job.getDeleteTimeMillis() + 2 * Schedulers.SUBSCRIBER_TX_TIMEOUT_MILLIS + 1);
         }
         return;
       }
-      if (now - job.getCreationTime() >= job.getSchedule().getTimeoutMillis() +
-        2 * Schedulers.SUBSCRIBER_TX_TIMEOUT_MILLIS) {
+      long timeoutTime = job.getCreationTime() + job.getSchedule().getTimeoutMillis() +
+        2 * Schedulers.SUBSCRIBER_TX_TIMEOUT_MILLIS;
+      if (now >= timeoutTime) {
         LOG.info("Deleted job {}, due to timeout value of {}.", job.getJobKey(), job.getSchedule().getTimeoutMillis());
         jobQueue.deleteJob(job);
         return;
       }
+      wakeupIndex.scheduleCheck(partition, job.getJobKey(), timeoutTime);
       if (job.getState() != Job.State.PENDING_CONSTRAINT) {
         return;
       }
-      ConstraintResult.SatisfiedState satisfiedState = constraintsSatisfied(job, now);
+      ConstraintResult.SatisfiedState satisfiedState = constraintsSatisfied(job, now, programStatusCount);
       if (satisfiedState == ConstraintResult.SatisfiedState.NOT_SATISFIED) {
         return;
       }
@@ -283,8 +327,14 @@ class ConstraintCheckerService extends AbstractIdleService {
       return true;
     }
 
-    private ConstraintResult.SatisfiedState constraintsSatisfied(Job job, long now) {
+    /**
+     * Checks the constraints of the given job. If they are not satisfied, registers the job in the
+     * {@link JobWakeupIndex} to be checked again when they could be.
+     */
+    private ConstraintResult.SatisfiedState constraintsSatisfied(Job job, long now, long programStatusCount) {
       ConstraintResult.SatisfiedState satisfiedState = ConstraintResult.SatisfiedState.SATISFIED;
+      Long nextCheckTime = null;
+      boolean waitForProgram = false;
 
       ConstraintContext constraintContext = new ConstraintContext(job, now, store);
       for (Constraint constraint : job.getSchedule().getConstraints()) {
@@ -303,6 +353,22 @@ class ConstraintCheckerService extends AbstractIdleService {
         }
         if (result.getSatisfiedState() == ConstraintResult.SatisfiedState.NOT_SATISFIED) {
           satisfiedState = ConstraintResult.SatisfiedState.NOT_SATISFIED;
+          if (constraint instanceof ConcurrencyConstraint) {
+            // Active runs can only go down when the program changes status
+            waitForProgram = true;
+          } else {
+            nextCheckTime = nextCheckTime == null
+              ? result.getNextCheckTime() : Math.min(nextCheckTime, result.getNextCheckTime());
+          }
+        }
+      }
+      if (satisfiedState == ConstraintResult.SatisfiedState.NOT_SATISFIED) {
+        if (waitForProgram) {
+          wakeupIndex.waitForProgram(partition, job.getJobKey(), job.getSchedule().getProgramId(),
+                                     programStatusCount);
+        }
+        if (nextCheckTime != null) {
+          wakeupIndex.scheduleCheck(partition, job.getJobKey(), nextCheckTime);
         }
       }
       return satisfiedState;
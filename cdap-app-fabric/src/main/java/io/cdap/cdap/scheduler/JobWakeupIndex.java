@@ -0,0 +1,268 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.scheduler;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import io.cdap.cdap.common.conf.CConfiguration;
+import io.cdap.cdap.common.conf.Constants;
+import io.cdap.cdap.internal.app.runtime.schedule.queue.JobKey;
+import io.cdap.cdap.proto.id.ProgramId;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Keeps track of when the jobs in the job queue need to be checked again by the {@link ConstraintCheckerService},
+ * so that the constraint checker threads only re-check a job when its wake-up condition fires, instead of
+ * continuously scanning their job queue partitions.
+ * <p>
+ * A job can be woken up by:
+ * <ul>
+ *   <li>a timer, for time based conditions such as delay, time range and last run constraints, or the job timeout</li>
+ *   <li>a status change of a program, for concurrency constraints</li>
+ *   <li>a notification added to the job by the {@link ScheduleNotificationSubscriberService}</li>
+ * </ul>
+ * The wake-up state is kept in memory only. Every constraint checker thread does a full scan of its partition
+ * on startup, and also periodically, to pick up any change that was not signaled through this class.
+ */
+@Singleton
+class JobWakeupIndex {
+
+  private final Partition[] partitions;
+
+  @Inject
+  JobWakeupIndex(CConfiguration cConf) {
+    this(cConf.getInt(Constants.Scheduler.JOB_QUEUE_NUM_PARTITIONS));
+  }
+
+  JobWakeupIndex(int numPartitions) {
+    this.partitions = new Partition[numPartitions];
+    for (int i = 0; i < numPartitions; i++) {
+      partitions[i] = new Partition();
+    }
+  }
+
+  /**
+   * Schedules a job to be checked again at the given time. If the job is already scheduled to be checked at
+   * an earlier time, this method has no effect, since a check always re-schedules the job as needed.
+   *
+   * @param partition the job queue partition of the job
+   * @param jobKey the key of the job
+   * @param checkTime time in milliseconds when the job should be checked
+   */
+  void scheduleCheck(int partition, JobKey jobKey, long checkTime) {
+    Partition p = partitions[partition];
+    synchronized (p) {
+      Long existing = p.checkTimes.get(jobKey);
+      if (existing != null && existing <= checkTime) {
+        return;
+      }
+      p.checkTimes.put(jobKey, checkTime);
+      p.timers.add(new Timer(checkTime, jobKey));
+      p.notifyAll();
+    }
+  }
+
+  /**
+   * Returns the number of program status changes that has been signaled to the given partition. The value returned
+   * must be passed to {@link #waitForProgram(int, JobKey, ProgramId, long)} for jobs checked after this call,
+   * so that status changes that happen while a job is being checked are not missed.
+   */
+  long getProgramStatusCount(int partition) {
+    Partition p = partitions[partition];
+    synchronized (p) {
+      return p.programStatusCount;
+    }
+  }
+
+  /**
+   * Makes a job to be checked again when the given program changes status.
+   *
+   * @param partition the job queue partition of the job
+   * @param jobKey the key of the job
+   * @param programId the program to wait for
+   * @param programStatusCount the value returned by {@link #getProgramStatusCount(int)} before the job was checked
+   */
+  void waitForProgram(int partition, JobKey jobKey, ProgramId programId, long programStatusCount) {
+    Partition p = partitions[partition];
+    synchronized (p) {
+      if (p.programStatusCount != programStatusCount) {
+        // A program status changed since the job was checked, which the check might not have seen.
+        p.dueJobs.add(jobKey);
+        p.notifyAll();
+        return;
+      }
+      p.programWaiters.computeIfAbsent(programId, k -> new HashSet<>()).add(jobKey);
+    }
+  }
+
+  /**
+   * Wakes up all jobs that are waiting for the given programs to change status.
+   */
+  void programStatusChanged(Collection<ProgramId> programIds) {
+    if (programIds.isEmpty()) {
+      return;
+    }
+    for (Partition p : partitions) {
+      synchronized (p) {
+        p.programStatusCount++;
+        boolean wakeup = false;
+        for (ProgramId programId : programIds) {
+          Set<JobKey> jobKeys = p.programWaiters.remove(programId);
+          if (jobKeys != null) {
+            p.dueJobs.addAll(jobKeys);
+            wakeup = true;
+          }
+        }
+        if (wakeup) {
+          p.notifyAll();
+        }
+      }
+    }
+  }
+
+  /**
+   * Makes the given jobs to be checked right away.
+   *
+   * @param partition the job queue partition of the jobs
+   * @param jobKeys the keys of the jobs
+   */
+  void markDue(int partition, Collection<JobKey> jobKeys) {
+    if (jobKeys.isEmpty()) {
+      return;
+    }
+    Partition p = partitions[partition];
+    synchronized (p) {
+      p.dueJobs.addAll(jobKeys);
+      p.notifyAll();
+    }
+  }
+
+  /**
+   * Blocks until there are jobs to check in the given partition, or the given maximum wait time passed.
+   *
+   * @param partition the job queue partition to wait for
+   * @param maxWaitMillis maximum time to wait in milliseconds. A rescan is returned once this time passed.
+   * @return the {@link Wakeup} telling what to check
+   * @throws InterruptedException if the current thread is interrupted while waiting
+   */
+  Wakeup await(int partition, long maxWaitMillis) throws InterruptedException {
+    Partition p = partitions[partition];
+    synchronized (p) {
+      long deadline = System.currentTimeMillis() + maxWaitMillis;
+      while (true) {
+        long now = System.currentTimeMillis();
+        if (p.rescan || now >= deadline) {
+          // A full scan checks all jobs, which will register their wake-up conditions again
+          p.clear();
+          return new Wakeup(true, Collections.emptySet());
+        }
+
+        Timer timer = p.timers.peek();
+        while (timer != null && timer.time <= now) {
+          p.timers.poll();
+          // Only the latest scheduled time of a job is valid
+          if (p.checkTimes.remove(timer.jobKey, timer.time)) {
+            p.dueJobs.add(timer.jobKey);
+          }
+          timer = p.timers.peek();
+        }
+
+        if (!p.dueJobs.isEmpty()) {
+          Set<JobKey> jobKeys = new HashSet<>(p.dueJobs);
+          p.dueJobs.clear();
+          return new Wakeup(false, jobKeys);
+        }
+
+        long waitUntil = timer == null ? deadline : Math.min(deadline, timer.time);
+        p.wait(waitUntil - now);
+      }
+    }
+  }
+
+  /**
+   * The result of {@link #await(int, long)}.
+   */
+  static final class Wakeup {
+    private final boolean rescan;
+    private final Set<JobKey> jobKeys;
+
+    private Wakeup(boolean rescan, Set<JobKey> jobKeys) {
+      this.rescan = rescan;
+      this.jobKeys = jobKeys;
+    }
+
+    /**
+     * Returns whether a full scan of the partition is needed.
+     */
+    boolean isRescan() {
+      return rescan;
+    }
+
+    /**
+     * Returns the keys of the jobs that need to be checked.
+     */
+    Set<JobKey> getJobKeys() {
+      return jobKeys;
+    }
+  }
+
+  /**
+   * The wake-up state of a single job queue partition. All accesses must be synchronized on the instance.
+   */
+  private static final class Partition {
+    private final PriorityQueue<Timer> timers = new PriorityQueue<>();
+    private final Map<JobKey, Long> checkTimes = new HashMap<>();
+    private final Map<ProgramId, Set<JobKey>> programWaiters = new HashMap<>();
+    private final Set<JobKey> dueJobs = new HashSet<>();
+    private long programStatusCount;
+    // Always start with a full scan
+    private boolean rescan = true;
+
+    void clear() {
+      timers.clear();
+      checkTimes.clear();
+      programWaiters.clear();
+      dueJobs.clear();
+      rescan = false;
+    }
+  }
+
+  /**
+   * A scheduled check of a job.
+   */
+  private static final class Timer implements Comparable<Timer> {
+    private final long time;
+    private final JobKey jobKey;
+
+    Timer(long time, JobKey jobKey) {
+      this.time = time;
+      this.jobKey = jobKey;
+    }
+
+    @Override
+    public int compareTo(Timer other) {
+      return Long.compare(time, other.time);
+    }
+  }
+}
@@ -30,6 +30,7 @@ import io.cdap.cdap.common.conf.Constants;
 import io.cdap.cdap.common.utils.ImmutablePair;
 import io.cdap.cdap.internal.app.runtime.ProgramOptionConstants;
 import io.cdap.cdap.internal.app.runtime.schedule.ProgramScheduleRecord;
+import io.cdap.cdap.internal.app.runtime.schedule.queue.JobKey;
 import io.cdap.cdap.internal.app.runtime.schedule.queue.JobQueueTable;
 import io.cdap.cdap.internal.app.runtime.schedule.store.ProgramScheduleStoreDataset;
 import io.cdap.cdap.internal.app.runtime.schedule.store.Schedulers;
@@ -48,10 +49,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -68,16 +73,18 @@ public class ScheduleNotificationSubscriberService extends AbstractIdleService {
   private final CConfiguration cConf;
   private final MessagingService messagingService;
   private final MetricsCollectionService metricsCollectionService;
+  private final JobWakeupIndex wakeupIndex;
   private final List<Service> subscriberServices;
   private ScheduledExecutorService subscriberExecutor;
 
   @Inject
   ScheduleNotificationSubscriberService(CConfiguration cConf, MessagingService messagingService,
                                         MetricsCollectionService metricsCollectionService,
-                                        TransactionRunner transactionRunner) {
+                                        TransactionRunner transactionRunner, JobWakeupIndex wakeupIndex) {
     this.cConf = cConf;
     this.messagingService = messagingService;
     this.metricsCollectionService = metricsCollectionService;
+    this.wakeupIndex = wakeupIndex;
     this.subscriberServices = Arrays.asList(new SchedulerEventSubscriberService(transactionRunner),
                                             new DataEventSubscriberService(transactionRunner),
                                             new ProgramStatusEventSubscriberService(transactionRunner));
@@ -120,6 +127,9 @@ public class ScheduleNotificationSubscriberService extends AbstractIdleService {
    */
   private abstract class AbstractSchedulerSubscriberService extends AbstractNotificationSubscriberService {
 
+    // Jobs added or updated by job queue partition, that the constraint checker needs to check
+    private final Map<Integer, Set<JobKey>> updatedJobs = new HashMap<>();
+
     AbstractSchedulerSubscriberService(String name, String topic, int fetchSize,
                                        TransactionRunner transactionRunner) {
       super(name, cConf, topic, fetchSize, cConf.getLong(Constants.Scheduler.EVENT_POLL_DELAY_MILLIS),
@@ -148,11 +158,31 @@ public class ScheduleNotificationSubscriberService extends AbstractIdleService {
       }
     }
 
+    @Override
+    protected void postProcess() {
+      // Signal after the transaction is committed, so that the constraint checker can see the changes
+      for (Map.Entry<Integer, Set<JobKey>> entry : updatedJobs.entrySet()) {
+        wakeupIndex.markDue(entry.getKey(), entry.getValue());
+      }
+      updatedJobs.clear();
+    }
+
     @Override
     protected ScheduledExecutorService executor() {
       return subscriberExecutor;
     }
 
+    /**
+     * Adds a {@link Notification} to the job queue for the given schedule.
+     */
+    protected void addNotification(JobQueueTable jobQueue, ProgramScheduleRecord schedule,
+                                   Notification notification) throws IOException {
+      JobKey jobKey = jobQueue.addNotification(schedule, notification);
+      if (jobKey != null) {
+        updatedJobs.computeIfAbsent(jobQueue.getPartition(jobKey.getScheduleId()), k -> new HashSet<>()).add(jobKey);
+      }
+    }
+
     /**
      * Processes a single {@link Notification}.
      */
@@ -206,7 +236,7 @@ public class ScheduleNotificationSubscriberService extends AbstractIdleService {
         LOG.warn("Ignore notification that doesn't have a schedule {} associated with, {}", scheduleId, notification);
         return;
       }
-      jobQueue.addNotification(record, notification);
+      addNotification(jobQueue, record, notification);
     }
   }
 
@@ -231,7 +261,7 @@ public class ScheduleNotificationSubscriberService extends AbstractIdleService {
       DatasetId datasetId = DatasetId.fromString(datasetIdString);
       for (ProgramScheduleRecord schedule :
         scheduleStore.findSchedules(Schedulers.triggerKeyForPartition(datasetId))) {
-        jobQueue.addNotification(schedule, notification);
+        addNotification(jobQueue, schedule, notification);
       }
     }
   }
@@ -241,6 +271,9 @@ public class ScheduleNotificationSubscriberService extends AbstractIdleService {
    */
   private final class ProgramStatusEventSubscriberService extends AbstractSchedulerSubscriberService {
 
+    // Programs that changed status, for waking up the jobs waiting for them
+    private final List<ProgramId> updatedPrograms = new ArrayList<>();
+
     ProgramStatusEventSubscriberService(TransactionRunner transactionRunner) {
       // Fetch transactionally since publishing from AppMetadataStore is transactional.
       super("scheduler.program.event", cConf.get(Constants.AppFabric.PROGRAM_STATUS_RECORD_EVENT_TOPIC),
@@ -268,11 +301,19 @@ public class ScheduleNotificationSubscriberService extends AbstractIdleService {
 
       ProgramRunId programRunId = GSON.fromJson(programRunIdString, ProgramRunId.class);
       ProgramId programId = programRunId.getParent();
+      updatedPrograms.add(programId);
       String triggerKeyForProgramStatus = Schedulers.triggerKeyForProgramStatus(programId, programStatus);
 
       for (ProgramScheduleRecord schedule : scheduleStore.findSchedules(triggerKeyForProgramStatus)) {
-        jobQueue.addNotification(schedule, notification);
+        addNotification(jobQueue, schedule, notification);
       }
     }
+
+    @Override
+    protected void postProcess() {
+      super.postProcess();
+      wakeupIndex.programStatusChanged(updatedPrograms);
+      updatedPrograms.clear();
+    }
   }
 }
@@ -16,27 +16,43 @@
 
 package io.cdap.cdap.internal.app.preview;
 
+import com.google.common.util.concurrent.AbstractIdleService;
+import com.google.common.util.concurrent.Service;
+import com.google.gson.JsonElement;
 import com.google.inject.AbstractModule;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
+import io.cdap.cdap.api.artifact.ArtifactSummary;
+import io.cdap.cdap.api.metrics.MetricsCollectionService;
+import io.cdap.cdap.api.security.store.SecureStore;
 import io.cdap.cdap.app.guice.AppFabricServiceRuntimeModule;
 import io.cdap.cdap.app.guice.AuthorizationModule;
 import io.cdap.cdap.app.guice.ProgramRunnerRuntimeModule;
 import io.cdap.cdap.app.preview.PreviewHttpModule;
 import io.cdap.cdap.app.preview.PreviewManager;
+import io.cdap.cdap.app.preview.PreviewRequest;
 import io.cdap.cdap.app.preview.PreviewRunner;
+import io.cdap.cdap.app.preview.PreviewStatus;
+import io.cdap.cdap.common.ServiceUnavailableException;
 import io.cdap.cdap.common.conf.CConfiguration;
 import io.cdap.cdap.common.conf.Constants;
 import io.cdap.cdap.common.guice.ConfigModule;
 import io.cdap.cdap.common.guice.IOModule;
 import io.cdap.cdap.common.guice.InMemoryDiscoveryModule;
 import io.cdap.cdap.common.guice.NonCustomLocationUnitTestModule;
+import io.cdap.cdap.common.utils.DirUtils;
+import io.cdap.cdap.common.utils.Tasks;
+import io.cdap.cdap.config.PreferencesService;
 import io.cdap.cdap.config.guice.ConfigStoreModule;
 import io.cdap.cdap.data.runtime.DataFabricModules;
 import io.cdap.cdap.data.runtime.DataSetServiceModules;
 import io.cdap.cdap.data.runtime.DataSetsModules;
 import io.cdap.cdap.data.runtime.TransactionExecutorModule;
+import io.cdap.cdap.data2.dataset2.DatasetFramework;
 import io.cdap.cdap.explore.guice.ExploreClientModule;
+import io.cdap.cdap.internal.app.runtime.artifact.ArtifactRepository;
+import io.cdap.cdap.internal.app.runtime.artifact.ArtifactStore;
+import io.cdap.cdap.internal.app.store.RunRecordMeta;
 import io.cdap.cdap.internal.provision.ProvisionerModule;
 import io.cdap.cdap.logging.guice.LocalLogAppenderModule;
 import io.cdap.cdap.logging.guice.LogReaderRuntimeModules;
@@ -45,21 +61,42 @@ import io.cdap.cdap.messaging.guice.MessagingServerRuntimeModule;
 import io.cdap.cdap.metadata.MetadataReaderWriterModules;
 import io.cdap.cdap.metadata.MetadataServiceModule;
 import io.cdap.cdap.metrics.guice.MetricsClientRuntimeModule;
+import io.cdap.cdap.metrics.query.MetricsQueryHelper;
+import io.cdap.cdap.proto.ProgramType;
+import io.cdap.cdap.proto.artifact.AppRequest;
+import io.cdap.cdap.proto.artifact.preview.PreviewConfig;
 import io.cdap.cdap.proto.id.ApplicationId;
+import io.cdap.cdap.proto.id.NamespaceId;
+import io.cdap.cdap.proto.id.ProgramRunId;
 import io.cdap.cdap.security.authorization.AuthorizationEnforcementModule;
+import io.cdap.cdap.security.authorization.AuthorizerInstantiator;
 import io.cdap.cdap.security.guice.SecureStoreServerModule;
 import io.cdap.cdap.security.impersonation.DefaultOwnerAdmin;
 import io.cdap.cdap.security.impersonation.OwnerAdmin;
 import io.cdap.cdap.security.impersonation.UGIProvider;
 import io.cdap.cdap.security.impersonation.UnsupportedUGIProvider;
+import io.cdap.cdap.security.spi.authorization.AuthorizationEnforcer;
+import io.cdap.cdap.security.spi.authorization.PrivilegesManager;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.tephra.TransactionSystemClient;
+import org.apache.twill.discovery.DiscoveryService;
 import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.ClassRule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Tests for {@link DefaultPreviewManager}.
@@ -135,4 +172,192 @@ public class DefaultPreviewManagerTest {
     Assert.assertNotEquals(previewInjector.getInstance(PreviewRunner.class),
                            anotherPreviewInjector.getInstance(PreviewRunner.class));
   }
+
+  @Test
+  public void testEnvironmentPool() throws Exception {
+    TestPreviewManager previewManager = createPreviewManager(2, 10);
+    // Directories left by a previous run should be deleted on start
+    File staleDir = previewManager.previewDataDir.resolve("preview-stale").toFile();
+    Assert.assertTrue(staleDir.mkdirs());
+
+    previewManager.startAndWait();
+    try {
+      Assert.assertFalse(staleDir.exists());
+
+      // The pool is filled when the manager starts, without waiting for the first preview
+      Tasks.waitFor(2, previewManager::getIdleEnvironmentCount, 10, TimeUnit.SECONDS);
+      Assert.assertEquals(2, previewManager.runners.size());
+
+      // A preview takes the oldest environment from the pool, and the pool is refilled
+      ApplicationId preview = previewManager.start(new NamespaceId("ns1"), createAppRequest());
+      Assert.assertSame(previewManager.runners.get(0), previewManager.getRunner(preview));
+      Assert.assertEquals(PreviewStatus.Status.RUNNING, previewManager.getRunner(preview).getStatus().getStatus());
+      Tasks.waitFor(3, previewManager.runners::size, 10, TimeUnit.SECONDS);
+      Tasks.waitFor(2, previewManager::getIdleEnvironmentCount, 10, TimeUnit.SECONDS);
+    } finally {
+      previewManager.stopAndWait();
+    }
+
+    // Stopping the manager stops all the environments and deletes their directories
+    Assert.assertEquals(0, previewManager.getIdleEnvironmentCount());
+    for (TestPreviewRunner runner : previewManager.runners) {
+      Assert.assertEquals(Service.State.TERMINATED, runner.state());
+    }
+    Assert.assertEquals(Collections.emptyList(), DirUtils.list(previewManager.previewDataDir.toFile()));
+  }
+
+  @Test
+  public void testPoolMiss() throws Exception {
+    TestPreviewManager previewManager = createPreviewManager(0, 10);
+    previewManager.startAndWait();
+    try {
+      Assert.assertEquals(0, previewManager.getIdleEnvironmentCount());
+
+      // Without a pool, the environment is created when the preview is started
+      ApplicationId preview = previewManager.start(new NamespaceId("ns1"), createAppRequest());
+      Assert.assertEquals(1, previewManager.runners.size());
+      Assert.assertSame(previewManager.runners.get(0), previewManager.getRunner(preview));
+      Assert.assertEquals(0, previewManager.getIdleEnvironmentCount());
+    } finally {
+      previewManager.stopAndWait();
+    }
+    Assert.assertEquals(Service.State.TERMINATED, previewManager.runners.get(0).state());
+  }
+
+  @Test
+  public void testMaxConcurrentRuns() throws Exception {
+    TestPreviewManager previewManager = createPreviewManager(0, 1);
+    previewManager.startAndWait();
+    try {
+      ApplicationId preview = previewManager.start(new NamespaceId("ns1"), createAppRequest());
+      try {
+        previewManager.start(new NamespaceId("ns2"), createAppRequest());
+        Assert.fail("Expected ServiceUnavailableException");
+      } catch (ServiceUnavailableException e) {
+        // Expected
+      }
+      // The rejected preview shouldn't create an environment
+      Assert.assertEquals(1, previewManager.runners.size());
+
+      // Once the running preview completed, a new preview can be started
+      ((TestPreviewRunner) previewManager.getRunner(preview)).status =
+        new PreviewStatus(PreviewStatus.Status.COMPLETED, null, 0L, 1L);
+      previewManager.start(new NamespaceId("ns3"), createAppRequest());
+      Assert.assertEquals(2, previewManager.runners.size());
+    } finally {
+      previewManager.stopAndWait();
+    }
+  }
+
+  private TestPreviewManager createPreviewManager(int poolSize, int maxConcurrentRuns) throws IOException {
+    CConfiguration cConf = CConfiguration.copy(injector.getInstance(CConfiguration.class));
+    cConf.set(Constants.CFG_LOCAL_DATA_DIR, TEMP_FOLDER.newFolder().getAbsolutePath());
+    cConf.setInt(Constants.Preview.RUNNER_POOL_SIZE, poolSize);
+    cConf.setInt(Constants.Preview.MAX_CONCURRENT_RUNS, maxConcurrentRuns);
+    return new TestPreviewManager(cConf, injector);
+  }
+
+  private AppRequest<?> createAppRequest() {
+    return new AppRequest<>(new ArtifactSummary("test", "1.0.0"), null,
+                            new PreviewConfig("worker", ProgramType.WORKER, null, null));
+  }
+
+  /**
+   * A {@link DefaultPreviewManager} that creates environments with a {@link TestPreviewRunner}.
+   */
+  private static final class TestPreviewManager extends DefaultPreviewManager {
+
+    private final Path previewDataDir;
+    private final List<TestPreviewRunner> runners;
+    private final AtomicInteger dirId;
+
+    TestPreviewManager(CConfiguration cConf, Injector injector) {
+      super(cConf, injector.getInstance(Configuration.class), injector.getInstance(DiscoveryService.class),
+            injector.getInstance(DatasetFramework.class), injector.getInstance(PreferencesService.class),
+            injector.getInstance(SecureStore.class), injector.getInstance(TransactionSystemClient.class),
+            injector.getInstance(ArtifactRepository.class), injector.getInstance(ArtifactStore.class),
+            injector.getInstance(AuthorizerInstantiator.class), injector.getInstance(PrivilegesManager.class),
+            injector.getInstance(AuthorizationEnforcer.class), injector.getInstance(MetricsCollectionService.class));
+      this.previewDataDir = new File(cConf.get(Constants.CFG_LOCAL_DATA_DIR), "preview").toPath();
+      this.runners = new CopyOnWriteArrayList<>();
+      this.dirId = new AtomicInteger();
+    }
+
+    @Override
+    PreviewEnvironment createEnvironment() throws IOException {
+      Path previewDir = Files.createDirectories(previewDataDir.resolve("preview-" + dirId.incrementAndGet()));
+      TestPreviewRunner runner = new TestPreviewRunner();
+      runner.startAndWait();
+      runners.add(runner);
+      return new PreviewEnvironment(Guice.createInjector(new AbstractModule() {
+        @Override
+        protected void configure() {
+          bind(PreviewRunner.class).toInstance(runner);
+        }
+      }), previewDir);
+    }
+  }
+
+  /**
+   * A {@link PreviewRunner} that only tracks the preview status.
+   */
+  private static final class TestPreviewRunner extends AbstractIdleService implements PreviewRunner {
+
+    private volatile PreviewStatus status;
+
+    @Override
+    protected void startUp() {
+      // no-op
+    }
+
+    @Override
+    protected void shutDown() {
+      // no-op
+    }
+
+    @Override
+    public void startPreview(PreviewRequest<?> request) {
+      status = new PreviewStatus(PreviewStatus.Status.RUNNING, null, System.currentTimeMillis(), null);
+    }
+
+    @Override
+    public PreviewStatus getStatus() {
+      return status;
+    }
+
+    @Override
+    public void stopPreview() {
+      status = new PreviewStatus(PreviewStatus.Status.KILLED, null, 0L, System.currentTimeMillis());
+    }
+
+    @Override
+    public Set<String> getTracers() {
+      return Collections.emptySet();
+    }
+
+    @Override
+    public Map<String, List<JsonElement>> getData(String tracerName) {
+      return Collections.emptyMap();
+    }
+
+    @Override
+    public Map<String, List<JsonElement>> getData(String tracerName, int offset, int limit) {
+      return Collections.emptyMap();
+    }
+
+    @Override
+    public ProgramRunId getProgramRunId() {
+      return null;
+    }
+
+    @Override
+    public RunRecordMeta getRunRecord() {
+      return null;
+    }
+
+    @Override
+    public MetricsQueryHelper getMetricsQueryHelper() {
+      return null;
+    }
+  }
 }
@@ -1469,6 +1469,63 @@ public abstract class ArtifactStoreTest {
     }
   }
 
+  @Test
+  public void testPluginLookupAfterModification() throws Exception {
+    Id.Artifact parentArtifactId = Id.Artifact.from(Id.Namespace.DEFAULT, "parent", "1.0.0");
+    writeArtifact(parentArtifactId, new ArtifactMeta(ArtifactClasses.builder().build()), "parent contents");
+    ArtifactRange parentArtifactRange = new ArtifactRange(NamespaceId.DEFAULT.getNamespace(), "parent",
+                                                          new ArtifactVersion("1.0.0"), new ArtifactVersion("2.0.0"));
+
+    // no plugins yet, which is also remembered by the store
+    Assert.assertTrue(artifactStore.getPluginClasses(NamespaceId.DEFAULT, parentArtifactId).isEmpty());
+    try {
+      artifactStore.getPluginClasses(NamespaceId.DEFAULT, parentArtifactRange, "atype", "plugin1",
+                                     null, Integer.MAX_VALUE, ArtifactSortOrder.UNORDERED);
+      Assert.fail();
+    } catch (PluginNotExistsException e) {
+      // expected
+    }
+
+    // plugins added after the lookups should be visible to subsequent lookups
+    PluginClass pluginClass1 = new PluginClass("atype", "plugin1", "", "c.p1", "cfg",
+                                               ImmutableMap.<String, PluginPropertyField>of());
+    Id.Artifact pluginArtifactId1 = Id.Artifact.from(Id.Namespace.DEFAULT, "plugins1", "1.0.0");
+    writeArtifact(pluginArtifactId1, new ArtifactMeta(ArtifactClasses.builder().addPlugin(pluginClass1).build(),
+                                                      ImmutableSet.of(parentArtifactRange)), "contents1");
+    PluginClass pluginClass2 = new PluginClass("atype", "plugin2", "", "c.p2", "cfg",
+                                               ImmutableMap.<String, PluginPropertyField>of());
+    Id.Artifact pluginArtifactId2 = Id.Artifact.from(Id.Namespace.DEFAULT, "plugins2", "1.0.0");
+    writeArtifact(pluginArtifactId2, new ArtifactMeta(ArtifactClasses.builder().addPlugin(pluginClass2).build()),
+                  "contents2");
+
+    Map<ArtifactDescriptor, Set<PluginClass>> plugins =
+      artifactStore.getPluginClasses(NamespaceId.DEFAULT, parentArtifactId, "atype");
+    Assert.assertEquals(2, plugins.size());
+    Assert.assertEquals(ImmutableSet.of(pluginClass1, pluginClass2),
+                        plugins.values().stream().flatMap(Set::stream).collect(Collectors.toSet()));
+    Map<ArtifactDescriptor, PluginClass> pluginsByName =
+      artifactStore.getPluginClasses(NamespaceId.DEFAULT, parentArtifactRange, "atype", "plugin1",
+                                     null, Integer.MAX_VALUE, ArtifactSortOrder.UNORDERED);
+    Assert.assertEquals(Collections.singletonList(pluginClass1), new ArrayList<>(pluginsByName.values()));
+
+    // deleted plugins should not be visible anymore
+    artifactStore.delete(pluginArtifactId1);
+    plugins = artifactStore.getPluginClasses(NamespaceId.DEFAULT, parentArtifactId, "atype");
+    Assert.assertEquals(ImmutableSet.of(pluginClass2),
+                        plugins.values().stream().flatMap(Set::stream).collect(Collectors.toSet()));
+    artifactStore.delete(pluginArtifactId2);
+    Assert.assertTrue(artifactStore.getPluginClasses(NamespaceId.DEFAULT, parentArtifactId).isEmpty());
+
+    // lookups for a deleted parent artifact should fail
+    artifactStore.delete(parentArtifactId);
+    try {
+      artifactStore.getPluginClasses(NamespaceId.DEFAULT, parentArtifactId);
+      Assert.fail();
+    } catch (ArtifactNotFoundException e) {
+      // expected
+    }
+  }
+
 
   private void assertEqual(Id.Artifact expectedId, ArtifactMeta expectedMeta,
                            String expectedContents, ArtifactDetail actual) throws IOException {
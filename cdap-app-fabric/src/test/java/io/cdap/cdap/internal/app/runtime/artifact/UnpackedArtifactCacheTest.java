@@ -0,0 +1,131 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.internal.app.runtime.artifact;
+
+import io.cdap.cdap.common.io.Locations;
+import org.apache.twill.filesystem.Location;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Tests for {@link UnpackedArtifactCache}.
+ */
+public class UnpackedArtifactCacheTest {
+
+  @Rule
+  public final TemporaryFolder tmpFolder = new TemporaryFolder();
+
+  @Test
+  public void testSharedByChecksum() throws IOException {
+    Path cacheDir = tmpFolder.newFolder().toPath();
+    UnpackedArtifactCache cache = new UnpackedArtifactCache(cacheDir, Long.MAX_VALUE);
+
+    // The same jar at different locations is only unpacked once
+    Location jar1 = createJar("test1.jar", "content");
+    Location jar2 = createJar("test2.jar", "content");
+    Location jar3 = createJar("test3.jar", "other content");
+
+    try (
+      UnpackedArtifactCache.Lease lease1 = cache.unpack(jar1);
+      UnpackedArtifactCache.Lease lease2 = cache.unpack(jar2);
+      UnpackedArtifactCache.Lease lease3 = cache.unpack(jar3)
+    ) {
+      Assert.assertEquals(lease1.getDirectory(), lease2.getDirectory());
+      Assert.assertNotEquals(lease1.getDirectory(), lease3.getDirectory());
+      Assert.assertEquals("content", readFile(lease1.getDirectory()));
+      Assert.assertEquals("other content", readFile(lease3.getDirectory()));
+      Assert.assertEquals("content".length() + "other content".length(), cache.getTotalSizeBytes());
+    }
+
+    // Unpacked artifacts are kept after the leases are closed, and are loaded by a new cache
+    Assert.assertEquals(2, cacheDir.toFile().list().length);
+    cache = new UnpackedArtifactCache(cacheDir, Long.MAX_VALUE);
+    Assert.assertEquals("content".length() + "other content".length(), cache.getTotalSizeBytes());
+    try (UnpackedArtifactCache.Lease lease = cache.unpack(jar1)) {
+      Assert.assertEquals("content", readFile(lease.getDirectory()));
+    }
+  }
+
+  @Test
+  public void testEviction() throws IOException {
+    Path cacheDir = tmpFolder.newFolder().toPath();
+    // Only one artifact fits in the cache
+    UnpackedArtifactCache cache = new UnpackedArtifactCache(cacheDir, 10);
+
+    Location jar1 = createJar("test1.jar", "content1");
+    Location jar2 = createJar("test2.jar", "content2");
+
+    UnpackedArtifactCache.Lease lease1 = cache.unpack(jar1);
+    UnpackedArtifactCache.Lease lease2 = cache.unpack(jar2);
+
+    // Leased artifacts are not evicted even if the cache is over the limit
+    Assert.assertTrue(lease1.getDirectory().isDirectory());
+    Assert.assertTrue(lease2.getDirectory().isDirectory());
+
+    // Closing a lease evicts the artifact if needed
+    lease1.close();
+    Assert.assertFalse(lease1.getDirectory().exists());
+    Assert.assertEquals("content2", readFile(lease2.getDirectory()));
+
+    // Closing a lease multiple times has no effect
+    lease1.close();
+    UnpackedArtifactCache.Lease lease3 = cache.unpack(jar2);
+    lease2.close();
+    lease2.close();
+    Assert.assertEquals("content2", readFile(lease3.getDirectory()));
+
+    // An evicted artifact is unpacked again
+    lease3.close();
+    try (UnpackedArtifactCache.Lease lease = cache.unpack(jar1)) {
+      Assert.assertEquals("content1", readFile(lease.getDirectory()));
+      Assert.assertFalse(lease3.getDirectory().exists());
+    }
+    Assert.assertEquals(1, cacheDir.toFile().list().length);
+  }
+
+  private Location createJar(String name, String content) throws IOException {
+    File file = new File(tmpFolder.getRoot(), name);
+    try (JarOutputStream output = new JarOutputStream(new FileOutputStream(file))) {
+      // Use a fixed time, such that jars with the same content have the same checksum
+      JarEntry dirEntry = new JarEntry("dir/");
+      dirEntry.setTime(0L);
+      output.putNextEntry(dirEntry);
+      output.closeEntry();
+      JarEntry fileEntry = new JarEntry("dir/file.txt");
+      fileEntry.setTime(0L);
+      output.putNextEntry(fileEntry);
+      output.write(content.getBytes(StandardCharsets.UTF_8));
+      output.closeEntry();
+    }
+    return Locations.toLocation(file);
+  }
+
+  private String readFile(File dir) throws IOException {
+    return new String(Files.readAllBytes(dir.toPath().resolve("dir/file.txt")), StandardCharsets.UTF_8);
+  }
+}
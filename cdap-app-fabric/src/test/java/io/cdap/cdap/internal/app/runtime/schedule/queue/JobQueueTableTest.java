@@ -286,10 +286,16 @@ public abstract class JobQueueTableTest {
 
       // Since notification and SCHED1 have the same dataset id DATASET_ID, notification will be added to
       // SCHED1_JOB, which is a job in SCHED1
-      jobQueue.addNotification(
+      JobKey jobKey = jobQueue.addNotification(
         new ProgramScheduleRecord(SCHED1, new ProgramScheduleMeta(ProgramScheduleStatus.SCHEDULED, 0L)),
         notification);
+      Assert.assertEquals(SCHED1_JOB.getJobKey(), jobKey);
       Assert.assertEquals(ImmutableList.of(notification), jobQueue.getJob(SCHED1_JOB.getJobKey()).getNotifications());
+
+      // Notifications of schedules that are not enabled are ignored
+      Assert.assertNull(jobQueue.addNotification(
+        new ProgramScheduleRecord(SCHED1, new ProgramScheduleMeta(ProgramScheduleStatus.SUSPENDED, 0L)),
+        notification));
     });
   }
 
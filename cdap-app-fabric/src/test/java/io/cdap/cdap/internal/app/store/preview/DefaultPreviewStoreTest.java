@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016 Cask Data, Inc.
+ * Copyright © 2016-2019 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -17,8 +17,11 @@ package io.cdap.cdap.internal.app.store.preview;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 import com.google.gson.reflect.TypeToken;
 import com.google.inject.Injector;
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
 import io.cdap.cdap.common.app.RunIds;
 import io.cdap.cdap.internal.AppFabricTestHelper;
 import io.cdap.cdap.proto.NamespaceMeta;
@@ -29,6 +32,7 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -98,4 +102,47 @@ public class DefaultPreviewStoreTest {
     firstApplicationData = store.get(firstApplicationId, "mytracer");
     Assert.assertEquals(0, firstApplicationData.size());
   }
+
+  @Test
+  public void testStructuredRecords() throws IOException {
+    ApplicationId applicationId = new ApplicationId(NamespaceMeta.DEFAULT.getName(), RunIds.generate().getId());
+    Schema innerSchema = Schema.recordOf("inner", Schema.Field.of("x", Schema.of(Schema.Type.INT)));
+    Schema schema = Schema.recordOf("record",
+                                    Schema.Field.of("name", Schema.of(Schema.Type.STRING)),
+                                    Schema.Field.of("bytes", Schema.nullableOf(Schema.of(Schema.Type.BYTES))),
+                                    Schema.Field.of("inner", innerSchema));
+
+    for (int i = 0; i < 5; i++) {
+      StructuredRecord record = StructuredRecord.builder(schema)
+        .set("name", "name" + i)
+        .set("inner", StructuredRecord.builder(innerSchema).set("x", i).build())
+        .build();
+      store.put(applicationId, "mytracer", "records.out", record);
+    }
+    store.put(applicationId, "mytracer", "records.alert", 5);
+
+    Map<String, List<JsonElement>> data = store.get(applicationId, "mytracer");
+    List<JsonElement> records = data.get("records.out");
+    Assert.assertEquals(5, records.size());
+    for (int i = 0; i < 5; i++) {
+      JsonObject record = records.get(i).getAsJsonObject();
+      Assert.assertEquals(schema, Schema.parseJson(record.get("schema").toString()));
+      JsonObject fields = record.getAsJsonObject("fields");
+      Assert.assertEquals("name" + i, fields.get("name").getAsString());
+      Assert.assertFalse(fields.has("bytes"));
+      Assert.assertEquals(i, fields.getAsJsonObject("inner").getAsJsonObject("fields").get("x").getAsInt());
+    }
+    Assert.assertEquals(5, data.get("records.alert").get(0).getAsInt());
+
+    // Page through the data by offset
+    Map<String, List<JsonElement>> page = store.get(applicationId, "mytracer", 3, 2);
+    Assert.assertEquals(1, page.size());
+    Assert.assertEquals(2, page.get("records.out").size());
+    Assert.assertEquals("name3", page.get("records.out").get(0).getAsJsonObject()
+      .getAsJsonObject("fields").get("name").getAsString());
+    page = store.get(applicationId, "mytracer", 5, 10);
+    Assert.assertEquals(1, page.size());
+    Assert.assertEquals(5, page.get("records.alert").get(0).getAsInt());
+    Assert.assertTrue(store.get(applicationId, "mytracer", 6, 10).isEmpty());
+  }
 }
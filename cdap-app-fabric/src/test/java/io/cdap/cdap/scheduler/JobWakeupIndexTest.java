@@ -0,0 +1,122 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.scheduler;
+
+import io.cdap.cdap.internal.app.runtime.schedule.queue.JobKey;
+import io.cdap.cdap.proto.id.NamespaceId;
+import io.cdap.cdap.proto.id.ProgramId;
+import io.cdap.cdap.proto.id.ScheduleId;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for {@link JobWakeupIndex}.
+ */
+public class JobWakeupIndexTest {
+  private static final ScheduleId SCHEDULE_ID = new NamespaceId("test").app("app").schedule("schedule");
+  private static final ProgramId PROGRAM_ID = new NamespaceId("test").app("app").workflow("wf");
+  private static final long MAX_WAIT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+  @Test
+  public void testTimer() throws InterruptedException {
+    JobWakeupIndex index = createIndex();
+    JobKey jobKey = new JobKey(SCHEDULE_ID, 1);
+
+    long now = System.currentTimeMillis();
+    index.scheduleCheck(0, jobKey, now + 200);
+    // A later check time should not override the earlier one
+    index.scheduleCheck(0, jobKey, now + MAX_WAIT_MILLIS);
+
+    JobWakeupIndex.Wakeup wakeup = index.await(0, MAX_WAIT_MILLIS);
+    Assert.assertFalse(wakeup.isRescan());
+    Assert.assertEquals(Collections.singleton(jobKey), wakeup.getJobKeys());
+    Assert.assertTrue(System.currentTimeMillis() >= now + 200);
+
+    // Timers of other partitions shouldn't wake up this partition
+    index.scheduleCheck(1, jobKey, now);
+    Assert.assertTrue(index.await(0, 200).isRescan());
+  }
+
+  @Test
+  public void testProgramStatus() throws InterruptedException {
+    JobWakeupIndex index = createIndex();
+    JobKey jobKey = new JobKey(SCHEDULE_ID, 1);
+
+    index.waitForProgram(0, jobKey, PROGRAM_ID, index.getProgramStatusCount(0));
+    Thread thread = new Thread(() -> index.programStatusChanged(Collections.singleton(PROGRAM_ID)));
+    thread.start();
+
+    JobWakeupIndex.Wakeup wakeup = index.await(0, MAX_WAIT_MILLIS);
+    Assert.assertFalse(wakeup.isRescan());
+    Assert.assertEquals(Collections.singleton(jobKey), wakeup.getJobKeys());
+    thread.join();
+
+    // If a program status changed while the job was being checked, the job should be checked again right away
+    long count = index.getProgramStatusCount(0);
+    index.programStatusChanged(Collections.singleton(PROGRAM_ID.getParent().workflow("other")));
+    index.waitForProgram(0, jobKey, PROGRAM_ID, count);
+    Assert.assertEquals(Collections.singleton(jobKey), index.await(0, MAX_WAIT_MILLIS).getJobKeys());
+  }
+
+  @Test
+  public void testMarkDue() throws InterruptedException {
+    JobWakeupIndex index = createIndex();
+    JobKey jobKey = new JobKey(SCHEDULE_ID, 1);
+
+    // Only the marked job is checked, without a rescan of the partition
+    Thread thread = new Thread(() -> index.markDue(0, Collections.singleton(jobKey)));
+    thread.start();
+    JobWakeupIndex.Wakeup wakeup = index.await(0, MAX_WAIT_MILLIS);
+    Assert.assertFalse(wakeup.isRescan());
+    Assert.assertEquals(Collections.singleton(jobKey), wakeup.getJobKeys());
+    thread.join();
+
+    // Jobs marked in other partitions shouldn't wake up this partition
+    index.markDue(1, Collections.singleton(jobKey));
+    Assert.assertTrue(index.await(0, 200).isRescan());
+    Assert.assertEquals(Collections.singleton(jobKey), index.await(1, MAX_WAIT_MILLIS).getJobKeys());
+  }
+
+  @Test
+  public void testRescan() throws InterruptedException {
+    JobWakeupIndex index = createIndex();
+    JobKey jobKey = new JobKey(SCHEDULE_ID, 1);
+
+    index.scheduleCheck(0, jobKey, System.currentTimeMillis() + 300);
+
+    // Without anything to check, the wait should end with a rescan after the maximum wait time
+    JobWakeupIndex.Wakeup wakeup = index.await(0, 100);
+    Assert.assertTrue(wakeup.isRescan());
+    Assert.assertTrue(wakeup.getJobKeys().isEmpty());
+
+    // A rescan covers all jobs, hence clears the pending wakeups
+    wakeup = index.await(0, 1000);
+    Assert.assertTrue(wakeup.isRescan());
+    Assert.assertTrue(wakeup.getJobKeys().isEmpty());
+  }
+
+  private JobWakeupIndex createIndex() throws InterruptedException {
+    JobWakeupIndex index = new JobWakeupIndex(2);
+    // The first wakeup of each partition is always a full scan
+    Assert.assertTrue(index.await(0, MAX_WAIT_MILLIS).isRescan());
+    Assert.assertTrue(index.await(1, MAX_WAIT_MILLIS).isRescan());
+    return index;
+  }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.etl.batch;
+
+import io.cdap.cdap.api.common.Bytes;
+import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.cdap.api.data.schema.SchemaHash;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.Nullable;
+
+/**
+ * A registry of {@link Schema} keyed by the schema fingerprint, used by {@link StructuredRecordWritable} so that
+ * only the fingerprint needs to be written with each record.
+ *
+ * The registry is scoped to a MapReduce job. Each task publishes the schemas it writes under a directory inside the
+ * job staging directory, which is readable by all other tasks of the same job and is removed by Hadoop when the
+ * job finishes. If the registry is not initialized for a job, {@link #isJobScoped()} returns {@code false} and
+ * writers must include the full schema with the record.
+ */
+public final class ShuffleSchemaRegistry {
+
+  /**
+   * Configuration key for overriding the directory where the job publishes schemas.
+   * By default it is a sub-directory of the job staging directory.
+   */
+  public static final String SCHEMA_DIR_KEY = "cdap.etl.shuffle.schema.dir";
+
+  private static final Logger LOG = LoggerFactory.getLogger(ShuffleSchemaRegistry.class);
+  private static final String JOB_DIR_KEY = "mapreduce.job.dir";
+  private static final String SCHEMA_DIR_NAME = "etl-shuffle-schemas";
+
+  private static final ConcurrentMap<SchemaHash, Schema> SCHEMAS = new ConcurrentHashMap<>();
+  private static final Set<SchemaHash> PUBLISHED = Collections.newSetFromMap(new ConcurrentHashMap<>());
+  private static final ConcurrentMap<SchemaHash, Boolean> BYTE_COMPARABLE = new ConcurrentHashMap<>();
+
+  private static volatile Configuration conf;
+  private static volatile Path schemaDir;
+
+  private ShuffleSchemaRegistry() {
+    // no-op
+  }
+
+  /**
+   * Initializes the registry for the job that the given configuration belongs to. This is called once per task
+   * before any record is serialized.
+   *
+   * @param hConf the configuration of the running job
+   */
+  public static synchronized void initialize(Configuration hConf) {
+    String dir = hConf.get(SCHEMA_DIR_KEY);
+    if (dir == null) {
+      String jobDir = hConf.get(JOB_DIR_KEY);
+      if (jobDir == null) {
+        LOG.debug("Job directory is not set. Schemas will be included in every shuffled record.");
+        return;
+      }
+      dir = new Path(jobDir, SCHEMA_DIR_NAME).toString();
+    }
+    Path newDir = new Path(dir);
+    if (!newDir.equals(schemaDir)) {
+      // a task JVM can be reused across jobs, in which case previously published schemas are not in the new job dir
+      PUBLISHED.clear();
+    }
+    conf = hConf;
+    schemaDir = newDir;
+  }
+
+  /**
+   * Clears the job scope of the registry. Parsed schemas are kept since they are immutable and keyed by fingerprint.
+   */
+  public static synchronized void reset() {
+    conf = null;
+    schemaDir = null;
+    PUBLISHED.clear();
+  }
+
+  /**
+   * Clears the job scope and all the schemas known to the registry, as if it was loaded in a new task JVM.
+   * This is only used by tests.
+   */
+  static synchronized void clear() {
+    reset();
+    SCHEMAS.clear();
+    BYTE_COMPARABLE.clear();
+  }
+
+  /**
+   * Returns {@code true} if the registry is able to share schemas with other tasks of the same job.
+   */
+  public static boolean isJobScoped() {
+    return schemaDir != null;
+  }
+
+  /**
+   * Registers the given schema. If the registry is job scoped, the schema is also published so that tasks reading
+   * the shuffled records can resolve it from the fingerprint.
+   *
+   * @param schema the schema to register
+   * @return {@code true} if the schema is resolvable by other tasks of the job, {@code false} otherwise
+   */
+  public static boolean register(Schema schema) {
+    SchemaHash hash = schema.getSchemaHash();
+    SCHEMAS.putIfAbsent(hash, schema);
+
+    Path dir = schemaDir;
+    Configuration hConf = conf;
+    if (dir == null || hConf == null) {
+      return false;
+    }
+    if (PUBLISHED.contains(hash)) {
+      return true;
+    }
+    try {
+      publish(hConf, dir, hash, schema);
+      PUBLISHED.add(hash);
+      return true;
+    } catch (IOException e) {
+      LOG.warn("Failed to publish schema {} to {}. The schema will be included in shuffled records.", hash, dir, e);
+      return false;
+    }
+  }
+
+  /**
+   * Returns the schema for the fingerprint stored in the given byte array. If the schema is not yet known locally,
+   * it is parsed from the given json bytes and added to the registry.
+   */
+  static Schema getOrParse(byte[] fingerprint, int fingerprintOffset,
+                           byte[] schemaBytes, int schemaOffset, int schemaLen) throws IOException {
+    SchemaHash hash = new SchemaHash(ByteBuffer.wrap(fingerprint, fingerprintOffset,
+                                                     StructuredRecordWritable.FINGERPRINT_SIZE));
+    Schema schema = SCHEMAS.get(hash);
+    if (schema != null) {
+      return schema;
+    }
+    schema = Schema.parseJson(Bytes.toString(schemaBytes, schemaOffset, schemaLen));
+    Schema existing = SCHEMAS.putIfAbsent(hash, schema);
+    return existing == null ? schema : existing;
+  }
+
+  /**
+   * Returns the {@link Schema} for the given fingerprint.
+   *
+   * @param fingerprint the schema fingerprint
+   * @return the schema or {@code null} if it is not known to this job
+   * @throws IOException if failed to read the schema published by another task
+   */
+  @Nullable
+  public static Schema get(SchemaHash fingerprint) throws IOException {
+    Schema schema = SCHEMAS.get(fingerprint);
+    if (schema != null) {
+      return schema;
+    }
+
+    Path dir = schemaDir;
+    Configuration hConf = conf;
+    if (dir == null || hConf == null) {
+      return null;
+    }
+
+    Path path = new Path(dir, fingerprint.toString());
+    FileSystem fs = path.getFileSystem(hConf);
+    byte[] schemaBytes;
+    try (FSDataInputStream is = fs.open(path)) {
+      schemaBytes = new byte[(int) fs.getFileStatus(path).getLen()];
+      is.readFully(schemaBytes);
+    } catch (FileNotFoundException e) {
+      return null;
+    }
+    schema = Schema.parseJson(new String(schemaBytes, StandardCharsets.UTF_8));
+    Schema existing = SCHEMAS.putIfAbsent(fingerprint, schema);
+    return existing == null ? schema : existing;
+  }
+
+  /**
+   * Returns the {@link Schema} for the fingerprint stored in the given byte array.
+   *
+   * @throws IOException if the schema is not known or failed to read it
+   */
+  static Schema get(byte[] bytes, int offset) throws IOException {
+    SchemaHash fingerprint = new SchemaHash(ByteBuffer.wrap(bytes, offset, StructuredRecordWritable.FINGERPRINT_SIZE));
+    Schema schema = get(fingerprint);
+    if (schema == null) {
+      throw new IOException("Unknown schema fingerprint " + fingerprint);
+    }
+    return schema;
+  }
+
+  /**
+   * Returns {@code true} if two records of the given schema are equal if and only if their binary encoding
+   * are the same. This is the case for all schemas except the ones containing a map, since the encoding of a map
+   * depends on its iteration order.
+   */
+  static boolean isByteComparable(Schema schema) {
+    return BYTE_COMPARABLE.computeIfAbsent(schema.getSchemaHash(),
+                                           h -> !containsMap(schema, Collections.newSetFromMap(
+                                             new IdentityHashMap<>())));
+  }
+
+  private static boolean containsMap(Schema schema, Set<Schema> seen) {
+    if (!seen.add(schema)) {
+      return false;
+    }
+    switch (schema.getType()) {
+      case MAP:
+        return true;
+      case ARRAY:
+        return containsMap(schema.getComponentSchema(), seen);
+      case UNION:
+        //noinspection ConstantConditions
+        for (Schema unionSchema : schema.getUnionSchemas()) {
+          if (containsMap(unionSchema, seen)) {
+            return true;
+          }
+        }
+        return false;
+      case RECORD:
+        //noinspection ConstantConditions
+        for (Schema.Field field : schema.getFields()) {
+          if (containsMap(field.getSchema(), seen)) {
+            return true;
+          }
+        }
+        return false;
+      default:
+        return false;
+    }
+  }
+
+  private static void publish(Configuration hConf, Path dir, SchemaHash hash, Schema schema) throws IOException {
+    Path path = new Path(dir, hash.toString());
+    FileSystem fs = path.getFileSystem(hConf);
+    if (fs.exists(path)) {
+      return;
+    }
+
+    // write to a temporary file and rename, so that readers never see a partially written schema
+    Path tmpPath = new Path(dir, "." + hash.toString() + "." + UUID.randomUUID());
+    try (FSDataOutputStream os = fs.create(tmpPath, false)) {
+      os.write(Bytes.toBytes(schema.toString()));
+    }
+    if (!fs.rename(tmpPath, path)) {
+      // some other task published the same schema concurrently
+      fs.delete(tmpPath, false);
+      if (!fs.exists(path)) {
+        throw new IOException("Failed to rename " + tmpPath + " to " + path);
+      }
+    }
+  }
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016 Cask Data, Inc.
+ * Copyright © 2016-2019 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -19,26 +19,58 @@ package io.cdap.cdap.etl.batch;
 import io.cdap.cdap.api.common.Bytes;
 import io.cdap.cdap.api.data.format.StructuredRecord;
 import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.cdap.common.io.BinaryDecoder;
+import io.cdap.cdap.common.io.BinaryEncoder;
 import io.cdap.cdap.etl.common.record.StructuredRecordComparator;
-import io.cdap.cdap.format.StructuredRecordStringConverter;
+import io.cdap.cdap.format.io.StructuredRecordDatumReader;
+import io.cdap.cdap.format.io.StructuredRecordDatumWriter;
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
 import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
 
+import java.io.ByteArrayInputStream;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.util.Comparator;
-import java.util.Map;
 import java.util.Objects;
-import java.util.TreeMap;
 
 /**
  * Wrapper around a {@link StructuredRecord} so that it can be used as the output key and/or value of a mapper.
- * This is not very performant and must be improved soon (CDAP-5347).
+ *
+ * Records are serialized in a compact binary format. The schema is identified by its fingerprint, which is resolved
+ * through the {@link ShuffleSchemaRegistry}. The full schema is only included in the serialized record if the
+ * registry is not shared across the tasks of the job. The serialized format is:
+ *
+ * <pre>
+ *   byte     format, either {@link #FORMAT_FINGERPRINT} or {@link #FORMAT_INLINE_SCHEMA}
+ *   byte[16] schema fingerprint
+ *   int      schema length, only for {@link #FORMAT_INLINE_SCHEMA}
+ *   byte[]   schema json, only for {@link #FORMAT_INLINE_SCHEMA}
+ *   int      record length
+ *   byte[]   record encoded with the {@link StructuredRecordDatumWriter}
+ * </pre>
  */
 public class StructuredRecordWritable implements WritableComparable<StructuredRecordWritable> {
-  // schema cache so that we do not parse schema string for each incoming record
-  private static final Map<byte[], Schema> schemaCache = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+
+  static final byte FORMAT_FINGERPRINT = 1;
+  static final byte FORMAT_INLINE_SCHEMA = 2;
+  static final int FINGERPRINT_SIZE = 16;
+
   private static final Comparator<StructuredRecord> COMPARATOR = new StructuredRecordComparator();
+  private static final StructuredRecordDatumWriter DATUM_WRITER = new StructuredRecordDatumWriter();
+  private static final StructuredRecordDatumReader DATUM_READER = new StructuredRecordDatumReader();
+  private static final ThreadLocal<DataOutputBuffer> OUTPUT_BUFFER = ThreadLocal.withInitial(DataOutputBuffer::new);
+  private static final ThreadLocal<DataInputBuffer> INPUT_BUFFER = ThreadLocal.withInitial(DataInputBuffer::new);
+
+  static {
+    // register the raw comparator so that Hadoop can sort map outputs without deserializing them
+    WritableComparator.define(StructuredRecordWritable.class, new RawComparator());
+  }
+
   private StructuredRecord record;
 
   // required by Hadoop
@@ -61,35 +93,51 @@ public class StructuredRecordWritable implements WritableComparable<StructuredRe
   @SuppressWarnings("ConstantConditions")
   @Override
   public void write(DataOutput out) throws IOException {
-    byte[] schemaBytes = Bytes.toBytes(record.getSchema().toString());
-    out.writeInt(schemaBytes.length);
-    out.write(schemaBytes);
+    Schema schema = record.getSchema();
+    boolean registered = ShuffleSchemaRegistry.register(schema);
+
+    out.writeByte(registered ? FORMAT_FINGERPRINT : FORMAT_INLINE_SCHEMA);
+    out.write(schema.getSchemaHash().toByteArray());
+    if (!registered) {
+      byte[] schemaBytes = Bytes.toBytes(schema.toString());
+      out.writeInt(schemaBytes.length);
+      out.write(schemaBytes);
+    }
 
-    byte[] recordBytes = Bytes.toBytes(StructuredRecordStringConverter.toJsonString(record));
-    out.writeInt(recordBytes.length);
-    out.write(recordBytes);
+    DataOutputBuffer buffer = OUTPUT_BUFFER.get();
+    buffer.reset();
+    DATUM_WRITER.encode(record, new BinaryEncoder(buffer));
+    out.writeInt(buffer.getLength());
+    out.write(buffer.getData(), 0, buffer.getLength());
   }
 
   @Override
   public void readFields(DataInput in) throws IOException {
-    int schemaLen = in.readInt();
-    byte[] schemaBytes = new byte[schemaLen];
-    in.readFully(schemaBytes, 0, schemaLen);
+    byte format = in.readByte();
+    byte[] fingerprint = new byte[FINGERPRINT_SIZE];
+    in.readFully(fingerprint);
 
     Schema schema;
-    if (schemaCache.containsKey(schemaBytes)) {
-      schema = schemaCache.get(schemaBytes);
+    if (format == FORMAT_INLINE_SCHEMA) {
+      byte[] schemaBytes = new byte[in.readInt()];
+      in.readFully(schemaBytes);
+      schema = ShuffleSchemaRegistry.getOrParse(fingerprint, 0, schemaBytes, 0, schemaBytes.length);
+    } else if (format == FORMAT_FINGERPRINT) {
+      schema = ShuffleSchemaRegistry.get(fingerprint, 0);
     } else {
-      String schemaStr = Bytes.toString(schemaBytes);
-      schema = Schema.parseJson(schemaStr);
-      schemaCache.put(schemaBytes, schema);
+      throw new IOException("Unsupported StructuredRecordWritable format " + format);
     }
 
     int recordLen = in.readInt();
     byte[] recordBytes = new byte[recordLen];
     in.readFully(recordBytes, 0, recordLen);
-    String recordStr = Bytes.toString(recordBytes);
-    this.record = StructuredRecordStringConverter.fromJsonString(recordStr, schema);
+    this.record = decode(schema, recordBytes, 0, recordLen);
+  }
+
+  private static StructuredRecord decode(Schema schema, byte[] bytes, int offset, int len) throws IOException {
+    DataInputBuffer buffer = INPUT_BUFFER.get();
+    buffer.reset(bytes, offset, len);
+    return DATUM_READER.read(new BinaryDecoder(buffer), schema);
   }
 
   @Override
@@ -115,4 +163,79 @@ public class StructuredRecordWritable implements WritableComparable<StructuredRe
   public int hashCode() {
     return record != null ? record.hashCode() : 0;
   }
+
+  /**
+   * A {@link org.apache.hadoop.io.RawComparator} that compares serialized {@link StructuredRecordWritable}.
+   * Records are ordered by schema fingerprint first. Records of the same schema are compared by their binary
+   * encoding, unless the schema contains a map, in which case the records are deserialized and compared with the
+   * {@link StructuredRecordComparator}, since the encoding of a map is not unique.
+   *
+   * The comparator is used by the shuffle merge of the reduce task before any task code runs, so it initializes the
+   * {@link ShuffleSchemaRegistry} from the job configuration it is given to resolve the schema fingerprints.
+   */
+  public static final class RawComparator extends WritableComparator implements Configurable {
+
+    private Configuration conf;
+
+    public RawComparator() {
+      super(StructuredRecordWritable.class);
+    }
+
+    @Override
+    public void setConf(Configuration conf) {
+      this.conf = conf;
+      if (conf != null) {
+        ShuffleSchemaRegistry.initialize(conf);
+      }
+    }
+
+    @Override
+    public Configuration getConf() {
+      return conf;
+    }
+
+    @Override
+    public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+      int comp = compareBytes(b1, s1 + 1, FINGERPRINT_SIZE, b2, s2 + 1, FINGERPRINT_SIZE);
+      if (comp != 0) {
+        return comp;
+      }
+
+      int recordStart1 = getRecordStart(b1, s1);
+      int recordStart2 = getRecordStart(b2, s2);
+      int recordLen1 = readInt(b1, recordStart1 - Integer.BYTES);
+      int recordLen2 = readInt(b2, recordStart2 - Integer.BYTES);
+
+      try {
+        Schema schema = getSchema(b1, s1);
+        if (ShuffleSchemaRegistry.isByteComparable(schema)) {
+          return compareBytes(b1, recordStart1, recordLen1, b2, recordStart2, recordLen2);
+        }
+        StructuredRecord record1 = DATUM_READER.read(
+          new BinaryDecoder(new ByteArrayInputStream(b1, recordStart1, recordLen1)), schema);
+        StructuredRecord record2 = DATUM_READER.read(
+          new BinaryDecoder(new ByteArrayInputStream(b2, recordStart2, recordLen2)), schema);
+        return COMPARATOR.compare(record1, record2);
+      } catch (IOException e) {
+        throw new IllegalArgumentException("Failed to compare serialized records", e);
+      }
+    }
+
+    private static int getRecordStart(byte[] bytes, int start) {
+      int headerEnd = start + 1 + FINGERPRINT_SIZE;
+      if (bytes[start] == FORMAT_INLINE_SCHEMA) {
+        headerEnd += Integer.BYTES + readInt(bytes, headerEnd);
+      }
+      return headerEnd + Integer.BYTES;
+    }
+
+    private static Schema getSchema(byte[] bytes, int start) throws IOException {
+      if (bytes[start] == FORMAT_INLINE_SCHEMA) {
+        int schemaStart = start + 1 + FINGERPRINT_SIZE;
+        return ShuffleSchemaRegistry.getOrParse(bytes, start + 1, bytes, schemaStart + Integer.BYTES,
+                                                readInt(bytes, schemaStart));
+      }
+      return ShuffleSchemaRegistry.get(bytes, start + 1);
+    }
+  }
 }
@@ -34,6 +34,7 @@ import io.cdap.cdap.etl.batch.DefaultAggregatorContext;
 import io.cdap.cdap.etl.batch.DefaultJoinerContext;
 import io.cdap.cdap.etl.batch.PipelinePhasePreparer;
 import io.cdap.cdap.etl.batch.PipelinePluginInstantiator;
+import io.cdap.cdap.etl.batch.StructuredRecordWritable;
 import io.cdap.cdap.etl.batch.conversion.WritableConversion;
 import io.cdap.cdap.etl.batch.conversion.WritableConversions;
 import io.cdap.cdap.etl.common.Constants;
@@ -173,7 +174,7 @@ public class MapReducePreparer extends PipelinePhasePreparer {
       }
       hConf.set(ETLMapReduce.MAP_KEY_CLASS, outputKeyClass.getName());
       hConf.set(ETLMapReduce.MAP_VAL_CLASS, outputValClass.getName());
-      job.setMapOutputKeyClass(getOutputKeyClass(stageName, outputKeyClass));
+      setMapOutputKeyClass(stageName, outputKeyClass);
       job.setMapOutputValueClass(getOutputValClass(stageName, outputValClass));
       stageOperations.put(stageName, aggregatorContext.getFieldOperations());
     });
@@ -199,7 +200,7 @@ public class MapReducePreparer extends PipelinePhasePreparer {
       }
       hConf.set(ETLMapReduce.MAP_KEY_CLASS, outputKeyClass.getName());
       hConf.set(ETLMapReduce.MAP_VAL_CLASS, inputRecordClass.getName());
-      job.setMapOutputKeyClass(getOutputKeyClass(stageName, outputKeyClass));
+      setMapOutputKeyClass(stageName, outputKeyClass);
       getOutputValClass(stageName, inputRecordClass);
       // for joiner plugin map output is tagged with stageName
       job.setMapOutputValueClass(TaggedWritable.class);
@@ -207,6 +208,16 @@ public class MapReducePreparer extends PipelinePhasePreparer {
     });
   }
 
+  private void setMapOutputKeyClass(String reducerName, Class<?> outputKeyClass) {
+    Class<?> keyClass = getOutputKeyClass(reducerName, outputKeyClass);
+    job.setMapOutputKeyClass(keyClass);
+    if (StructuredRecordWritable.class.equals(keyClass)) {
+      // Set the comparator class explicitly, so that Hadoop instantiates it with the job configuration, which it needs
+      // to resolve the schemas of the shuffled records
+      job.setSortComparatorClass(StructuredRecordWritable.RawComparator.class);
+    }
+  }
+
   private Class<?> getOutputKeyClass(String reducerName, Class<?> outputKeyClass) {
     // in case the classes are not a WritableComparable, but is some common type we support
     // for example, a String or a StructuredRecord
@@ -16,10 +16,18 @@
 
 package io.cdap.cdap.etl.batch;
 
+import com.google.common.collect.ImmutableMap;
+import io.cdap.cdap.api.common.Bytes;
 import io.cdap.cdap.api.data.format.StructuredRecord;
 import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.cdap.format.StructuredRecordStringConverter;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.util.ReflectionUtils;
 import org.junit.Assert;
+import org.junit.ClassRule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -28,11 +36,17 @@ import java.io.DataInputStream;
 import java.io.DataOutput;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  */
 public class StructuredRecordWritableTest {
 
+  @ClassRule
+  public static final TemporaryFolder TMP_FOLDER = new TemporaryFolder();
+
   @Test
   public void testNonAsciiString() throws IOException {
     Schema schema = Schema.recordOf("rec", Schema.Field.of("x", Schema.of(Schema.Type.STRING)));
@@ -62,4 +76,146 @@ public class StructuredRecordWritableTest {
     Assert.assertNotEquals(0, writable1.compareTo(writable2));
     Assert.assertNotEquals(writable1, writable2);
   }
+
+  @Test
+  public void testRawComparator() throws IOException {
+    Schema schema = Schema.recordOf(
+      "rec",
+      Schema.Field.of("s", Schema.nullableOf(Schema.of(Schema.Type.STRING))),
+      Schema.Field.of("l", Schema.of(Schema.Type.LONG)),
+      Schema.Field.of("d", Schema.of(Schema.Type.DOUBLE)));
+    StructuredRecord record1 = StructuredRecord.builder(schema).set("s", "abc").set("l", 1L).set("d", 0.5d).build();
+    StructuredRecord record2 = StructuredRecord.builder(schema).set("s", "abc").set("l", 1L).set("d", 0.5d).build();
+    StructuredRecord record3 = StructuredRecord.builder(schema).set("l", 1L).set("d", 0.5d).build();
+
+    WritableComparator comparator = WritableComparator.get(StructuredRecordWritable.class);
+    Assert.assertTrue(comparator instanceof StructuredRecordWritable.RawComparator);
+
+    byte[] bytes1 = serialize(record1);
+    byte[] bytes2 = serialize(record2);
+    byte[] bytes3 = serialize(record3);
+    Assert.assertEquals(0, comparator.compare(bytes1, 0, bytes1.length, bytes2, 0, bytes2.length));
+    int comp = comparator.compare(bytes1, 0, bytes1.length, bytes3, 0, bytes3.length);
+    Assert.assertNotEquals(0, comp);
+    Assert.assertEquals(-comp, comparator.compare(bytes3, 0, bytes3.length, bytes1, 0, bytes1.length));
+
+    // records of different schemas are never equal
+    Schema otherSchema = Schema.recordOf("rec", Schema.Field.of("l", Schema.of(Schema.Type.LONG)));
+    byte[] otherBytes = serialize(StructuredRecord.builder(otherSchema).set("l", 1L).build());
+    Assert.assertNotEquals(0, comparator.compare(bytes1, 0, bytes1.length, otherBytes, 0, otherBytes.length));
+  }
+
+  @Test
+  public void testRawComparatorWithMap() throws IOException {
+    Schema schema = Schema.recordOf(
+      "rec", Schema.Field.of("m", Schema.mapOf(Schema.of(Schema.Type.STRING), Schema.of(Schema.Type.INT))));
+
+    // same map content with different iteration order results in different encoded bytes
+    Map<String, Integer> map1 = new LinkedHashMap<>();
+    map1.put("a", 1);
+    map1.put("b", 2);
+    Map<String, Integer> map2 = new LinkedHashMap<>();
+    map2.put("b", 2);
+    map2.put("a", 1);
+
+    byte[] bytes1 = serialize(StructuredRecord.builder(schema).set("m", map1).build());
+    byte[] bytes2 = serialize(StructuredRecord.builder(schema).set("m", map2).build());
+    byte[] bytes3 = serialize(StructuredRecord.builder(schema).set("m", ImmutableMap.of("a", 2)).build());
+
+    WritableComparator comparator = WritableComparator.get(StructuredRecordWritable.class);
+    Assert.assertEquals(0, comparator.compare(bytes1, 0, bytes1.length, bytes2, 0, bytes2.length));
+    Assert.assertNotEquals(0, comparator.compare(bytes1, 0, bytes1.length, bytes3, 0, bytes3.length));
+  }
+
+  @Test
+  public void testJobScopedSchema() throws IOException {
+    Schema schema = Schema.recordOf("rec",
+                                    Schema.Field.of("name", Schema.of(Schema.Type.STRING)),
+                                    Schema.Field.of("count", Schema.of(Schema.Type.INT)));
+    StructuredRecord record = StructuredRecord.builder(schema).set("name", "n").set("count", 5).build();
+    byte[] inlineBytes = serialize(record);
+
+    Configuration hConf = new Configuration();
+    hConf.set(ShuffleSchemaRegistry.SCHEMA_DIR_KEY, TMP_FOLDER.newFolder().getAbsolutePath());
+    ShuffleSchemaRegistry.initialize(hConf);
+    try {
+      Assert.assertTrue(ShuffleSchemaRegistry.isJobScoped());
+      byte[] bytes = serialize(record);
+
+      // only the fingerprint is written with the record
+      Assert.assertEquals(inlineBytes.length - Integer.BYTES - Bytes.toBytes(schema.toString()).length, bytes.length);
+      Assert.assertEquals(record, deserialize(bytes));
+      Assert.assertEquals(schema, ShuffleSchemaRegistry.get(schema.getSchemaHash()));
+
+      WritableComparator comparator = WritableComparator.get(StructuredRecordWritable.class);
+      Assert.assertEquals(0, comparator.compare(bytes, 0, bytes.length, inlineBytes, 0, inlineBytes.length));
+    } finally {
+      ShuffleSchemaRegistry.reset();
+    }
+  }
+
+  @Test
+  public void testRawComparatorInNewTask() throws IOException {
+    Schema schema = Schema.recordOf("rec", Schema.Field.of("id", Schema.of(Schema.Type.LONG)));
+    Configuration hConf = new Configuration();
+    hConf.set(ShuffleSchemaRegistry.SCHEMA_DIR_KEY, TMP_FOLDER.newFolder().getAbsolutePath());
+
+    // serialize in a map task, which publishes the schema to the job
+    ShuffleSchemaRegistry.initialize(hConf);
+    byte[] bytes1;
+    byte[] bytes2;
+    try {
+      bytes1 = serialize(StructuredRecord.builder(schema).set("id", 1L).build());
+      bytes2 = serialize(StructuredRecord.builder(schema).set("id", 2L).build());
+      Assert.assertEquals(StructuredRecordWritable.FORMAT_FINGERPRINT, bytes1[0]);
+    } finally {
+      ShuffleSchemaRegistry.clear();
+    }
+
+    // compare in the shuffle merge of a reduce task, where no task code has run to initialize the registry
+    try {
+      StructuredRecordWritable.RawComparator comparator =
+        ReflectionUtils.newInstance(StructuredRecordWritable.RawComparator.class, hConf);
+      Assert.assertTrue(comparator.compare(bytes1, 0, bytes1.length, bytes2, 0, bytes2.length) < 0);
+      Assert.assertEquals(0, comparator.compare(bytes1, 0, bytes1.length, bytes1, 0, bytes1.length));
+    } finally {
+      ShuffleSchemaRegistry.clear();
+    }
+  }
+
+  @Test
+  public void testEncodedSize() throws IOException {
+    Schema schema = Schema.recordOf(
+      "rec",
+      Schema.Field.of("id", Schema.of(Schema.Type.LONG)),
+      Schema.Field.of("name", Schema.of(Schema.Type.STRING)),
+      Schema.Field.of("price", Schema.nullableOf(Schema.of(Schema.Type.DOUBLE))),
+      Schema.Field.of("tags", Schema.arrayOf(Schema.of(Schema.Type.STRING))));
+    StructuredRecord record = StructuredRecord.builder(schema)
+      .set("id", 1234567L)
+      .set("name", "name")
+      .set("price", 9.99d)
+      .set("tags", Arrays.asList("a", "b"))
+      .build();
+
+    byte[] bytes = serialize(record);
+    Assert.assertEquals(record, deserialize(bytes));
+
+    // the binary encoding must be smaller than the json encoding of the schema and record
+    int jsonSize = Integer.BYTES + Bytes.toBytes(schema.toString()).length
+      + Integer.BYTES + Bytes.toBytes(StructuredRecordStringConverter.toJsonString(record)).length;
+    Assert.assertTrue(bytes.length < jsonSize);
+  }
+
+  private static byte[] serialize(StructuredRecord record) throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    new StructuredRecordWritable(record).write(new DataOutputStream(os));
+    return os.toByteArray();
+  }
+
+  private static StructuredRecord deserialize(byte[] bytes) throws IOException {
+    StructuredRecordWritable writable = new StructuredRecordWritable();
+    writable.readFields(new DataInputStream(new ByteArrayInputStream(bytes)));
+    return writable.get();
+  }
 }
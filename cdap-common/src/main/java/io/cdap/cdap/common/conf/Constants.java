@@ -195,6 +195,8 @@ public final class Constants {
     public static final String LOCAL_DATASET_DELETER_INITIAL_DELAY_SECONDS
       = "app.program.local.dataset.deleter.initial.delay";
     public static final String SYSTEM_ARTIFACTS_DIR = "app.artifact.dir";
+    public static final String ARTIFACT_CACHE_DIR = "app.artifact.cache.dir";
+    public static final String ARTIFACT_CACHE_SIZE_MB = "app.artifact.cache.size.mb";
     public static final String PROGRAM_EXTRA_CLASSPATH = "app.program.extra.classpath";
     public static final String SPARK_YARN_CLIENT_REWRITE = "app.program.spark.yarn.client.rewrite.enabled";
     public static final String SPARK_COMPAT = "app.program.spark.compat";
@@ -336,6 +338,11 @@ public final class Constants {
     public static final String WORKER_THREADS = "preview.worker.threads";
 
     public static final String PREVIEW_CACHE_SIZE = "preview.cache.size";
+    public static final String RUNNER_POOL_SIZE = "preview.runner.pool.size";
+    public static final String MAX_CONCURRENT_RUNS = "preview.max.concurrent.runs";
+    public static final String DATA_MAX_RECORDS = "preview.data.max.records";
+    public static final String DATA_MAX_SIZE_MB = "preview.data.max.size.mb";
+    public static final String DATA_WRITE_BATCH_SIZE = "preview.data.write.batch.size";
   }
 
   /**
@@ -356,6 +363,7 @@ public final class Constants {
     public static final String PROGRAM_STATUS_EVENT_FETCH_SIZE = "scheduler.program.status.event.fetch.size";
 
     public static final String JOB_QUEUE_NUM_PARTITIONS = "scheduler.job.queue.num.partitions";
+    public static final String JOB_QUEUE_RESCAN_INTERVAL_MILLIS = "scheduler.job.queue.rescan.interval.millis";
   }
 
   /**
@@ -456,6 +464,9 @@ public final class Constants {
     public static final String DATA_STORAGE_SQL_PASSWORD = "data.storage.sql.jdbc.password";
     public static final String DATA_STORAGE_SQL_PROPERTY_PREFIX = "data.storage.sql.jdbc.property.";
     public static final String DATA_STORAGE_SQL_CONNECTION_SIZE = "data.storage.sql.jdbc.connection.pool.size";
+    public static final String DATA_STORAGE_SQL_STATEMENT_CACHE_SIZE = "data.storage.sql.jdbc.statement.cache.size";
+    public static final String DATA_STORAGE_SQL_SCAN_FETCH_SIZE_ROWS = "data.storage.sql.scan.fetch.size.rows";
+    public static final int DEFAULT_DATA_STORAGE_SQL_SCAN_FETCH_SIZE_ROWS = 100;
 
     // used for Guice named bindings
     public static final String TABLE_TYPE = "table.type";
@@ -554,6 +565,9 @@ public final class Constants {
     public static final String CONNECTION_TIMEOUT_SECS = "router.connection.idle.timeout.secs";
     public static final String ROUTER_AUDIT_PATH_CHECK_ENABLED = "router.audit.path.check.enabled";
     public static final String ROUTER_AUDIT_LOG_ENABLED = "router.audit.log.enabled";
+    public static final String OUTBOUND_POOL_MAX_CONNECTIONS = "router.outbound.pool.max.connections";
+    public static final String OUTBOUND_POOL_MAX_PENDING_ACQUIRES = "router.outbound.pool.max.pending.acquires";
+    public static final String OUTBOUND_POOL_ACQUIRE_TIMEOUT_MILLIS = "router.outbound.pool.acquire.timeout.millis";
 
     /**
      * Defaults.
@@ -583,6 +597,13 @@ public final class Constants {
     public static final String SERVICE_DESCRIPTION = "Service to handle metrics requests.";
     public static final String PROCESSOR_MAX_DELAY_MS = "metrics.processor.max.delay.ms";
     public static final String QUEUE_SIZE = "metrics.processor.queue.size";
+    public static final String PROCESSOR_FLUSH_INTERVAL_MS = "metrics.processor.flush.interval.ms";
+    public static final String PROCESSOR_FLUSH_SIZE = "metrics.processor.flush.size";
+    public static final String QUERY_PARALLELISM = "metrics.query.parallelism";
+    public static final String QUERY_CACHE_SIZE_BYTES = "metrics.query.cache.size.bytes";
+    public static final String QUERY_CACHE_ENTRY_TTL_SECONDS = "metrics.query.cache.entry.ttl.seconds";
+    public static final String QUERY_CACHE_STATUS_REFRESH_INTERVAL_MS =
+      "metrics.query.cache.processor.status.refresh.interval.ms";
 
     public static final String ENTITY_TABLE_NAME = "metrics.data.entity.tableName";
     public static final String METRICS_TABLE_PREFIX = "metrics.data.table.prefix";
@@ -719,6 +740,8 @@ public final class Constants {
         public static final String OP_COUNT = "dataset.store.ops";
         public static final String WRITE_COUNT = "dataset.store.writes";
         public static final String WRITE_BYTES = "dataset.store.bytes";
+        public static final String READ_CACHE_HITS = "dataset.store.read.cache.hits";
+        public static final String READ_CACHE_MISSES = "dataset.store.read.cache.misses";
       }
 
       /**
@@ -763,6 +786,21 @@ public final class Constants {
       public static final String ACTIVE_CONNECTIONS = "structured.table.connection.active";
       public static final String IDLE_CONNECTIONS = "structured.table.connection.idle";
       public static final String ERROR_CONNECTIONS = "structured.table.connection.error";
+      public static final String STATEMENT_COUNT = "structured.table.statement.count";
+      public static final String STATEMENT_TIME = "structured.table.statement.time";
+      public static final String STATEMENT_ERROR = "structured.table.statement.error";
+    }
+
+    /**
+     * Router outbound connection pool metrics
+     */
+    public static final class RouterPool {
+
+      public static final String OPEN_CONNECTIONS = "router.pool.connection.open";
+      public static final String LEASED_CONNECTIONS = "router.pool.connection.leased";
+      public static final String CREATED_CONNECTIONS = "router.pool.connection.created";
+      public static final String ACQUIRE_COUNT = "router.pool.acquire.count";
+      public static final String ACQUIRE_ERROR = "router.pool.acquire.error";
     }
 
     /**
@@ -795,6 +833,7 @@ public final class Constants {
   public static final class LogQuery {
     public static final String ADDRESS = "log.query.server.bind.address";
     public static final String PORT = "log.query.server.bind.port";
+    public static final String FILE_READ_PARALLELISM = "log.query.file.read.parallelism";
   }
 
   /**
@@ -1305,8 +1344,13 @@ public final class Constants {
   public static final class MessagingSystem {
     public static final String LOCAL_DATA_DIR = "messaging.local.data.dir";
     public static final String LOCAL_DATA_CLEANUP_FREQUENCY = "messaging.local.data.cleanup.frequency.secs";
+    public static final String LOCAL_DATA_SYNC_MODE = "messaging.local.data.sync.mode";
+    public static final String LOCAL_DATA_GROUP_COMMIT_INTERVAL_MS = "messaging.local.data.group.commit.interval.ms";
+    public static final String LOCAL_DATA_GROUP_COMMIT_MAX_BATCHES = "messaging.local.data.group.commit.max.batches";
 
     public static final String CACHE_SIZE_MB = "messaging.cache.size.mb";
+    public static final String CACHE_OFF_HEAP_ENABLED = "messaging.cache.off.heap.enabled";
+    public static final String CACHE_OFF_HEAP_SLAB_SIZE_KB = "messaging.cache.off.heap.slab.size.kb";
 
     public static final String HBASE_MAX_SCAN_THREADS = "messaging.hbase.max.scan.threads";
     public static final String HBASE_SCAN_CACHE_ROWS = "messaging.hbase.scan.cache.rows";
@@ -23,6 +23,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.URL;
 import java.nio.file.FileVisitOption;
@@ -197,6 +198,24 @@ public class BundleJarUtil {
     return destinationFolder;
   }
 
+  /**
+   * Unpack a jar from the given {@link InputStream} to a directory. The stream is read until the end, such that
+   * all the bytes of the jar are consumed, but it is not closed.
+   *
+   * @param input the {@link InputStream} to read the jar from
+   * @param destinationFolder Directory to expand into
+   * @return The {@code destinationFolder}
+   * @throws IOException If failed to expand the jar
+   */
+  public static File unJar(InputStream input, File destinationFolder) throws IOException {
+    unJar(new ZipInputStream(input), destinationFolder);
+    byte[] buffer = new byte[8192];
+    while (input.read(buffer) >= 0) {
+      // Consume the remaining bytes, which are the central directory of the jar
+    }
+    return destinationFolder;
+  }
+
   /**
    * Search for {@link Manifest} from the given {@link JarInputStream}.
    *
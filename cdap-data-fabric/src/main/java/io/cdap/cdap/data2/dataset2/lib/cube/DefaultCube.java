@@ -1,5 +1,5 @@
 /*
- * Copyright 2015-2016 Cask Data, Inc.
+ * Copyright 2015-2019 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -16,6 +16,7 @@
 
 package io.cdap.cdap.data2.dataset2.lib.cube;
 
+import com.google.common.base.Throwables;
 import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterators;
@@ -32,6 +33,8 @@ import io.cdap.cdap.api.dataset.lib.cube.CubeExploreQuery;
 import io.cdap.cdap.api.dataset.lib.cube.CubeFact;
 import io.cdap.cdap.api.dataset.lib.cube.CubeQuery;
 import io.cdap.cdap.api.dataset.lib.cube.DimensionValue;
+import io.cdap.cdap.api.dataset.lib.cube.MeasureType;
+import io.cdap.cdap.api.dataset.lib.cube.Measurement;
 import io.cdap.cdap.api.dataset.lib.cube.TimeSeries;
 import io.cdap.cdap.api.dataset.lib.cube.TimeValue;
 import io.cdap.cdap.api.dataset.metrics.MeteredDataset;
@@ -47,6 +50,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -54,7 +58,10 @@ import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.SortedSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
@@ -77,6 +84,12 @@ public class DefaultCube implements Cube, MeteredDataset {
   private final Map<String, ? extends Aggregation> aggregations;
   private final Map<String, AggregationAlias> aggregationAliasMap;
   private final ExecutorService executorService;
+  private final int queryParallelism;
+  @Nullable
+  private final ExecutorService queryExecutor;
+  private final FactTableSupplier factTableSupplier;
+  // Idle FactTable per resolution for scanning query splits, as FactTable is not thread safe
+  private final Map<Integer, Queue<FactTable>> splitScanTables;
 
   @Nullable
   private MetricsCollector metrics;
@@ -84,6 +97,18 @@ public class DefaultCube implements Cube, MeteredDataset {
   public DefaultCube(int[] resolutions, FactTableSupplier factTableSupplier,
                      Map<String, ? extends Aggregation> aggregations,
                      Map<String, AggregationAlias> aggregationAliasMap) {
+    this(resolutions, factTableSupplier, aggregations, aggregationAliasMap, 1);
+  }
+
+  /**
+   * Creates a {@link DefaultCube}.
+   *
+   * @param queryParallelism maximum number of threads for executing a single query. If it is greater than one,
+   *                         the fact table scan of a query is split into time ranges that are scanned in parallel.
+   */
+  public DefaultCube(int[] resolutions, FactTableSupplier factTableSupplier,
+                     Map<String, ? extends Aggregation> aggregations,
+                     Map<String, AggregationAlias> aggregationAliasMap, int queryParallelism) {
     this.aggregations = aggregations;
     this.resolutionToFactTable = Maps.newHashMap();
     for (int resolution : resolutions) {
@@ -93,6 +118,19 @@ public class DefaultCube implements Cube, MeteredDataset {
     this.executorService = new ThreadPoolExecutor(0, resolutions.length, 30, TimeUnit.SECONDS,
                                                   new LinkedBlockingQueue<>(),
                                                   Threads.createDaemonThreadFactory("metrics-table-%d"));
+    this.queryParallelism = queryParallelism;
+    this.factTableSupplier = factTableSupplier;
+    this.splitScanTables = new ConcurrentHashMap<>();
+    if (queryParallelism > 1) {
+      // The query thread scans one of the splits, hence only need parallelism - 1 threads
+      ThreadPoolExecutor executor = new ThreadPoolExecutor(queryParallelism - 1, queryParallelism - 1,
+                                                           30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                                                           Threads.createDaemonThreadFactory("cube-query-%d"));
+      executor.allowCoreThreadTimeOut(true);
+      this.queryExecutor = executor;
+    } else {
+      this.queryExecutor = null;
+    }
   }
 
   @Override
@@ -102,7 +140,9 @@ public class DefaultCube implements Cube, MeteredDataset {
 
   @Override
   public void add(Collection<? extends CubeFact> facts) {
-    List<Fact> toWrite = Lists.newArrayList();
+    // Facts of the same aggregation dimension values and timestamp are merged before writing to the fact tables
+    Map<ImmutablePair<Long, List<DimensionValue>>, Map<String, Measurement>> mergedFacts = new LinkedHashMap<>();
+    int createdCount = 0;
     int dimValuesCount = 0;
     for (CubeFact fact : facts) {
       for (Map.Entry<String, ? extends Aggregation> aggEntry : aggregations.entrySet()) {
@@ -121,11 +161,18 @@ public class DefaultCube implements Cube, MeteredDataset {
             dimensionValues.add(new DimensionValue(dimensionName, fact.getDimensionValues().get(dimensionValueKey)));
             dimValuesCount++;
           }
-          toWrite.add(new Fact(fact.getTimestamp(), dimensionValues, fact.getMeasurements()));
+          mergeMeasurements(mergedFacts.computeIfAbsent(ImmutablePair.of(fact.getTimestamp(), dimensionValues),
+                                                        k -> new LinkedHashMap<>()),
+                            fact.getMeasurements());
+          createdCount++;
         }
       }
     }
 
+    List<Fact> toWrite = new ArrayList<>(mergedFacts.size());
+    mergedFacts.forEach((key, measurements) -> toWrite.add(new Fact(key.getFirst(), key.getSecond(),
+                                                                      measurements.values())));
+
     Map<Integer, Future<?>> futures = new HashMap<>();
     for (Map.Entry<Integer, FactTable> table : resolutionToFactTable.entrySet()) {
       futures.put(table.getKey(), executorService.submit(() -> table.getValue().add(toWrite)));
@@ -158,11 +205,29 @@ public class DefaultCube implements Cube, MeteredDataset {
 
     incrementMetric("cube.cubeFact.add.request.count", 1);
     incrementMetric("cube.cubeFact.added.count", facts.size());
-    incrementMetric("cube.tsFact.created.count", toWrite.size());
+    incrementMetric("cube.tsFact.created.count", createdCount);
+    incrementMetric("cube.tsFact.merged.count", createdCount - toWrite.size());
     incrementMetric("cube.tsFact.created.dimValues.count", dimValuesCount);
     incrementMetric("cube.tsFact.added.count", toWrite.size() * resolutionToFactTable.size());
   }
 
+  /**
+   * Merges the given measurements into the given map of merged measurements by measure name. Counters are added up,
+   * while the last value is kept for gauges.
+   */
+  private void mergeMeasurements(Map<String, Measurement> merged, Collection<Measurement> measurements) {
+    for (Measurement measurement : measurements) {
+      Measurement existing = merged.get(measurement.getName());
+      if (existing != null && existing.getType() == MeasureType.COUNTER
+        && measurement.getType() == MeasureType.COUNTER) {
+        merged.put(measurement.getName(), new Measurement(measurement.getName(), MeasureType.COUNTER,
+                                                          existing.getValue() + measurement.getValue()));
+      } else {
+        merged.put(measurement.getName(), measurement);
+      }
+    }
+  }
+
   @Override
   public Collection<TimeSeries> query(CubeQuery query) {
     /*
@@ -248,18 +313,97 @@ public class DefaultCube implements Cube, MeteredDataset {
 
     // 3) execute scan query
     FactTable table = resolutionToFactTable.get(query.getResolution());
-    FactScanner scanner = table.scan(scan);
-    Table<Map<String, String>, String, Map<Long, Long>> resultMap = getTimeSeries(query, scanner);
-
-    incrementMetric("cube.query.request.success.count", 1);
-    incrementMetric("cube.query.result.size", resultMap.size());
+    Collection<TimeSeries> timeSeries;
+    if (queryExecutor != null && TimeSeriesAccumulator.getBucketCount(query) <= TimeSeriesAccumulator.MAX_BUCKETS) {
+      TimeSeriesAccumulator accumulator = scanInParallel(query, table, scan);
+      incrementMetric("cube.query.scan.records.count", accumulator.getRecordsCount());
+      incrementMetric("cube.query.scan.skipped.count", accumulator.getSkippedCount());
+      incrementMetric("cube.query.request.success.count", 1);
+      incrementMetric("cube.query.result.size", accumulator.getSeriesCount());
+      timeSeries = accumulator.getTimeSeries();
+    } else {
+      FactScanner scanner = table.scan(scan);
+      Table<Map<String, String>, String, Map<Long, Long>> resultMap = getTimeSeries(query, scanner);
 
-    Collection<TimeSeries> timeSeries = convertToQueryResult(query, resultMap);
+      incrementMetric("cube.query.request.success.count", 1);
+      incrementMetric("cube.query.result.size", resultMap.size());
+      timeSeries = convertToQueryResult(query, resultMap);
+    }
     incrementMetric("cube.query.result.timeseries.count", timeSeries.size());
 
     return timeSeries;
   }
 
+  /**
+   * Splits the given scan by time ranges and scans them in parallel. Each split is scanned with its own limit of
+   * records, and the results are merged in the order of the splits until the limit is reached, so that the result
+   * doesn't depend on how fast each split is scanned.
+   */
+  private TimeSeriesAccumulator scanInParallel(CubeQuery query, FactTable table, FactScan scan) {
+    List<FactScan> splits = table.splitScan(scan, queryParallelism);
+
+    List<Future<TimeSeriesAccumulator>> futures = new ArrayList<>();
+    try {
+      for (FactScan split : splits.subList(1, splits.size())) {
+        futures.add(queryExecutor.submit(() -> scanSplit(query, split, MAX_RECORDS_TO_SCAN)));
+      }
+      // Scan the first split in the current thread
+      TimeSeriesAccumulator result = scan(query, table, splits.get(0), MAX_RECORDS_TO_SCAN);
+      int remaining = MAX_RECORDS_TO_SCAN - result.getAddedCount();
+      for (int i = 0; i < futures.size() && remaining > 0; i++) {
+        TimeSeriesAccumulator accumulator = Uninterruptibles.getUninterruptibly(futures.get(i));
+        if (accumulator.getAddedCount() > remaining) {
+          // Only the beginning of the split is within the limit. It is rare, so just scan the split again.
+          accumulator = scan(query, table, splits.get(i + 1), remaining);
+        }
+        result.merge(accumulator);
+        remaining -= accumulator.getAddedCount();
+      }
+      return result;
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    } finally {
+      // Cancel the scans that are not needed, because of failure or the limit is reached.
+      // Don't interrupt running scans, as the tables are reused by later queries.
+      futures.forEach(future -> future.cancel(false));
+    }
+  }
+
+  /**
+   * Scans a query split with a {@link FactTable} that is not used by any other thread. At most one table per
+   * query thread is created for each resolution, and they are reused by later queries.
+   */
+  private TimeSeriesAccumulator scanSplit(CubeQuery query, FactScan scan, int limit) {
+    Queue<FactTable> tables = splitScanTables.computeIfAbsent(query.getResolution(),
+                                                              resolution -> new ConcurrentLinkedQueue<>());
+    FactTable table = tables.poll();
+    if (table == null) {
+      table = factTableSupplier.get(query.getResolution(), 3600);
+    }
+    try {
+      return scan(query, table, scan, limit);
+    } finally {
+      tables.offer(table);
+    }
+  }
+
+  /**
+   * Scans until the given number of records are added to the result. Same as {@link #getTimeSeries}, records
+   * skipped because of {@code null} group by values don't count toward the limit.
+   */
+  private TimeSeriesAccumulator scan(CubeQuery query, FactTable table, FactScan scan, int limit) {
+    TimeSeriesAccumulator accumulator = new TimeSeriesAccumulator(query);
+    FactScanner scanner = table.scan(scan);
+    try {
+      while (accumulator.getAddedCount() < limit && scanner.hasNext()) {
+        accumulator.add(scanner.next());
+      }
+    } finally {
+      scanner.close();
+    }
+    return accumulator;
+  }
+
   @Override
   public void delete(CubeDeleteQuery query) {
     //this may be very inefficient and its better to use TTL, this is to only support existing old functionality.
@@ -482,8 +626,16 @@ public class DefaultCube implements Cube, MeteredDataset {
       for (FactTable factTable : resolutionToFactTable.values()) {
         factTable.close();
       }
+      for (Queue<FactTable> tables : splitScanTables.values()) {
+        for (FactTable factTable : tables) {
+          factTable.close();
+        }
+      }
     } finally {
       executorService.shutdown();
+      if (queryExecutor != null) {
+        queryExecutor.shutdown();
+      }
     }
   }
 
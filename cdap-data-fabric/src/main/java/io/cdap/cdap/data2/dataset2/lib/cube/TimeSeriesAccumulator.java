@@ -0,0 +1,331 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.data2.dataset2.lib.cube;
+
+import io.cdap.cdap.api.dataset.lib.cube.AggregationFunction;
+import io.cdap.cdap.api.dataset.lib.cube.CubeQuery;
+import io.cdap.cdap.api.dataset.lib.cube.DimensionValue;
+import io.cdap.cdap.api.dataset.lib.cube.Interpolator;
+import io.cdap.cdap.api.dataset.lib.cube.TimeSeries;
+import io.cdap.cdap.api.dataset.lib.cube.TimeValue;
+import io.cdap.cdap.data2.dataset2.lib.timeseries.FactScanResult;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Accumulates {@link FactScanResult} of a {@link CubeQuery} into time series. Values of each series are kept in
+ * primitive long arrays indexed by the time bucket, which are allocated in pages on demand, so that sparse series
+ * don't take the memory of the whole query time range. For queries with more than {@link #MAX_DENSE_BUCKETS} time
+ * buckets, values are kept in a sorted map instead, so that the memory is bounded by the number of values
+ * rather than the query time range. Interpolation and limit of the query are applied when
+ * generating the resulting {@link TimeSeries}.
+ *
+ * Instances of this class are not thread safe. Each scan split of a query should use its own instance,
+ * and then {@link #merge(TimeSeriesAccumulator) merge} them.
+ */
+final class TimeSeriesAccumulator {
+
+  /**
+   * Maximum number of time buckets a query can have for using this class.
+   */
+  static final long MAX_BUCKETS = 1 << 24;
+
+  private static final int PAGE_SHIFT = 9;
+  private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+  private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+  /**
+   * Maximum number of time buckets a query can have for keeping values in pages.
+   */
+  static final int MAX_DENSE_BUCKETS = PAGE_SIZE << 6;
+
+  private final CubeQuery query;
+  private final long startBucketTs;
+  private final int bucketCount;
+  // {dimension values -> {measure -> values}}
+  private final Map<Map<String, String>, Map<String, SeriesValues>> series;
+
+  private int seriesCount;
+  private int recordsCount;
+  private int skippedCount;
+
+  /**
+   * Returns the number of time buckets for the given query.
+   */
+  static long getBucketCount(CubeQuery query) {
+    long resolution = query.getResolution();
+    return (query.getEndTs() / resolution - query.getStartTs() / resolution) + 1;
+  }
+
+  TimeSeriesAccumulator(CubeQuery query) {
+    long bucketCount = getBucketCount(query);
+    if (bucketCount <= 0 || bucketCount > MAX_BUCKETS) {
+      throw new IllegalArgumentException("Number of time buckets " + bucketCount + " is not in the range of [1, "
+                                           + MAX_BUCKETS + "] for query " + query);
+    }
+    this.query = query;
+    this.startBucketTs = query.getStartTs() / query.getResolution() * query.getResolution();
+    this.bucketCount = (int) bucketCount;
+    this.series = new LinkedHashMap<>();
+  }
+
+  /**
+   * Adds the values in the given {@link FactScanResult} to the time series.
+   */
+  void add(FactScanResult result) {
+    recordsCount++;
+
+    // using tree map, as we are using it as a key for a map
+    Map<String, String> seriesDimensions = new TreeMap<>();
+    for (String dimensionName : query.getGroupByDimensions()) {
+      for (DimensionValue dimensionValue : result.getDimensionValues()) {
+        if (dimensionName.equals(dimensionValue.getName())) {
+          if (dimensionValue.getValue() == null) {
+            // We do NOT return null as grouped by value. See DefaultCube#getTimeSeries for details.
+            skippedCount++;
+            return;
+          }
+          seriesDimensions.put(dimensionName, dimensionValue.getValue());
+          break;
+        }
+      }
+    }
+
+    AggregationFunction function = query.getMeasurements().get(result.getMeasureName());
+    SeriesValues values = null;
+    for (TimeValue timeValue : result) {
+      if (values == null) {
+        if (function == null) {
+          // should never happen: developer error
+          throw new RuntimeException("Unknown MeasureType: " + function);
+        }
+        values = getSeriesValues(seriesDimensions, result.getMeasureName());
+      }
+      int bucket = (int) ((timeValue.getTimestamp() - startBucketTs) / query.getResolution());
+      values.apply(bucket, timeValue.getValue(), function);
+    }
+  }
+
+  /**
+   * Merges the given {@link TimeSeriesAccumulator} of the same query into this one. Values of the same
+   * series and time bucket are combined with the aggregation function of the measure.
+   */
+  void merge(TimeSeriesAccumulator other) {
+    recordsCount += other.recordsCount;
+    skippedCount += other.skippedCount;
+
+    for (Map.Entry<Map<String, String>, Map<String, SeriesValues>> row : other.series.entrySet()) {
+      for (Map.Entry<String, SeriesValues> entry : row.getValue().entrySet()) {
+        AggregationFunction function = query.getMeasurements().get(entry.getKey());
+        SeriesValues values = getSeriesValues(row.getKey(), entry.getKey());
+        SeriesValues otherValues = entry.getValue();
+        for (int i = otherValues.nextBucket(0); i >= 0; i = otherValues.nextBucket(i + 1)) {
+          values.apply(i, otherValues.get(i), function);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the number of scanned records added to this accumulator.
+   */
+  int getRecordsCount() {
+    return recordsCount;
+  }
+
+  /**
+   * Returns the number of scanned records skipped due to {@code null} group by value.
+   */
+  int getSkippedCount() {
+    return skippedCount;
+  }
+
+  /**
+   * Returns the number of scanned records that are not skipped.
+   */
+  int getAddedCount() {
+    return recordsCount - skippedCount;
+  }
+
+  /**
+   * Returns the number of time series.
+   */
+  int getSeriesCount() {
+    return seriesCount;
+  }
+
+  /**
+   * Returns the accumulated {@link TimeSeries}, with the query interpolator and limit applied.
+   */
+  Collection<TimeSeries> getTimeSeries() {
+    Interpolator interpolator = query.getInterpolator();
+    int resolution = query.getResolution();
+    int limit = query.getLimit();
+
+    List<TimeSeries> result = new ArrayList<>(seriesCount);
+    for (Map.Entry<Map<String, String>, Map<String, SeriesValues>> row : series.entrySet()) {
+      for (Map.Entry<String, SeriesValues> entry : row.getValue().entrySet()) {
+        SeriesValues values = entry.getValue();
+        List<TimeValue> timeValues = new ArrayList<>();
+
+        int bucket = values.nextBucket(0);
+        while (bucket >= 0) {
+          TimeValue timeValue = new TimeValue(startBucketTs + (long) bucket * resolution, values.get(bucket));
+          timeValues.add(timeValue);
+          if (timeValues.size() >= limit) {
+            break;
+          }
+
+          int nextBucket = values.nextBucket(bucket + 1);
+          if (interpolator != null && nextBucket > bucket + 1) {
+            // don't interpolate unless we're in between data points
+            TimeValue nextTimeValue = new TimeValue(startBucketTs + (long) nextBucket * resolution,
+                                                    values.get(nextBucket));
+            for (long ts = timeValue.getTimestamp() + resolution;
+                 ts < nextTimeValue.getTimestamp() && timeValues.size() < limit; ts += resolution) {
+              timeValues.add(new TimeValue(ts, interpolator.interpolate(timeValue, nextTimeValue, ts)));
+            }
+            if (timeValues.size() >= limit) {
+              break;
+            }
+          }
+          bucket = nextBucket;
+        }
+        result.add(new TimeSeries(entry.getKey(), row.getKey(), timeValues));
+      }
+    }
+    return result;
+  }
+
+  private SeriesValues getSeriesValues(Map<String, String> seriesDimensions, String measureName) {
+    Map<String, SeriesValues> measures = series.computeIfAbsent(seriesDimensions, k -> new LinkedHashMap<>());
+    SeriesValues values = measures.get(measureName);
+    if (values == null) {
+      values = bucketCount <= MAX_DENSE_BUCKETS ? new DenseSeriesValues(bucketCount) : new SparseSeriesValues();
+      measures.put(measureName, values);
+      seriesCount++;
+    }
+    return values;
+  }
+
+  /**
+   * Combines an existing value with a new value of the same time bucket.
+   */
+  private static long combine(long existing, long value, AggregationFunction function) {
+    if (AggregationFunction.SUM == function) {
+      return existing + value;
+    } else if (AggregationFunction.MAX == function) {
+      return Math.max(existing, value);
+    } else if (AggregationFunction.MIN == function) {
+      return Math.min(existing, value);
+    } else if (AggregationFunction.LATEST == function) {
+      return value;
+    }
+    // should never happen: developer error
+    throw new RuntimeException("Unknown MeasureType: " + function);
+  }
+
+  /**
+   * Values of a time series, indexed by time bucket.
+   */
+  private interface SeriesValues {
+
+    /**
+     * Returns the value of the given time bucket, which must have a value.
+     */
+    long get(int bucket);
+
+    /**
+     * Sets the value of the given time bucket, or combines it with the existing value using the given function.
+     */
+    void apply(int bucket, long value, AggregationFunction function);
+
+    /**
+     * Returns the first time bucket that has a value, starting from the given bucket, or {@code -1} if none.
+     */
+    int nextBucket(int fromBucket);
+  }
+
+  /**
+   * {@link SeriesValues} kept in primitive long arrays, which are allocated in pages on demand.
+   */
+  private static final class DenseSeriesValues implements SeriesValues {
+    private final long[][] pages;
+    private final BitSet present;
+
+    DenseSeriesValues(int bucketCount) {
+      this.pages = new long[((bucketCount - 1) >> PAGE_SHIFT) + 1][];
+      this.present = new BitSet();
+    }
+
+    @Override
+    public long get(int bucket) {
+      return pages[bucket >> PAGE_SHIFT][bucket & PAGE_MASK];
+    }
+
+    @Override
+    public void apply(int bucket, long value, AggregationFunction function) {
+      long[] page = pages[bucket >> PAGE_SHIFT];
+      if (page == null) {
+        page = new long[PAGE_SIZE];
+        pages[bucket >> PAGE_SHIFT] = page;
+      }
+      int idx = bucket & PAGE_MASK;
+      if (present.get(bucket)) {
+        page[idx] = combine(page[idx], value, function);
+      } else {
+        present.set(bucket);
+        page[idx] = value;
+      }
+    }
+
+    @Override
+    public int nextBucket(int fromBucket) {
+      return present.nextSetBit(fromBucket);
+    }
+  }
+
+  /**
+   * {@link SeriesValues} kept in a sorted map, for queries with a wide time range.
+   */
+  private static final class SparseSeriesValues implements SeriesValues {
+    private final TreeMap<Integer, Long> values = new TreeMap<>();
+
+    @Override
+    public long get(int bucket) {
+      return values.get(bucket);
+    }
+
+    @Override
+    public void apply(int bucket, long value, AggregationFunction function) {
+      Long existing = values.get(bucket);
+      values.put(bucket, existing == null ? value : combine(existing, value, function));
+    }
+
+    @Override
+    public int nextBucket(int fromBucket) {
+      Integer bucket = values.ceilingKey(fromBucket);
+      return bucket == null ? -1 : bucket;
+    }
+  }
+}
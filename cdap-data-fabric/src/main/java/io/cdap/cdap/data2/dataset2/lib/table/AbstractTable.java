@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014-2017 Cask Data, Inc.
+ * Copyright © 2014-2019 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -24,6 +24,8 @@ import io.cdap.cdap.api.annotation.ReadOnly;
 import io.cdap.cdap.api.annotation.ReadWrite;
 import io.cdap.cdap.api.annotation.WriteOnly;
 import io.cdap.cdap.api.common.Bytes;
+import io.cdap.cdap.api.data.batch.PushdownRecordScannable;
+import io.cdap.cdap.api.data.batch.RecordKeyRange;
 import io.cdap.cdap.api.data.batch.RecordScanner;
 import io.cdap.cdap.api.data.batch.Split;
 import io.cdap.cdap.api.data.batch.SplitReader;
@@ -48,14 +50,19 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
+import java.util.Set;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
 
 /**
  * Implements some of the methods in a generic way (not necessarily in most efficient way).
  */
-public abstract class AbstractTable implements Table, TransactionAware {
+public abstract class AbstractTable implements Table, PushdownRecordScannable<StructuredRecord>, TransactionAware {
   private static final Logger LOG = LoggerFactory.getLogger(AbstractTable.class);
 
   // empty immutable row's column->value map constant
@@ -211,7 +218,46 @@ public abstract class AbstractTable implements Table, TransactionAware {
   @Override
   public RecordScanner<StructuredRecord> createSplitRecordScanner(Split split) {
     Preconditions.checkArgument(tableSchema != null, "Table has no schema and is not record scannable.");
-    return new StructuredRecordScanner(createSplitReader(split));
+    return new StructuredRecordScanner(createSplitReader(split), tableSchema);
+  }
+
+  @Nullable
+  @Override
+  public String getRecordKeyField() {
+    return tableSchema == null ? null : rowFieldName;
+  }
+
+  @Override
+  public List<Split> getSplits(RecordKeyRange keyRange) {
+    KeyRange range = toRowKeyRange(keyRange);
+    if (range == null) {
+      return getSplits();
+    }
+    byte[] start = range.getStart();
+    byte[] stop = range.getStop();
+    if (start != null && stop != null && Bytes.compareTo(start, stop) >= 0) {
+      return Collections.emptyList();
+    }
+    // A single key doesn't need more than one split
+    return getSplits(keyRange.isSingleton() ? 1 : -1, start, stop);
+  }
+
+  @ReadOnly
+  @Override
+  public RecordScanner<StructuredRecord> createSplitRecordScanner(Split split, Set<String> fields) {
+    Preconditions.checkArgument(tableSchema != null, "Table has no schema and is not record scannable.");
+    List<Schema.Field> projectedFields = tableSchema.getFields().stream()
+      .filter(field -> fields.contains(field.getName()))
+      .collect(Collectors.toList());
+    // If no field is needed, e.g. for counting, only read the row key if there is one
+    if (projectedFields.isEmpty() && rowFieldName != null) {
+      projectedFields = Collections.singletonList(tableSchema.getField(rowFieldName));
+    }
+    if (projectedFields.isEmpty() || projectedFields.size() == tableSchema.getFields().size()) {
+      return createSplitRecordScanner(split);
+    }
+    return new StructuredRecordScanner(createSplitReader(split),
+                                       Schema.recordOf(tableSchema.getRecordName(), projectedFields));
   }
 
   @WriteOnly
@@ -225,13 +271,84 @@ public abstract class AbstractTable implements Table, TransactionAware {
     put(put);
   }
 
+  /**
+   * Converts a range of record keys to a range of row keys. Returns {@code null} if the range cannot be converted,
+   * which is the case for key types whose byte encoding doesn't preserve the order of the values.
+   */
+  @Nullable
+  private KeyRange toRowKeyRange(RecordKeyRange keyRange) {
+    if (tableSchema == null || rowFieldName == null) {
+      return null;
+    }
+    Schema keySchema = tableSchema.getField(rowFieldName).getSchema();
+    Schema.Type keyType = keySchema.isNullable() ? keySchema.getNonNullable().getType() : keySchema.getType();
+
+    if (keyRange.isSingleton()) {
+      byte[] key = toRowKey(keyType, keyRange.getLower());
+      return key == null ? null : new KeyRange(key, Bytes.add(key, new byte[1]));
+    }
+
+    // Only the byte encoding of strings and bytes preserves the order
+    if (keyType != Schema.Type.STRING && keyType != Schema.Type.BYTES) {
+      return null;
+    }
+    byte[] start = null;
+    if (keyRange.getLower() != null) {
+      start = toRowKey(keyType, keyRange.getLower());
+      if (start == null) {
+        return null;
+      }
+      // The smallest key that is greater than the lower bound
+      start = keyRange.isLowerInclusive() ? start : Bytes.add(start, new byte[1]);
+    }
+    byte[] stop = null;
+    if (keyRange.getUpper() != null) {
+      stop = toRowKey(keyType, keyRange.getUpper());
+      if (stop == null) {
+        return null;
+      }
+      stop = keyRange.isUpperInclusive() ? Bytes.add(stop, new byte[1]) : stop;
+    }
+    return new KeyRange(start, stop);
+  }
+
+  /**
+   * Encodes a record key to a row key the same way as {@link RecordPutTransformer}, or returns {@code null} if the
+   * key cannot be used for looking up rows.
+   */
+  @Nullable
+  private static byte[] toRowKey(Schema.Type keyType, Object key) {
+    switch (keyType) {
+      case BOOLEAN:
+        return key instanceof Boolean ? Bytes.toBytes((Boolean) key) : null;
+      case INT:
+        return key instanceof Integer ? Bytes.toBytes((Integer) key) : null;
+      case LONG:
+        return key instanceof Long ? Bytes.toBytes((Long) key) : null;
+      case STRING:
+        return key instanceof String ? Bytes.toBytes((String) key) : null;
+      case BYTES:
+        if (key instanceof ByteBuffer) {
+          return Bytes.toBytes((ByteBuffer) key);
+        }
+        return key instanceof byte[] ? (byte[]) key : null;
+      default:
+        // Float and double are not supported, since equal values such as 0.0 and -0.0 have different encodings
+        return null;
+    }
+  }
+
   private class StructuredRecordScanner extends RecordScanner<StructuredRecord> {
     private final ReflectionRowRecordReader rowReader;
     private final SplitReader<byte[], Row> tableSplitReader;
 
-    private StructuredRecordScanner(SplitReader<byte[], Row> tableSplitReader) {
+    /**
+     * Creates a scanner that reads the fields of the given record schema, which is the table schema or a subset of it.
+     */
+    private StructuredRecordScanner(SplitReader<byte[], Row> tableSplitReader, Schema recordSchema) {
       this.tableSplitReader = tableSplitReader;
-      this.rowReader = new ReflectionRowRecordReader(tableSchema, rowFieldName);
+      boolean hasRowField = rowFieldName != null && recordSchema.getField(rowFieldName) != null;
+      this.rowReader = new ReflectionRowRecordReader(recordSchema, hasRowField ? rowFieldName : null);
     }
 
     @Override
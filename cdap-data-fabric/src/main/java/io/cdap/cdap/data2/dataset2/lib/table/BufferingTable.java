@@ -18,6 +18,7 @@ package io.cdap.cdap.data2.dataset2.lib.table;
 
 import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
 import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -27,6 +28,8 @@ import io.cdap.cdap.api.annotation.WriteOnly;
 import io.cdap.cdap.api.common.Bytes;
 import io.cdap.cdap.api.data.batch.Split;
 import io.cdap.cdap.api.dataset.DataSetException;
+import io.cdap.cdap.api.dataset.lib.AbstractCloseableIterator;
+import io.cdap.cdap.api.dataset.lib.CloseableIterator;
 import io.cdap.cdap.api.dataset.metrics.MeteredDataset;
 import io.cdap.cdap.api.dataset.table.ConflictDetection;
 import io.cdap.cdap.api.dataset.table.Filter;
@@ -44,6 +47,7 @@ import org.apache.tephra.TransactionAware;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -69,12 +73,15 @@ import javax.annotation.Nullable;
  * <p>
  * This implementation assumes that the table has name and conflicts are resolved on row level.
  * <p>
- * NOTE: this implementation doesn't cache any data in-memory besides changes. I.e. if you do get of same data that is
- *       not in in-memory buffer twice, two times it will try to fetch it from persistent store.
- *       Given the snapshot isolation tx model, this can be improved in future implementations.
+ * NOTE: by default this implementation doesn't cache any data in-memory besides changes. I.e. if you do get of same
+ *       data that is not in in-memory buffer twice, two times it will try to fetch it from persistent store.
+ *       Given the snapshot isolation tx model, persisted data doesn't change during a transaction, hence it can be
+ *       cached for the duration of the transaction by setting {@link TableProperties#PROPERTY_READ_CACHE_SIZE}.
  * <p>
- * NOTE: current implementation persists changes only at the end of transaction. Beware of OOME. There should be better
- *       implementation for MapReduce case (YMMV though, for counters/aggregations this implementation looks sweet)
+ * NOTE: current implementation persists changes only at the end of transaction. Beware of OOME. For transactions that
+ *       write a lot of data, such as in MapReduce or Spark, the in-memory buffer can be bounded by setting
+ *       {@link TableProperties#PROPERTY_BUFFER_SPILL_THRESHOLD}, in which case buffered changes are spilled to local
+ *       disk and persisted in batches at the end of transaction.
  * <p>
  * NOTE: Using {@link #get(byte[], byte[], byte[], int)} is generally always not efficient since it always hits the
  *       persisted store even if all needed data is in-memory buffer. See more info at method javadoc
@@ -86,6 +93,11 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
 
   protected static final byte[] DELETE_MARKER = new byte[0];
 
+  // Estimated memory overhead of a buffered row or column, on top of the data itself
+  private static final int BUFFER_ENTRY_OVERHEAD = 64;
+  // Prefix of the files of spilled buffer
+  private static final String SPILL_FILE_PREFIX = "table-buffer-";
+
   // name of the table
   private final String name;
   // conflict detection level
@@ -102,6 +114,21 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   // Keeps track of what was persisted so far
   private NavigableMap<byte[], NavigableMap<byte[], Update>> toUndo;
 
+  // Estimated size of in-memory buffer at which it is spilled to local disk. Zero means it is never spilled.
+  private final long spillThreshold;
+  // Estimated size of in-memory buffer
+  private long buffSize;
+  // Changes spilled from in-memory buffer to local disk in the current transaction. Null if nothing was spilled.
+  @Nullable
+  private SpilledBuffer spilled;
+  // Keeps track of what was persisted so far from spilled changes
+  @Nullable
+  private SpilledBuffer toUndoSpilled;
+
+  // Cache of data fetched from persistent store in the current transaction. It is null if caching is disabled.
+  @Nullable
+  private final PersistedReadCache readCache;
+
   // Report data ops metrics to
   private MetricsCollector metricsCollector;
 
@@ -151,6 +178,9 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     // Default uses the above scheme. Subclasses can change it by overriding the #getNameAsTxChangePrefix method
     this.nameAsTxChangePrefix = Bytes.add(new byte[]{(byte) name.length()}, Bytes.toBytes(name));
     this.buff = new ConcurrentSkipListMap<>(Bytes.BYTES_COMPARATOR);
+    this.spillThreshold = TableProperties.getBufferSpillThreshold(properties);
+    long readCacheSize = TableProperties.getReadCacheSize(properties);
+    this.readCache = readCacheSize > 0 ? new PersistedReadCache(readCacheSize) : null;
   }
 
   /**
@@ -262,6 +292,8 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     // releasing resources
     buff = null;
     toUndo = null;
+    clearReadCache();
+    closeSpilled();
   }
 
   @Override
@@ -273,7 +305,10 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     }
     // starting with fresh buffer when tx starts
     buff.clear();
+    buffSize = 0L;
     toUndo = null;
+    clearReadCache();
+    closeSpilled();
     this.tx = tx;
   }
 
@@ -309,8 +344,10 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   private Collection<byte[]> getRowChanges() {
     // we resolve conflicts on row level of individual table
     List<byte[]> changes = new ArrayList<>(buff.size());
-    for (byte[] changedRow : buff.keySet()) {
-      changes.add(Bytes.add(getNameAsTxChangePrefix(), changedRow));
+    try (CloseableIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> rows = getBufferedRows(null)) {
+      while (rows.hasNext()) {
+        changes.add(Bytes.add(getNameAsTxChangePrefix(), rows.next().getKey()));
+      }
     }
     return changes;
   }
@@ -318,19 +355,22 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   private Collection<byte[]> getColumnChanges() {
     // we resolve conflicts on row level of individual table
     List<byte[]> changes = new ArrayList<>(buff.size());
-    for (Map.Entry<byte[], NavigableMap<byte[], Update>> rowChange : buff.entrySet()) {
-      if (rowChange.getValue() == null) {
-        // NOTE: as of now we cannot detect conflict between delete whole row and row's column value change.
-        //       this is not a big problem as of now, as row deletion is now act as deletion of every column, but this
-        //       will change in future, so we will have to address the issue.
-        continue;
-      }
+    try (CloseableIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> rows = getBufferedRows(null)) {
+      while (rows.hasNext()) {
+        Map.Entry<byte[], NavigableMap<byte[], Update>> rowChange = rows.next();
+        if (rowChange.getValue() == null) {
+          // NOTE: as of now we cannot detect conflict between delete whole row and row's column value change.
+          //       this is not a big problem as of now, as row deletion is now act as deletion of every column, but
+          //       this will change in future, so we will have to address the issue.
+          continue;
+        }
 
-      // using length + value format to prevent conflicts like row="ab", column="cd" vs row="abc", column="d"
-      byte[] rowTxChange = Bytes.add(Bytes.toBytes(rowChange.getKey().length), rowChange.getKey());
+        // using length + value format to prevent conflicts like row="ab", column="cd" vs row="abc", column="d"
+        byte[] rowTxChange = Bytes.add(Bytes.toBytes(rowChange.getKey().length), rowChange.getKey());
 
-      for (byte[] column : rowChange.getValue().keySet()) {
-        changes.add(Bytes.add(getNameAsTxChangePrefix(), rowTxChange, column));
+        for (byte[] column : rowChange.getValue().keySet()) {
+          changes.add(Bytes.add(getNameAsTxChangePrefix(), rowTxChange, column));
+        }
       }
     }
     return changes;
@@ -338,17 +378,22 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
 
   @Override
   public boolean commitTx() throws Exception {
-    if (!buff.isEmpty()) {
+    if (!buff.isEmpty() || spilled != null) {
       // We first assume that all data will be persisted. So that if exception happen during persist we try to
-      // rollback everything we had in in-memory buffer.
+      // rollback everything we had in in-memory buffer and spilled to local disk.
       toUndo = buff;
+      toUndoSpilled = spilled;
+      spilled = null;
+      buffSize = 0L;
       // clearing up in-memory buffer by initializing new map.
       // NOTE: we want to init map here so that if no changes are made we re-use same instance of the map in next tx
       // NOTE: we could cache two maps and swap them to avoid creation of map instances, but code would be ugly
       buff = new ConcurrentSkipListMap<>(Bytes.BYTES_COMPARATOR);
+      // persisted data is about to change, cached data is no longer valid
+      clearReadCache();
       // TODO: tracking of persisted items can be optimized by returning a pair {succeededOrNot, persisted} which
       //       tells if persisting succeeded and what was persisted (i.e. what we will have to undo in case of rollback)
-      persist(toUndo);
+      applyBuffered(toUndo, toUndoSpilled, this::persist);
     }
     return true;
   }
@@ -357,17 +402,23 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   public void postTxCommit() {
     // don't need buffer anymore: tx has been committed
     buff.clear();
+    buffSize = 0L;
     toUndo = null;
+    clearReadCache();
+    closeSpilled();
     tx = null;
   }
 
   @Override
   public boolean rollbackTx() throws Exception {
     buff.clear();
+    buffSize = 0L;
+    clearReadCache();
     if (toUndo != null) {
-      undo(toUndo);
+      applyBuffered(toUndo, toUndoSpilled, this::undo);
       toUndo = null;
     }
+    closeSpilled();
     tx = null;
     return true;
   }
@@ -414,13 +465,12 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   public Row get(byte[] row, byte[] startColumn, byte[] stopColumn, int limit) {
     ensureTransactionIsStarted();
     reportRead(1);
-    // checking if the row was deleted inside this tx
-    NavigableMap<byte[], Update> buffCols = buff.get(row);
-
     // NOTE: since we cannot tell the exact column set, we always have to go to persisted store.
     //       potential improvement: do not fetch columns available in in-mem buffer (we know them at this point)
     try {
-      Map<byte[], byte[]> persistedCols = getPersisted(row, startColumn, stopColumn, limit);
+      // checking if the row was deleted inside this tx
+      NavigableMap<byte[], Update> buffCols = getBuffered(row);
+      Map<byte[], byte[]> persistedCols = getPersistedCached(row, startColumn, stopColumn, limit);
 
       // adding server cols, and then overriding with buffered values
       NavigableMap<byte[], byte[]> result = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
@@ -448,7 +498,7 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     ensureTransactionIsStarted();
     try {
       // get persisted, then overwrite with whats buffered
-      List<Map<byte[], byte[]>> persistedRows = getPersisted(gets);
+      List<Map<byte[], byte[]>> persistedRows = getPersistedCached(gets);
       // gets and rows lists are always of the same size
       Preconditions.checkArgument(gets.size() == persistedRows.size(),
         "Invalid number of rows fetched when performing multi-get. There must be one row for each get.");
@@ -467,7 +517,7 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
         rowColumns.putAll(persistedRow);
 
         byte[] row = get.getRow();
-        NavigableMap<byte[], Update> buffCols = buff.get(row);
+        NavigableMap<byte[], Update> buffCols = getBuffered(row);
 
         // merge what was in the buffer and what was persisted
         if (buffCols != null) {
@@ -505,6 +555,7 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     if (colVals == null) {
       colVals = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
       newRow = true;
+      buffSize += BUFFER_ENTRY_OVERHEAD + row.length;
     }
     for (int i = 0; i < columns.length; i++) {
       // NOTE: we copy passed column's and value's byte arrays to protect buffer against possible changes of these
@@ -513,11 +564,13 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
         warnAboutEmptyValue(columns[i]);
       }
       colVals.put(copy(columns[i]), new PutValue(copy(values[i])));
+      buffSize += BUFFER_ENTRY_OVERHEAD + columns[i].length + getSize(values[i]);
     }
     if (newRow) {
       // NOTE: we copy passed row's byte arrays to protect buffer against possible changes of this array on client
       buff.put(copy(row), colVals);
     }
+    spillIfNeeded();
   }
 
   /**
@@ -624,11 +677,14 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
       if (colVals == null) {
         colVals = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
         buff.put(row, colVals);
+        buffSize += BUFFER_ENTRY_OVERHEAD + row.length;
       }
       for (int i = 0; i < columns.length; i++) {
         colVals.put(columns[i], Updates.mergeUpdates(colVals.get(columns[i]), new IncrementValue(amounts[i])));
+        buffSize += BUFFER_ENTRY_OVERHEAD + columns[i].length + Bytes.SIZEOF_LONG;
       }
       reportWrite(1, getSize(row) + getSize(columns) + getSize(amounts));
+      spillIfNeeded();
     } else {
       internalIncrementAndGet(row, columns, amounts);
     }
@@ -695,17 +751,21 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   @Override
   public Scanner scan(Scan scan) {
     ensureTransactionIsStarted();
-    NavigableMap<byte[], NavigableMap<byte[], Update>> bufferMap = scanBuffer(scan);
+    CloseableIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> bufferRows = scanBuffer(scan);
     try {
-      return new BufferingScanner(bufferMap, scanPersisted(scan));
+      return new BufferingScanner(bufferRows, scanPersisted(scan));
     } catch (Exception e) {
+      bufferRows.close();
       LOG.debug("scan failed for table: " + getTransactionAwareName() +
           ", scan: " + scan.toString(), e);
       throw new DataSetException("scan failed", e);
     }
   }
 
-  private NavigableMap<byte[], NavigableMap<byte[], Update>> scanBuffer(Scan scan) {
+  private CloseableIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> scanBuffer(Scan scan) {
+    if (spilled != null) {
+      return getBufferedRows(scan);
+    }
     NavigableMap<byte[], NavigableMap<byte[], Update>> bufferMap;
     byte[] startRow = scan.getStartRow();
     byte[] stopRow = scan.getStopRow();
@@ -719,7 +779,52 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
       bufferMap = buff.subMap(startRow, true, stopRow, false);
     }
     bufferMap = applyFilter(bufferMap, scan.getFilter());
-    return bufferMap;
+    return closeableIterator(bufferMap.entrySet().iterator());
+  }
+
+  /**
+   * Returns an iterator over the rows of the in-memory buffer combined with the changes spilled to local disk.
+   *
+   * @param scan if not null, only rows matching the given scan are returned
+   */
+  private CloseableIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> getBufferedRows(@Nullable Scan scan) {
+    if (spilled == null) {
+      return closeableIterator(buff.entrySet().iterator());
+    }
+    try {
+      if (scan == null) {
+        return spilled.iterator(buff, null, null, null);
+      }
+      return spilled.iterator(buff, scan.getStartRow(), scan.getStopRow(), getRowFilter(scan.getFilter()));
+    } catch (IOException e) {
+      throw new DataSetException("Failed to read buffered changes spilled to local disk for table " + name, e);
+    }
+  }
+
+  @Nullable
+  private static Predicate<byte[]> getRowFilter(@Nullable final Filter filter) {
+    if (filter == null) {
+      return null;
+    }
+    // todo: currently we support only FuzzyRowFilter as an experimental feature
+    if (filter instanceof FuzzyRowFilter) {
+      return row -> FuzzyRowFilter.ReturnCode.INCLUDE == ((FuzzyRowFilter) filter).filterRow(row);
+    }
+    throw new DataSetException("Unknown filter type: " + filter);
+  }
+
+  private static <T> CloseableIterator<T> closeableIterator(final Iterator<T> iterator) {
+    return new AbstractCloseableIterator<T>() {
+      @Override
+      protected T computeNext() {
+        return iterator.hasNext() ? iterator.next() : endOfData();
+      }
+
+      @Override
+      public void close() {
+        // no-op
+      }
+    };
   }
 
   private NavigableMap<byte[], NavigableMap<byte[], Update>> applyFilter(
@@ -746,13 +851,13 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   private Map<byte[], byte[]> getRowMap(byte[] row) throws Exception {
     NavigableMap<byte[], byte[]> result = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
     // checking if the row was deleted inside this tx
-    NavigableMap<byte[], Update> buffCols = buff.get(row);
+    NavigableMap<byte[], Update> buffCols = getBuffered(row);
     boolean rowDeleted = buffCols == null && buff.containsKey(row);
     if (rowDeleted) {
       return Collections.emptyMap();
     }
 
-    Map<byte[], byte[]> persisted = getPersisted(row, null);
+    Map<byte[], byte[]> persisted = getPersistedCached(row, null);
 
 
     result.putAll(persisted);
@@ -767,11 +872,11 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   private Map<byte[], byte[]> getRowMap(byte[] row, byte[][] columns) throws Exception {
     NavigableMap<byte[], byte[]> result = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
     // checking if the row was deleted inside this tx
-    NavigableMap<byte[], Update> buffCols = buff.get(row);
+    NavigableMap<byte[], Update> buffCols = getBuffered(row);
 
     // if nothing locally, return all from server
     if (buffCols == null) {
-      return getPersisted(row, columns);
+      return getPersistedCached(row, columns);
     }
 
     // otherwise try to fetch data from in-memory buffer. If not all present - fetch leftover from persisted
@@ -793,7 +898,7 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     // fetching from server those that were not found in in-mem buffer
     if (colsToFetchFromPersisted.size() > 0) {
       Map<byte[], byte[]> persistedCols =
-        getPersisted(row, colsToFetchFromPersisted.toArray(new byte[colsToFetchFromPersisted.size()][]));
+        getPersistedCached(row, colsToFetchFromPersisted.toArray(new byte[colsToFetchFromPersisted.size()][]));
       if (persistedCols != null) {
         result.putAll(persistedCols);
       }
@@ -805,6 +910,175 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     return unwrapDeletes(result);
   }
 
+  /**
+   * Fetches column->value pairs for set of columns, either from the read cache or from persistent store.
+   * Data fetched from persistent store is added to the read cache.
+   */
+  private NavigableMap<byte[], byte[]> getPersistedCached(byte[] row, @Nullable byte[][] columns) throws Exception {
+    if (readCache == null) {
+      return getPersisted(row, columns);
+    }
+    NavigableMap<byte[], byte[]> cached = readCache.get(row, columns);
+    reportReadCache(cached != null ? 1 : 0, cached != null ? 0 : 1);
+    if (cached != null) {
+      return cached;
+    }
+    NavigableMap<byte[], byte[]> persisted = getPersisted(row, columns);
+    readCache.put(row, columns, persisted);
+    return persisted;
+  }
+
+  /**
+   * Fetches column->value pairs for range of columns. The read cache is used only if it has the whole row,
+   * as otherwise the set of columns in the range is not known.
+   */
+  private NavigableMap<byte[], byte[]> getPersistedCached(byte[] row, byte[] startColumn,
+                                                          byte[] stopColumn, int limit) throws Exception {
+    if (readCache == null) {
+      return getPersisted(row, startColumn, stopColumn, limit);
+    }
+    NavigableMap<byte[], byte[]> cached = readCache.get(row, null);
+    reportReadCache(cached != null ? 1 : 0, cached != null ? 0 : 1);
+    if (cached != null) {
+      return getRange(cached, startColumn, stopColumn, limit);
+    }
+    return getPersisted(row, startColumn, stopColumn, limit);
+  }
+
+  /**
+   * Fetches a list of rows. Gets that can be served by the read cache are not sent to persistent store,
+   * the rest is fetched with a single call to {@link #getPersisted(List)} and added to the read cache.
+   */
+  private List<Map<byte[], byte[]>> getPersistedCached(List<Get> gets) throws Exception {
+    if (readCache == null) {
+      return getPersisted(gets);
+    }
+    List<Map<byte[], byte[]>> results = new ArrayList<>(gets.size());
+    List<Get> missedGets = new ArrayList<>();
+    for (Get get : gets) {
+      NavigableMap<byte[], byte[]> cached = readCache.get(get.getRow(), getColumns(get));
+      // null is a placeholder for the result to be fetched from persistent store
+      results.add(cached);
+      if (cached == null) {
+        missedGets.add(get);
+      }
+    }
+    reportReadCache(gets.size() - missedGets.size(), missedGets.size());
+    if (missedGets.isEmpty()) {
+      return results;
+    }
+
+    List<Map<byte[], byte[]>> persistedRows = getPersisted(missedGets);
+    Preconditions.checkArgument(missedGets.size() == persistedRows.size(),
+      "Invalid number of rows fetched when performing multi-get. There must be one row for each get.");
+    Iterator<Map<byte[], byte[]>> persistedIter = persistedRows.iterator();
+    Iterator<Get> getIter = gets.iterator();
+    for (int i = 0; i < results.size(); i++) {
+      Get get = getIter.next();
+      if (results.get(i) == null) {
+        Map<byte[], byte[]> persisted = persistedIter.next();
+        readCache.put(get.getRow(), getColumns(get), persisted);
+        results.set(i, persisted);
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Returns the buffered changes of the given row, including the ones spilled to local disk.
+   */
+  @Nullable
+  private NavigableMap<byte[], Update> getBuffered(byte[] row) throws IOException {
+    NavigableMap<byte[], Update> buffCols = buff.get(row);
+    if (spilled == null) {
+      return buffCols;
+    }
+    NavigableMap<byte[], Update> spilledCols = spilled.get(row);
+    if (spilledCols == null || buffCols == null) {
+      return spilledCols == null ? buffCols : spilledCols;
+    }
+    return SpilledBuffer.merge(spilledCols, buffCols);
+  }
+
+  /**
+   * Spills in-memory buffer to local disk if its estimated size reached the spill threshold.
+   */
+  private void spillIfNeeded() {
+    if (spillThreshold <= 0 || buffSize < spillThreshold) {
+      return;
+    }
+    try {
+      if (spilled == null) {
+        spilled = new SpilledBuffer(new File(System.getProperty("java.io.tmpdir")), SPILL_FILE_PREFIX);
+      }
+      spilled.spill(buff);
+    } catch (IOException e) {
+      throw new DataSetException("Failed to spill buffered changes to local disk for table " + name, e);
+    }
+    LOG.debug("Spilled {} rows of estimated size {} bytes of table {} to local disk, {} spills so far",
+              buff.size(), buffSize, name, spilled.getSegmentCount());
+    // using a new map instead of clearing, as open scanners may still be iterating over it
+    buff = new ConcurrentSkipListMap<>(Bytes.BYTES_COMPARATOR);
+    buffSize = 0L;
+  }
+
+  /**
+   * Calls the given consumer with the buffered changes. If some changes were spilled to local disk, the changes are
+   * read from local disk and the consumer is called with batches of rows of up to the spill threshold size,
+   * so that they don't need to be loaded in memory all at once.
+   */
+  private void applyBuffered(NavigableMap<byte[], NavigableMap<byte[], Update>> buffered,
+                             @Nullable SpilledBuffer spilledBuffered, ChangesConsumer consumer) throws Exception {
+    if (spilledBuffered == null) {
+      consumer.accept(buffered);
+      return;
+    }
+    try (CloseableIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> rows =
+           spilledBuffered.iterator(buffered, null, null, null)) {
+      NavigableMap<byte[], NavigableMap<byte[], Update>> batch = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+      long batchSize = 0L;
+      while (rows.hasNext()) {
+        Map.Entry<byte[], NavigableMap<byte[], Update>> row = rows.next();
+        batch.put(row.getKey(), row.getValue());
+        batchSize += BUFFER_ENTRY_OVERHEAD + row.getKey().length;
+        for (Map.Entry<byte[], Update> column : row.getValue().entrySet()) {
+          batchSize += BUFFER_ENTRY_OVERHEAD + column.getKey().length + getSize(column.getValue().getBytes());
+        }
+        if (batchSize >= spillThreshold) {
+          consumer.accept(batch);
+          batch = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+          batchSize = 0L;
+        }
+      }
+      if (!batch.isEmpty()) {
+        consumer.accept(batch);
+      }
+    }
+  }
+
+  private void closeSpilled() {
+    if (spilled != null) {
+      spilled.close();
+      spilled = null;
+    }
+    if (toUndoSpilled != null) {
+      toUndoSpilled.close();
+      toUndoSpilled = null;
+    }
+  }
+
+  private void clearReadCache() {
+    if (readCache != null) {
+      readCache.clear();
+    }
+  }
+
+  @Nullable
+  private static byte[][] getColumns(Get get) {
+    List<byte[]> columns = get.getColumns();
+    return columns == null ? null : columns.toArray(new byte[columns.size()][]);
+  }
+
   /**
    * Applies the buffered updates on top of the map of persisted values.  The persisted map is modified in place
    * with the updated values.
@@ -937,6 +1211,17 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     }
   }
 
+  private void reportReadCache(int hits, int misses) {
+    if (metricsCollector != null) {
+      if (hits > 0) {
+        metricsCollector.increment(Constants.Metrics.Name.Dataset.READ_CACHE_HITS, hits);
+      }
+      if (misses > 0) {
+        metricsCollector.increment(Constants.Metrics.Name.Dataset.READ_CACHE_MISSES, misses);
+      }
+    }
+  }
+
   private int getSize(long[] values) {
     return Bytes.SIZEOF_LONG * values.length;
   }
@@ -962,11 +1247,11 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   // they get annotated
 
   @ReadOnly
-  private Iterator<byte[]> getBufferKeyIterator(NavigableMap<byte[], NavigableMap<byte[], Update>> buffer) {
-    final Iterator<byte[]> iterator = buffer.keySet().iterator();
-    return new AbstractIterator<byte[]>() {
+  private Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> getBufferIterator(
+    final Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> iterator) {
+    return new AbstractIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>>() {
       @Override
-      protected byte[] computeNext() {
+      protected Map.Entry<byte[], NavigableMap<byte[], Update>> computeNext() {
         return BufferingTable.this.hasNext(iterator) ? BufferingTable.this.next(iterator) : endOfData();
       }
     };
@@ -982,28 +1267,22 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     return iterator.next();
   }
 
-  @ReadOnly
-  private NavigableMap<byte[], Update> getFromBuffer(NavigableMap<byte[], NavigableMap<byte[], Update>> buffer,
-                                                     byte[] key) {
-    return buffer.get(key);
-  }
-
   /**
    * Scanner implementation that overlays buffered data on top of already persisted data.
    */
   private class BufferingScanner implements Scanner {
-    private final NavigableMap<byte[], NavigableMap<byte[], Update>> buffer;
+    private final CloseableIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> buffer;
     private final Scanner persistedScanner;
-    private final Iterator<byte[]> keyIter;
+    private final Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> bufferIter;
     private byte[] currentKey;
+    private NavigableMap<byte[], Update> currentBuffered;
     private Row currentRow;
 
-    private BufferingScanner(NavigableMap<byte[], NavigableMap<byte[], Update>> buffer, Scanner persistedScanner) {
+    private BufferingScanner(CloseableIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> buffer,
+                             Scanner persistedScanner) {
       this.buffer = buffer;
-      this.keyIter = getBufferKeyIterator(buffer);
-      if (this.keyIter.hasNext()) {
-        currentKey = keyIter.next();
-      }
+      this.bufferIter = getBufferIterator(buffer);
+      nextBuffered();
       this.persistedScanner = persistedScanner;
       this.currentRow = this.persistedScanner.next();
     }
@@ -1035,18 +1314,18 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
       } else if (order < 0) {
         // buffer row comes first or persisted scanner is empty
         Map<byte[], byte[]> persistedRow = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
-        mergeToPersisted(persistedRow, getFromBuffer(buffer, currentKey), null);
+        mergeToPersisted(persistedRow, currentBuffered, null);
         result = new Result(copy(currentKey), persistedRow);
 
-        currentKey = keyIter.hasNext() ? keyIter.next() : null;
+        nextBuffered();
       } else {
         // if currentKey and currentRow are equal, merge and advance both
         Map<byte[], byte[]> persisted = currentRow.getColumns();
-        mergeToPersisted(persisted, getFromBuffer(buffer, currentKey), null);
+        mergeToPersisted(persisted, currentBuffered, null);
         result = new Result(currentRow.getRow(), persisted);
 
         currentRow = persistedScanner.next();
-        currentKey = keyIter.hasNext() ? keyIter.next() : null;
+        nextBuffered();
       }
       return result;
     }
@@ -1054,9 +1333,28 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     @Override
     public void close() {
       this.persistedScanner.close();
+      this.buffer.close();
+    }
+
+    private void nextBuffered() {
+      if (bufferIter.hasNext()) {
+        Map.Entry<byte[], NavigableMap<byte[], Update>> entry = bufferIter.next();
+        currentKey = entry.getKey();
+        currentBuffered = entry.getValue();
+      } else {
+        currentKey = null;
+        currentBuffered = null;
+      }
     }
   }
 
+  /**
+   * Consumer of buffered changes, as row->(column->value) map.
+   */
+  private interface ChangesConsumer {
+    void accept(NavigableMap<byte[], NavigableMap<byte[], Update>> changes) throws Exception;
+  }
+
   private long warnedCount = 0L;
   private long skippedCount = 0L;
   private long warnFrequency = 1L;
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2015-2016 Cask Data, Inc.
+ * Copyright © 2015-2019 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -22,6 +22,8 @@ import io.cdap.cdap.api.annotation.Beta;
 import io.cdap.cdap.api.annotation.ReadOnly;
 import io.cdap.cdap.api.annotation.WriteOnly;
 import io.cdap.cdap.api.common.Bytes;
+import io.cdap.cdap.api.data.batch.PushdownRecordScannable;
+import io.cdap.cdap.api.data.batch.RecordKeyRange;
 import io.cdap.cdap.api.data.batch.RecordScanner;
 import io.cdap.cdap.api.data.batch.Split;
 import io.cdap.cdap.api.data.batch.SplitReader;
@@ -47,6 +49,7 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.lang.reflect.Type;
 import java.util.List;
+import java.util.Set;
 import javax.annotation.Nullable;
 
 /**
@@ -55,7 +58,8 @@ import javax.annotation.Nullable;
  * @param <T> the type of objects in the table
  */
 @Beta
-public class ObjectMappedTableDataset<T> extends AbstractDataset implements ObjectMappedTable<T> {
+public class ObjectMappedTableDataset<T> extends AbstractDataset
+  implements ObjectMappedTable<T>, PushdownRecordScannable<StructuredRecord> {
   private static final Logger LOG = LoggerFactory.getLogger(ObjectMappedTableDataset.class);
 
   private final Table table;
@@ -191,6 +195,27 @@ public class ObjectMappedTableDataset<T> extends AbstractDataset implements Obje
     return table.createSplitRecordScanner(split);
   }
 
+  @Nullable
+  @Override
+  public String getRecordKeyField() {
+    return table instanceof PushdownRecordScannable ? ((PushdownRecordScannable<?>) table).getRecordKeyField() : null;
+  }
+
+  @Override
+  public List<Split> getSplits(RecordKeyRange keyRange) {
+    return table instanceof PushdownRecordScannable
+      ? ((PushdownRecordScannable<?>) table).getSplits(keyRange) : table.getSplits();
+  }
+
+  @ReadOnly
+  @Override
+  @SuppressWarnings("unchecked")
+  public RecordScanner<StructuredRecord> createSplitRecordScanner(Split split, Set<String> fields) {
+    return table instanceof PushdownRecordScannable
+      ? ((PushdownRecordScannable<StructuredRecord>) table).createSplitRecordScanner(split, fields)
+      : table.createSplitRecordScanner(split);
+  }
+
   @ReadOnly
   @Override
   public SplitReader<byte[], T> createSplitReader(Split split) {
@@ -0,0 +1,203 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.data2.dataset2.lib.table;
+
+import io.cdap.cdap.api.common.Bytes;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import javax.annotation.Nullable;
+
+/**
+ * A size bounded cache of row data fetched from the persistent store by {@link BufferingTable}. Since the persisted
+ * data visible to a transaction doesn't change until the transaction commits its own changes, data cached in this
+ * class is valid for the duration of a transaction and must be {@link #clear() cleared} when the transaction
+ * persists its changes or ends.
+ * <p>
+ * For each row, either all columns are cached, if the row was fetched as a whole, or a set of columns that were
+ * fetched, including the ones that were found to be absent. Rows are evicted in least recently used order when the
+ * estimated size of the cached data exceeds the maximum size. Byte arrays are copied on the way in and out, so that
+ * callers cannot change the cached data.
+ * <p>
+ * Instances of this class are not thread safe.
+ */
+final class PersistedReadCache {
+
+  // Estimated memory overhead of a cached row or column, on top of the data itself
+  private static final int ENTRY_OVERHEAD = 64;
+
+  private final long maxSize;
+  private final LinkedHashMap<ByteBuffer, CachedRow> rows;
+  private long size;
+
+  PersistedReadCache(long maxSize) {
+    this.maxSize = maxSize;
+    this.rows = new LinkedHashMap<>(16, 0.75f, true);
+  }
+
+  /**
+   * Returns the cached data of the given row.
+   *
+   * @param row the row key
+   * @param columns set of columns to get. null means all columns.
+   * @return map of column->value pairs, or {@code null} if not all requested data is in the cache
+   */
+  @Nullable
+  NavigableMap<byte[], byte[]> get(byte[] row, @Nullable byte[][] columns) {
+    CachedRow cachedRow = rows.get(ByteBuffer.wrap(row));
+    if (cachedRow == null) {
+      return null;
+    }
+    NavigableMap<byte[], byte[]> result = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+    if (columns == null) {
+      if (!cachedRow.complete) {
+        return null;
+      }
+      for (Map.Entry<byte[], byte[]> entry : cachedRow.values.entrySet()) {
+        result.put(entry.getKey(), copy(entry.getValue()));
+      }
+      return result;
+    }
+    for (byte[] column : columns) {
+      byte[] value = cachedRow.values.get(column);
+      if (value != null) {
+        result.put(column, copy(value));
+      } else if (!cachedRow.complete && !cachedRow.absent.contains(column)) {
+        return null;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Adds the data fetched from the persistent store to the cache.
+   *
+   * @param row the row key
+   * @param columns set of columns that was fetched. null means all columns.
+   * @param persisted map of column->value pairs fetched for the given columns
+   */
+  void put(byte[] row, @Nullable byte[][] columns, Map<byte[], byte[]> persisted) {
+    ByteBuffer key = ByteBuffer.wrap(row);
+    CachedRow cachedRow = rows.get(key);
+    if (cachedRow == null) {
+      cachedRow = new CachedRow(row.length);
+      rows.put(ByteBuffer.wrap(copy(row)), cachedRow);
+      size += cachedRow.size;
+    } else if (cachedRow.complete) {
+      return;
+    }
+
+    long oldSize = cachedRow.size;
+    if (columns == null) {
+      cachedRow.setAll(persisted);
+    } else {
+      for (byte[] column : columns) {
+        byte[] value = persisted.get(column);
+        if (value == null) {
+          cachedRow.setAbsent(column);
+        } else {
+          cachedRow.setValue(column, value);
+        }
+      }
+    }
+    size += cachedRow.size - oldSize;
+
+    // A row larger than the whole cache is not worth keeping
+    if (cachedRow.size > maxSize) {
+      rows.remove(key);
+      size -= cachedRow.size;
+    }
+    evict();
+  }
+
+  /**
+   * Removes everything from the cache.
+   */
+  void clear() {
+    rows.clear();
+    size = 0L;
+  }
+
+  /**
+   * Returns the estimated size in bytes of the cached data.
+   */
+  long getSize() {
+    return size;
+  }
+
+  private void evict() {
+    Iterator<CachedRow> iterator = rows.values().iterator();
+    while (size > maxSize && iterator.hasNext()) {
+      size -= iterator.next().size;
+      iterator.remove();
+    }
+  }
+
+  private static byte[] copy(byte[] bytes) {
+    return Arrays.copyOf(bytes, bytes.length);
+  }
+
+  /**
+   * Cached data of a single row.
+   */
+  private static final class CachedRow {
+    private final NavigableMap<byte[], byte[]> values;
+    private final NavigableSet<byte[]> absent;
+    // Whether all columns of the row are in the cache
+    private boolean complete;
+    private long size;
+
+    CachedRow(int rowKeySize) {
+      this.values = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+      this.absent = new TreeSet<>(Bytes.BYTES_COMPARATOR);
+      this.size = ENTRY_OVERHEAD + rowKeySize;
+    }
+
+    void setAll(Map<byte[], byte[]> persisted) {
+      for (byte[] column : absent) {
+        size -= ENTRY_OVERHEAD + column.length;
+      }
+      absent.clear();
+      for (Map.Entry<byte[], byte[]> entry : persisted.entrySet()) {
+        setValue(entry.getKey(), entry.getValue());
+      }
+      complete = true;
+    }
+
+    void setValue(byte[] column, byte[] value) {
+      byte[] oldValue = values.put(copy(column), copy(value));
+      if (oldValue == null) {
+        size += ENTRY_OVERHEAD + column.length + value.length;
+      } else {
+        size += value.length - oldValue.length;
+      }
+    }
+
+    void setAbsent(byte[] column) {
+      if (!values.containsKey(column) && absent.add(copy(column))) {
+        size += ENTRY_OVERHEAD + column.length;
+      }
+    }
+  }
+}
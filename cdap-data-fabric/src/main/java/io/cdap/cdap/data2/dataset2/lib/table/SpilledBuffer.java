@@ -0,0 +1,441 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.data2.dataset2.lib.table;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Maps;
+import com.google.common.collect.PeekingIterator;
+import com.google.common.io.Closeables;
+import com.google.common.io.CountingOutputStream;
+import io.cdap.cdap.api.common.Bytes;
+import io.cdap.cdap.api.dataset.lib.AbstractCloseableIterator;
+import io.cdap.cdap.api.dataset.lib.CloseableIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import javax.annotation.Nullable;
+
+/**
+ * Buffered changes of {@link BufferingTable} that were spilled to local disk to bound the memory used by the
+ * in-memory buffer. Each spill writes the buffer, which is sorted by row, to a new segment file. A small sparse
+ * index of row keys is kept in memory for each segment, so that a single row can be read without reading the whole
+ * segment.
+ * <p>
+ * Segments are ordered from the oldest to the newest. Changes of the same row and column in multiple segments are
+ * combined with {@link Updates#mergeUpdates(Update, Update)}, the same way as they are combined in the in-memory
+ * buffer.
+ * <p>
+ * Instances of this class are not thread safe.
+ */
+final class SpilledBuffer implements Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SpilledBuffer.class);
+
+  // Interval in bytes between the entries of the sparse row index of a segment
+  private static final int INDEX_INTERVAL = 64 * 1024;
+
+  private static final byte TYPE_PUT = 0;
+  private static final byte TYPE_DELETE = 1;
+  private static final byte TYPE_INCREMENT = 2;
+
+  // Row key length written at the end of a segment
+  private static final int END_OF_SEGMENT = -1;
+
+  private final File dir;
+  private final String prefix;
+  private final List<Segment> segments;
+
+  /**
+   * Creates an instance that writes segment files to the given directory.
+   *
+   * @param dir the directory for segment files
+   * @param prefix prefix of the segment file names, at least three characters long
+   */
+  SpilledBuffer(File dir, String prefix) {
+    this.dir = dir;
+    this.prefix = prefix;
+    this.segments = new ArrayList<>();
+  }
+
+  /**
+   * Writes the given buffered changes to a new segment.
+   *
+   * @param rows buffered changes as row->(column->update) map
+   */
+  void spill(NavigableMap<byte[], NavigableMap<byte[], Update>> rows) throws IOException {
+    if (rows.isEmpty()) {
+      return;
+    }
+    File file = File.createTempFile(prefix, ".spill", dir);
+    try {
+      segments.add(Segment.write(file, rows));
+    } catch (IOException e) {
+      deleteFile(file);
+      throw e;
+    }
+  }
+
+  /**
+   * Returns the number of segments.
+   */
+  int getSegmentCount() {
+    return segments.size();
+  }
+
+  /**
+   * Returns the spilled changes of the given row, combined over all segments.
+   *
+   * @param row the row key
+   * @return map of column->update, or {@code null} if the row has no spilled changes
+   */
+  @Nullable
+  NavigableMap<byte[], Update> get(byte[] row) throws IOException {
+    NavigableMap<byte[], Update> result = null;
+    for (Segment segment : segments) {
+      NavigableMap<byte[], Update> columns = segment.get(row);
+      if (columns != null) {
+        result = result == null ? columns : merge(result, columns);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns an iterator over the rows in the given range, with the changes of all segments and of the given
+   * in-memory buffer combined, in the order of row keys. The in-memory buffer is considered newer than all segments.
+   *
+   * @param buffer the in-memory buffer
+   * @param startRow first row in the range, inclusive. null means from the first row.
+   * @param stopRow last row in the range, exclusive. null means to the last row.
+   * @param rowFilter if not null, only rows accepted by it are returned
+   */
+  CloseableIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> iterator(
+    NavigableMap<byte[], NavigableMap<byte[], Update>> buffer, @Nullable byte[] startRow, @Nullable byte[] stopRow,
+    @Nullable Predicate<byte[]> rowFilter) throws IOException {
+
+    List<SegmentIterator> segmentIterators = new ArrayList<>(segments.size());
+    try {
+      for (Segment segment : segments) {
+        segmentIterators.add(segment.iterator(startRow, stopRow));
+      }
+    } catch (IOException e) {
+      for (SegmentIterator iterator : segmentIterators) {
+        iterator.close();
+      }
+      throw e;
+    }
+
+    NavigableMap<byte[], NavigableMap<byte[], Update>> bufferRange = buffer;
+    if (startRow != null) {
+      bufferRange = bufferRange.tailMap(startRow, true);
+    }
+    if (stopRow != null) {
+      bufferRange = bufferRange.headMap(stopRow, false);
+    }
+    return new MergingIterator(segmentIterators, bufferRange.entrySet().iterator(), rowFilter);
+  }
+
+  /**
+   * Deletes all segments.
+   */
+  @Override
+  public void close() {
+    for (Segment segment : segments) {
+      deleteFile(segment.file);
+    }
+    segments.clear();
+  }
+
+  /**
+   * Applies the newer changes of a row on top of the older ones.
+   *
+   * @param older changes of the row to modify
+   * @param newer changes of the row to apply
+   * @return the older map, with the newer changes applied
+   */
+  static NavigableMap<byte[], Update> merge(NavigableMap<byte[], Update> older, NavigableMap<byte[], Update> newer) {
+    for (Map.Entry<byte[], Update> entry : newer.entrySet()) {
+      older.put(entry.getKey(), Updates.mergeUpdates(older.get(entry.getKey()), entry.getValue()));
+    }
+    return older;
+  }
+
+  private static void deleteFile(File file) {
+    if (!file.delete() && file.exists()) {
+      LOG.warn("Failed to delete spilled buffer file {}", file);
+    }
+  }
+
+  /**
+   * A segment file with the changes of one spill. Each row is written as the row key, the number of columns and
+   * then for each column the column key, the update type and the value. Byte arrays are written as the length
+   * followed by the bytes.
+   */
+  private static final class Segment {
+    private final File file;
+    private final byte[] firstRow;
+    private final byte[] lastRow;
+    // Sparse index of row keys and their offsets in the file
+    private final List<byte[]> indexRows;
+    private final List<Long> indexOffsets;
+
+    private Segment(File file, byte[] firstRow, byte[] lastRow, List<byte[]> indexRows, List<Long> indexOffsets) {
+      this.file = file;
+      this.firstRow = firstRow;
+      this.lastRow = lastRow;
+      this.indexRows = indexRows;
+      this.indexOffsets = indexOffsets;
+    }
+
+    static Segment write(File file, NavigableMap<byte[], NavigableMap<byte[], Update>> rows) throws IOException {
+      List<byte[]> indexRows = new ArrayList<>();
+      List<Long> indexOffsets = new ArrayList<>();
+      CountingOutputStream counting = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+      try (DataOutputStream out = new DataOutputStream(counting)) {
+        long nextIndexOffset = 0L;
+        for (Map.Entry<byte[], NavigableMap<byte[], Update>> row : rows.entrySet()) {
+          long offset = counting.getCount();
+          if (offset >= nextIndexOffset) {
+            indexRows.add(row.getKey());
+            indexOffsets.add(offset);
+            nextIndexOffset = offset + INDEX_INTERVAL;
+          }
+          writeBytes(out, row.getKey());
+          out.writeInt(row.getValue().size());
+          for (Map.Entry<byte[], Update> column : row.getValue().entrySet()) {
+            writeBytes(out, column.getKey());
+            writeUpdate(out, column.getValue());
+          }
+        }
+        out.writeInt(END_OF_SEGMENT);
+      }
+      return new Segment(file, rows.firstKey(), rows.lastKey(), indexRows, indexOffsets);
+    }
+
+    @Nullable
+    NavigableMap<byte[], Update> get(byte[] row) throws IOException {
+      if (Bytes.compareTo(row, firstRow) < 0 || Bytes.compareTo(row, lastRow) > 0) {
+        return null;
+      }
+      try (SegmentIterator iterator = iterator(row, null)) {
+        if (!iterator.hasNext()) {
+          return null;
+        }
+        Map.Entry<byte[], NavigableMap<byte[], Update>> entry = iterator.next();
+        return Bytes.equals(row, entry.getKey()) ? entry.getValue() : null;
+      }
+    }
+
+    SegmentIterator iterator(@Nullable byte[] startRow, @Nullable byte[] stopRow) throws IOException {
+      long offset = 0L;
+      if (startRow != null) {
+        int idx = Collections.binarySearch(indexRows, startRow, Bytes.BYTES_COMPARATOR);
+        // use the closest index entry that is not after the start row
+        idx = idx >= 0 ? idx : -idx - 2;
+        offset = idx >= 0 ? indexOffsets.get(idx) : 0L;
+      }
+      FileInputStream is = new FileInputStream(file);
+      try {
+        is.getChannel().position(offset);
+        return new SegmentIterator(new DataInputStream(new BufferedInputStream(is)), startRow, stopRow);
+      } catch (IOException e) {
+        Closeables.closeQuietly(is);
+        throw e;
+      }
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+
+    private static void writeUpdate(DataOutputStream out, Update update) throws IOException {
+      if (update instanceof IncrementValue) {
+        out.writeByte(TYPE_INCREMENT);
+        out.writeLong(((IncrementValue) update).getValue());
+        return;
+      }
+      byte[] value = ((PutValue) update).getValue();
+      if (value == null) {
+        out.writeByte(TYPE_DELETE);
+      } else {
+        out.writeByte(TYPE_PUT);
+        writeBytes(out, value);
+      }
+    }
+  }
+
+  /**
+   * Iterator over the rows of a segment in a range.
+   */
+  private static final class SegmentIterator
+    extends AbstractCloseableIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> {
+
+    private final DataInputStream in;
+    private final byte[] startRow;
+    private final byte[] stopRow;
+
+    SegmentIterator(DataInputStream in, @Nullable byte[] startRow, @Nullable byte[] stopRow) {
+      this.in = in;
+      this.startRow = startRow;
+      this.stopRow = stopRow;
+    }
+
+    @Override
+    protected Map.Entry<byte[], NavigableMap<byte[], Update>> computeNext() {
+      try {
+        while (true) {
+          int rowLength = in.readInt();
+          if (rowLength == END_OF_SEGMENT) {
+            return endOfData();
+          }
+          byte[] row = readBytes(rowLength);
+          if (stopRow != null && Bytes.compareTo(row, stopRow) >= 0) {
+            return endOfData();
+          }
+          int columnCount = in.readInt();
+          if (startRow != null && Bytes.compareTo(row, startRow) < 0) {
+            skipColumns(columnCount);
+            continue;
+          }
+          NavigableMap<byte[], Update> columns = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+          for (int i = 0; i < columnCount; i++) {
+            byte[] column = readBytes(in.readInt());
+            columns.put(column, readUpdate());
+          }
+          return Maps.immutableEntry(row, columns);
+        }
+      } catch (IOException e) {
+        throw Throwables.propagate(e);
+      }
+    }
+
+    @Override
+    public void close() {
+      Closeables.closeQuietly(in);
+    }
+
+    private byte[] readBytes(int length) throws IOException {
+      byte[] bytes = new byte[length];
+      in.readFully(bytes);
+      return bytes;
+    }
+
+    private Update readUpdate() throws IOException {
+      byte type = in.readByte();
+      switch (type) {
+        case TYPE_PUT:
+          return new PutValue(readBytes(in.readInt()));
+        case TYPE_DELETE:
+          return new PutValue(null);
+        case TYPE_INCREMENT:
+          return new IncrementValue(in.readLong());
+        default:
+          throw new IOException("Unknown update type " + type + " in spilled buffer");
+      }
+    }
+
+    private void skipColumns(int columnCount) throws IOException {
+      for (int i = 0; i < columnCount; i++) {
+        in.skipBytes(in.readInt());
+        byte type = in.readByte();
+        if (type == TYPE_PUT) {
+          in.skipBytes(in.readInt());
+        } else if (type == TYPE_INCREMENT) {
+          in.skipBytes(Bytes.SIZEOF_LONG);
+        }
+      }
+    }
+  }
+
+  /**
+   * Iterator that combines the rows of the segment iterators and the in-memory buffer iterator in the order of
+   * row keys.
+   */
+  private static final class MergingIterator
+    extends AbstractCloseableIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> {
+
+    private final List<SegmentIterator> segmentIterators;
+    // from the oldest to the newest
+    private final List<PeekingIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>>> sources;
+    private final Predicate<byte[]> rowFilter;
+
+    MergingIterator(List<SegmentIterator> segmentIterators,
+                    Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> bufferIterator,
+                    @Nullable Predicate<byte[]> rowFilter) {
+      this.segmentIterators = segmentIterators;
+      this.sources = new ArrayList<>(segmentIterators.size() + 1);
+      for (SegmentIterator iterator : segmentIterators) {
+        sources.add(Iterators.peekingIterator(iterator));
+      }
+      sources.add(Iterators.peekingIterator(bufferIterator));
+      this.rowFilter = rowFilter;
+    }
+
+    @Override
+    protected Map.Entry<byte[], NavigableMap<byte[], Update>> computeNext() {
+      while (true) {
+        byte[] row = null;
+        for (PeekingIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> source : sources) {
+          if (source.hasNext() && (row == null || Bytes.compareTo(source.peek().getKey(), row) < 0)) {
+            row = source.peek().getKey();
+          }
+        }
+        if (row == null) {
+          return endOfData();
+        }
+
+        NavigableMap<byte[], Update> columns = null;
+        for (PeekingIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> source : sources) {
+          if (source.hasNext() && Bytes.equals(source.peek().getKey(), row)) {
+            NavigableMap<byte[], Update> sourceColumns = source.next().getValue();
+            // only rows read from segments are modified, since the in-memory buffer is the newest source
+            columns = columns == null ? sourceColumns : merge(columns, sourceColumns);
+          }
+        }
+        if (rowFilter == null || rowFilter.apply(row)) {
+          return Maps.immutableEntry(row, columns);
+        }
+      }
+    }
+
+    @Override
+    public void close() {
+      for (SegmentIterator iterator : segmentIterators) {
+        iterator.close();
+      }
+    }
+  }
+}
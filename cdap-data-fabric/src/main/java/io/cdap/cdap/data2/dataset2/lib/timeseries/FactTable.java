@@ -192,6 +192,44 @@ public final class FactTable implements Closeable {
     return new FactScanner(getScanner(scan), codec, scan.getStartTs(), scan.getEndTs(), scan.getMeasureNames());
   }
 
+  /**
+   * Splits the given {@link FactScan} into scans of consecutive time ranges, such that each scan covers whole
+   * timebases of the table rows. Since the timebase comes right after the aggregation group in the row key,
+   * the row key ranges of the resulting scans don't overlap, and they can be scanned in parallel.
+   *
+   * @param scan the scan to split
+   * @param maxSplits maximum number of scans to return
+   * @return list of scans ordered by time, which covers the same facts as the given scan
+   */
+  public List<FactScan> splitScan(FactScan scan, int maxSplits) {
+    long startTimeBase = getTimeBase(scan.getStartTs());
+    long endTimeBase = getTimeBase(scan.getEndTs());
+    long timeBases = (endTimeBase - startTimeBase) / rollTime + 1;
+    if (maxSplits <= 1 || timeBases <= 1) {
+      return Collections.singletonList(scan);
+    }
+
+    long timeBasesPerSplit = (timeBases + maxSplits - 1) / maxSplits;
+    List<FactScan> splits = new ArrayList<>();
+    long splitStartTs = scan.getStartTs();
+    for (long timeBase = startTimeBase + timeBasesPerSplit * rollTime;
+         timeBase <= endTimeBase; timeBase += timeBasesPerSplit * rollTime) {
+      if (timeBase > splitStartTs) {
+        splits.add(new FactScan(splitStartTs, timeBase - 1, scan.getMeasureNames(), scan.getDimensionValues()));
+        splitStartTs = timeBase;
+      }
+    }
+    splits.add(new FactScan(splitStartTs, scan.getEndTs(), scan.getMeasureNames(), scan.getDimensionValues()));
+    return splits;
+  }
+
+  /**
+   * Returns the timebase of the row that stores the given timestamp.
+   */
+  private long getTimeBase(long ts) {
+    return ts / resolution * resolution / rollTime * rollTime;
+  }
+
   private List<String> getSortedMeasures(Collection<String> measures) {
     Map<String, Long> measureToEntityMap = new HashMap<>();
     List<String> measureNames = new ArrayList<>();
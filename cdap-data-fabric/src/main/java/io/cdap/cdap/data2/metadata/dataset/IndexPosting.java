@@ -0,0 +1,53 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.data2.metadata.dataset;
+
+import io.cdap.cdap.api.metadata.MetadataEntity;
+
+/**
+ * A posting of the inverted search index of a {@link MetadataDataset}: an index value of an index column,
+ * along with the {@link MetadataEntity} it was generated for.
+ */
+final class IndexPosting {
+  private final String value;
+  private final String targetType;
+  private final MetadataEntity metadataEntity;
+
+  IndexPosting(String value, String targetType, MetadataEntity metadataEntity) {
+    this.value = value;
+    this.targetType = targetType;
+    this.metadataEntity = metadataEntity;
+  }
+
+  /**
+   * @return the index value, including the namespace prefix for namespaced index columns
+   */
+  String getValue() {
+    return value;
+  }
+
+  /**
+   * @return the type of the metadata entity
+   */
+  String getTargetType() {
+    return targetType;
+  }
+
+  MetadataEntity getMetadataEntity() {
+    return metadataEntity;
+  }
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.data2.metadata.dataset;
+
+import com.google.common.base.Splitter;
+import io.cdap.cdap.api.dataset.lib.CloseableIterator;
+import io.cdap.cdap.api.metadata.MetadataEntity;
+import io.cdap.cdap.api.metadata.MetadataScope;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * Searches metadata through the inverted search index of the {@link MetadataDataset metadata datasets}.
+ * <p>
+ * The search query is split on whitespace into terms, each of which is looked up in the postings of the default
+ * index column. A term can be a [key]:[value] search, and can end with '*' for a prefix search, the same as for
+ * {@link MetadataDataset#search(SearchRequest)}. An entity matches the query if it matches any of the terms, and all
+ * of the terms prefixed with '+'. For example, 'tags:beta +owner:sam' finds all entities owned by 'sam', and ranks
+ * those tagged as 'beta' first.
+ * <p>
+ * For {@link SortInfo#DEFAULT}, matching entities are ranked by the number of postings that match the query.
+ * For other sorts, the postings of the sort column in the {@link MetadataScope#SYSTEM} dataset are walked in order,
+ * and only as many entities as needed for the requested page and cursors are read.
+ */
+public final class IndexedSearch {
+
+  private static final Pattern SPACE_SEPARATOR_PATTERN = Pattern.compile("\\s+");
+  private static final String REQUIRED_TERM_PREFIX = "+";
+  private static final String MATCH_ALL_QUERY = "*";
+
+  private final Function<MetadataScope, MetadataDataset> datasets;
+
+  /**
+   * @param datasets provides the {@link MetadataDataset} for a scope
+   */
+  public IndexedSearch(Function<MetadataScope, MetadataDataset> datasets) {
+    this.datasets = datasets;
+  }
+
+  /**
+   * Searches for the entities matching a {@link SearchRequest}. Only the entities in the page requested by the
+   * offset and limit of the request are returned. The inverted search index of all the datasets must be ready, see
+   * {@link MetadataDataset#isSearchIndexReady()}.
+   *
+   * @param scopes the scopes of metadata to match the query against
+   * @param request the search request
+   * @return the {@link Result} of the search
+   */
+  public Result search(Set<MetadataScope> scopes, SearchRequest request) {
+    if (SortInfo.SortOrder.WEIGHTED == request.getSortInfo().getSortOrder()) {
+      return searchByWeight(scopes, request);
+    }
+    return searchSorted(scopes, request);
+  }
+
+  private Result searchByWeight(Set<MetadataScope> scopes, SearchRequest request) {
+    Map<MetadataEntity, Integer> scores = match(scopes, request);
+
+    // sort the matching entities in descending order of score
+    List<Map.Entry<MetadataEntity, Integer>> sorted = new ArrayList<>(scores.entrySet());
+    sorted.sort((o1, o2) -> o2.getValue() - o1.getValue());
+
+    int startIndex = Math.min(request.getOffset(), sorted.size());
+    // Account for overflow
+    int endIndex = (int) Math.min(sorted.size(), (long) request.getOffset() + request.getLimit());
+    List<MetadataEntity> entities = new ArrayList<>(endIndex - startIndex);
+    for (Map.Entry<MetadataEntity, Integer> entry : sorted.subList(startIndex, endIndex)) {
+      entities.add(entry.getKey());
+    }
+    // cursors are not supported when sorting by weight
+    return new Result(entities, sorted.size(), Collections.emptyList());
+  }
+
+  private Result searchSorted(Set<MetadataScope> scopes, SearchRequest request) {
+    // no need to look up any terms if the query matches all entities
+    Map<MetadataEntity, Integer> matches = MATCH_ALL_QUERY.equals(request.getQuery().trim())
+      ? null : match(scopes, request);
+
+    SortInfo sortInfo = request.getSortInfo();
+    MetadataDataset.IndexColumn indexColumn = MetadataDataset.getIndexColumn(sortInfo.getSortBy(),
+                                                                             sortInfo.getSortOrder());
+    String column = request.isNamespaced() ? indexColumn.getColumn() : indexColumn.getCrossNamespaceColumn();
+
+    int offset = request.getOffset();
+    int limit = request.getLimit();
+    int numCursors = request.getNumCursors();
+    // A cursor is the first entity of a page following the requested one. We need to read up to the first entity
+    // of the last page to return a cursor for. Without cursors, we only need to read up to the requested page.
+    long bound = numCursors == 0 || limit == 0
+      ? (long) offset + limit : offset + (long) numCursors * limit + 1;
+
+    // walk the sorted postings of all the namespaces searched, merged by value
+    PriorityQueue<SortedPostings> queue = new PriorityQueue<>(
+      Comparator.comparing(SortedPostings::getSortValue).thenComparingInt(SortedPostings::getOrder));
+    List<SortedPostings> allPostings = new ArrayList<>();
+    MetadataDataset dataset = datasets.apply(MetadataScope.SYSTEM);
+    try {
+      for (MetadataDataset.SearchTerm searchTerm : MetadataDataset.getSearchTerms(request, MATCH_ALL_QUERY)) {
+        String prefix = searchTerm.getTerm();
+        SortedPostings postings = new SortedPostings(allPostings.size(), prefix,
+                                                     dataset.scanSortedPostings(column, prefix, request.getCursor()));
+        allPostings.add(postings);
+        if (postings.advance()) {
+          queue.add(postings);
+        }
+      }
+
+      List<MetadataEntity> entities = new ArrayList<>();
+      List<String> cursors = new ArrayList<>();
+      Set<MetadataEntity> seen = new HashSet<>();
+      while (seen.size() < bound && !queue.isEmpty()) {
+        SortedPostings postings = queue.poll();
+        IndexPosting posting = postings.getCurrent();
+        String sortValue = postings.getSortValue();
+        if (postings.advance()) {
+          queue.add(postings);
+        }
+
+        MetadataEntity entity = posting.getMetadataEntity();
+        if (!accept(posting, request) || (matches != null && !matches.containsKey(entity)) || !seen.add(entity)) {
+          continue;
+        }
+        int position = seen.size();
+        if (position > offset && position <= (long) offset + limit) {
+          entities.add(entity);
+        } else if (position > (long) offset + limit && (position - offset - 1) % limit == 0) {
+          cursors.add(sortValue);
+        }
+        if (matches != null && seen.size() == matches.size()) {
+          // all matching entities have been found
+          break;
+        }
+      }
+      return new Result(entities, seen.size(), cursors);
+    } finally {
+      for (SortedPostings postings : allPostings) {
+        postings.iterator.close();
+      }
+    }
+  }
+
+  /**
+   * Looks up the terms of the query of a search request, and returns all matching entities along with the number of
+   * postings that matched for each entity.
+   */
+  private Map<MetadataEntity, Integer> match(Set<MetadataScope> scopes, SearchRequest request) {
+    MetadataDataset.IndexColumn indexColumn = MetadataDataset.DEFAULT_INDEX_COLUMN;
+    String column = request.isNamespaced() ? indexColumn.getColumn() : indexColumn.getCrossNamespaceColumn();
+
+    Map<MetadataEntity, Integer> scores = new HashMap<>();
+    Set<MetadataEntity> required = null;
+    for (String term : Splitter.on(SPACE_SEPARATOR_PATTERN).omitEmptyStrings().split(request.getQuery())) {
+      boolean isRequired = term.length() > REQUIRED_TERM_PREFIX.length() && term.startsWith(REQUIRED_TERM_PREFIX);
+      if (isRequired) {
+        term = term.substring(REQUIRED_TERM_PREFIX.length());
+      }
+      Set<MetadataEntity> termMatches = new HashSet<>();
+      for (MetadataDataset.SearchTerm searchTerm : MetadataDataset.getSearchTerms(request, term)) {
+        for (MetadataScope scope : scopes) {
+          try (CloseableIterator<IndexPosting> postings =
+                 datasets.apply(scope).scanPostings(column, searchTerm.getTerm(), searchTerm.isPrefix())) {
+            while (postings.hasNext()) {
+              IndexPosting posting = postings.next();
+              if (accept(posting, request)) {
+                scores.merge(posting.getMetadataEntity(), 1, Integer::sum);
+                termMatches.add(posting.getMetadataEntity());
+              }
+            }
+          }
+        }
+      }
+      if (isRequired) {
+        if (required == null) {
+          required = termMatches;
+        } else {
+          required.retainAll(termMatches);
+        }
+      }
+    }
+    if (required != null) {
+      scores.keySet().retainAll(required);
+    }
+    return scores;
+  }
+
+  /**
+   * Returns whether a posting passes the type and hidden entity filters of a search request.
+   */
+  private static boolean accept(IndexPosting posting, SearchRequest request) {
+    Set<String> types = request.getTypes();
+    if (!types.isEmpty() && !types.contains(posting.getTargetType())) {
+      return false;
+    }
+    return request.shouldShowHidden() || !MetadataDataset.isHidden(posting.getMetadataEntity());
+  }
+
+  /**
+   * The postings of a sort column in one namespace, positioned at the current posting.
+   */
+  private static final class SortedPostings {
+    private final int order;
+    private final String prefix;
+    private final CloseableIterator<IndexPosting> iterator;
+    private IndexPosting current;
+    private String sortValue;
+
+    SortedPostings(int order, String prefix, CloseableIterator<IndexPosting> iterator) {
+      this.order = order;
+      this.prefix = prefix;
+      this.iterator = iterator;
+    }
+
+    /**
+     * Moves to the next posting. Returns {@code false} if there are no more postings.
+     */
+    boolean advance() {
+      if (!iterator.hasNext()) {
+        current = null;
+        sortValue = null;
+        return false;
+      }
+      current = iterator.next();
+      // sort and return cursors by the value without the namespace
+      sortValue = current.getValue().substring(prefix.length());
+      return true;
+    }
+
+    int getOrder() {
+      return order;
+    }
+
+    IndexPosting getCurrent() {
+      return current;
+    }
+
+    String getSortValue() {
+      return sortValue;
+    }
+  }
+
+  /**
+   * The result of a search through the inverted search index.
+   */
+  public static final class Result {
+    private final List<MetadataEntity> entities;
+    private final int total;
+    private final List<String> cursors;
+
+    Result(List<MetadataEntity> entities, int total, List<String> cursors) {
+      this.entities = entities;
+      this.total = total;
+      this.cursors = cursors;
+    }
+
+    /**
+     * @return the entities in the requested page, in order
+     */
+    public List<MetadataEntity> getEntities() {
+      return entities;
+    }
+
+    /**
+     * @return the number of matching entities. For sorted searches, entities after the last cursor requested
+     *         are not counted.
+     */
+    public int getTotal() {
+      return total;
+    }
+
+    /**
+     * @return the cursors for the pages following the requested page, without the namespace prefix
+     */
+    public List<String> getCursors() {
+      return cursors;
+    }
+  }
+}
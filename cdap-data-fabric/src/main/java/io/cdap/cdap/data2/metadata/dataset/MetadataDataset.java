@@ -29,7 +29,9 @@ import com.google.common.collect.Sets;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import io.cdap.cdap.api.common.Bytes;
+import io.cdap.cdap.api.dataset.lib.AbstractCloseableIterator;
 import io.cdap.cdap.api.dataset.lib.AbstractDataset;
+import io.cdap.cdap.api.dataset.lib.CloseableIterator;
 import io.cdap.cdap.api.dataset.lib.IndexedTable;
 import io.cdap.cdap.api.dataset.table.Delete;
 import io.cdap.cdap.api.dataset.table.Put;
@@ -167,6 +169,16 @@ import javax.annotation.Nullable;
  * i:program:namespace:ns1:application:appX:type:mapreduce:program:mr:tags:bar            i  -> ns1:tags:bar
  *                                                                                        xi -> tags:bar
  *
+ * Every index value is also written to the inverted search index, as a posting row that starts with 'p', the index
+ * column, and the index value, followed by the key of the metadata value row. Postings are sorted by column and value,
+ * such that a search term, a prefix search, or a walk of the sorted entity names or creation times, is a single scan
+ * that does not need to read the index rows. See {@link IndexedSearch}. With our previous example, the following
+ * postings will be written (showing the value row key as its metadata entity and key):
+ *
+ * p:i:ns1:foo bar:program:namespace:ns1:application:appX:type:mapreduce:program:mr:owner  p  -> i
+ * p:xi:foo bar:program:namespace:ns1:application:appX:type:mapreduce:program:mr:owner     p  -> xi
+ * ...
+ *
  * In addition to the entry and it's indexes, there is also history write done per {@link MetadataEntity}.
  * The row key for history is similar to the index row key except it is prefixed by 'h' instead of 'v' and it
  * contains an inverted timestamp at the end instead of the metadata key-value.
@@ -192,6 +204,10 @@ public class MetadataDataset extends AbstractDataset {
   private static final String HISTORY_COLUMN = "h"; // column for metadata history
   private static final String VALUE_COLUMN = "v";  // column for metadata value
   private static final String TAGS_SEPARATOR = ",";
+  private static final String POSTING_COLUMN = "p"; // column of the postings of the inverted search index
+  private static final char POSTING_SEPARATOR = '\0';
+  private static final String SEARCH_INDEX_VERSION_COLUMN = "ver";
+  private static final String SEARCH_INDEX_VERSION = "1";
 
   // Fuzzy key is of form <row key, key mask>. We want to compare row keys.
   private static final Comparator<ImmutablePair<byte[], byte[]>> FUZZY_KEY_COMPARATOR =
@@ -552,6 +568,7 @@ public class MetadataDataset extends AbstractDataset {
     try (Scanner scan = indexedTable.scan(startKey, stopKey)) {
       Row next;
       while ((next = scan.next()) != null) {
+        deletePostings(next, metadataEntity, metadataKey);
         deleteIndexRow(next);
       }
     }
@@ -804,14 +821,9 @@ public class MetadataDataset extends AbstractDataset {
 
     MetadataEntity metadataEntity = MetadataKey.extractMetadataEntityFromKey(rowKey);
 
-    try {
-      NamespacedEntityId namespacedEntityId = EntityId.fromMetadataEntity(metadataEntity);
-      // if the entity starts with _ then skip it unless the caller choose to showHidden.
-      if (!showHidden && namespacedEntityId != null && namespacedEntityId.getEntityName().startsWith("_")) {
-        return Optional.empty();
-      }
-    } catch (IllegalArgumentException e) {
-      // ignore. For custom entities we don't really want to hide them if they start with _
+    // if the entity starts with _ then skip it unless the caller choose to showHidden.
+    if (!showHidden && isHidden(metadataEntity)) {
+      return Optional.empty();
     }
 
     String key = MetadataKey.extractMetadataKey(rowKey);
@@ -819,6 +831,20 @@ public class MetadataDataset extends AbstractDataset {
     return Optional.ofNullable(entry);
   }
 
+  /**
+   * Returns whether the given {@link MetadataEntity} is hidden from search results, that is, whether its entity
+   * name starts with '_'. Custom entities are never hidden.
+   */
+  static boolean isHidden(MetadataEntity metadataEntity) {
+    try {
+      NamespacedEntityId namespacedEntityId = EntityId.fromMetadataEntity(metadataEntity);
+      return namespacedEntityId != null && namespacedEntityId.getEntityName().startsWith("_");
+    } catch (IllegalArgumentException e) {
+      // ignore. For custom entities we don't really want to hide them if they start with _
+      return false;
+    }
+  }
+
   /**
    * Generate the search terms to use for the query.
    * The search query is split on whitespace into one or more raw terms. Each raw term is cleaned and formatted
@@ -829,11 +855,17 @@ public class MetadataDataset extends AbstractDataset {
    * @return formatted search query which is namespaced
    */
   private Iterable<SearchTerm> getSearchTerms(SearchRequest searchRequest) {
+    return getSearchTerms(searchRequest, searchRequest.getQuery());
+  }
+
+  /**
+   * Generate the search terms to use for a query, in the namespaces and entity scopes of a search request.
+   */
+  static List<SearchTerm> getSearchTerms(SearchRequest searchRequest, String searchQuery) {
     Optional<NamespaceId> namespace = searchRequest.getNamespaceId();
     Set<EntityScope> entityScopes = searchRequest.getEntityScopes();
     List<SearchTerm> searchTerms = new LinkedList<>();
     Consumer<String> termAdder = determineSearchFields(namespace, entityScopes, searchTerms);
-    String searchQuery = searchRequest.getQuery();
     for (String term : Splitter.on(SPACE_SEPARATOR_PATTERN).omitEmptyStrings().trimResults().split(searchQuery)) {
       termAdder.accept(term);
     }
@@ -911,11 +943,164 @@ public class MetadataDataset extends AbstractDataset {
         put.add(Bytes.toBytes(indexColumn.getCrossNamespaceColumn()), Bytes.toBytes(lowercaseIndex));
         put.add(Bytes.toBytes(indexColumn.getColumn()), Bytes.toBytes(namespacePrefix + lowercaseIndex));
         indexedTable.put(put);
+
+        writePosting(indexColumn.getCrossNamespaceColumn(), lowercaseIndex,
+                     metadataEntry.getMetadataEntity(), metadataEntry.getKey());
+        writePosting(indexColumn.getColumn(), namespacePrefix + lowercaseIndex,
+                     metadataEntry.getMetadataEntity(), metadataEntry.getKey());
+      }
+    }
+  }
+
+  /**
+   * Writes a posting of the inverted search index.
+   */
+  private void writePosting(String column, String value, MetadataEntity metadataEntity, String metadataKey) {
+    // the index value is separated from the entity by a \0 in the posting row key. Values containing it are
+    // very unlikely, and are only found through the index rows.
+    if (value.indexOf(POSTING_SEPARATOR) >= 0) {
+      return;
+    }
+    Put put = new Put(MetadataKey.createPostingRowKey(column, value, metadataEntity, metadataKey));
+    put.add(Bytes.toBytes(POSTING_COLUMN), Bytes.toBytes(column));
+    indexedTable.put(put);
+  }
+
+  /**
+   * Deletes the postings of the inverted search index written for the index values of an index row.
+   */
+  private void deletePostings(Row indexRow, MetadataEntity metadataEntity, String metadataKey) {
+    for (IndexColumn indexColumn : INDEX_COLUMNS) {
+      for (String column : new String[] { indexColumn.getColumn(), indexColumn.getCrossNamespaceColumn() }) {
+        String value = indexRow.getString(column);
+        if (value != null && value.indexOf(POSTING_SEPARATOR) < 0) {
+          indexedTable.delete(MetadataKey.createPostingRowKey(column, value, metadataEntity, metadataKey));
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns whether the inverted search index is complete, that is, whether it was rebuilt from the index rows
+   * with {@link #rebuildSearchIndex(byte[], int)} and marked ready with {@link #markSearchIndexReady()}.
+   * From then on, it is maintained with every metadata change.
+   */
+  public boolean isSearchIndexReady() {
+    return indexedTable.get(MetadataKey.getSearchIndexStateRowKey(), Bytes.toBytes(SEARCH_INDEX_VERSION_COLUMN))
+      != null;
+  }
+
+  /**
+   * Marks the inverted search index as complete.
+   */
+  public void markSearchIndexReady() {
+    indexedTable.put(MetadataKey.getSearchIndexStateRowKey(), Bytes.toBytes(SEARCH_INDEX_VERSION_COLUMN),
+                     Bytes.toBytes(SEARCH_INDEX_VERSION));
+  }
+
+  /**
+   * Writes the postings of the inverted search index for a batch of existing index rows. This is needed for
+   * metadata written before the inverted search index was introduced. Postings that already exist are
+   * simply overwritten.
+   *
+   * @param startRow the index row to start with, or {@code null} to start with the first index row
+   * @param batchSize the maximum number of index rows to process
+   * @return the index row to start the next batch with, or {@code null} if all index rows were processed
+   */
+  @Nullable
+  public byte[] rebuildSearchIndex(@Nullable byte[] startRow, int batchSize) {
+    byte[] indexRowPrefix = MetadataKey.getIndexRowPrefix();
+    byte[] startKey = startRow == null ? indexRowPrefix : startRow;
+    byte[] stopKey = Bytes.stopKeyForPrefix(indexRowPrefix);
+
+    int count = 0;
+    try (Scanner scanner = indexedTable.scan(startKey, stopKey)) {
+      Row next;
+      while ((next = scanner.next()) != null) {
+        if (count++ == batchSize) {
+          return next.getRow();
+        }
+        byte[] rowKey = next.getRow();
+        MetadataEntity metadataEntity = MetadataKey.extractMetadataEntityFromKey(rowKey);
+        String metadataKey = MetadataKey.extractMetadataKey(rowKey);
+        for (IndexColumn indexColumn : INDEX_COLUMNS) {
+          for (String column : new String[] { indexColumn.getColumn(), indexColumn.getCrossNamespaceColumn() }) {
+            String value = next.getString(column);
+            if (value != null) {
+              writePosting(column, value, metadataEntity, metadataKey);
+            }
+          }
+        }
       }
     }
+    return null;
+  }
+
+  /**
+   * Scans the postings of the inverted search index for an index value. The postings are returned in the order
+   * of their values, and the postings with the same value in the order of their metadata entity.
+   *
+   * @param column the index column to scan
+   * @param value the index value to look up
+   * @param isPrefix whether to return all the postings whose value starts with the given value
+   * @return a {@link CloseableIterator} over the postings, which must be closed after use
+   */
+  CloseableIterator<IndexPosting> scanPostings(String column, String value, boolean isPrefix) {
+    byte[] rowPrefix = MetadataKey.createPostingRowPrefix(column);
+    byte[] valuePrefix = Bytes.add(rowPrefix, Bytes.toBytes(value));
+    if (!isPrefix) {
+      valuePrefix = Bytes.add(valuePrefix, new byte[] { POSTING_SEPARATOR });
+    }
+    return scanPostings(rowPrefix.length, valuePrefix, Bytes.stopKeyForPrefix(valuePrefix));
+  }
+
+  /**
+   * Scans the postings of the inverted search index whose value starts with a prefix, in the order of their values.
+   *
+   * @param column the index column to scan
+   * @param prefix the prefix of the index values, for example the namespace prefix
+   * @param start the value, without the prefix, to start the scan with, or {@code null} to start with the first value
+   * @return a {@link CloseableIterator} over the postings, which must be closed after use
+   */
+  CloseableIterator<IndexPosting> scanSortedPostings(String column, String prefix, @Nullable String start) {
+    byte[] rowPrefix = MetadataKey.createPostingRowPrefix(column);
+    byte[] valuePrefix = Bytes.add(rowPrefix, Bytes.toBytes(prefix));
+    byte[] startKey = Strings.isNullOrEmpty(start) ? valuePrefix : Bytes.add(valuePrefix, Bytes.toBytes(start));
+    return scanPostings(rowPrefix.length, startKey, Bytes.stopKeyForPrefix(valuePrefix));
+  }
+
+  private CloseableIterator<IndexPosting> scanPostings(int rowPrefixLength, byte[] startKey, byte[] stopKey) {
+    Scanner scanner = indexedTable.scan(startKey, stopKey);
+    return new AbstractCloseableIterator<IndexPosting>() {
+      @Override
+      protected IndexPosting computeNext() {
+        Row next;
+        while ((next = scanner.next()) != null) {
+          // see deleteIndexRow() for why deleted rows may be returned with null values
+          if (next.get(POSTING_COLUMN) == null) {
+            continue;
+          }
+          byte[] rowKey = next.getRow();
+          int separatorIndex = MetadataKey.getPostingSeparatorIndex(rowKey, rowPrefixLength);
+          if (separatorIndex < 0) {
+            continue;
+          }
+          byte[] valueRowKey = MetadataKey.extractValueRowKeyFromPosting(rowKey, separatorIndex);
+          return new IndexPosting(Bytes.toString(rowKey, rowPrefixLength, separatorIndex - rowPrefixLength),
+                                  MetadataKey.extractTargetType(valueRowKey),
+                                  MetadataKey.extractMetadataEntityFromKey(valueRowKey));
+        }
+        return endOfData();
+      }
+
+      @Override
+      public void close() {
+        scanner.close();
+      }
+    };
   }
 
-  private IndexColumn getIndexColumn(String key, SortInfo.SortOrder sortOrder) {
+  static IndexColumn getIndexColumn(String key, SortInfo.SortOrder sortOrder) {
     IndexColumn indexColumn = DEFAULT_INDEX_COLUMN;
     switch (sortOrder) {
       case ASC:
@@ -1,5 +1,5 @@
 /*
- * Copyright 2018 Cask Data, Inc.
+ * Copyright 2018-2019 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -15,10 +15,12 @@
  */
 package io.cdap.cdap.data2.metadata.dataset;
 
+import io.cdap.cdap.api.common.Bytes;
 import io.cdap.cdap.api.metadata.MetadataEntity;
 import io.cdap.cdap.common.metadata.MetadataUtil;
 import io.cdap.cdap.data2.dataset2.lib.table.MDSKey;
 
+import java.util.Arrays;
 import javax.annotation.Nullable;
 
 /**
@@ -27,6 +29,9 @@ import javax.annotation.Nullable;
 class MetadataKey {
   private static final byte[] VALUE_ROW_PREFIX = {'v'}; // value row prefix to store metadata value
   private static final byte[] INDEX_ROW_PREFIX = {'i'}; // index row prefix used for metadata search
+  private static final byte[] POSTING_ROW_PREFIX = {'p'}; // posting row prefix of the inverted search index
+  private static final byte[] STATE_ROW_PREFIX = {'s'}; // row prefix for the state of the inverted search index
+  private static final byte[] POSTING_SEPARATOR = {0};
 
   static String extractMetadataKey(byte[] rowKey) {
     MDSKey.Splitter keySplitter = new MDSKey(rowKey).split();
@@ -87,6 +92,64 @@ class MetadataKey {
     return builder.build();
   }
 
+  /**
+   * Returns the common prefix of all metadata index rows.
+   */
+  static byte[] getIndexRowPrefix() {
+    return new MDSKey.Builder().add(INDEX_ROW_PREFIX).build().getKey();
+  }
+
+  /**
+   * Returns the key of the row that keeps the state of the inverted search index.
+   */
+  static byte[] getSearchIndexStateRowKey() {
+    return new MDSKey.Builder().add(STATE_ROW_PREFIX).build().getKey();
+  }
+
+  /**
+   * Creates the common prefix of the posting rows of an index column in the format:
+   * [{@link #POSTING_ROW_PREFIX}][column]
+   */
+  static byte[] createPostingRowPrefix(String column) {
+    return new MDSKey.Builder().add(POSTING_ROW_PREFIX).add(column).build().getKey();
+  }
+
+  /**
+   * Creates a key for a posting row of the inverted search index in the format:
+   * [{@link #POSTING_ROW_PREFIX}][column]value\0[value row key]
+   * The index value is not length prefixed, so that the postings of a column are sorted by value and
+   * can be scanned by value prefix. The value row key identifies the metadata entity and key the posting is for.
+   * The value must not contain a {@code \0} character.
+   */
+  static byte[] createPostingRowKey(String column, String value, MetadataEntity metadataEntity, String key) {
+    return Bytes.concat(createPostingRowPrefix(column), Bytes.toBytes(value), POSTING_SEPARATOR,
+                        createValueRowKey(metadataEntity, key).getKey());
+  }
+
+  /**
+   * Returns the position of the separator between the value and the value row key of a posting row key,
+   * or {@code -1} if the row key does not have one.
+   *
+   * @param rowKey the posting row key
+   * @param prefixLength the length of the posting row prefix of the column
+   */
+  static int getPostingSeparatorIndex(byte[] rowKey, int prefixLength) {
+    for (int i = prefixLength; i < rowKey.length; i++) {
+      if (rowKey[i] == POSTING_SEPARATOR[0]) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the value row key of a posting row key, which can be used with {@link #extractTargetType(byte[])},
+   * {@link #extractMetadataEntityFromKey(byte[])} and {@link #extractMetadataKey(byte[])}.
+   */
+  static byte[] extractValueRowKeyFromPosting(byte[] rowKey, int separatorIndex) {
+    return Arrays.copyOfRange(rowKey, separatorIndex + 1, rowKey.length);
+  }
+
   static MetadataEntity extractMetadataEntityFromKey(byte[] rowKey) {
     MDSKey.Splitter keySplitter = new MDSKey(rowKey).split();
 
@@ -21,6 +21,7 @@ import io.cdap.cdap.api.common.Bytes;
 import io.cdap.cdap.api.dataset.lib.AbstractCloseableIterator;
 import io.cdap.cdap.api.dataset.lib.CloseableIterator;
 import io.cdap.cdap.api.dataset.lib.IndexedTable;
+import io.cdap.cdap.api.dataset.table.Get;
 import io.cdap.cdap.api.dataset.table.Put;
 import io.cdap.cdap.api.dataset.table.Row;
 import io.cdap.cdap.api.dataset.table.Scanner;
@@ -37,8 +38,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -67,6 +71,15 @@ public final class NoSqlStructuredTable implements StructuredTable {
     table.put(convertFieldsToBytes(fields));
   }
 
+  @Override
+  public void multiUpsert(Collection<? extends Collection<Field<?>>> multiFields) throws InvalidFieldException {
+    LOG.trace("Table {}: Write multiple fields {}", schema.getTableId(), multiFields);
+    // Writes are buffered by the underlying table until the transaction commits, hence there is nothing to batch here
+    for (Collection<Field<?>> fields : multiFields) {
+      table.put(convertFieldsToBytes(fields));
+    }
+  }
+
   @Override
   public Optional<StructuredRow> read(Collection<Field<?>> keys) throws InvalidFieldException {
     LOG.trace("Table {}: Read with keys {}", schema.getTableId(), keys);
@@ -86,12 +99,58 @@ public final class NoSqlStructuredTable implements StructuredTable {
     return row.isEmpty() ? Optional.empty() : Optional.of(new NoSqlStructuredRow(row, schema));
   }
 
+  @Override
+  public Collection<StructuredRow> multiRead(Collection<? extends Collection<Field<?>>> multiKeys)
+    throws InvalidFieldException {
+    LOG.trace("Table {}: Read with multiple keys {}", schema.getTableId(), multiKeys);
+    List<Get> gets = new ArrayList<>(multiKeys.size());
+    for (Collection<Field<?>> keys : multiKeys) {
+      gets.add(new Get(convertKeyToBytes(keys, false)));
+    }
+    List<StructuredRow> result = new ArrayList<>(gets.size());
+    for (Row row : table.get(gets)) {
+      if (!row.isEmpty()) {
+        result.add(new NoSqlStructuredRow(row, schema));
+      }
+    }
+    return result;
+  }
+
   @Override
   public CloseableIterator<StructuredRow> scan(Range keyRange, int limit) throws InvalidFieldException {
     LOG.trace("Table {}: Scan range {} with limit {}", schema.getTableId(), keyRange, limit);
     return new LimitIterator(new ScannerIterator(getScanner(keyRange), schema), limit);
   }
 
+  @Override
+  public CloseableIterator<StructuredRow> multiScan(Collection<Range> keyRanges,
+                                                    int limit) throws InvalidFieldException {
+    LOG.trace("Table {}: Scan multiple ranges {} with limit {}", schema.getTableId(), keyRanges, limit);
+    List<byte[][]> keyIntervals = new ArrayList<>(keyRanges.size());
+    for (Range keyRange : keyRanges) {
+      keyIntervals.add(getScanKeys(keyRange));
+    }
+
+    // Sort the row key intervals by the start key and coalesce the overlapping ones, so that the disjoint intervals
+    // can be scanned one after another to return rows in key order, each one only once.
+    keyIntervals.sort((o1, o2) -> Bytes.compareTo(o1[0], o2[0]));
+    List<byte[][]> disjointIntervals = new ArrayList<>(keyIntervals.size());
+    for (byte[][] interval : keyIntervals) {
+      if (Bytes.compareTo(interval[0], interval[1]) >= 0) {
+        continue;
+      }
+      byte[][] last = disjointIntervals.isEmpty() ? null : disjointIntervals.get(disjointIntervals.size() - 1);
+      if (last != null && Bytes.compareTo(interval[0], last[1]) <= 0) {
+        if (Bytes.compareTo(interval[1], last[1]) > 0) {
+          last[1] = interval[1];
+        }
+      } else {
+        disjointIntervals.add(new byte[][] { interval[0], interval[1] });
+      }
+    }
+    return new MultiScannerIterator(disjointIntervals.iterator(), limit);
+  }
+
   @Override
   public CloseableIterator<StructuredRow> scan(Field<?> index) throws InvalidFieldException {
     LOG.trace("Table {}: Scan index {}", schema.getTableId(), index);
@@ -152,6 +211,14 @@ public final class NoSqlStructuredTable implements StructuredTable {
     table.delete(convertKeyToBytes(keys, false));
   }
 
+  @Override
+  public void multiDelete(Collection<? extends Collection<Field<?>>> multiKeys) throws InvalidFieldException {
+    LOG.trace("Table {}: Delete with multiple keys {}", schema.getTableId(), multiKeys);
+    for (Collection<Field<?>> keys : multiKeys) {
+      table.delete(convertKeyToBytes(keys, false));
+    }
+  }
+
   @Override
   public void deleteAll(Range keyRange) throws InvalidFieldException, IOException {
     LOG.trace("Table {}: DeleteAll with range {}", schema.getTableId(), keyRange);
@@ -297,6 +364,14 @@ public final class NoSqlStructuredTable implements StructuredTable {
   }
 
   private Scanner getScanner(Range keyRange) {
+    byte[][] keys = getScanKeys(keyRange);
+    return table.scan(keys[0], keys[1]);
+  }
+
+  /**
+   * Returns the start row key (inclusive) and the stop row key (exclusive) for scanning the given range.
+   */
+  private byte[][] getScanKeys(Range keyRange) {
     // the method will always prepend the table name as prefix
     byte[] begin = convertKeyToBytes(keyRange.getBegin(), true);
     byte[] end = convertKeyToBytes(keyRange.getEnd(), true);
@@ -313,7 +388,52 @@ public final class NoSqlStructuredTable implements StructuredTable {
       end = Bytes.stopKeyForPrefix(end);
     }
 
-    return table.scan(begin, end);
+    return new byte[][] { begin, end };
+  }
+
+  /**
+   * A {@link CloseableIterator} that scans a list of disjoint row key intervals sorted by the start key one after
+   * another, with at most one open {@link Scanner} at a time.
+   */
+  private final class MultiScannerIterator extends AbstractCloseableIterator<StructuredRow> {
+    private final Iterator<byte[][]> keyIntervals;
+    private final int limit;
+    private Scanner scanner;
+    private int count;
+
+    MultiScannerIterator(Iterator<byte[][]> keyIntervals, int limit) {
+      this.keyIntervals = keyIntervals;
+      this.limit = limit;
+    }
+
+    @Override
+    protected StructuredRow computeNext() {
+      while (count < limit) {
+        if (scanner == null) {
+          if (!keyIntervals.hasNext()) {
+            break;
+          }
+          byte[][] interval = keyIntervals.next();
+          scanner = table.scan(interval[0], interval[1]);
+        }
+        Row row = scanner.next();
+        if (row != null) {
+          count++;
+          return new NoSqlStructuredRow(row, schema);
+        }
+        scanner.close();
+        scanner = null;
+      }
+      return endOfData();
+    }
+
+    @Override
+    public void close() {
+      if (scanner != null) {
+        scanner.close();
+        scanner = null;
+      }
+    }
   }
 
   /**
@@ -57,29 +57,57 @@ import javax.annotation.Nullable;
  */
 public class PostgresSqlStructuredTable implements StructuredTable {
   private static final Logger LOG = LoggerFactory.getLogger(PostgresSqlStructuredTable.class);
+  // Maximum number of rows to read in a single multi read query, to keep the number of parameters of the query bounded
+  private static final int MULTI_READ_BATCH_SIZE = 1000;
 
   private final Connection connection;
   private final StructuredTableSchema tableSchema;
   private final FieldValidator fieldValidator;
+  private final int scanFetchSize;
 
-  public PostgresSqlStructuredTable(Connection connection, StructuredTableSchema tableSchema) {
+  /**
+   * Creates a table that operates on the given connection.
+   *
+   * @param connection the connection to use
+   * @param tableSchema the schema of the table
+   * @param scanFetchSize number of rows to fetch at a time when scanning. Rows are streamed with a cursor only if
+   *                      the connection is not in auto commit mode
+   */
+  public PostgresSqlStructuredTable(Connection connection, StructuredTableSchema tableSchema, int scanFetchSize) {
     this.connection = connection;
     this.tableSchema = tableSchema;
     this.fieldValidator = new FieldValidator(tableSchema);
+    this.scanFetchSize = scanFetchSize;
   }
 
   @Override
   public void upsert(Collection<Field<?>> fields) throws InvalidFieldException, IOException {
     LOG.trace("Table {}: Write fields {}", tableSchema.getTableId(), fields);
-    Set<String> fieldNames = fields.stream().map(Field::getName).collect(Collectors.toSet());
-    if (!fieldNames.containsAll(tableSchema.getPrimaryKeys())) {
-      throw new InvalidFieldException(tableSchema.getTableId(), fields,
-                                      String.format("Given fields %s do not contain all the " +
-                                                      "primary keys %s", fieldNames, tableSchema.getPrimaryKeys()));
-    }
+    validatePrimaryKeysPresent(fields);
     upsertInternal(fields);
   }
 
+  @Override
+  public void multiUpsert(Collection<? extends Collection<Field<?>>> multiFields)
+    throws InvalidFieldException, IOException {
+    LOG.trace("Table {}: Write multiple fields {}", tableSchema.getTableId(), multiFields);
+    // Consecutive rows with the same list of field names share the same statement, hence are written in one batch.
+    // Rows are not regrouped across batches so that the order of writes to the same row is preserved.
+    List<Collection<Field<?>>> batch = new ArrayList<>();
+    List<String> batchFieldNames = null;
+    for (Collection<Field<?>> fields : multiFields) {
+      validatePrimaryKeysPresent(fields);
+      List<String> fieldNames = fields.stream().map(Field::getName).collect(Collectors.toList());
+      if (!fieldNames.equals(batchFieldNames)) {
+        upsertBatch(batch);
+        batch.clear();
+        batchFieldNames = fieldNames;
+      }
+      batch.add(fields);
+    }
+    upsertBatch(batch);
+  }
+
   @Override
   public Optional<StructuredRow> read(Collection<Field<?>> keys) throws InvalidFieldException, IOException {
     return readRow(keys, null);
@@ -98,16 +126,53 @@ public class PostgresSqlStructuredTable implements StructuredTable {
     return readRow(keys, columnFields);
   }
 
+  @Override
+  public Collection<StructuredRow> multiRead(Collection<? extends Collection<Field<?>>> multiKeys)
+    throws InvalidFieldException, IOException {
+    LOG.trace("Table {}: Read with multiple keys {}", tableSchema.getTableId(), multiKeys);
+    List<Collection<Field<?>>> keysList = new ArrayList<>(multiKeys);
+    for (Collection<Field<?>> keys : keysList) {
+      fieldValidator.validatePrimaryKeys(keys, false);
+    }
+
+    List<StructuredRow> result = new ArrayList<>();
+    for (int start = 0; start < keysList.size(); start += MULTI_READ_BATCH_SIZE) {
+      List<Collection<Field<?>>> batch =
+        keysList.subList(start, Math.min(keysList.size(), start + MULTI_READ_BATCH_SIZE));
+      String readQuery = getMultiReadQuery(batch.size());
+      try (PreparedStatement statement = connection.prepareStatement(readQuery)) {
+        int index = 1;
+        for (Collection<Field<?>> keys : batch) {
+          for (Field<?> key : keys) {
+            setField(statement, key, index);
+            index++;
+          }
+        }
+        LOG.trace("SQL statement: {}", statement);
+        try (ResultSet resultSet = statement.executeQuery()) {
+          while (resultSet.next()) {
+            result.add(createStructuredRow(resultSet));
+          }
+        }
+      } catch (SQLException e) {
+        throw new IOException(String.format("Failed to read from table %s with multiple keys %s",
+                                            tableSchema.getTableId().getName(), batch), e);
+      }
+    }
+    return result;
+  }
+
   @Override
   public CloseableIterator<StructuredRow> scan(Range keyRange, int limit) throws InvalidFieldException, IOException {
     LOG.trace("Table {}: Scan range {} with limit {}", tableSchema.getTableId(), keyRange, limit);
     fieldValidator.validatePrimaryKeys(keyRange.getBegin(), true);
     fieldValidator.validatePrimaryKeys(keyRange.getEnd(), true);
-    String scanQuery = getScanQuery(keyRange, limit);
+    String scanQuery = getScanQuery(keyRange);
 
     // We don't close the statement here because once it is closed, the result set is also closed.
     try {
       PreparedStatement statement = connection.prepareStatement(scanQuery);
+      statement.setFetchSize(scanFetchSize);
       int index = 1;
       if (keyRange.getBegin() != null) {
         for (Field<?> key : keyRange.getBegin()) {
@@ -121,6 +186,7 @@ public class PostgresSqlStructuredTable implements StructuredTable {
           index++;
         }
       }
+      statement.setInt(index, limit);
       LOG.trace("SQL statement: {}", statement);
       ResultSet resultSet = statement.executeQuery();
       return new ResultSetIterator(statement, resultSet, tableSchema);
@@ -130,6 +196,58 @@ public class PostgresSqlStructuredTable implements StructuredTable {
     }
   }
 
+  @Override
+  public CloseableIterator<StructuredRow> multiScan(Collection<Range> keyRanges,
+                                                    int limit) throws InvalidFieldException, IOException {
+    LOG.trace("Table {}: Scan multiple ranges {} with limit {}", tableSchema.getTableId(), keyRanges, limit);
+    if (keyRanges.isEmpty()) {
+      return new AbstractCloseableIterator<StructuredRow>() {
+        @Override
+        protected StructuredRow computeNext() {
+          return endOfData();
+        }
+
+        @Override
+        public void close() {
+          // no-op
+        }
+      };
+    }
+    for (Range keyRange : keyRanges) {
+      // A range without any bound covers the whole table, hence there is no need to consider the other ranges
+      if (keyRange.getBegin().isEmpty() && keyRange.getEnd().isEmpty()) {
+        return scan(keyRange, limit);
+      }
+      fieldValidator.validatePrimaryKeys(keyRange.getBegin(), true);
+      fieldValidator.validatePrimaryKeys(keyRange.getEnd(), true);
+    }
+    String scanQuery = getMultiScanQuery(keyRanges);
+
+    // We don't close the statement here because once it is closed, the result set is also closed.
+    try {
+      PreparedStatement statement = connection.prepareStatement(scanQuery);
+      statement.setFetchSize(scanFetchSize);
+      int index = 1;
+      for (Range keyRange : keyRanges) {
+        for (Field<?> key : keyRange.getBegin()) {
+          setField(statement, key, index);
+          index++;
+        }
+        for (Field<?> key : keyRange.getEnd()) {
+          setField(statement, key, index);
+          index++;
+        }
+      }
+      statement.setInt(index, limit);
+      LOG.trace("SQL statement: {}", statement);
+      ResultSet resultSet = statement.executeQuery();
+      return new ResultSetIterator(statement, resultSet, tableSchema);
+    } catch (SQLException e) {
+      throw new IOException(String.format("Failed to scan from table %s with ranges %s",
+                                          tableSchema.getTableId().getName(), keyRanges), e);
+    }
+  }
+
   @Override
   public CloseableIterator<StructuredRow> scan(Field<?> index) throws InvalidFieldException, IOException {
     LOG.trace("Table {}: Scan index {}", tableSchema.getTableId(), index);
@@ -142,6 +260,7 @@ public class PostgresSqlStructuredTable implements StructuredTable {
     // We don't close the statement here because once it is closed, the result set is also closed.
     try {
       PreparedStatement statement = connection.prepareStatement(sql);
+      statement.setFetchSize(scanFetchSize);
       setField(statement, index, 1);
       LOG.trace("SQL statement: {}", statement);
       ResultSet resultSet = statement.executeQuery();
@@ -266,6 +385,35 @@ public class PostgresSqlStructuredTable implements StructuredTable {
     }
   }
 
+  @Override
+  public void multiDelete(Collection<? extends Collection<Field<?>>> multiKeys)
+    throws InvalidFieldException, IOException {
+    LOG.trace("Table {}: Delete with multiple keys {}", tableSchema.getTableId(), multiKeys);
+    if (multiKeys.isEmpty()) {
+      return;
+    }
+    for (Collection<Field<?>> keys : multiKeys) {
+      fieldValidator.validatePrimaryKeys(keys, false);
+    }
+    // Since all keys are complete primary keys in the same order, they all share the same delete statement
+    String sqlQuery = getDeleteQuery(multiKeys.iterator().next());
+    try (PreparedStatement statement = connection.prepareStatement(sqlQuery)) {
+      for (Collection<Field<?>> keys : multiKeys) {
+        int index = 1;
+        for (Field<?> key : keys) {
+          setField(statement, key, index);
+          index++;
+        }
+        statement.addBatch();
+      }
+      LOG.trace("SQL statement: {}", statement);
+      statement.executeBatch();
+    } catch (SQLException e) {
+      throw new IOException(String.format("Failed to delete the rows from table %s with multiple keys %s",
+                                          tableSchema.getTableId().getName(), multiKeys), e);
+    }
+  }
+
   @Override
   public void deleteAll(Range keyRange) throws InvalidFieldException, IOException {
     LOG.trace("Table {}: DeleteAll with range {}", tableSchema.getTableId(), keyRange);
@@ -303,6 +451,44 @@ public class PostgresSqlStructuredTable implements StructuredTable {
     }
   }
 
+  private void validatePrimaryKeysPresent(Collection<Field<?>> fields) throws InvalidFieldException {
+    Set<String> fieldNames = fields.stream().map(Field::getName).collect(Collectors.toSet());
+    if (!fieldNames.containsAll(tableSchema.getPrimaryKeys())) {
+      throw new InvalidFieldException(tableSchema.getTableId(), fields,
+                                      String.format("Given fields %s do not contain all the " +
+                                                      "primary keys %s", fieldNames, tableSchema.getPrimaryKeys()));
+    }
+  }
+
+  /**
+   * Writes a batch of rows that all have the same list of field names with a single batched statement.
+   */
+  private void upsertBatch(List<Collection<Field<?>>> batch) throws IOException {
+    if (batch.isEmpty()) {
+      return;
+    }
+    if (batch.size() == 1) {
+      upsertInternal(batch.get(0));
+      return;
+    }
+    String sqlQuery = getWriteSqlQuery(batch.get(0), null);
+    try (PreparedStatement statement = connection.prepareStatement(sqlQuery)) {
+      for (Collection<Field<?>> fields : batch) {
+        int index = 1;
+        for (Field<?> field : fields) {
+          setField(statement, field, index);
+          index++;
+        }
+        statement.addBatch();
+      }
+      LOG.trace("SQL statement: {}", statement);
+      statement.executeBatch();
+    } catch (SQLException e) {
+      throw new IOException(String.format("Failed to write to table %s with multiple fields %s",
+                                          tableSchema.getTableId().getName(), batch), e);
+    }
+  }
+
   private void upsertInternal(Collection<Field<?>> fields) throws IOException {
     String sqlQuery = getWriteSqlQuery(fields, null);
     try (PreparedStatement statement = connection.prepareStatement(sqlQuery)) {
@@ -342,14 +528,7 @@ public class PostgresSqlStructuredTable implements StructuredTable {
         if (!resultSet.next()) {
           return Optional.empty();
         }
-
-        ResultSetMetaData metaData = resultSet.getMetaData();
-        int numCols = metaData.getColumnCount();
-        Map<String, Object> row = new HashMap<>();
-        for (int i = 1; i <= numCols; i++) {
-          row.put(metaData.getColumnName(i), resultSet.getObject(i));
-        }
-        return Optional.of(new SqlStructuredRow(tableSchema, row));
+        return Optional.of(createStructuredRow(resultSet));
       }
     } catch (SQLException e) {
       throw new IOException(String.format("Failed to read from table %s with keys %s",
@@ -357,6 +536,19 @@ public class PostgresSqlStructuredTable implements StructuredTable {
     }
   }
 
+  /**
+   * Creates a {@link StructuredRow} from the current row of the given {@link ResultSet}.
+   */
+  private StructuredRow createStructuredRow(ResultSet resultSet) throws SQLException {
+    ResultSetMetaData metaData = resultSet.getMetaData();
+    int numCols = metaData.getColumnCount();
+    Map<String, Object> row = new HashMap<>();
+    for (int i = 1; i <= numCols; i++) {
+      row.put(metaData.getColumnName(i), resultSet.getObject(i));
+    }
+    return new SqlStructuredRow(tableSchema, row);
+  }
+
   private void setField(PreparedStatement statement, Field field,
                         int parameterIndex) throws SQLException, InvalidFieldException {
     fieldValidator.validateField(field);
@@ -460,16 +652,41 @@ public class PostgresSqlStructuredTable implements StructuredTable {
     return queryString.toString();
   }
 
+  /**
+   * Get the read query for reading multiple rows by their complete primary keys. For example, if "simpletable" has
+   * primary keys key1, key2, reading two rows will generate the following query:
+   * SELECT * FROM simpletable WHERE (key1,key2) IN ((?,?),(?,?)) ORDER BY key1, key2;
+   *
+   * @param numRows number of rows to read
+   * @return the read query
+   */
+  private String getMultiReadQuery(int numRows) {
+    StringJoiner keyJoiner = new StringJoiner(",", "(", ")");
+    StringJoiner valueJoiner = new StringJoiner(",", "(", ")");
+    for (String key : tableSchema.getPrimaryKeys()) {
+      keyJoiner.add(key);
+      valueJoiner.add("?");
+    }
+    StringJoiner inJoiner = new StringJoiner(",", "(", ")");
+    String values = valueJoiner.toString();
+    for (int i = 0; i < numRows; i++) {
+      inJoiner.add(values);
+    }
+    return "SELECT * FROM " + tableSchema.getTableId().getName() +
+      " WHERE " + keyJoiner.toString() + " IN " + inJoiner.toString() +
+      getOrderByClause(tableSchema.getPrimaryKeys()) + ";";
+  }
+
   /**
    * Get the scan query for the range given. For example, if the range provides key1, key2 as the begin and end to
    * scan, both rows are inclusive, it will generate the following query:
-   * SELECT * FROM simpletable WHERE (key1,key2)>=(?,?) AND (key1,key2)<=(?,?) LIMIT 10;
+   * SELECT * FROM simpletable WHERE (key1,key2)>=(?,?) AND (key1,key2)<=(?,?) LIMIT ?;
+   * The limit is a parameter of the query, so that scans of the same shape share the same statement.
    *
    * @param range the range to scan.
-   * @param limit limit number of row
    * @return the scan query
    */
-  private String getScanQuery(Range range, int limit) {
+  private String getScanQuery(Range range) {
     StringBuilder queryString = new StringBuilder("SELECT * FROM ").append(tableSchema.getTableId().getName());
     if (!range.getBegin().isEmpty() || !range.getEnd().isEmpty()) {
       queryString.append(" WHERE ");
@@ -477,7 +694,32 @@ public class PostgresSqlStructuredTable implements StructuredTable {
     }
 
     queryString.append(getOrderByClause(tableSchema.getPrimaryKeys()));
-    queryString.append(" LIMIT ").append(limit).append(";");
+    queryString.append(" LIMIT ?;");
+    return queryString.toString();
+  }
+
+  /**
+   * Get the scan query for multiple ranges. The ranges are combined in a single query so that rows matching more than
+   * one range are only returned once. For example, for two ranges on key1, key2, it will generate the following query:
+   * SELECT * FROM simpletable WHERE ((key1,key2)>=(?,?) AND (key1,key2)<=(?,?)) OR ((key1)>(?)) ORDER BY key1, key2
+   * LIMIT ?;
+   *
+   * @param ranges the ranges to scan. Each of them must have at least one bound
+   * @return the scan query
+   */
+  private String getMultiScanQuery(Collection<Range> ranges) {
+    StringBuilder queryString = new StringBuilder("SELECT * FROM ").append(tableSchema.getTableId().getName())
+      .append(" WHERE ");
+    String separator = "";
+    for (Range range : ranges) {
+      queryString.append(separator).append("(");
+      appendRange(queryString, range);
+      queryString.append(")");
+      separator = " OR ";
+    }
+
+    queryString.append(getOrderByClause(tableSchema.getPrimaryKeys()));
+    queryString.append(" LIMIT ?;");
     return queryString.toString();
   }
 
@@ -590,8 +832,8 @@ public class PostgresSqlStructuredTable implements StructuredTable {
     @Override
     public void close() {
       try {
-        statement.close();
         resultSet.close();
+        statement.close();
       } catch (SQLException e) {
         LOG.warn("Failed to close the result set", e);
       }
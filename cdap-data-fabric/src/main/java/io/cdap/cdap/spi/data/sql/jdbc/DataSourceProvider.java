@@ -99,8 +99,16 @@ public class DataSourceProvider implements Provider<DataSource> {
     GenericObjectPool<PoolableConnection> connectionPool = new GenericObjectPool<>(poolableConnectionFactory);
     poolableConnectionFactory.setPool(connectionPool);
     connectionPool.setMaxTotal(cConf.getInt(Constants.Dataset.DATA_STORAGE_SQL_CONNECTION_SIZE));
+    // Cache the prepared statements of each connection by the sql text, so that statements of the same shape
+    // are only prepared once per connection and can be executed as server side prepared statements
+    int statementCacheSize = cConf.getInt(Constants.Dataset.DATA_STORAGE_SQL_STATEMENT_CACHE_SIZE);
+    if (statementCacheSize > 0) {
+      poolableConnectionFactory.setPoolStatements(true);
+      poolableConnectionFactory.setMaxOpenPreparedStatements(statementCacheSize);
+    }
     PoolingDataSource<PoolableConnection> dataSource = new PoolingDataSource<>(connectionPool);
-    this.dataSource = new MetricsDataSource(dataSource, metricsCollectionService, connectionPool);
+    this.dataSource = new MetricsDataSource(dataSource, metricsCollectionService, connectionPool,
+                                            cConf.getBoolean(Constants.Metrics.STRUCTURED_TABLE_TIME_METRICS_ENABLED));
     return this.dataSource;
   }
 
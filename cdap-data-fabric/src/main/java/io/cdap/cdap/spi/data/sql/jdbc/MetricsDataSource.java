@@ -16,31 +16,39 @@
 
 package io.cdap.cdap.spi.data.sql.jdbc;
 
+import com.google.common.reflect.Reflection;
 import io.cdap.cdap.api.metrics.MetricsCollectionService;
 import io.cdap.cdap.api.metrics.MetricsContext;
 import io.cdap.cdap.common.conf.Constants;
 import org.apache.commons.pool2.ObjectPool;
 
 import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.SQLFeatureNotSupportedException;
 import java.util.logging.Logger;
 import javax.sql.DataSource;
 
 /**
- * A metrics data source that will emit metrics about the number of connections.
+ * A metrics data source that will emit metrics about the number of connections. If statement metrics are enabled,
+ * it also emits the count, latency and errors of the {@link PreparedStatement} executions on the connections it
+ * provides.
  */
 public class MetricsDataSource implements DataSource {
   private final DataSource dataSource;
   private final MetricsCollectionService metricsCollectionService;
   private final ObjectPool objectPool;
+  private final boolean emitStatementMetrics;
 
   public MetricsDataSource(DataSource dataSource, MetricsCollectionService metricsCollectionService,
-                           ObjectPool objectPool) {
+                           ObjectPool objectPool, boolean emitStatementMetrics) {
     this.dataSource = dataSource;
     this.metricsCollectionService = metricsCollectionService;
     this.objectPool = objectPool;
+    this.emitStatementMetrics = emitStatementMetrics;
   }
 
   @Override
@@ -50,7 +58,7 @@ public class MetricsDataSource implements DataSource {
       Connection connection = dataSource.getConnection();
       metricsCollector.gauge(Constants.Metrics.StructuredTable.ACTIVE_CONNECTIONS, objectPool.getNumActive());
       metricsCollector.gauge(Constants.Metrics.StructuredTable.IDLE_CONNECTIONS, objectPool.getNumIdle());
-      return connection;
+      return emitStatementMetrics ? createMetricsConnection(connection, metricsCollector) : connection;
     } catch (SQLException e) {
       metricsCollector.increment(Constants.Metrics.StructuredTable.ERROR_CONNECTIONS, 1L);
       throw e;
@@ -64,7 +72,7 @@ public class MetricsDataSource implements DataSource {
       Connection connection = dataSource.getConnection(username, password);
       metricsCollector.gauge(Constants.Metrics.StructuredTable.ACTIVE_CONNECTIONS, objectPool.getNumActive());
       metricsCollector.gauge(Constants.Metrics.StructuredTable.IDLE_CONNECTIONS, objectPool.getNumIdle());
-      return connection;
+      return emitStatementMetrics ? createMetricsConnection(connection, metricsCollector) : connection;
     } catch (SQLException e) {
       metricsCollector.increment(Constants.Metrics.StructuredTable.ERROR_CONNECTIONS, 1L);
       throw e;
@@ -105,4 +113,45 @@ public class MetricsDataSource implements DataSource {
   public Logger getParentLogger() throws SQLFeatureNotSupportedException {
     return dataSource.getParentLogger();
   }
+
+  /**
+   * Creates a {@link Connection} that delegates to the given connection, with the {@link PreparedStatement}s it
+   * prepares emitting metrics on each execution.
+   */
+  private static Connection createMetricsConnection(Connection connection, MetricsContext metricsCollector) {
+    return Reflection.newProxy(Connection.class, (proxy, method, args) -> {
+      Object result = invoke(connection, method, args);
+      if (method.getName().equals("prepareStatement")) {
+        return createMetricsStatement((PreparedStatement) result, metricsCollector);
+      }
+      return result;
+    });
+  }
+
+  private static PreparedStatement createMetricsStatement(PreparedStatement statement,
+                                                          MetricsContext metricsCollector) {
+    return Reflection.newProxy(PreparedStatement.class, (proxy, method, args) -> {
+      if (!method.getName().startsWith("execute")) {
+        return invoke(statement, method, args);
+      }
+      long startTime = System.nanoTime();
+      try {
+        Object result = invoke(statement, method, args);
+        metricsCollector.increment(Constants.Metrics.StructuredTable.STATEMENT_TIME, System.nanoTime() - startTime);
+        metricsCollector.increment(Constants.Metrics.StructuredTable.STATEMENT_COUNT, 1L);
+        return result;
+      } catch (SQLException e) {
+        metricsCollector.increment(Constants.Metrics.StructuredTable.STATEMENT_ERROR, 1L);
+        throw e;
+      }
+    });
+  }
+
+  private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+    try {
+      return method.invoke(target, args);
+    } catch (InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
 }
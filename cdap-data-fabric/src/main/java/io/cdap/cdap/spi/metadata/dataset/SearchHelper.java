@@ -36,6 +36,7 @@ import io.cdap.cdap.api.metadata.Metadata;
 import io.cdap.cdap.api.metadata.MetadataEntity;
 import io.cdap.cdap.api.metadata.MetadataScope;
 import io.cdap.cdap.common.conf.Constants;
+import io.cdap.cdap.data2.metadata.dataset.IndexedSearch;
 import io.cdap.cdap.data2.metadata.dataset.MetadataDataset;
 import io.cdap.cdap.data2.metadata.dataset.MetadataDatasetDefinition;
 import io.cdap.cdap.data2.metadata.dataset.MetadataEntry;
@@ -83,6 +84,9 @@ public class SearchHelper {
 
   private static final DatasetContext SYSTEM_CONTEXT = DatasetContext.from(NamespaceId.SYSTEM.getNamespace());
 
+  // number of metadata index rows to build the search index for in one transaction
+  private static final int SEARCH_INDEX_BUILD_BATCH_SIZE = 1000;
+
   private static final Comparator<Map.Entry<MetadataEntity, Integer>> SEARCH_RESULT_DESC_SCORE_COMPARATOR =
     // sort in descending order
     (o1, o2) -> o2.getValue() - o1.getValue();
@@ -90,6 +94,7 @@ public class SearchHelper {
   private final DatasetDefinition<MetadataDataset, DatasetAdmin> metaDatasetDefinition;
   private final Map<String, DatasetSpecification> datasetSpecs;
   protected final Transactional transactional;
+  private volatile boolean searchIndexReady;
 
   @Inject
   public SearchHelper(TransactionSystemClient txClient,
@@ -111,9 +116,11 @@ public class SearchHelper {
         admin.create();
       }
     }
+    buildSearchIndex();
   }
 
   void dropDatasets() throws IOException {
+    searchIndexReady = false;
     for (MetadataScope scope : MetadataScope.ALL) {
       DatasetAdmin admin = metaDatasetDefinition.getAdmin(SYSTEM_CONTEXT, datasetSpecs.get(scope.name()), null);
       if (admin.exists()) {
@@ -122,6 +129,43 @@ public class SearchHelper {
     }
   }
 
+  /**
+   * Builds the inverted search index of the metadata datasets from their index rows, unless that was done before.
+   * This is only needed once for metadata written before the search index was introduced, because the datasets
+   * maintain the search index with every change.
+   */
+  private void buildSearchIndex() {
+    for (MetadataScope scope : MetadataScope.ALL) {
+      if (execute(context -> context.getDataset(scope).isSearchIndexReady())) {
+        continue;
+      }
+      LOG.info("Building the metadata search index for scope {}", scope);
+      byte[] startRow = null;
+      do {
+        byte[] batchStartRow = startRow;
+        startRow = execute(context -> context.getDataset(scope).rebuildSearchIndex(batchStartRow,
+                                                                                   SEARCH_INDEX_BUILD_BATCH_SIZE));
+      } while (startRow != null);
+      execute(context -> {
+        context.getDataset(scope).markSearchIndexReady();
+        return null;
+      });
+      LOG.info("Built the metadata search index for scope {}", scope);
+    }
+    searchIndexReady = true;
+  }
+
+  /**
+   * Returns whether the inverted search index of all metadata datasets is ready to be used for search.
+   */
+  private boolean isSearchIndexReady() {
+    if (!searchIndexReady) {
+      searchIndexReady = execute(context -> MetadataScope.ALL.stream()
+        .allMatch(scope -> context.getDataset(scope).isSearchIndexReady()));
+    }
+    return searchIndexReady;
+  }
+
   private static DatasetSpecification createDatasetSpec(DatasetDefinition def, MetadataScope scope) {
     return def.configure(getMetadataDatasetInstance(scope).getEntityName(),
                          DatasetProperties.builder().add(MetadataDatasetDefinition.SCOPE_KEY, scope.name()).build());
@@ -261,6 +305,10 @@ public class SearchHelper {
   }
 
   private MetadataSearchResponse search(Set<MetadataScope> scopes, SearchRequest request) {
+    if (isSearchIndexReady()) {
+      return searchIndex(scopes, request);
+    }
+
     List<MetadataEntry> results = new LinkedList<>();
     List<String> cursors = new LinkedList<>();
     for (MetadataScope scope : scopes) {
@@ -304,6 +352,27 @@ public class SearchHelper {
       finalResults, cursors, request.shouldShowHidden(), request.getEntityScopes());
   }
 
+  /**
+   * Searches through the inverted search index of the metadata datasets, which only reads the metadata needed
+   * for the requested page. Supports any query for all sorts.
+   */
+  private MetadataSearchResponse searchIndex(Set<MetadataScope> scopes, SearchRequest request) {
+    return execute(context -> {
+      IndexedSearch.Result result = new IndexedSearch(context::getDataset).search(scopes, request);
+      Set<MetadataEntity> entities = new LinkedHashSet<>(result.getEntities());
+      Set<MetadataSearchResultRecord> finalResults =
+        addMetadataToEntities(entities,
+                              fetchMetadata(context.getDataset(SYSTEM), entities),
+                              fetchMetadata(context.getDataset(USER), entities));
+
+      SortInfo sortInfo = request.getSortInfo();
+      return new MetadataSearchResponse(
+        sortInfo.getSortBy() + " " + sortInfo.getSortOrder(), request.getOffset(), request.getLimit(),
+        request.getNumCursors(), result.getTotal(), finalResults, result.getCursors(), request.shouldShowHidden(),
+        request.getEntityScopes());
+    });
+  }
+
   private Set<MetadataEntity> getSortedEntities(List<MetadataEntry> results, SortInfo sortInfo) {
     // if sort order is not weighted, return entities in the order received.
     // in this case, the backing storage is expected to return results in the expected order.
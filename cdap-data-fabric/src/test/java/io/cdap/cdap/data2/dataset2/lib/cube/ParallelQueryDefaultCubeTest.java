@@ -0,0 +1,147 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.data2.dataset2.lib.cube;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import io.cdap.cdap.api.dataset.lib.cube.AggregationFunction;
+import io.cdap.cdap.api.dataset.lib.cube.CubeFact;
+import io.cdap.cdap.api.dataset.lib.cube.CubeQuery;
+import io.cdap.cdap.api.dataset.lib.cube.Interpolator;
+import io.cdap.cdap.api.dataset.lib.cube.Interpolators;
+import io.cdap.cdap.api.dataset.lib.cube.MeasureType;
+import io.cdap.cdap.api.dataset.lib.cube.TimeSeries;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the {@link AbstractCubeTest} with parallel query enabled in {@link DefaultCube}. It also compares the
+ * results and logs the query time of serial and parallel query over a synthetic cube.
+ */
+public class ParallelQueryDefaultCubeTest extends DefaultCubeTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ParallelQueryDefaultCubeTest.class);
+
+  private static final int RUNS = 20;
+  private static final int TASKS = 2;
+  private static final long DURATION_SECONDS = TimeUnit.HOURS.toSeconds(6);
+  private static final long INTERVAL_SECONDS = 30;
+  private static final int ITERATIONS = 5;
+
+  @Override
+  protected int getQueryParallelism() {
+    return 4;
+  }
+
+  @Test
+  public void testSyntheticCube() throws Exception {
+    int[] resolutions = new int[] {1, 60};
+    Map<String, Aggregation> aggregations = ImmutableMap.of(
+      "agg", new DefaultAggregation(ImmutableList.of("run", "task"), ImmutableList.of("run")));
+
+    // Both cubes are backed by the same tables
+    DefaultCube serialCube = getCube("syntheticCube", resolutions, aggregations, 1);
+    DefaultCube parallelCube = getCube("syntheticCube", resolutions, aggregations, getQueryParallelism());
+
+    try {
+      List<CubeFact> facts = new ArrayList<>();
+      for (long ts = 0; ts < DURATION_SECONDS; ts += INTERVAL_SECONDS) {
+        for (int run = 0; run < RUNS; run++) {
+          for (int task = 0; task < TASKS; task++) {
+            facts.add(new CubeFact(ts)
+                        .addDimensionValues(ImmutableMap.of("run", "run" + run, "task", "task" + task))
+                        .addMeasurement("count", MeasureType.COUNTER, run + task + 1)
+                        .addMeasurement("gauge", MeasureType.GAUGE, ts + run));
+          }
+        }
+        if (facts.size() >= 1000) {
+          parallelCube.add(facts);
+          facts.clear();
+        }
+      }
+      parallelCube.add(facts);
+
+      Interpolator step = new Interpolators.Step();
+      for (int resolution : resolutions) {
+        for (AggregationFunction function : AggregationFunction.values()) {
+          String measure = function == AggregationFunction.SUM ? "count" : "gauge";
+          compareQuery(serialCube, parallelCube, resolution, measure, function, Integer.MAX_VALUE, null);
+          compareQuery(serialCube, parallelCube, resolution, measure, function, 100, step);
+        }
+        compareQuery(serialCube, parallelCube, resolution, "count", AggregationFunction.SUM, Integer.MAX_VALUE, step);
+      }
+      // Query a time range wide enough for the values being kept in sparse series
+      long endTs = TimeSeriesAccumulator.MAX_DENSE_BUCKETS * 4L;
+      compareQuery(serialCube, parallelCube, 1, endTs, "count", AggregationFunction.SUM, Integer.MAX_VALUE, null);
+      compareQuery(serialCube, parallelCube, 1, endTs, "gauge", AggregationFunction.LATEST, 100, step);
+    } finally {
+      serialCube.close();
+      parallelCube.close();
+    }
+  }
+
+  private void compareQuery(DefaultCube serialCube, DefaultCube parallelCube, int resolution, String measure,
+                            AggregationFunction function, int limit, Interpolator interpolator) {
+    compareQuery(serialCube, parallelCube, resolution, DURATION_SECONDS, measure, function, limit, interpolator);
+  }
+
+  private void compareQuery(DefaultCube serialCube, DefaultCube parallelCube, int resolution, long endTs,
+                            String measure, AggregationFunction function, int limit, Interpolator interpolator) {
+    CubeQuery query = CubeQuery.builder()
+      .select()
+        .measurement(measure, function)
+      .from(null).resolution(resolution, TimeUnit.SECONDS)
+      .where()
+        .timeRange(0, endTs)
+      .groupBy()
+        .dimensions(ImmutableList.of("run"))
+      .limit(limit)
+      .interpolator(interpolator)
+      .build();
+
+    Collection<TimeSeries> expected = null;
+    Collection<TimeSeries> actual = null;
+    long serialNanos = 0;
+    long parallelNanos = 0;
+    for (int i = 0; i < ITERATIONS; i++) {
+      long startTime = System.nanoTime();
+      expected = serialCube.query(query);
+      serialNanos += System.nanoTime() - startTime;
+
+      startTime = System.nanoTime();
+      actual = parallelCube.query(query);
+      parallelNanos += System.nanoTime() - startTime;
+    }
+
+    Assert.assertEquals(RUNS, expected.size());
+    Assert.assertEquals(new HashSet<>(expected), new HashSet<>(actual));
+
+    LOG.info("Query of {}({}) with resolution {}, limit {} and interpolator {}: serial {} ms, parallel {} ms",
+             function, measure, resolution, limit, interpolator == null ? null : "step",
+             TimeUnit.NANOSECONDS.toMillis(serialNanos) / ITERATIONS,
+             TimeUnit.NANOSECONDS.toMillis(parallelNanos) / ITERATIONS);
+  }
+}
@@ -21,12 +21,15 @@ import com.google.common.collect.Maps;
 import io.cdap.cdap.api.common.Bytes;
 import io.cdap.cdap.api.dataset.DatasetAdmin;
 import io.cdap.cdap.api.dataset.DatasetProperties;
+import io.cdap.cdap.api.dataset.table.ConflictDetection;
 import io.cdap.cdap.api.dataset.table.Get;
 import io.cdap.cdap.api.dataset.table.Row;
 import io.cdap.cdap.api.dataset.table.Scan;
 import io.cdap.cdap.api.dataset.table.Scanner;
 import io.cdap.cdap.api.dataset.table.Table;
 import io.cdap.cdap.api.dataset.table.TableProperties;
+import io.cdap.cdap.api.metrics.MetricsCollector;
+import io.cdap.cdap.common.conf.Constants;
 import io.cdap.cdap.data2.dataset2.TableAssert;
 import org.apache.tephra.Transaction;
 import org.apache.tephra.TransactionAware;
@@ -35,6 +38,7 @@ import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
@@ -502,6 +506,163 @@ public abstract class BufferingTableTest<T extends BufferingTable> extends Table
     }
   }
 
+  @Test
+  public void testReadCache() throws Exception {
+    String tableName = "testReadCache";
+    DatasetProperties props = TableProperties.builder()
+      .setConflictDetection(ConflictDetection.ROW)
+      .setReadCacheSize(1024 * 1024)
+      .build();
+    DatasetAdmin admin = getTableAdmin(CONTEXT1, tableName, props);
+    admin.create();
+    try {
+      BufferingTable table = getTable(CONTEXT1, tableName, props);
+      final Map<String, Long> metrics = new HashMap<>();
+      table.setMetricsCollector(new MetricsCollector() {
+        @Override
+        public void increment(String metricName, long value) {
+          Long old = metrics.get(metricName);
+          metrics.put(metricName, old == null ? value : old + value);
+        }
+
+        @Override
+        public void gauge(String metricName, long value) {
+          metrics.put(metricName, value);
+        }
+      });
+
+      // persist some data
+      Transaction tx1 = txClient.startShort();
+      table.startTx(tx1);
+      table.put(R1, a(C1, C2), a(V1, V2));
+      txClient.canCommitOrThrow(tx1, table.getTxChanges());
+      Assert.assertTrue(table.commitTx());
+      txClient.commitOrThrow(tx1);
+      table.postTxCommit();
+
+      Transaction tx2 = txClient.startShort();
+      table.startTx(tx2);
+      // the first read of a row goes to the persistent store, subsequent reads are served from the cache
+      TableAssert.assertRow(a(C1, V1, C2, V2), table.get(R1));
+      verifyReadCacheMetrics(metrics, 0, 1);
+      TableAssert.assertRow(a(C1, V1), table.get(R1, a(C1)));
+      TableAssert.assertRow(a(C1, V1), table.get(R1, C1, C3, 1));
+      verifyReadCacheMetrics(metrics, 2, 1);
+
+      // multi-get only fetches the rows that are not in the cache
+      List<Row> rows = table.get(Lists.newArrayList(new Get(R1, C2), new Get(R2)));
+      TableAssert.assertRow(rows.get(0), R1, a(C2), a(V2));
+      Assert.assertTrue(rows.get(1).isEmpty());
+      verifyReadCacheMetrics(metrics, 3, 2);
+      Assert.assertTrue(table.get(R2).isEmpty());
+      verifyReadCacheMetrics(metrics, 4, 2);
+
+      // changing the returned data should not change the cached data
+      table.get(R1).get(C1)[0]++;
+      TableAssert.assertRow(a(C1, V1, C2, V2), table.get(R1));
+      verifyReadCacheMetrics(metrics, 6, 2);
+
+      // changes of the transaction are applied on top of the cached data
+      table.put(R1, a(C1), a(V3));
+      table.delete(R1, a(C2));
+      TableAssert.assertRow(a(C1, V3), table.get(R1));
+      verifyReadCacheMetrics(metrics, 7, 2);
+
+      txClient.canCommitOrThrow(tx2, table.getTxChanges());
+      Assert.assertTrue(table.commitTx());
+      txClient.commitOrThrow(tx2);
+      table.postTxCommit();
+
+      // the cache doesn't outlive the transaction
+      Transaction tx3 = txClient.startShort();
+      table.startTx(tx3);
+      TableAssert.assertRow(a(C1, V3), table.get(R1));
+      verifyReadCacheMetrics(metrics, 7, 3);
+      txClient.commitOrThrow(tx3);
+      table.postTxCommit();
+    } finally {
+      admin.drop();
+    }
+  }
+
+  @Test
+  public void testBufferSpill() throws Exception {
+    String tableName = "testBufferSpill";
+    DatasetProperties props = TableProperties.builder()
+      .setConflictDetection(ConflictDetection.ROW)
+      .setBufferSpillThreshold(1024)
+      .build();
+    DatasetAdmin admin = getTableAdmin(CONTEXT1, tableName, props);
+    admin.create();
+    try {
+      BufferingTable table = getTable(CONTEXT1, tableName, props);
+      Transaction tx1 = txClient.startShort();
+      table.startTx(tx1);
+      // write enough to spill the buffer multiple times, with later writes overriding spilled ones
+      for (int i = 0; i < 100; i++) {
+        table.put(Bytes.toBytes(i), a(C1, C2), lb(i, i));
+      }
+      for (int i = 0; i < 100; i += 2) {
+        table.put(Bytes.toBytes(i), a(C1), lb(i * 10));
+        table.delete(Bytes.toBytes(i), a(C2));
+      }
+
+      // buffered changes should be visible in gets and scans
+      TableAssert.assertRow(a(C1, Bytes.toBytes(20L)), table.get(Bytes.toBytes(2)));
+      TableAssert.assertRow(a(C1, Bytes.toBytes(3L), C2, Bytes.toBytes(3L)), table.get(Bytes.toBytes(3)));
+      TableAssert.assertRow(a(C2, Bytes.toBytes(5L)), table.get(Bytes.toBytes(5), a(C2)));
+      List<Row> rows = table.get(Lists.newArrayList(new Get(Bytes.toBytes(4)), new Get(Bytes.toBytes(7), C1)));
+      TableAssert.assertRow(rows.get(0), Bytes.toBytes(4), a(C1), lb(40));
+      TableAssert.assertRow(rows.get(1), Bytes.toBytes(7), a(C1), lb(7));
+      TableAssert.assertScan(a(Bytes.toBytes(10), Bytes.toBytes(11)),
+                             aa(a(C1, Bytes.toBytes(100L)),
+                                a(C1, Bytes.toBytes(11L), C2, Bytes.toBytes(11L))),
+                             table.scan(Bytes.toBytes(10), Bytes.toBytes(12)));
+      Assert.assertEquals(100, table.getTxChanges().size());
+
+      txClient.canCommitOrThrow(tx1, table.getTxChanges());
+      Assert.assertTrue(table.commitTx());
+      txClient.commitOrThrow(tx1);
+      table.postTxCommit();
+
+      // all changes should be persisted
+      Transaction tx2 = txClient.startShort();
+      table.startTx(tx2);
+      Scanner scanner = table.scan(null, null);
+      int count = 0;
+      for (Row row = scanner.next(); row != null; row = scanner.next()) {
+        int i = Bytes.toInt(row.getRow());
+        Assert.assertEquals(count, i);
+        Assert.assertEquals(i % 2 == 0 ? i * 10 : i, (long) row.getLong(C1));
+        Assert.assertEquals(i % 2 == 0 ? null : Long.valueOf(i), row.getLong(C2));
+        count++;
+      }
+      scanner.close();
+      Assert.assertEquals(100, count);
+
+      // spilled changes that were persisted should be undone on rollback
+      for (int i = 100; i < 200; i++) {
+        table.put(Bytes.toBytes(i), a(C1), lb(i));
+      }
+      Assert.assertTrue(table.commitTx());
+      Assert.assertTrue(table.rollbackTx());
+      txClient.abort(tx2);
+
+      Transaction tx3 = txClient.startShort();
+      table.startTx(tx3);
+      Assert.assertTrue(table.get(Bytes.toBytes(150)).isEmpty());
+      TableAssert.assertScan(new byte[0][], new byte[0][][], table.scan(Bytes.toBytes(100), null));
+      txClient.commitOrThrow(tx3);
+    } finally {
+      admin.drop();
+    }
+  }
+
+  private void verifyReadCacheMetrics(Map<String, Long> metrics, long hits, long misses) {
+    Assert.assertEquals(hits, (long) metrics.getOrDefault(Constants.Metrics.Name.Dataset.READ_CACHE_HITS, 0L));
+    Assert.assertEquals(misses, (long) metrics.getOrDefault(Constants.Metrics.Name.Dataset.READ_CACHE_MISSES, 0L));
+  }
+
   private void verify123(BufferingTable table) throws Exception {
     byte[] row = new byte[] {1};
     byte[] col = new byte[] {2};
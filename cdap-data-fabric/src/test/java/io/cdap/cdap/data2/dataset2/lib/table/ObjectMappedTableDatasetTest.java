@@ -1,5 +1,5 @@
 /*
- * Copyright © 2015 Cask Data, Inc.
+ * Copyright © 2015-2019 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -16,10 +16,14 @@
 
 package io.cdap.cdap.data2.dataset2.lib.table;
 
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import io.cdap.cdap.api.common.Bytes;
+import io.cdap.cdap.api.data.batch.RecordKeyRange;
+import io.cdap.cdap.api.data.batch.RecordScanner;
 import io.cdap.cdap.api.data.batch.Split;
 import io.cdap.cdap.api.data.batch.SplitReader;
+import io.cdap.cdap.api.data.format.StructuredRecord;
 import io.cdap.cdap.api.dataset.lib.CloseableIterator;
 import io.cdap.cdap.api.dataset.lib.KeyValue;
 import io.cdap.cdap.api.dataset.lib.ObjectMappedTable;
@@ -36,6 +40,7 @@ import org.junit.Test;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 /**
@@ -257,6 +262,76 @@ public class ObjectMappedTableDatasetTest {
     }
   }
 
+  @Test
+  public void testPushdown() throws Exception {
+    dsFrameworkUtil.createInstance(ObjectMappedTable.class.getName(), RECORDS_ID,
+                                   ObjectMappedTableProperties.builder().setType(Record.class).build());
+    try {
+      final ObjectMappedTableDataset<Record> records = dsFrameworkUtil.getInstance(RECORDS_ID);
+      TransactionExecutor txnl = dsFrameworkUtil.newInMemoryTransactionExecutor((TransactionAware) records);
+
+      txnl.execute(new TransactionExecutor.Subroutine() {
+        @Override
+        public void apply() throws Exception {
+          for (String key : new String[] { "a", "b", "bb", "c", "d" }) {
+            records.write(key, new Record(1, 2L, 3.0f, 4.0d, key, Bytes.toBytes(key),
+                                          ByteBuffer.wrap(Bytes.toBytes(key)), UUID.randomUUID()));
+          }
+        }
+      });
+
+      txnl.execute(new TransactionExecutor.Subroutine() {
+        @Override
+        public void apply() throws Exception {
+          Assert.assertEquals("rowkey", records.getRecordKeyField());
+          Set<String> fields = ImmutableSet.of("rowkey", "stringField");
+
+          List<StructuredRecord> actual = readRecords(records, RecordKeyRange.singleton(Bytes.toBytes("b")), fields);
+          Assert.assertEquals(1, actual.size());
+          Assert.assertEquals("b", actual.get(0).get("stringField"));
+          // Only the requested fields are read
+          Assert.assertEquals(2, actual.get(0).getSchema().getFields().size());
+          Assert.assertNull(actual.get(0).getSchema().getField("intField"));
+
+          actual = readRecords(records, new RecordKeyRange(Bytes.toBytes("a"), false, Bytes.toBytes("c"), true),
+                               fields);
+          Assert.assertEquals(3, actual.size());
+          Assert.assertEquals("b", actual.get(0).get("stringField"));
+          Assert.assertEquals("bb", actual.get(1).get("stringField"));
+          Assert.assertEquals("c", actual.get(2).get("stringField"));
+
+          actual = readRecords(records, new RecordKeyRange(Bytes.toBytes("b"), true, Bytes.toBytes("c"), false),
+                               ImmutableSet.<String>of());
+          Assert.assertEquals(2, actual.size());
+          Assert.assertArrayEquals(Bytes.toBytes("b"), (byte[]) actual.get(0).get("rowkey"));
+
+          Assert.assertTrue(readRecords(records, new RecordKeyRange(Bytes.toBytes("c"), false, Bytes.toBytes("c"),
+                                                                    true), fields).isEmpty());
+          Assert.assertEquals(5, readRecords(records, RecordKeyRange.all(), fields).size());
+        }
+      });
+    } finally {
+      dsFrameworkUtil.deleteInstance(RECORDS_ID);
+    }
+  }
+
+  private List<StructuredRecord> readRecords(ObjectMappedTableDataset<Record> records, RecordKeyRange keyRange,
+                                             Set<String> fields) throws InterruptedException {
+    List<StructuredRecord> result = new ArrayList<>();
+    for (Split split : records.getSplits(keyRange)) {
+      RecordScanner<StructuredRecord> scanner = records.createSplitRecordScanner(split, fields);
+      try {
+        scanner.initialize(split);
+        while (scanner.nextRecord()) {
+          result.add(scanner.getCurrentRecord());
+        }
+      } finally {
+        scanner.close();
+      }
+    }
+    return result;
+  }
+
   @Test(expected = IllegalArgumentException.class)
   public void testInvalidTypeFails() throws Exception {
     dsFrameworkUtil.createInstance(ObjectMappedTable.class.getName(),
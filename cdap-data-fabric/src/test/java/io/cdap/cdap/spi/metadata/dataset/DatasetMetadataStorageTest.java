@@ -52,6 +52,7 @@ import io.cdap.cdap.spi.metadata.MutationOptions;
 import io.cdap.cdap.spi.metadata.ScopedNameOfKind;
 import io.cdap.cdap.spi.metadata.SearchRequest;
 import io.cdap.cdap.spi.metadata.SearchResponse;
+import io.cdap.cdap.spi.metadata.Sorting;
 import org.apache.tephra.TransactionManager;
 import org.apache.tephra.runtime.TransactionInMemoryModule;
 import org.junit.AfterClass;
@@ -67,9 +68,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static io.cdap.cdap.api.metadata.MetadataScope.SYSTEM;
 import static io.cdap.cdap.api.metadata.MetadataScope.USER;
+import static io.cdap.cdap.spi.metadata.MetadataConstants.ENTITY_NAME_KEY;
 import static io.cdap.cdap.spi.metadata.MetadataKind.PROPERTY;
 import static io.cdap.cdap.spi.metadata.MetadataKind.TAG;
 
@@ -185,6 +188,52 @@ public class DatasetMetadataStorageTest extends MetadataStorageTest {
     mds.batch(ImmutableList.of(new Drop(service1), new Drop(dataset1), new Drop(dataset2)), MutationOptions.DEFAULT);
   }
 
+  // this test is specific to the DatasetMetadataStorage, because it tests its syntax for required terms
+  @Test
+  public void testRequiredTermsAndSortedQuery() throws IOException {
+    MetadataStorage mds = getMetadataStorage();
+
+    String ns = "ns1";
+    NamespaceId nsId = new NamespaceId(ns);
+    List<MetadataRecord> records = IntStream.range(0, 6)
+      .mapToObj(i -> new MetadataRecord(nsId.dataset("ds" + i).toMetadataEntity(),
+                                        union(new Metadata(SYSTEM, props(ENTITY_NAME_KEY, "ds" + i)),
+                                              new Metadata(USER, tags(i % 2 == 0 ? "even" : "odd", "t" + i)))))
+      .collect(Collectors.toList());
+    mds.batch(records.stream()
+                .map(record -> new Update(record.getEntity(), record.getMetadata()))
+                .collect(Collectors.toList()), MutationOptions.DEFAULT);
+
+    // an entity matches if it matches any of the terms
+    assertResults(mds, SearchRequest.of("t1 t2").addNamespace(ns).build(), records.get(1), records.get(2));
+    // and all of the terms prefixed with '+'
+    assertInOrder(mds, SearchRequest.of("+even +t2").addNamespace(ns).build(), records.get(2));
+    assertInOrder(mds, SearchRequest.of("+odd +t2").addNamespace(ns).build());
+    assertResults(mds, SearchRequest.of("+t* +odd").addNamespace(ns).build(),
+                  records.get(1), records.get(3), records.get(5));
+    // terms that are not required only affect the ranking
+    SearchResponse response = assertResults(mds, SearchRequest.of("t4 +even").addNamespace(ns).build(),
+                                            records.get(0), records.get(2), records.get(4));
+    Assert.assertEquals(records.get(4), response.getResults().get(0));
+
+    // sort the entities matching a query, and page through them with a cursor
+    Sorting sorting = new Sorting(ENTITY_NAME_KEY, Sorting.Order.DESC);
+    response = assertInOrder(mds, SearchRequest.of("even").addNamespace(ns).setSorting(sorting)
+                               .setLimit(2).setCursorRequested(true).build(),
+                             records.get(4), records.get(2));
+    Assert.assertNotNull(response.getCursor());
+    response = assertInOrder(mds, SearchRequest.of("even").addNamespace(ns).setSorting(sorting)
+                               .setLimit(2).setCursorRequested(true).setCursor(response.getCursor()).build(),
+                             records.get(0));
+    Assert.assertNull(response.getCursor());
+    assertInOrder(mds, SearchRequest.of("+odd t*").addNamespace(ns).setSorting(sorting).build(),
+                  records.get(5), records.get(3), records.get(1));
+
+    // clean up
+    mds.batch(records.stream().map(MetadataRecord::getEntity).map(Drop::new).collect(Collectors.toList()),
+              MutationOptions.DEFAULT);
+  }
+
   // this test is specific to teh DatasetMetadataStorage, because of the specific way it tests pagination:
   // it requests offsets that are not a multiple of the page size, which is not supported in all implementations.
   @Test
@@ -0,0 +1,383 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.gateway.router;
+
+import com.google.common.base.Preconditions;
+import io.netty.handler.codec.http.HttpMethod;
+
+import java.util.Arrays;
+import java.util.function.Function;
+import javax.annotation.Nullable;
+
+/**
+ * A table of routes from request paths to {@link RouteDestination}. Each route is declared with a pattern of
+ * path segments, which is matched either against the beginning or the end of the request path. In a pattern,
+ * a {@code null} segment matches any segment. Empty segments in the request path are ignored.
+ * <p>
+ * When multiple routes match a request path, the route added first to the table wins. The routes are compiled
+ * into two path segment tries, one for the prefix patterns and one for the suffix patterns, so that a lookup walks
+ * the request path without splitting it, and only visits the routes that can match.
+ */
+final class RouteTable {
+
+  private final Node prefixRoot;
+  private final Node suffixRoot;
+
+  private RouteTable(Node prefixRoot, Node suffixRoot) {
+    this.prefixRoot = prefixRoot;
+    this.suffixRoot = suffixRoot;
+  }
+
+  /**
+   * Creates a {@link Builder} for building a {@link RouteTable}.
+   */
+  static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Finds the route for the given request.
+   *
+   * @param path the request path
+   * @param method the request method
+   * @return the first added {@link Route} that matches the request, or {@code null} if no route matches
+   */
+  @Nullable
+  Route match(String path, HttpMethod method) {
+    Route route = matchPrefix(prefixRoot, path, 0, 0, method, null);
+    return matchSuffix(suffixRoot, path, path.length(), 0, method, route);
+  }
+
+  /**
+   * Returns whether the first segment of the given path is the given segment.
+   */
+  static boolean isFirstSegment(String path, String segment) {
+    int start = skipSlashes(path, 0);
+    int end = segmentEnd(path, start);
+    return end - start == segment.length() && path.startsWith(segment, start);
+  }
+
+  /**
+   * Returns the segment at the given index of the given path, or {@code null} if the path doesn't have that many
+   * segments.
+   */
+  @Nullable
+  static String getSegment(String path, int index) {
+    int start = skipSlashes(path, 0);
+    for (int i = 0; i < index && start < path.length(); i++) {
+      start = skipSlashes(path, segmentEnd(path, start));
+    }
+    return start < path.length() ? path.substring(start, segmentEnd(path, start)) : null;
+  }
+
+  @Nullable
+  private static Route matchPrefix(Node node, String path, int pos, int depth,
+                                   HttpMethod method, @Nullable Route best) {
+    best = node.selectRoute(path, pos, path.length(), depth, method, best);
+
+    int start = skipSlashes(path, pos);
+    if (start == path.length()) {
+      return best;
+    }
+    int end = segmentEnd(path, start);
+    Node child = node.getChild(path, start, end);
+    if (child != null && child.isBetter(best)) {
+      best = matchPrefix(child, path, end, depth + 1, method, best);
+    }
+    if (node.wildcard != null && node.wildcard.isBetter(best)) {
+      best = matchPrefix(node.wildcard, path, end, depth + 1, method, best);
+    }
+    return best;
+  }
+
+  @Nullable
+  private static Route matchSuffix(Node node, String path, int pos, int depth,
+                                   HttpMethod method, @Nullable Route best) {
+    best = node.selectRoute(path, 0, pos, depth, method, best);
+
+    int end = pos;
+    while (end > 0 && path.charAt(end - 1) == '/') {
+      end--;
+    }
+    if (end == 0) {
+      return best;
+    }
+    int start = path.lastIndexOf('/', end - 1) + 1;
+    Node child = node.getChild(path, start, end);
+    if (child != null && child.isBetter(best)) {
+      best = matchSuffix(child, path, start, depth + 1, method, best);
+    }
+    if (node.wildcard != null && node.wildcard.isBetter(best)) {
+      best = matchSuffix(node.wildcard, path, start, depth + 1, method, best);
+    }
+    return best;
+  }
+
+  private static int skipSlashes(String path, int pos) {
+    while (pos < path.length() && path.charAt(pos) == '/') {
+      pos++;
+    }
+    return pos;
+  }
+
+  private static int segmentEnd(String path, int start) {
+    int end = path.indexOf('/', start);
+    return end < 0 ? path.length() : end;
+  }
+
+  /**
+   * Counts the segments in the given range of the path, up to the given limit.
+   */
+  private static int countSegments(String path, int from, int to, int limit) {
+    int count = 0;
+    int pos = from;
+    while (count < limit) {
+      while (pos < to && path.charAt(pos) == '/') {
+        pos++;
+      }
+      if (pos >= to) {
+        break;
+      }
+      count++;
+      while (pos < to && path.charAt(pos) != '/') {
+        pos++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * A route in the table.
+   */
+  static final class Route {
+    private final int priority;
+    private final int minSegments;
+    private final int maxSegments;
+    private final HttpMethod method;
+    private final Function<String, RouteDestination> resolver;
+
+    private Route(int priority, int minSegments, int maxSegments, @Nullable HttpMethod method,
+                  Function<String, RouteDestination> resolver) {
+      this.priority = priority;
+      this.minSegments = minSegments;
+      this.maxSegments = maxSegments;
+      this.method = method;
+      this.resolver = resolver;
+    }
+
+    /**
+     * Returns the {@link RouteDestination} of this route for the given request path.
+     */
+    @Nullable
+    RouteDestination getDestination(String path) {
+      return resolver.apply(path);
+    }
+
+    /**
+     * Returns whether this route accepts the request, after its pattern matched the given number of segments.
+     * The segments that are not part of the pattern are in the given range of the path.
+     */
+    private boolean accepts(String path, int from, int to, int matchedSegments, HttpMethod method) {
+      if (this.method != null && !this.method.equals(method)) {
+        return false;
+      }
+      if (minSegments <= matchedSegments && maxSegments == Integer.MAX_VALUE) {
+        return true;
+      }
+      int limit = maxSegments == Integer.MAX_VALUE ? minSegments - matchedSegments : maxSegments - matchedSegments + 1;
+      int segments = matchedSegments + countSegments(path, from, to, limit);
+      return segments >= minSegments && segments <= maxSegments;
+    }
+  }
+
+  /**
+   * Builder for {@link RouteTable}.
+   */
+  static final class Builder {
+    private final Node prefixRoot = new Node();
+    private final Node suffixRoot = new Node();
+    private int priority;
+
+    private Builder() {
+    }
+
+    /**
+     * Adds a route matched against the beginning of the request path.
+     */
+    RouteBuilder prefix(String... pattern) {
+      return new RouteBuilder(this, prefixRoot, pattern);
+    }
+
+    /**
+     * Adds a route matched against the end of the request path.
+     */
+    RouteBuilder suffix(String... pattern) {
+      String[] reversed = new String[pattern.length];
+      for (int i = 0; i < pattern.length; i++) {
+        reversed[i] = pattern[pattern.length - i - 1];
+      }
+      return new RouteBuilder(this, suffixRoot, reversed);
+    }
+
+    RouteTable build() {
+      return new RouteTable(prefixRoot, suffixRoot);
+    }
+
+    private Builder add(Node root, String[] pattern, int minSegments, int maxSegments,
+                        @Nullable HttpMethod method, Function<String, RouteDestination> resolver) {
+      Route route = new Route(priority++, Math.max(minSegments, pattern.length), maxSegments, method, resolver);
+      Node node = root;
+      node.minPriority = Math.min(node.minPriority, route.priority);
+      for (String segment : pattern) {
+        node = node.getOrAddChild(segment);
+        node.minPriority = Math.min(node.minPriority, route.priority);
+      }
+      node.routes = Arrays.copyOf(node.routes, node.routes.length + 1);
+      node.routes[node.routes.length - 1] = route;
+      return this;
+    }
+  }
+
+  /**
+   * Builder for a single route in the table.
+   */
+  static final class RouteBuilder {
+    private final Builder builder;
+    private final Node root;
+    private final String[] pattern;
+    private int minSegments;
+    private int maxSegments = Integer.MAX_VALUE;
+    private HttpMethod method;
+
+    private RouteBuilder(Builder builder, Node root, String[] pattern) {
+      this.builder = builder;
+      this.root = root;
+      this.pattern = pattern;
+    }
+
+    /**
+     * Only matches request paths with at least the given number of segments.
+     */
+    RouteBuilder minSegments(int minSegments) {
+      this.minSegments = minSegments;
+      return this;
+    }
+
+    /**
+     * Only matches request paths with exactly the given number of segments.
+     */
+    RouteBuilder exactSegments(int segments) {
+      Preconditions.checkArgument(segments >= pattern.length,
+                                  "Number of segments must not be smaller than the pattern length %s", segments);
+      this.minSegments = segments;
+      this.maxSegments = segments;
+      return this;
+    }
+
+    /**
+     * Only matches requests with the given method.
+     */
+    RouteBuilder method(HttpMethod method) {
+      this.method = method;
+      return this;
+    }
+
+    /**
+     * Routes the matching requests to the given destination.
+     */
+    Builder to(@Nullable RouteDestination destination) {
+      return resolve(path -> destination);
+    }
+
+    /**
+     * Routes the matching requests to the destination returned by the given function, which is called with the
+     * request path.
+     */
+    Builder resolve(Function<String, RouteDestination> resolver) {
+      return builder.add(root, pattern, minSegments, maxSegments, method, resolver);
+    }
+  }
+
+  /**
+   * A node in the path segment trie.
+   */
+  private static final class Node {
+    private String[] keys = new String[0];
+    private Node[] children = new Node[0];
+    private Node wildcard;
+    // Routes whose pattern ends at this node, in priority order
+    private Route[] routes = new Route[0];
+    // The highest priority (smallest value) of the routes in the subtree
+    private int minPriority = Integer.MAX_VALUE;
+
+    /**
+     * Returns whether a route in the subtree has higher priority than the given route.
+     */
+    boolean isBetter(@Nullable Route route) {
+      return route == null || minPriority < route.priority;
+    }
+
+    /**
+     * Returns the route with the highest priority among the given route and the routes of this node that accept
+     * the request.
+     */
+    @Nullable
+    Route selectRoute(String path, int from, int to, int depth, HttpMethod method, @Nullable Route best) {
+      for (Route route : routes) {
+        if (best != null && route.priority >= best.priority) {
+          break;
+        }
+        if (route.accepts(path, from, to, depth, method)) {
+          return route;
+        }
+      }
+      return best;
+    }
+
+    @Nullable
+    Node getChild(String path, int start, int end) {
+      int length = end - start;
+      for (int i = 0; i < keys.length; i++) {
+        String key = keys[i];
+        if (key.length() == length && path.startsWith(key, start)) {
+          return children[i];
+        }
+      }
+      return null;
+    }
+
+    Node getOrAddChild(@Nullable String segment) {
+      if (segment == null) {
+        if (wildcard == null) {
+          wildcard = new Node();
+        }
+        return wildcard;
+      }
+      for (int i = 0; i < keys.length; i++) {
+        if (keys[i].equals(segment)) {
+          return children[i];
+        }
+      }
+      Node child = new Node();
+      keys = Arrays.copyOf(keys, keys.length + 1);
+      children = Arrays.copyOf(children, children.length + 1);
+      keys[keys.length - 1] = segment;
+      children[children.length - 1] = child;
+      return child;
+    }
+  }
+}
@@ -16,14 +16,18 @@
 
 package io.cdap.cdap.gateway.router;
 
-import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import io.cdap.cdap.common.conf.Constants;
 import io.cdap.cdap.common.service.ServiceDiscoverable;
 import io.cdap.cdap.proto.ProgramType;
 import io.cdap.http.AbstractHttpHandler;
+import io.netty.handler.codec.http.HttpMethod;
 import io.netty.handler.codec.http.HttpRequest;
-import org.apache.commons.lang.StringUtils;
 
+import java.util.Map;
+import java.util.Set;
 import javax.annotation.Nullable;
 
 /**
@@ -31,11 +35,6 @@ import javax.annotation.Nullable;
  */
 public final class RouterPathLookup extends AbstractHttpHandler {
 
-  @SuppressWarnings("unused")
-  private enum AllowedMethod {
-    GET, PUT, POST, DELETE
-  }
-
   public static final RouteDestination APP_FABRIC_HTTP = new RouteDestination(Constants.Service.APP_FABRIC_HTTP);
   public static final RouteDestination METRICS = new RouteDestination(Constants.Service.METRICS);
   public static final RouteDestination DATASET_MANAGER = new RouteDestination(Constants.Service.DATASET_MANAGER);
@@ -51,6 +50,10 @@ public final class RouterPathLookup extends AbstractHttpHandler {
   public static final RouteDestination MESSAGING = new RouteDestination(Constants.Service.MESSAGING_SERVICE);
   public static final RouteDestination DONT_ROUTE = new RouteDestination(Constants.Router.DONT_ROUTE_SERVICE);
 
+  private static final Set<HttpMethod> ALLOWED_METHODS = ImmutableSet.of(HttpMethod.GET, HttpMethod.PUT,
+                                                                         HttpMethod.POST, HttpMethod.DELETE);
+  private static final RouteTable V3_ROUTES = createV3Routes();
+
   /**
    * Returns the CDAP service which will handle the HttpRequest
    *
@@ -60,203 +63,133 @@ public final class RouterPathLookup extends AbstractHttpHandler {
    */
   @Nullable
   public RouteDestination getRoutingService(String requestPath, HttpRequest httpRequest) {
-    try {
-      String method = httpRequest.method().name();
-      AllowedMethod requestMethod = AllowedMethod.valueOf(method);
-      String[] uriParts = StringUtils.split(requestPath, '/');
-
-      if (uriParts[0].equals(Constants.Gateway.API_VERSION_3_TOKEN)) {
-        return getV3RoutingService(uriParts, requestMethod);
-      }
-    } catch (Exception e) {
-      // Ignore exception. Default routing to app-fabric.
+    HttpMethod method = httpRequest.method();
+    if (!ALLOWED_METHODS.contains(method)
+      || !RouteTable.isFirstSegment(requestPath, Constants.Gateway.API_VERSION_3_TOKEN)) {
+      // Default routing to app-fabric.
+      return APP_FABRIC_HTTP;
     }
-    return APP_FABRIC_HTTP;
+    RouteTable.Route route = V3_ROUTES.match(requestPath, method);
+    return route == null ? APP_FABRIC_HTTP : route.getDestination(requestPath);
   }
 
-  private boolean isUserServiceType(String uriPart) {
-    for (ProgramType type : ServiceDiscoverable.getUserServiceTypes()) {
-      if (type.getCategoryName().equals(uriPart)) {
-        return true;
-      }
-    }
-    return false;
-  }
+  /**
+   * Creates the {@link RouteTable} for the v3 APIs. Routes added first take precedence.
+   */
+  private static RouteTable createV3Routes() {
+    RouteTable.Builder builder = RouteTable.builder();
 
-  @Nullable
-  private RouteDestination getV3RoutingService(String [] uriParts, AllowedMethod requestMethod) {
-    if ((uriParts.length >= 2) && uriParts[1].equals("feeds")) {
-      // TODO(Rohit) find a better way to handle that - this looks hackish
-      // This needs to now changed especially metadata since now it can have custom parts
-      return null;
-    } else if ("bootstrap".equals(uriParts[1])) {
-      return APP_FABRIC_HTTP;
-    } else if ((uriParts.length >= 11) && "versions".equals(uriParts[5]) && isUserServiceType(uriParts[7])
-      && "methods".equals(uriParts[9])) {
+    // TODO(Rohit) find a better way to handle that - this looks hackish
+    // This needs to now changed especially metadata since now it can have custom parts
+    builder.prefix("v3", "feeds").to(null);
+    builder.prefix("v3", "bootstrap").to(APP_FABRIC_HTTP);
+
+    for (ProgramType type : ServiceDiscoverable.getUserServiceTypes()) {
       // User defined services (version specific) handle methods on them:
       //Path: "/v3/namespaces/{namespace-id}/apps/{app-id}/versions/{version-id}/services/{service-id}/methods/
       //       <user-defined-method-path>"
-      String serviceName = ServiceDiscoverable.getName(uriParts[2], uriParts[4],
-                                                       ProgramType.valueOfCategoryName(uriParts[7]), uriParts[8]);
-      String version = uriParts[6];
-      return new RouteDestination(serviceName, version);
-    } else if ((uriParts.length >= 9) && isUserServiceType(uriParts[5]) && "methods".equals(uriParts[7])) {
+      builder.prefix("v3", null, null, null, null, "versions", null, type.getCategoryName(), null, "methods")
+        .minSegments(11)
+        .resolve(path -> new RouteDestination(
+          ServiceDiscoverable.getName(RouteTable.getSegment(path, 2), RouteTable.getSegment(path, 4),
+                                      type, RouteTable.getSegment(path, 8)),
+          RouteTable.getSegment(path, 6)));
+    }
+    for (ProgramType type : ServiceDiscoverable.getUserServiceTypes()) {
       //User defined services handle methods on them:
       //Path: "/v3/namespaces/{namespace-id}/apps/{app-id}/services/{service-id}/methods/<user-defined-method-path>"
-      return new RouteDestination(ServiceDiscoverable.getName(uriParts[2], uriParts[4],
-                                                              ProgramType.valueOfCategoryName(uriParts[5]),
-                                                              uriParts[6]));
-    } else if (beginsWith(uriParts, "v3", "system", "services", null, "logs")) {
-      //Log Handler Path /v3/system/services/<service-id>/logs
-      return LOG_QUERY;
-    } else if ((!beginsWith(uriParts, "v3", "namespaces", null, "securekeys")) && (endsWith(uriParts, "metadata") ||
-      // do no intercept the namespaces/<namespace-name>/securekeys/<key>/metadata as that is handled by the
-      // SecureStoreHandler
-      endsWith(uriParts, "metadata", "properties") || endsWith(uriParts, "metadata", "properties", null) ||
-      endsWith(uriParts, "metadata", "tags") || endsWith(uriParts, "metadata", "tags", null) ||
-      endsWith(uriParts, "metadata", "search") ||
-      beginsWith(uriParts, "v3", "namespaces", null, "datasets", null, "lineage") ||
-      beginsWith(uriParts, "v3", "metadata", "search"))) {
-      return METADATA_SERVICE;
-    } else if (beginsWith(uriParts, "v3", "security", "authorization") ||
-      beginsWith(uriParts, "v3", "namespaces", null, "securekeys")) {
-      // Authorization and Secure Store Handlers currently run in App Fabric
-      return APP_FABRIC_HTTP;
-    } else if (beginsWith(uriParts, "v3", "security", "store", "namespaces", null)) {
-      return APP_FABRIC_HTTP;
-    } else if (beginsWith(uriParts, "v3", "namespaces", null, "data", "datasets", null, "programs") &&
-      requestMethod.equals(AllowedMethod.GET)) {
-      return APP_FABRIC_HTTP;
-    } else if (beginsWith(uriParts, "v3", "namespaces", null, "profiles") ||
-      beginsWith(uriParts, "v3", "profiles")) {
-      return APP_FABRIC_HTTP;
-    } else if (beginsWith(uriParts, "v3", "namespaces", null, "runs")) {
-      return APP_FABRIC_HTTP;
-    } else if (beginsWith(uriParts, "v3", "namespaces", null, "previews")) {
-      return PREVIEW_HTTP;
-    } else if (beginsWith(uriParts, "v3", "system", "serviceproviders")) {
-      return APP_FABRIC_HTTP;
-    } else if ((uriParts.length >= 8 && uriParts[7].equals("logs")) ||
-      (uriParts.length >= 10 && uriParts[9].equals("logs")) ||
-      (uriParts.length >= 6 && uriParts[5].equals("logs"))) {
-      //Log Handler Paths:
-      // /v3/namespaces/<namespaceid>/apps/<appid>/<programid-type>/<programid>/logs
-      // /v3/namespaces/{namespace-id}/apps/{app-id}/{program-type}/{program-id}/runs/{run-id}/logs
-      return LOG_QUERY;
-    } else if (uriParts.length >= 2 && uriParts[1].equals("metrics")) {
-      //Metrics Search Handler Path /v3/metrics
-      return METRICS;
-    } else if (uriParts.length >= 5 && uriParts[1].equals("data") && uriParts[2].equals("explore") &&
-      (uriParts[3].equals("queries") || uriParts[3].equals("jdbc") || uriParts[3].equals("namespaces"))) {
-      // non-namespaced explore operations. For example, /v3/data/explore/queries/{id}
-      return EXPLORE_HTTP_USER_SERVICE;
-    } else if (uriParts.length >= 6 && uriParts[3].equals("data") && uriParts[4].equals("explore") &&
-      (uriParts[5].equals("queries") || uriParts[5].equals("datasets")
-        || uriParts[5].equals("tables") || uriParts[5].equals("jdbc"))) {
-      // namespaced explore operations. For example, /v3/namespaces/{namespace-id}/data/explore/datasets/{ds}/enable
-      return EXPLORE_HTTP_USER_SERVICE;
-    } else if ((uriParts.length == 3) && uriParts[1].equals("explore") && uriParts[2].equals("status")) {
-      return EXPLORE_HTTP_USER_SERVICE;
-    } else if (beginsWith(uriParts, "v3", "system", "services", null, "status")
-      || beginsWith(uriParts, "v3", "system", "services", null, "stacks")) {
-      switch (uriParts[3]) {
-        case Constants.Service.LOGSAVER: return LOG_SAVER;
-        case Constants.Service.TRANSACTION: return TRANSACTION;
-        case Constants.Service.METRICS_PROCESSOR: return METRICS_PROCESSOR;
-        case Constants.Service.METRICS: return METRICS;
-        case Constants.Service.APP_FABRIC_HTTP: return APP_FABRIC_HTTP;
-        case Constants.Service.DATASET_EXECUTOR: return DATASET_EXECUTOR;
-        case Constants.Service.METADATA_SERVICE: return METADATA_SERVICE;
-        case Constants.Service.EXPLORE_HTTP_USER_SERVICE: return EXPLORE_HTTP_USER_SERVICE;
-        case Constants.Service.MESSAGING_SERVICE: return MESSAGING;
-        default: return null;
-      }
-    } else if (uriParts.length == 7 && uriParts[3].equals("data") && uriParts[4].equals("datasets") &&
-      (uriParts[6].equals("flows") || uriParts[6].equals("workers") || uriParts[6].equals("mapreduce"))) {
-      // namespaced app fabric data operations:
-      // /v3/namespaces/{namespace-id}/data/datasets/{name}/flows
-      // /v3/namespaces/{namespace-id}/data/datasets/{name}/workers
-      // /v3/namespaces/{namespace-id}/data/datasets/{name}/mapreduce
-      return APP_FABRIC_HTTP;
-    } else if ((uriParts.length >= 4) && uriParts[3].equals("data")) {
-      // other data operations. For example:
-      // /v3/namespaces/{namespace-id}/data/datasets
-      // /v3/namespaces/{namespace-id}/data/datasets/{name}
-      // /v3/namespaces/{namespace-id}/data/datasets/{name}/properties
-      // /v3/namespaces/{namespace-id}/data/datasets/{name}/admin/{method}
-      return DATASET_MANAGER;
-    } else if ((uriParts.length >= 4) && uriParts[3].equals("artifact-internals")) {
-      // we don't want to expose endpoints in artifact handler that are internal and can only by called by programs
-      // /v3/namespaces/{namespace-id}/artifact-internals/list/artifacts
-      // /v3/namespaces/{namespace-id}/artifact-internals/artifact/{artifact-name}
-      return DONT_ROUTE;
+      builder.prefix("v3", null, null, null, null, type.getCategoryName(), null, "methods")
+        .minSegments(9)
+        .resolve(path -> new RouteDestination(
+          ServiceDiscoverable.getName(RouteTable.getSegment(path, 2), RouteTable.getSegment(path, 4),
+                                      type, RouteTable.getSegment(path, 6))));
     }
-    return APP_FABRIC_HTTP;
-  }
 
-  /**
-   * Determines if the beginning of an array of strings matches an expected sequence of strings.
-   *
-   * <ul><li>
-   *   the actual sequence may be longer than the expected one as long as its beginning matches;
-   * </li><li>
-   *   a null in the expected sequence means "accept any string" in that position.
-   * </li></ul>
-   *
-   * @param actual the actual string array to check; must not contain nulls.
-   * @param expected the expected string array to match; may contain nulls as wildcards.
-   *                 
-   * @return true if the start of {@code actual} matches {@code expected}
-   */
-  @VisibleForTesting
-  static boolean beginsWith(String[] actual, String ... expected) {
-    return matches(actual, expected, false);
-  }
+    //Log Handler Path /v3/system/services/<service-id>/logs
+    builder.prefix("v3", "system", "services", null, "logs").to(LOG_QUERY);
 
-  /**
-   * Determines if the end of an array of strings matches an expected sequence of strings.
-   *
-   * <ul><li>
-   *   the actual sequence may be longer than the expected one as long as its end matches;
-   * </li><li>
-   *   a null in the expected sequence means "accept any string" in that position.
-   * </li></ul>
-   *
-   * @param actual the actual string array to check; must not contain nulls.
-   * @param expected the expected string array to match; may contain nulls as wildcards.
-   *
-   * @return true if the end of {@code actual} matches {@code expected}
-   */
-  @VisibleForTesting
-  static boolean endsWith(String[] actual, String ... expected) {
-    return matches(actual, expected, true);
-  }
+    // do no intercept the namespaces/<namespace-name>/securekeys/<key>/metadata as that is handled by the
+    // SecureStoreHandler, which currently runs in App Fabric
+    builder.prefix("v3", "namespaces", null, "securekeys").to(APP_FABRIC_HTTP);
 
-  /**
-   * Determines if the begin or end of an array of strings matches an expected sequence of strings.
-   *
-   * <ul><li>
-   *   the actual sequence may be longer than the expected one as long as its begin or end matches;
-   * </li><li>
-   *   a null in the expected sequence means "accept any string" in that position.
-   * </li></ul>
-   *
-   * @param actual the actual string array to check; must not contain nulls.
-   * @param expected the expected string array to match; may contain nulls as wildcards.
-   * @param matchEnd whether to match the end of the actual sequence
-   *
-   * @return true if the end of {@code actual} matches {@code expected}
-   */
-  private static boolean matches(String[] actual, String[] expected, boolean matchEnd) {
-    if (actual.length < expected.length) {
-      return false;
+    builder.suffix("metadata").to(METADATA_SERVICE);
+    builder.suffix("metadata", "properties").to(METADATA_SERVICE);
+    builder.suffix("metadata", "properties", null).to(METADATA_SERVICE);
+    builder.suffix("metadata", "tags").to(METADATA_SERVICE);
+    builder.suffix("metadata", "tags", null).to(METADATA_SERVICE);
+    builder.suffix("metadata", "search").to(METADATA_SERVICE);
+    builder.prefix("v3", "namespaces", null, "datasets", null, "lineage").to(METADATA_SERVICE);
+    builder.prefix("v3", "metadata", "search").to(METADATA_SERVICE);
+
+    // Authorization Handlers currently run in App Fabric
+    builder.prefix("v3", "security", "authorization").to(APP_FABRIC_HTTP);
+    builder.prefix("v3", "security", "store", "namespaces", null).to(APP_FABRIC_HTTP);
+    builder.prefix("v3", "namespaces", null, "data", "datasets", null, "programs")
+      .method(HttpMethod.GET).to(APP_FABRIC_HTTP);
+    builder.prefix("v3", "namespaces", null, "profiles").to(APP_FABRIC_HTTP);
+    builder.prefix("v3", "profiles").to(APP_FABRIC_HTTP);
+    builder.prefix("v3", "namespaces", null, "runs").to(APP_FABRIC_HTTP);
+    builder.prefix("v3", "namespaces", null, "previews").to(PREVIEW_HTTP);
+    builder.prefix("v3", "system", "serviceproviders").to(APP_FABRIC_HTTP);
+
+    //Log Handler Paths:
+    // /v3/namespaces/<namespaceid>/apps/<appid>/<programid-type>/<programid>/logs
+    // /v3/namespaces/{namespace-id}/apps/{app-id}/{program-type}/{program-id}/runs/{run-id}/logs
+    builder.prefix("v3", null, null, null, null, null, null, "logs").to(LOG_QUERY);
+    builder.prefix("v3", null, null, null, null, null, null, null, null, "logs").to(LOG_QUERY);
+    builder.prefix("v3", null, null, null, null, "logs").to(LOG_QUERY);
+
+    //Metrics Search Handler Path /v3/metrics
+    builder.prefix("v3", "metrics").to(METRICS);
+
+    // non-namespaced explore operations. For example, /v3/data/explore/queries/{id}
+    for (String resource : ImmutableList.of("queries", "jdbc", "namespaces")) {
+      builder.prefix("v3", "data", "explore", resource).minSegments(5).to(EXPLORE_HTTP_USER_SERVICE);
+    }
+    // namespaced explore operations. For example, /v3/namespaces/{namespace-id}/data/explore/datasets/{ds}/enable
+    for (String resource : ImmutableList.of("queries", "datasets", "tables", "jdbc")) {
+      builder.prefix("v3", null, null, "data", "explore", resource).to(EXPLORE_HTTP_USER_SERVICE);
     }
-    int offset = matchEnd ? actual.length - expected.length : 0;
-    for (int i = 0; i < expected.length; i++) {
-      if (expected[i] != null && !expected[i].equals(actual[offset + i])) {
-        return false;
+    builder.prefix("v3", "explore", "status").exactSegments(3).to(EXPLORE_HTTP_USER_SERVICE);
+
+    Map<String, RouteDestination> systemServices = ImmutableMap.<String, RouteDestination>builder()
+      .put(Constants.Service.LOGSAVER, LOG_SAVER)
+      .put(Constants.Service.TRANSACTION, TRANSACTION)
+      .put(Constants.Service.METRICS_PROCESSOR, METRICS_PROCESSOR)
+      .put(Constants.Service.METRICS, METRICS)
+      .put(Constants.Service.APP_FABRIC_HTTP, APP_FABRIC_HTTP)
+      .put(Constants.Service.DATASET_EXECUTOR, DATASET_EXECUTOR)
+      .put(Constants.Service.METADATA_SERVICE, METADATA_SERVICE)
+      .put(Constants.Service.EXPLORE_HTTP_USER_SERVICE, EXPLORE_HTTP_USER_SERVICE)
+      .put(Constants.Service.MESSAGING_SERVICE, MESSAGING)
+      .build();
+    for (String resource : ImmutableList.of("status", "stacks")) {
+      for (Map.Entry<String, RouteDestination> entry : systemServices.entrySet()) {
+        builder.prefix("v3", "system", "services", entry.getKey(), resource).to(entry.getValue());
       }
+      builder.prefix("v3", "system", "services", null, resource).to(null);
+    }
+
+    // namespaced app fabric data operations:
+    // /v3/namespaces/{namespace-id}/data/datasets/{name}/flows
+    // /v3/namespaces/{namespace-id}/data/datasets/{name}/workers
+    // /v3/namespaces/{namespace-id}/data/datasets/{name}/mapreduce
+    for (String programs : ImmutableList.of("flows", "workers", "mapreduce")) {
+      builder.prefix("v3", null, null, "data", "datasets", null, programs).exactSegments(7).to(APP_FABRIC_HTTP);
     }
-    return true;
+
+    // other data operations. For example:
+    // /v3/namespaces/{namespace-id}/data/datasets
+    // /v3/namespaces/{namespace-id}/data/datasets/{name}
+    // /v3/namespaces/{namespace-id}/data/datasets/{name}/properties
+    // /v3/namespaces/{namespace-id}/data/datasets/{name}/admin/{method}
+    builder.prefix("v3", null, null, "data").to(DATASET_MANAGER);
+
+    // we don't want to expose endpoints in artifact handler that are internal and can only by called by programs
+    // /v3/namespaces/{namespace-id}/artifact-internals/list/artifacts
+    // /v3/namespaces/{namespace-id}/artifact-internals/artifact/{artifact-name}
+    builder.prefix("v3", null, null, "artifact-internals").to(DONT_ROUTE);
+
+    return builder.build();
   }
 }
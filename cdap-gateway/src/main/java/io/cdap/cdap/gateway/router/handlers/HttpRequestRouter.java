@@ -17,56 +17,36 @@
 package io.cdap.cdap.gateway.router.handlers;
 
 import io.cdap.cdap.common.HandlerException;
-import io.cdap.cdap.common.conf.CConfiguration;
-import io.cdap.cdap.common.conf.Constants;
 import io.cdap.cdap.common.discovery.EndpointStrategy;
 import io.cdap.cdap.common.http.Channels;
 import io.cdap.cdap.gateway.router.RouterServiceLookup;
-import io.netty.bootstrap.Bootstrap;
-import io.netty.buffer.ByteBufAllocator;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelDuplexHandler;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandler;
-import io.netty.channel.ChannelInitializer;
-import io.netty.channel.ChannelOption;
-import io.netty.channel.ChannelPipeline;
 import io.netty.channel.ChannelPromise;
-import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.codec.http.DefaultFullHttpResponse;
 import io.netty.handler.codec.http.FullHttpResponse;
-import io.netty.handler.codec.http.HttpClientCodec;
 import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpResponse;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.netty.handler.codec.http.HttpUtil;
 import io.netty.handler.codec.http.HttpVersion;
 import io.netty.handler.codec.http.LastHttpContent;
-import io.netty.handler.ssl.SslContext;
-import io.netty.handler.ssl.SslContextBuilder;
-import io.netty.handler.ssl.SslHandler;
-import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
-import io.netty.handler.timeout.IdleStateHandler;
 import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.Future;
 import org.apache.twill.discovery.Discoverable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.Closeable;
 import java.io.Flushable;
 import java.nio.channels.ClosedChannelException;
 import java.nio.charset.StandardCharsets;
-import java.util.Arrays;
-import java.util.HashMap;
 import java.util.LinkedList;
-import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.TimeUnit;
-import javax.annotation.Nullable;
-import javax.net.ssl.SSLException;
 
 /**
  * A {@link ChannelInboundHandler} for forwarding incoming request to appropriate CDAP service endpoint
@@ -76,19 +56,17 @@ import javax.net.ssl.SSLException;
 public class HttpRequestRouter extends ChannelDuplexHandler {
 
   private static final Logger LOG = LoggerFactory.getLogger(HttpRequestRouter.class);
-  private static final byte[] HTTPS_SCHEME_BYTES = Constants.Security.SSL_URI_SCHEME.getBytes();
 
-  private final CConfiguration cConf;
   private final RouterServiceLookup serviceLookup;
-  private final Map<Discoverable, Queue<MessageSender>> messageSenders;
+  private final OutboundChannelPool channelPool;
   private int inflightRequests;
   private MessageSender currentMessageSender;
+  private boolean responseKeepAlive;
   private ChannelFutureListener failureResponseListener;
 
-  public HttpRequestRouter(CConfiguration cConf, RouterServiceLookup serviceLookup) {
-    this.cConf = cConf;
+  public HttpRequestRouter(RouterServiceLookup serviceLookup, OutboundChannelPool channelPool) {
     this.serviceLookup = serviceLookup;
-    this.messageSenders = new HashMap<>();
+    this.channelPool = channelPool;
   }
 
   @Override
@@ -130,9 +108,9 @@ public class HttpRequestRouter extends ChannelDuplexHandler {
           }
         };
 
-        currentMessageSender = getMessageSender(
-          inboundChannel, getDiscoverable(request)
-        );
+        Discoverable discoverable = getDiscoverable(request);
+        LOG.trace("Create new message sender for {}", discoverable);
+        currentMessageSender = new MessageSender(channelPool, inboundChannel, discoverable);
       }
 
       if (inflightRequests == 1 && currentMessageSender != null) {
@@ -154,6 +132,9 @@ public class HttpRequestRouter extends ChannelDuplexHandler {
 
   @Override
   public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+    if (msg instanceof HttpResponse) {
+      responseKeepAlive = HttpUtil.isKeepAlive((HttpResponse) msg);
+    }
     ctx.writeAndFlush(msg, promise);
 
     // When the response for the first request is completed, write N failure responses for pipelining requests (if any).
@@ -163,9 +144,15 @@ public class HttpRequestRouter extends ChannelDuplexHandler {
       }
       inflightRequests = 0;
 
-      // Recycle the message sender
+      // Give the outbound channel back to the pool
       if (currentMessageSender != null) {
-        messageSenders.get(currentMessageSender.getDiscoverable()).add(currentMessageSender);
+        currentMessageSender.release();
+        currentMessageSender = null;
+        // The outbound channel is not closed together with the inbound channel anymore,
+        // hence close the inbound channel if the response says so.
+        if (!responseKeepAlive) {
+          Channels.closeOnFlush(ctx.channel());
+        }
       }
     }
   }
@@ -182,12 +169,8 @@ public class HttpRequestRouter extends ChannelDuplexHandler {
   @Override
   public void channelInactive(ChannelHandlerContext ctx) {
     if (currentMessageSender != null) {
-      currentMessageSender.close();
-    }
-    for (Map.Entry<Discoverable, Queue<MessageSender>> entry : messageSenders.entrySet()) {
-      for (MessageSender sender : entry.getValue()) {
-        sender.close();
-      }
+      currentMessageSender.release();
+      currentMessageSender = null;
     }
     ctx.fireChannelInactive();
   }
@@ -234,28 +217,6 @@ public class HttpRequestRouter extends ChannelDuplexHandler {
     return discoverable;
   }
 
-  /**
-   * Returns the {@link MessageSender} for writing messages to the endpoint represented by the given
-   * {@link Discoverable}.
-   */
-  private MessageSender getMessageSender(Channel inboundChannel,
-                                         Discoverable discoverable) {
-    Queue<MessageSender> senders = messageSenders.computeIfAbsent(discoverable, k -> new LinkedList<>());
-
-    MessageSender sender = senders.poll();
-
-    // Found a MessageSender to reuse, return it
-    if (sender != null) {
-      LOG.trace("Reuse message sender for {}", discoverable);
-      return sender;
-    }
-
-    // Create new MessageSender
-    sender = new MessageSender(cConf, inboundChannel, discoverable);
-    LOG.trace("Create new message sender for {}", discoverable);
-    return sender;
-  }
-
   private String getRequestLine(HttpRequest request) {
     return request.method() + " " + request.uri() + " " + request.protocolVersion();
   }
@@ -278,55 +239,26 @@ public class HttpRequestRouter extends ChannelDuplexHandler {
   }
 
   /**
-   * For sending messages to outbound channel while maintaining the order of messages according to
-   * the order that {@link #send(Object, ChannelFutureListener)} method is called.
+   * For sending messages of a request to outbound channel while maintaining the order of messages according to
+   * the order that {@link #send(Object, ChannelFutureListener)} method is called. The outbound channel is acquired
+   * from the {@link OutboundChannelPool} when the first message is sent, and is released back to the pool by
+   * the {@link #release()} method.
    */
-  private static final class MessageSender implements Flushable, Closeable {
+  private static final class MessageSender implements Flushable {
 
+    private final OutboundChannelPool channelPool;
+    private final Channel inboundChannel;
     private final Discoverable discoverable;
     private final Queue<OutboundMessage> pendingMessages;
-    private final Bootstrap clientBootstrap;
-    private volatile SslContext sslContext;
     private Channel outboundChannel;
-    private boolean closed;
-    private boolean connecting;
+    private boolean released;
+    private boolean acquiring;
 
-    private MessageSender(final CConfiguration cConf, final Channel inboundChannel, final Discoverable discoverable) {
+    private MessageSender(OutboundChannelPool channelPool, Channel inboundChannel, Discoverable discoverable) {
+      this.channelPool = channelPool;
+      this.inboundChannel = inboundChannel;
       this.discoverable = discoverable;
       this.pendingMessages = new LinkedList<>();
-
-      // A channel listener for resetting the state of this message sender on closing of outbound channel
-      final ChannelFutureListener onCloseResetListener = new ChannelFutureListener() {
-        @Override
-        public void operationComplete(ChannelFuture future) {
-          outboundChannel = null;
-          connecting = false;
-        }
-      };
-
-      // Create a client Bootstrap for connecting to internal services
-      // It must be create using the same EventLoopGroup as the inbound channel to make
-      // sure thread safety between the inbound and outbound channels callbacks.
-      this.clientBootstrap = new Bootstrap()
-        .group(inboundChannel.eventLoop())
-        .channel(NioSocketChannel.class)
-        .option(ChannelOption.SO_KEEPALIVE, true)
-        .handler(new ChannelInitializer<SocketChannel>() {
-          @Override
-          protected void initChannel(SocketChannel ch) throws Exception {
-            ch.closeFuture().addListener(onCloseResetListener);
-            ChannelPipeline pipeline = ch.pipeline();
-
-            SslHandler sslHandler = getSslHandler(discoverable, ch.alloc());
-            if (sslHandler != null) {
-              pipeline.addLast("ssl", sslHandler);
-            }
-            pipeline.addLast("idle-state-handler",
-                             new IdleStateHandler(0, 0, cConf.getInt(Constants.Router.CONNECTION_TIMEOUT_SECS)));
-            pipeline.addLast("codec", new HttpClientCodec());
-            pipeline.addLast("forwarder", new OutboundHandler(inboundChannel));
-          }
-        });
     }
 
     /**
@@ -341,105 +273,89 @@ public class HttpRequestRouter extends ChannelDuplexHandler {
         return;
       }
 
-      // If not yet connected or still connecting, just add the message to the pending queue
+      // If not yet acquired or still acquiring, just add the message to the pending queue
       pendingMessages.add(new OutboundMessage(msg, writeCompletedListener));
 
-      // If connecting, we can just return. When the connection completed, it will send all messages in the queue.
-      if (connecting) {
+      // If acquiring, we can just return. When the acquisition completed, it will send all messages in the queue.
+      if (acquiring) {
         return;
       }
 
-      // Make a new connection
-      ChannelFuture connectFuture = clientBootstrap.connect(discoverable.getSocketAddress());
-      connectFuture.addListener(new ChannelFutureListener() {
-        @Override
-        public void operationComplete(ChannelFuture future) throws Exception {
-          // Always remember the outbound channel even if the connection fail.
-          // This make sure any message received before the inbound channel is closed will not get forwarded
-          outboundChannel = future.channel();
-          connecting = false;
-
-          if (future.isSuccess()) {
-            // If this sender is closed (because inbound channel is closed), just close the outbound channel
-            if (closed) {
-              Channels.closeOnFlush(outboundChannel);
-            }
-          }
-          OutboundMessage message = pendingMessages.poll();
-          while (message != null) {
-            processMessage(message, future);
-            message = pendingMessages.poll();
-          }
-          if (future.isSuccess()) {
-            flush();
+      // Acquire a channel from the pool, which either reuses an idle channel or makes a new connection.
+      // The pool is bounded to the event loop of the inbound channel, hence the listener is called from the same
+      // thread as the inbound channel callbacks.
+      channelPool.acquire(inboundChannel.eventLoop(), discoverable).addListener((Future<Channel> future) -> {
+        acquiring = false;
+
+        if (future.isSuccess()) {
+          Channel channel = future.getNow();
+          // If this sender is released (because inbound channel is closed), just give back the channel
+          if (released) {
+            channelPool.release(channel);
+          } else {
+            channel.pipeline().get(OutboundHandler.class).setInboundChannel(inboundChannel);
+            outboundChannel = channel;
           }
         }
+        OutboundMessage message = pendingMessages.poll();
+        while (message != null) {
+          processMessage(message, future);
+          message = pendingMessages.poll();
+        }
+        if (future.isSuccess()) {
+          flush();
+        }
       });
 
-      connecting = true;
+      acquiring = true;
     }
 
     @Override
     public void flush() {
-      if (outboundChannel != null && !closed) {
+      if (outboundChannel != null && !released) {
         outboundChannel.flush();
       }
     }
 
-    @Override
-    public void close() {
-      if (!closed) {
-        closed = true;
-        if (outboundChannel != null) {
-          Channels.closeOnFlush(outboundChannel);
-        }
-      }
-    }
-
-    Discoverable getDiscoverable() {
-      return discoverable;
-    }
-
     /**
-     * Returns the {@link SslContext} to be used for a given discoverable endpoint
-     *
-     * @param discoverable the endpoint to connect to
-     * @return the {@link SslContext} or {@code null} if SSL is not needed
+     * Releases the outbound channel back to the pool. If the channel cannot be reused, because the request or
+     * response is not completed or the connection is not keep-alive, the channel is closed before releasing.
      */
-    @Nullable
-    private SslHandler getSslHandler(Discoverable discoverable, ByteBufAllocator alloc) throws SSLException {
-      if (!Arrays.equals(HTTPS_SCHEME_BYTES, discoverable.getPayload())) {
-        return null;
+    void release() {
+      if (released) {
+        return;
       }
-      SslContext context = sslContext;
-      if (context != null) {
-        return context.newHandler(alloc);
+      released = true;
+      Channel channel = outboundChannel;
+      if (channel == null) {
+        // If still acquiring, the channel will be released when acquired
+        return;
       }
-      synchronized (this) {
-        context = sslContext;
-        if (context == null) {
-          sslContext = context = SslContextBuilder.forClient()
-                                                  .trustManager(InsecureTrustManagerFactory.INSTANCE).build();
+      outboundChannel = null;
+      OutboundHandler handler = channel.pipeline().get(OutboundHandler.class);
+      if (handler == null || !handler.isReusable(channel)) {
+        // Detach before closing, so that closing of the outbound channel won't close the inbound channel
+        if (handler != null) {
+          handler.setInboundChannel(null);
         }
-        return context.newHandler(alloc);
+        channel.close();
       }
+      channelPool.release(channel);
     }
 
     /**
-     * Process the message by sending to the given channel or have a failure call to the message callback,
+     * Process the message by sending to the acquired channel or have a failure call to the message callback,
      * depending on the state of this sender.
      */
-    private void processMessage(OutboundMessage message, ChannelFuture channelFuture) throws Exception {
-      Channel channel = channelFuture.channel();
-
-      if (closed) {
-        message.writeCompletedListener.operationComplete(channel.newFailedFuture(new ClosedChannelException()));
+    private void processMessage(OutboundMessage message, Future<Channel> acquireFuture) throws Exception {
+      if (released) {
+        message.fail(inboundChannel.newFailedFuture(new ClosedChannelException()));
         return;
       }
-      if (channelFuture.isSuccess()) {
-        message.write(channelFuture.channel());
+      if (acquireFuture.isSuccess()) {
+        message.write(outboundChannel);
       } else {
-        message.writeCompletedListener.operationComplete(channelFuture);
+        message.fail(inboundChannel.newFailedFuture(acquireFuture.cause()));
       }
     }
   }
@@ -459,5 +375,10 @@ public class HttpRequestRouter extends ChannelDuplexHandler {
     void write(Channel channel) {
       channel.write(message).addListener(writeCompletedListener);
     }
+
+    void fail(ChannelFuture failedFuture) throws Exception {
+      ReferenceCountUtil.release(message);
+      writeCompletedListener.operationComplete(failedFuture);
+    }
   }
 }
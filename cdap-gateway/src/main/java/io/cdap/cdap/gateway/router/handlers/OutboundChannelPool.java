@@ -0,0 +1,269 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.gateway.router.handlers;
+
+import io.cdap.cdap.api.metrics.MetricsContext;
+import io.cdap.cdap.common.conf.CConfiguration;
+import io.cdap.cdap.common.conf.Constants;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoop;
+import io.netty.channel.pool.ChannelHealthChecker;
+import io.netty.channel.pool.ChannelPool;
+import io.netty.channel.pool.ChannelPoolHandler;
+import io.netty.channel.pool.FixedChannelPool;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.Future;
+import org.apache.twill.discovery.Discoverable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+import javax.net.ssl.SSLException;
+
+/**
+ * A router wide pool of outbound channels to the CDAP service endpoints, shared by all inbound channels, so that
+ * connections to the internal services, including their TLS handshakes, are reused across client connections.
+ * <p>
+ * Channels are pooled per {@link EventLoop} and per endpoint. An outbound channel is always acquired from the pool
+ * of the event loop of the inbound channel, so that callbacks of both channels are called from the same thread.
+ * The maximum number of connections to an endpoint is hence limited per event loop. Channels are checked to be
+ * active when they are acquired and released, and idle channels are closed by the idle timeout of the router.
+ */
+public final class OutboundChannelPool implements Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(OutboundChannelPool.class);
+  private static final byte[] HTTPS_SCHEME_BYTES = Constants.Security.SSL_URI_SCHEME.getBytes();
+  private static final AttributeKey<EndpointPool> POOL_KEY = AttributeKey.valueOf("outbound.channel.pool");
+
+  private final int idleTimeoutSecs;
+  private final int maxConnections;
+  private final int maxPendingAcquires;
+  private final long acquireTimeoutMillis;
+  private final ConcurrentMap<EventLoop, Map<Discoverable, EndpointPool>> pools;
+  private final AtomicLong openConnections;
+  private final AtomicLong leasedConnections;
+  private volatile MetricsContext metricsContext;
+  private volatile SslContext sslContext;
+
+  public OutboundChannelPool(CConfiguration cConf) {
+    this.idleTimeoutSecs = cConf.getInt(Constants.Router.CONNECTION_TIMEOUT_SECS);
+    this.maxConnections = cConf.getInt(Constants.Router.OUTBOUND_POOL_MAX_CONNECTIONS);
+    this.maxPendingAcquires = cConf.getInt(Constants.Router.OUTBOUND_POOL_MAX_PENDING_ACQUIRES);
+    this.acquireTimeoutMillis = cConf.getLong(Constants.Router.OUTBOUND_POOL_ACQUIRE_TIMEOUT_MILLIS);
+    this.pools = new ConcurrentHashMap<>();
+    this.openConnections = new AtomicLong();
+    this.leasedConnections = new AtomicLong();
+  }
+
+  /**
+   * Sets the {@link MetricsContext} for emitting metrics about the pool.
+   */
+  public void setMetricsContext(MetricsContext metricsContext) {
+    this.metricsContext = metricsContext;
+  }
+
+  /**
+   * Acquires a channel connected to the given endpoint. The channel must be released by calling
+   * {@link #release(Channel)}. This method must be called from the given {@link EventLoop}.
+   *
+   * @param eventLoop the {@link EventLoop} of the inbound channel
+   * @param discoverable the endpoint to connect to
+   * @return a {@link Future} that will be completed with the channel when it is available
+   */
+  Future<Channel> acquire(EventLoop eventLoop, Discoverable discoverable) {
+    EndpointPool pool = pools.computeIfAbsent(eventLoop, k -> new ConcurrentHashMap<>())
+      .computeIfAbsent(discoverable, k -> new EndpointPool(eventLoop, discoverable));
+    Future<Channel> future = pool.acquire();
+    future.addListener(f -> {
+      increment(Constants.Metrics.RouterPool.ACQUIRE_COUNT);
+      if (!f.isSuccess()) {
+        increment(Constants.Metrics.RouterPool.ACQUIRE_ERROR);
+      }
+    });
+    return future;
+  }
+
+  /**
+   * Releases a channel acquired through {@link #acquire(EventLoop, Discoverable)} back to the pool. If the channel
+   * is closed, it is removed from the pool.
+   */
+  void release(Channel channel) {
+    EndpointPool pool = channel.attr(POOL_KEY).get();
+    if (pool == null) {
+      // This shouldn't happen
+      LOG.warn("Channel {} is not acquired from the pool. Closing it.", channel);
+      channel.close();
+      return;
+    }
+    pool.channelPool.release(channel);
+  }
+
+  @Override
+  public void close() {
+    for (Map<Discoverable, EndpointPool> endpointPools : pools.values()) {
+      for (EndpointPool pool : endpointPools.values()) {
+        try {
+          pool.channelPool.close();
+        } catch (Exception e) {
+          LOG.debug("Exception raised when closing channel pool for {}", pool.discoverable, e);
+        }
+      }
+    }
+    pools.clear();
+  }
+
+  private void increment(String metricName) {
+    MetricsContext context = metricsContext;
+    if (context != null) {
+      context.increment(metricName, 1L);
+    }
+  }
+
+  private void emitGauges() {
+    MetricsContext context = metricsContext;
+    if (context != null) {
+      context.gauge(Constants.Metrics.RouterPool.OPEN_CONNECTIONS, openConnections.get());
+      context.gauge(Constants.Metrics.RouterPool.LEASED_CONNECTIONS, leasedConnections.get());
+    }
+  }
+
+  /**
+   * Returns the {@link SslHandler} to be used for a given discoverable endpoint
+   *
+   * @param discoverable the endpoint to connect to
+   * @return the {@link SslHandler} or {@code null} if SSL is not needed
+   */
+  @Nullable
+  private SslHandler getSslHandler(Discoverable discoverable, ByteBufAllocator alloc) throws SSLException {
+    if (!Arrays.equals(HTTPS_SCHEME_BYTES, discoverable.getPayload())) {
+      return null;
+    }
+    SslContext context = sslContext;
+    if (context != null) {
+      return context.newHandler(alloc);
+    }
+    synchronized (this) {
+      context = sslContext;
+      if (context == null) {
+        sslContext = context = SslContextBuilder.forClient()
+                                                .trustManager(InsecureTrustManagerFactory.INSTANCE).build();
+      }
+      return context.newHandler(alloc);
+    }
+  }
+
+  /**
+   * The pool of channels to a single endpoint for a single {@link EventLoop}. Besides the {@link ChannelPool},
+   * it keeps track of the channels opened, so that the pool can be removed once all of its channels are closed,
+   * for example because the endpoint is gone or the channels were idle.
+   */
+  private final class EndpointPool implements ChannelPoolHandler {
+
+    private final EventLoop eventLoop;
+    private final Discoverable discoverable;
+    private final ChannelPool channelPool;
+    // Only accessed from the event loop thread
+    private int openChannels;
+
+    EndpointPool(EventLoop eventLoop, Discoverable discoverable) {
+      this.eventLoop = eventLoop;
+      this.discoverable = discoverable;
+
+      // The Bootstrap must use the EventLoop of the inbound channels to make sure
+      // thread safety between the inbound and outbound channels callbacks.
+      Bootstrap bootstrap = new Bootstrap()
+        .group(eventLoop)
+        .channel(NioSocketChannel.class)
+        .option(ChannelOption.SO_KEEPALIVE, true)
+        .remoteAddress(discoverable.getSocketAddress());
+
+      this.channelPool = new FixedChannelPool(bootstrap, this, ChannelHealthChecker.ACTIVE,
+                                              FixedChannelPool.AcquireTimeoutAction.FAIL, acquireTimeoutMillis,
+                                              maxConnections, maxPendingAcquires);
+    }
+
+    Future<Channel> acquire() {
+      return channelPool.acquire();
+    }
+
+    @Override
+    public void channelCreated(Channel ch) throws Exception {
+      ch.attr(POOL_KEY).set(this);
+      openChannels++;
+      openConnections.incrementAndGet();
+      increment(Constants.Metrics.RouterPool.CREATED_CONNECTIONS);
+      emitGauges();
+      ch.closeFuture().addListener(future -> channelClosed());
+
+      ChannelPipeline pipeline = ch.pipeline();
+      SslHandler sslHandler = getSslHandler(discoverable, ch.alloc());
+      if (sslHandler != null) {
+        pipeline.addLast("ssl", sslHandler);
+      }
+      pipeline.addLast("idle-state-handler", new IdleStateHandler(0, 0, idleTimeoutSecs));
+      pipeline.addLast("codec", new HttpClientCodec());
+      pipeline.addLast("forwarder", new OutboundHandler());
+    }
+
+    @Override
+    public void channelAcquired(Channel ch) {
+      leasedConnections.incrementAndGet();
+      emitGauges();
+    }
+
+    @Override
+    public void channelReleased(Channel ch) {
+      OutboundHandler handler = ch.pipeline().get(OutboundHandler.class);
+      if (handler != null) {
+        handler.setInboundChannel(null);
+      }
+      leasedConnections.decrementAndGet();
+      emitGauges();
+    }
+
+    private void channelClosed() {
+      openConnections.decrementAndGet();
+      emitGauges();
+      if (--openChannels > 0) {
+        return;
+      }
+      // Remove the pool when there is no more open channel to free up resources for endpoints that are gone
+      Map<Discoverable, EndpointPool> endpointPools = pools.get(eventLoop);
+      if (endpointPools != null && endpointPools.remove(discoverable, this)) {
+        LOG.trace("Removed channel pool for {}", discoverable);
+        channelPool.close();
+      }
+    }
+  }
+}
@@ -352,6 +352,28 @@ public abstract class NettyRouterTestBase {
     Assert.assertEquals(1, defaultServer1.getNumConnectionsClosed());
   }
 
+  @Test
+  public void testConnectionReuseAcrossClients() throws Exception {
+    // Only use server1
+    defaultServer2.cancelRegistration();
+
+    // Make requests from many short-lived client connections
+    int clients = 50;
+    URI uri = new URI(resolveURI("/v2/ping"));
+    for (int i = 0; i < clients; i++) {
+      try (Socket socket = getSocketFactory().createSocket(uri.getHost(), uri.getPort())) {
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        Assert.assertEquals("HTTP/1.1 200 OK", makeRequest(uri, out, socket.getInputStream()));
+      }
+    }
+
+    // Server side connections are pooled per router worker thread and shared by the client connections,
+    // hence there should be way less of them than the client connections.
+    Assert.assertEquals(clients, defaultServer1.getNumRequests());
+    Assert.assertTrue(defaultServer1.getNumConnectionsOpened() < clients);
+    Assert.assertEquals(0, defaultServer1.getNumConnectionsClosed());
+  }
+
   private String makeRequest(URI uri, PrintWriter out, InputStream inputStream) throws IOException {
     //Send request
     out.print("GET " + uri.getPath() + " HTTP/1.1\r\n" +
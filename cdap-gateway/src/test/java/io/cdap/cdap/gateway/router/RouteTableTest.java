@@ -0,0 +1,151 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.gateway.router;
+
+import io.netty.handler.codec.http.HttpMethod;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.annotation.Nullable;
+
+/**
+ * Tests for {@link RouteTable}.
+ */
+public class RouteTableTest {
+
+  private static final RouteDestination FIRST = new RouteDestination("first");
+  private static final RouteDestination SECOND = new RouteDestination("second");
+
+  @Test
+  public void testPrefixRoutes() {
+    // anything begins empty sequence
+    Assert.assertTrue(beginsWith(""));
+    Assert.assertTrue(beginsWith("a"));
+    // expected should not be longer than actual
+    Assert.assertFalse(beginsWith("", "a"));
+    Assert.assertFalse(beginsWith("", (String) null));
+    Assert.assertFalse(beginsWith("a", "a", "b"));
+    Assert.assertFalse(beginsWith("a", null, null));
+    // prefix matches
+    Assert.assertTrue(beginsWith("a/b", "a", "b"));
+    Assert.assertTrue(beginsWith("a/b/c", "a", "b"));
+    // prefix with wildcards matches
+    Assert.assertTrue(beginsWith("a/b", null, "b"));
+    Assert.assertTrue(beginsWith("a/b", "a", null));
+    Assert.assertTrue(beginsWith("a/b/c", "a", null));
+    // not matching
+    Assert.assertFalse(beginsWith("a/b/c", "b", "c"));
+    // should fail as actual has two extra string at end
+    Assert.assertFalse(beginsWith("a/b/c/d", null, "c", "d"));
+  }
+
+  @Test
+  public void testSuffixRoutes() {
+    // expected should not be longer than actual
+    Assert.assertFalse(endsWith("a/b/c", "a", "b", "c", "d"));
+    // should pass as ends with is correct
+    Assert.assertTrue(endsWith("a/b/c", "b", "c"));
+    // should fail as actual does not end with 'c'
+    Assert.assertFalse(endsWith("a/b/c", "a", "b"));
+    // should pass as actual has one extra string at end
+    Assert.assertTrue(endsWith("a/b/c", "a", "b", null));
+    // should fail as actual has two extra string at end
+    Assert.assertFalse(endsWith("a/b/c/d", "a", "b", null));
+  }
+
+  @Test
+  public void testEmptySegments() {
+    // empty segments in the request path are ignored
+    Assert.assertTrue(beginsWith("/a/b", "a", "b"));
+    Assert.assertTrue(beginsWith("//a///b/", "a", "b"));
+    Assert.assertTrue(endsWith("/a//b//", "a", "b"));
+    Assert.assertFalse(beginsWith("/a//", "a", null));
+
+    Assert.assertTrue(RouteTable.isFirstSegment("//v3/namespaces", "v3"));
+    Assert.assertFalse(RouteTable.isFirstSegment("/v3x/namespaces", "v3"));
+    Assert.assertFalse(RouteTable.isFirstSegment("/", "v3"));
+    Assert.assertEquals("b", RouteTable.getSegment("/a//b/c", 1));
+    Assert.assertEquals("c", RouteTable.getSegment("/a//b/c/", 2));
+    Assert.assertNull(RouteTable.getSegment("/a//b/c/", 3));
+  }
+
+  @Test
+  public void testSegmentCount() {
+    RouteTable table = RouteTable.builder()
+      .prefix("a").exactSegments(2).to(FIRST)
+      .suffix("c").minSegments(3).to(SECOND)
+      .build();
+
+    Assert.assertNull(route(table, "a", HttpMethod.GET));
+    Assert.assertEquals(FIRST, route(table, "a/b", HttpMethod.GET));
+    Assert.assertNull(route(table, "a/b/d", HttpMethod.GET));
+    Assert.assertNull(route(table, "b/c", HttpMethod.GET));
+    Assert.assertEquals(SECOND, route(table, "a/b/c", HttpMethod.GET));
+    Assert.assertEquals(SECOND, route(table, "x/y/z/c", HttpMethod.GET));
+  }
+
+  @Test
+  public void testPrecedence() {
+    // the route added first wins, regardless of whether it is a prefix or a suffix route
+    RouteTable table = RouteTable.builder()
+      .suffix("b", "c").to(FIRST)
+      .prefix("a", null).to(SECOND)
+      .prefix("a", "b").to(FIRST)
+      .build();
+
+    Assert.assertEquals(FIRST, route(table, "a/b/c", HttpMethod.GET));
+    Assert.assertEquals(SECOND, route(table, "a/b", HttpMethod.GET));
+    Assert.assertEquals(SECOND, route(table, "a/b/d", HttpMethod.GET));
+    Assert.assertNull(route(table, "b/c/d", HttpMethod.GET));
+  }
+
+  @Test
+  public void testMethod() {
+    RouteTable table = RouteTable.builder()
+      .prefix("a").method(HttpMethod.POST).to(FIRST)
+      .prefix("a").to(SECOND)
+      .build();
+
+    Assert.assertEquals(FIRST, route(table, "a/b", HttpMethod.POST));
+    Assert.assertEquals(SECOND, route(table, "a/b", HttpMethod.GET));
+    Assert.assertEquals(SECOND, route(table, "a/b", HttpMethod.DELETE));
+  }
+
+  @Test
+  public void testResolve() {
+    RouteTable table = RouteTable.builder()
+      .prefix("services", null).resolve(path -> new RouteDestination(RouteTable.getSegment(path, 1)))
+      .build();
+
+    Assert.assertEquals(new RouteDestination("s1"), route(table, "/services/s1/status", HttpMethod.GET));
+    Assert.assertNull(route(table, "/services", HttpMethod.GET));
+  }
+
+  private static boolean beginsWith(String path, String... pattern) {
+    return route(RouteTable.builder().prefix(pattern).to(FIRST).build(), path, HttpMethod.GET) != null;
+  }
+
+  private static boolean endsWith(String path, String... pattern) {
+    return route(RouteTable.builder().suffix(pattern).to(FIRST).build(), path, HttpMethod.GET) != null;
+  }
+
+  @Nullable
+  private static RouteDestination route(RouteTable table, String path, HttpMethod method) {
+    RouteTable.Route route = table.match(path, method);
+    return route == null ? null : route.getDestination(path);
+  }
+}
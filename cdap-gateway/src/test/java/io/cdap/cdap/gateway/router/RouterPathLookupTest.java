@@ -28,7 +28,10 @@ import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
 
 /**
  *  To test the RouterPathLookup regular expression tests.
@@ -436,38 +439,104 @@ public class RouterPathLookupTest {
   @Test
   public void testBeginsWith() {
     // anything begins empty sequence
-    Assert.assertTrue(RouterPathLookup.beginsWith(new String[] { }));
-    Assert.assertTrue(RouterPathLookup.beginsWith(new String[] { "a" }));
+    Assert.assertTrue(LegacyRouterPathLookup.beginsWith(new String[] { }));
+    Assert.assertTrue(LegacyRouterPathLookup.beginsWith(new String[] { "a" }));
     // expected should not be longer than actual
-    Assert.assertFalse(RouterPathLookup.beginsWith(new String[] { }, "a"));
-    Assert.assertFalse(RouterPathLookup.beginsWith(new String[] { }, (String) null));
-    Assert.assertFalse(RouterPathLookup.beginsWith(new String[] { "a" }, "a", "b"));
-    Assert.assertFalse(RouterPathLookup.beginsWith(new String[] { "a" }, null, null));
+    Assert.assertFalse(LegacyRouterPathLookup.beginsWith(new String[] { }, "a"));
+    Assert.assertFalse(LegacyRouterPathLookup.beginsWith(new String[] { }, (String) null));
+    Assert.assertFalse(LegacyRouterPathLookup.beginsWith(new String[] { "a" }, "a", "b"));
+    Assert.assertFalse(LegacyRouterPathLookup.beginsWith(new String[] { "a" }, null, null));
     // prefix matches
-    Assert.assertTrue(RouterPathLookup.beginsWith(new String[] { "a", "b" }, "a", "b"));
-    Assert.assertTrue(RouterPathLookup.beginsWith(new String[] { "a", "b", "c" }, "a", "b"));
+    Assert.assertTrue(LegacyRouterPathLookup.beginsWith(new String[] { "a", "b" }, "a", "b"));
+    Assert.assertTrue(LegacyRouterPathLookup.beginsWith(new String[] { "a", "b", "c" }, "a", "b"));
     // prefix with wildcards matches
-    Assert.assertTrue(RouterPathLookup.beginsWith(new String[] { "a", "b" }, null, "b"));
-    Assert.assertTrue(RouterPathLookup.beginsWith(new String[] { "a", "b" }, "a", null));
-    Assert.assertTrue(RouterPathLookup.beginsWith(new String[] { "a", "b", "c" }, "a", null));
+    Assert.assertTrue(LegacyRouterPathLookup.beginsWith(new String[] { "a", "b" }, null, "b"));
+    Assert.assertTrue(LegacyRouterPathLookup.beginsWith(new String[] { "a", "b" }, "a", null));
+    Assert.assertTrue(LegacyRouterPathLookup.beginsWith(new String[] { "a", "b", "c" }, "a", null));
     // not matching
-    Assert.assertFalse(RouterPathLookup.beginsWith(new String[]{ "a", "b", "c"}, "b", "c"));
+    Assert.assertFalse(LegacyRouterPathLookup.beginsWith(new String[]{ "a", "b", "c"}, "b", "c"));
     // should fail as actual has two extra string at end
-    Assert.assertFalse(RouterPathLookup.beginsWith(new String[]{"a", "b", "c", "d"}, null, "c", "d"));
+    Assert.assertFalse(LegacyRouterPathLookup.beginsWith(new String[]{"a", "b", "c", "d"}, null, "c", "d"));
   }
 
   @Test
   public void testEndsWith() {
     // expected should not be longer than actual
-    Assert.assertFalse(RouterPathLookup.endsWith(new String[]{"a", "b", "c"}, "a", "b", "c", "d"));
+    Assert.assertFalse(LegacyRouterPathLookup.endsWith(new String[]{"a", "b", "c"}, "a", "b", "c", "d"));
     // should pass as ends with is correct
-    Assert.assertTrue(RouterPathLookup.endsWith(new String[]{"a", "b", "c"}, "b", "c"));
+    Assert.assertTrue(LegacyRouterPathLookup.endsWith(new String[]{"a", "b", "c"}, "b", "c"));
     // should fail as actual does not end with 'c'
-    Assert.assertFalse(RouterPathLookup.endsWith(new String[]{"a", "b", "c"}, "a", "b"));
+    Assert.assertFalse(LegacyRouterPathLookup.endsWith(new String[]{"a", "b", "c"}, "a", "b"));
     // should pass as actual has one extra string at end
-    Assert.assertTrue(RouterPathLookup.endsWith(new String[]{"a", "b", "c"}, "a", "b", null));
+    Assert.assertTrue(LegacyRouterPathLookup.endsWith(new String[]{"a", "b", "c"}, "a", "b", null));
     // should fail as actual has two extra string at end
-    Assert.assertFalse(RouterPathLookup.endsWith(new String[]{"a", "b", "c", "d"}, "a", "b", null));
+    Assert.assertFalse(LegacyRouterPathLookup.endsWith(new String[]{"a", "b", "c", "d"}, "a", "b", null));
+  }
+
+  @Test
+  public void testSameAsLegacyLookup() {
+    // Paths shaped like the routes, with "*" replaced by random segments
+    List<String> templates = ImmutableList.of(
+      "v3/feeds/*", "v3/bootstrap", "v3/namespaces/*/apps/*/versions/*/services/*/methods/*",
+      "v3/namespaces/*/apps/*/versions/*/spark/*/methods/*/*", "v3/namespaces/*/apps/*/services/*/methods/*",
+      "v3/namespaces/*/apps/*/spark/*/methods/*", "v3/system/services/*/logs", "v3/namespaces/*/securekeys/*/metadata",
+      "v3/namespaces/*/apps/*/metadata", "v3/namespaces/*/apps/*/metadata/properties/*",
+      "v3/namespaces/*/apps/*/metadata/tags/*", "v3/namespaces/*/metadata/search", "v3/metadata/search",
+      "v3/namespaces/*/datasets/*/lineage", "v3/security/authorization/*", "v3/security/store/namespaces/*/*",
+      "v3/namespaces/*/data/datasets/*/programs", "v3/namespaces/*/profiles/*", "v3/profiles/*",
+      "v3/namespaces/*/runs", "v3/namespaces/*/previews/*", "v3/system/serviceproviders/*",
+      "v3/namespaces/*/apps/*/*/*/logs", "v3/namespaces/*/apps/*/*/*/runs/*/logs", "v3/namespaces/*/*/*/logs",
+      "v3/metrics/*", "v3/data/explore/queries/*", "v3/data/explore/jdbc/*", "v3/data/explore/namespaces/*",
+      "v3/namespaces/*/data/explore/tables/*", "v3/namespaces/*/data/explore/datasets/*", "v3/explore/status",
+      "v3/system/services/*/status", "v3/system/services/*/stacks", "v3/namespaces/*/data/datasets/*/flows",
+      "v3/namespaces/*/data/datasets/*/mapreduce", "v3/namespaces/*/data/datasets/*/workers",
+      "v3/namespaces/*/data/datasets/*", "v3/namespaces/*/artifact-internals/*", "v3/namespaces/*/apps/*", "v2/*");
+    List<String> segments = ImmutableList.of(
+      "v3", "namespaces", "default", "apps", "app", "versions", "services", "spark", "workflows", "methods", "logs",
+      "system", "metadata", "properties", "tags", "search", "datasets", "lineage", "securekeys", "data", "programs",
+      "profiles", "runs", "previews", "metrics", "explore", "queries", "jdbc", "tables", "status", "stacks",
+      "flows", "artifact-internals", Constants.Service.LOGSAVER, Constants.Service.TRANSACTION,
+      Constants.Service.METRICS_PROCESSOR, Constants.Service.METRICS, Constants.Service.APP_FABRIC_HTTP,
+      Constants.Service.DATASET_EXECUTOR, Constants.Service.METADATA_SERVICE,
+      Constants.Service.EXPLORE_HTTP_USER_SERVICE, Constants.Service.MESSAGING_SERVICE);
+    List<HttpMethod> methods = ImmutableList.of(HttpMethod.GET, HttpMethod.PUT, HttpMethod.POST, HttpMethod.DELETE,
+                                                HttpMethod.HEAD, HttpMethod.OPTIONS);
+    LegacyRouterPathLookup legacyLookup = new LegacyRouterPathLookup();
+    Random random = new Random(0);
+
+    for (String template : templates) {
+      for (int i = 0; i < 2000; i++) {
+        List<String> parts = new ArrayList<>();
+        for (String part : template.split("/")) {
+          parts.add("*".equals(part) ? segments.get(random.nextInt(segments.size())) : part);
+        }
+        // Mutate the path to also cover the paths that are close to a route, but don't match it
+        switch (random.nextInt(4)) {
+          case 0:
+            parts.set(random.nextInt(parts.size()), segments.get(random.nextInt(segments.size())));
+            break;
+          case 1:
+            parts = parts.subList(0, random.nextInt(parts.size() + 1));
+            break;
+          case 2:
+            parts.add(segments.get(random.nextInt(segments.size())));
+            break;
+          default:
+        }
+        StringBuilder path = new StringBuilder();
+        for (String part : parts) {
+          path.append(random.nextInt(10) == 0 ? "//" : "/").append(part);
+        }
+        if (random.nextBoolean()) {
+          path.append("/");
+        }
+        String requestPath = path.length() > 0 && random.nextInt(10) == 0 ? path.substring(1) : path.toString();
+        HttpMethod method = methods.get(random.nextInt(methods.size()));
+        HttpRequest httpRequest = new DefaultHttpRequest(VERSION, method, requestPath);
+        Assert.assertEquals(method + " " + requestPath, legacyLookup.getRoutingService(requestPath, httpRequest),
+                            pathLookup.getRoutingService(requestPath, httpRequest));
+      }
+    }
   }
 
   private void assertRouting(String path, RouteDestination destination) {
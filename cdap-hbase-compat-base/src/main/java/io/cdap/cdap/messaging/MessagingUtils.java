@@ -40,6 +40,8 @@ public final class MessagingUtils {
     public static final byte[] METADATA_COLUMN = Bytes.toBytes("m");
     public static final String GENERATION_KEY = "generation";
     public static final String TTL_KEY = "ttl";
+    public static final String PARTITIONS_KEY = "partitions";
+    public static final String PARTITION_OF_KEY = "partition.of";
     public static final byte[] TX_COL = Bytes.toBytes('t');
     public static final byte[] PAYLOAD_COL = Bytes.toBytes('p');
     public static final long METADATA_CACHE_UPDATE_FREQUENCY_SECS = TimeUnit.MINUTES.toSeconds(5);
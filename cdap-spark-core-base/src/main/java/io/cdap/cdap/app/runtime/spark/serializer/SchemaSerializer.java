@@ -1,5 +1,5 @@
 /*
- * Copyright © 2017 Cask Data, Inc.
+ * Copyright © 2017-2019 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -21,15 +21,34 @@ import com.esotericsoftware.kryo.KryoException;
 import com.esotericsoftware.kryo.Serializer;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import io.cdap.cdap.api.data.schema.Schema;
 
-import java.io.IOException;
+import java.util.concurrent.ExecutionException;
 
 /**
  * A Kryo {@link Serializer} for {@link Schema}.
+ * <p>
+ * The schema is written in its JSON form, so that each serialized object can be deserialized independently.
+ * Since the same schemas are deserialized over and over, e.g. for every {@code StructuredRecord} in a shuffle,
+ * parsed schemas are cached by their JSON form, and shared by all the Kryo instances in the process.
  */
 public class SchemaSerializer extends Serializer<Schema> {
 
+  private static final int MAX_CACHED_SCHEMAS = 1000;
+
+  private static final LoadingCache<String, Schema> SCHEMA_CACHE = CacheBuilder.newBuilder()
+    .maximumSize(MAX_CACHED_SCHEMAS)
+    .build(new CacheLoader<String, Schema>() {
+      @Override
+      public Schema load(String json) throws Exception {
+        return Schema.parseJson(json);
+      }
+    });
+
   @Override
   public void write(Kryo kryo, Output output, Schema schema) {
     output.writeString(schema.toString());
@@ -38,9 +57,9 @@ public class SchemaSerializer extends Serializer<Schema> {
   @Override
   public Schema read(Kryo kryo, Input input, Class<Schema> type) {
     try {
-      return Schema.parseJson(input.readString());
-    } catch (IOException e) {
-      throw new KryoException("Fail to deserialize Schema", e);
+      return SCHEMA_CACHE.get(input.readString());
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      throw new KryoException("Fail to deserialize Schema", e.getCause());
     }
   }
 }
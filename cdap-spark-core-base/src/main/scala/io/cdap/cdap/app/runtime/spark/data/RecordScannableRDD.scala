@@ -1,5 +1,5 @@
 /*
- * Copyright © 2017 Cask Data, Inc.
+ * Copyright © 2017-2019 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -16,6 +16,7 @@
 
 package io.cdap.cdap.app.runtime.spark.data
 
+import io.cdap.cdap.api.data.batch.PushdownRecordScannable
 import io.cdap.cdap.api.data.batch.RecordScannable
 import io.cdap.cdap.api.data.batch.Split
 import io.cdap.cdap.api.dataset.Dataset
@@ -25,11 +26,13 @@ import org.apache.spark.broadcast.Broadcast
 import java.net.URI
 
 import scala.annotation.meta.param
+import scala.collection.JavaConversions._
 import scala.reflect.ClassTag
 
 /**
   * A [[org.apache.spark.rdd.RDD]] implementation that reads data
-  * through [[io.cdap.cdap.api.data.batch.RecordScannable]].
+  * through [[io.cdap.cdap.api.data.batch.RecordScannable]]. If the fields to read are given and the dataset is a
+  * [[io.cdap.cdap.api.data.batch.PushdownRecordScannable]], only those fields are read.
   */
 
 class RecordScannableRDD[R: ClassTag](@(transient @param) sc: SparkContext,
@@ -37,11 +40,16 @@ class RecordScannableRDD[R: ClassTag](@(transient @param) sc: SparkContext,
                                       datasetName: String,
                                       arguments: Map[String, String],
                                       @(transient @param) splits: Iterable[_ <: Split],
-                                      txServiceBaseURI: Broadcast[URI])
+                                      txServiceBaseURI: Broadcast[URI],
+                                      fields: Option[Set[String]] = None)
   extends DatumScannerBasedRDD[R](sc, namespace, datasetName, arguments, splits, txServiceBaseURI) {
 
   override protected def createDatumScanner(dataset: Dataset, split: Split): DatumScanner[R] = {
-    val splitReader = dataset.asInstanceOf[RecordScannable[R]].createSplitRecordScanner(split)
+    val splitReader = (dataset, fields) match {
+      case (pushdown: PushdownRecordScannable[R @unchecked], Some(fieldNames)) =>
+        pushdown.createSplitRecordScanner(split, fieldNames)
+      case _ => dataset.asInstanceOf[RecordScannable[R]].createSplitRecordScanner(split)
+    }
     splitReader.initialize(split)
     splitReader
   }
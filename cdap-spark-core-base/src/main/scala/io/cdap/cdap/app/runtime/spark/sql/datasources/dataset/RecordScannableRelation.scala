@@ -1,5 +1,5 @@
 /*
- * Copyright © 2017 Cask Data, Inc.
+ * Copyright © 2017-2019 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -16,6 +16,8 @@
 
 package io.cdap.cdap.app.runtime.spark.sql.datasources.dataset
 
+import io.cdap.cdap.api.data.batch.PushdownRecordScannable
+import io.cdap.cdap.api.data.batch.RecordKeyRange
 import io.cdap.cdap.api.data.batch.RecordScannable
 import io.cdap.cdap.api.data.batch.Split
 import io.cdap.cdap.api.data.batch.Splits
@@ -30,7 +32,12 @@ import org.apache.spark.rdd.RDD
 import org.apache.spark.sql.Row
 import org.apache.spark.sql.SQLContext
 import org.apache.spark.sql.sources.BaseRelation
+import org.apache.spark.sql.sources.EqualTo
 import org.apache.spark.sql.sources.Filter
+import org.apache.spark.sql.sources.GreaterThan
+import org.apache.spark.sql.sources.GreaterThanOrEqual
+import org.apache.spark.sql.sources.LessThan
+import org.apache.spark.sql.sources.LessThanOrEqual
 import org.apache.spark.sql.sources.PrunedFilteredScan
 import org.apache.spark.sql.types.StructType
 
@@ -40,7 +47,10 @@ import scala.collection.JavaConversions._
 import scala.reflect.ClassTag
 
 /**
-  *
+  * A [[org.apache.spark.sql.sources.BaseRelation]] for reading a [[io.cdap.cdap.api.data.batch.RecordScannable]]
+  * dataset. If the dataset is a [[io.cdap.cdap.api.data.batch.PushdownRecordScannable]], predicates on the key
+  * field and the required columns are pushed down to the dataset. Spark still evaluates all the filters on the
+  * rows returned, since the pushdown is best effort.
   */
 private[dataset] class RecordScannableRelation(override val sqlContext: SQLContext,
                                                override val schema: StructType,
@@ -63,12 +73,20 @@ private[dataset] class RecordScannableRelation(override val sqlContext: SQLConte
         .map(Splits.decode(_, new util.ArrayList[Split](), sparkClassLoader))
 
       dataset.asInstanceOf[RecordScannable[_]].getRecordType match {
-        case recordType if classOf[StructuredRecord] == recordType => {
-          val recordScannable = dataset.asInstanceOf[RecordScannable[StructuredRecord]]
-          new RecordScannableRDD[StructuredRecord](sc, datasetId.getNamespace, datasetId.getDataset, parameters,
-                                                   inputSplits.getOrElse(recordScannable.getSplits),
-                                                   driveHttpServiceURI)
-            .map(DataFrames.toRow(_, rowSchema))
+        case recordType if classOf[StructuredRecord] == recordType => dataset match {
+          case pushdown: PushdownRecordScannable[StructuredRecord @unchecked] => {
+            val splits = inputSplits.getOrElse(pushdown.getSplits(getKeyRange(pushdown.getRecordKeyField, filters)))
+            new RecordScannableRDD[StructuredRecord](sc, datasetId.getNamespace, datasetId.getDataset, parameters,
+                                                     splits, driveHttpServiceURI, Some(requiredColumns.toSet))
+              .map(DataFrames.toRow(_, rowSchema))
+          }
+          case _ => {
+            val recordScannable = dataset.asInstanceOf[RecordScannable[StructuredRecord]]
+            new RecordScannableRDD[StructuredRecord](sc, datasetId.getNamespace, datasetId.getDataset, parameters,
+                                                     inputSplits.getOrElse(recordScannable.getSplits),
+                                                     driveHttpServiceURI)
+              .map(DataFrames.toRow(_, rowSchema))
+          }
         }
         case beanType: Class[_] => {
           val recordScannable = dataset.asInstanceOf[RecordScannable[_]]
@@ -82,4 +100,31 @@ private[dataset] class RecordScannableRelation(override val sqlContext: SQLConte
       }
     })
   }
+
+  /**
+    * Returns the [[io.cdap.cdap.api.data.batch.RecordKeyRange]] that covers all the records matching the filters
+    * on the given key field. The filters are ANDed by Spark, hence it is enough to use one of them for each bound.
+    */
+  private def getKeyRange(keyField: String, filters: Array[Filter]): RecordKeyRange = {
+    if (keyField == null) {
+      return RecordKeyRange.all()
+    }
+    filters.collectFirst {
+      case EqualTo(attr, value) if attr == keyField && value != null => RecordKeyRange.singleton(value)
+    }.getOrElse {
+      val lower = filters.collectFirst {
+        case GreaterThan(attr, value) if attr == keyField && value != null => (value, false)
+        case GreaterThanOrEqual(attr, value) if attr == keyField && value != null => (value, true)
+      }
+      val upper = filters.collectFirst {
+        case LessThan(attr, value) if attr == keyField && value != null => (value, false)
+        case LessThanOrEqual(attr, value) if attr == keyField && value != null => (value, true)
+      }
+      if (lower.isEmpty && upper.isEmpty) {
+        RecordKeyRange.all()
+      } else {
+        new RecordKeyRange(lower.map(_._1).orNull, lower.exists(_._2), upper.map(_._1).orNull, upper.exists(_._2))
+      }
+    }
+  }
 }
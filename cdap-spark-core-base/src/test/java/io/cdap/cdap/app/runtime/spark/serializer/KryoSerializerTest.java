@@ -87,6 +87,34 @@ public class KryoSerializerTest {
                         StructuredRecordStringConverter.toJsonString(newRecord));
   }
 
+  @Test
+  public void testSchemaCache() {
+    Kryo kryo = new Kryo();
+    kryo.addDefaultSerializer(Schema.class, SchemaSerializer.class);
+    kryo.addDefaultSerializer(StructuredRecord.class, StructuredRecordSerializer.class);
+
+    Schema schema = Schema.recordOf("cached", Schema.Field.of("string", Schema.of(Schema.Type.STRING)));
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    try (Output output = new Output(bos)) {
+      for (int i = 0; i < 3; i++) {
+        kryo.writeObject(output, StructuredRecord.builder(schema).set("string", "value" + i).build());
+      }
+    }
+
+    // Records of the same schema should share the same parsed schema
+    Input input = new Input(bos.toByteArray());
+    Schema cachedSchema = null;
+    for (int i = 0; i < 3; i++) {
+      StructuredRecord record = kryo.readObject(input, StructuredRecord.class);
+      Assert.assertEquals("value" + i, record.get("string"));
+      Assert.assertEquals(schema, record.getSchema());
+      if (cachedSchema != null) {
+        Assert.assertSame(cachedSchema, record.getSchema());
+      }
+      cachedSchema = record.getSchema();
+    }
+  }
+
   private Schema createSchema() {
     return Schema.recordOf("record",
       Schema.Field.of("boolean", Schema.of(Schema.Type.BOOLEAN)),
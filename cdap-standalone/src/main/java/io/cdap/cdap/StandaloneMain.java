@@ -487,6 +487,10 @@ public class StandaloneMain {
     cConf.set(Constants.Metadata.SERVICE_BIND_ADDRESS, localhost);
     cConf.set(Constants.Preview.ADDRESS, localhost);
 
+    // Metrics of the standalone services are written to the metric store directly instead of through the metrics
+    // processor, hence the metrics query cache can't tell when cached results become outdated
+    cConf.setLong(Constants.Metrics.QUERY_CACHE_SIZE_BYTES, 0L);
+
     return ImmutableList.of(
       new ConfigModule(cConf, hConf),
       new IOModule(),
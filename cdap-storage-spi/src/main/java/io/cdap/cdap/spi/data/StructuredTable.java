@@ -46,6 +46,17 @@ public interface StructuredTable extends Closeable {
    */
   void upsert(Collection<Field<?>> fields) throws InvalidFieldException, IOException;
 
+  /**
+   * Insert or replace multiple rows in the table. This is equivalent to calling {@link #upsert(Collection)} for
+   * each of the given rows, but the implementation may write them to the storage in fewer round trips.
+   *
+   * @param multiFields the fields of each row to write
+   * @throws InvalidFieldException if any of the fields are not part of the table schema, or the types of the value
+   *                               do not match
+   * @throws IOException if there is an error writing to the table
+   */
+  void multiUpsert(Collection<? extends Collection<Field<?>>> multiFields) throws InvalidFieldException, IOException;
+
   /**
    * Read a single row with all the columns from the table.
    *
@@ -73,6 +84,20 @@ public interface StructuredTable extends Closeable {
   Optional<StructuredRow> read(Collection<Field<?>> keys,
                                Collection<String> columns) throws InvalidFieldException, IOException;
 
+  /**
+   * Read multiple rows with all the columns from the table. This is equivalent to calling {@link #read(Collection)}
+   * for each of the given keys, but the implementation may fetch the rows from the storage in fewer round trips.
+   *
+   * @param multiKeys the primary keys of the rows to read
+   * @return the rows that exist in the table. Rows that are missing in the table are not included, and the order of
+   *         the rows returned is not defined
+   * @throws InvalidFieldException if any of the keys are not part of the table schema, or the types of the value
+   *                               do not match
+   * @throws IOException if there is an error reading from the table
+   */
+  Collection<StructuredRow> multiRead(Collection<? extends Collection<Field<?>>> multiKeys)
+    throws InvalidFieldException, IOException;
+
   /**
    * Read a set of rows from the table matching the key range.
    * The rows returned will be sorted on the primary key order.
@@ -86,6 +111,21 @@ public interface StructuredTable extends Closeable {
    */
   CloseableIterator<StructuredRow> scan(Range keyRange, int limit) throws InvalidFieldException, IOException;
 
+  /**
+   * Read a set of rows from the table matching any of the key ranges.
+   * The rows returned will be sorted on the primary key order, and a row matching more than one of the ranges will
+   * only be returned once.
+   *
+   * @param keyRanges key ranges for the scan
+   * @param limit maximum number of rows to return
+   * @return a {@link CloseableIterator} of rows
+   * @throws InvalidFieldException if any of the keys are not part of the table schema, or the types of the value
+   *                               do not match
+   * @throws IOException if there is an error scanning the table
+   */
+  CloseableIterator<StructuredRow> multiScan(Collection<Range> keyRanges,
+                                             int limit) throws InvalidFieldException, IOException;
+
   /**
    * Read a set of rows from the table matching the index.
    * The rows returned will be sorted on the primary key order.
@@ -138,6 +178,17 @@ public interface StructuredTable extends Closeable {
    */
   void delete(Collection<Field<?>> keys) throws InvalidFieldException, IOException;
 
+  /**
+   * Delete multiple rows from the table. This is equivalent to calling {@link #delete(Collection)} for each of the
+   * given keys, but the implementation may delete them from the storage in fewer round trips.
+   *
+   * @param multiKeys the primary keys of the rows to delete
+   * @throws InvalidFieldException if any of the keys are not part of the table schema, or the types of the value
+   *                               do not match
+   * @throws IOException if there is an error deleting from the table
+   */
+  void multiDelete(Collection<? extends Collection<Field<?>>> multiKeys) throws InvalidFieldException, IOException;
+
   /**
    * Delete a range of rows from the table.
    *
@@ -37,6 +37,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -189,6 +190,100 @@ public abstract class StructuredTableTest {
     Assert.assertEquals(expected, actual);
   }
 
+  @Test
+  public void testMultiReadWriteDelete() throws Exception {
+    int max = 10;
+    List<String> columns = Arrays.asList(KEY, KEY2, STRING_COL, DOUBLE_COL, FLOAT_COL, BYTES_COL);
+    List<Collection<Field<?>>> expected = new ArrayList<>(max);
+    List<Collection<Field<?>>> keys = new ArrayList<>(max + 1);
+    for (int i = 0; i < max; i++) {
+      expected.add(Arrays.asList(Fields.intField(KEY, i),
+                                 Fields.longField(KEY2, (long) i),
+                                 Fields.stringField(STRING_COL, VAL + i),
+                                 Fields.doubleField(DOUBLE_COL, (double) i),
+                                 Fields.floatField(FLOAT_COL, (float) i),
+                                 Fields.bytesField(BYTES_COL, Bytes.toBytes("bytes-" + i))));
+      keys.add(Arrays.asList(Fields.intField(KEY, i), Fields.longField(KEY2, (long) i)));
+    }
+    // Also read a key that doesn't exist
+    keys.add(Arrays.asList(Fields.intField(KEY, max), Fields.longField(KEY2, (long) max)));
+
+    // Write all rows in one call, with the last row written twice to make sure the latest write wins
+    List<Collection<Field<?>>> writes = new ArrayList<>(expected);
+    writes.add(max - 1, Arrays.asList(Fields.intField(KEY, max - 1), Fields.longField(KEY2, (long) max - 1),
+                                      Fields.stringField(STRING_COL, "old")));
+    getTransactionRunner().run(context -> {
+      StructuredTable table = context.getTable(SIMPLE_TABLE);
+      table.multiUpsert(writes);
+    });
+    Assert.assertEquals(expected, readSimpleStructuredRows(max));
+
+    // Read all rows in one call, the non-existing key should be ignored
+    getTransactionRunner().run(context -> {
+      StructuredTable table = context.getTable(SIMPLE_TABLE);
+      List<Collection<Field<?>>> actual = new ArrayList<>();
+      for (StructuredRow row : table.multiRead(keys)) {
+        actual.add(convertRowToFields(row, columns));
+      }
+      actual.sort(Comparator.comparing(fields -> (Integer) fields.iterator().next().getValue()));
+      Assert.assertEquals(expected, actual);
+
+      Assert.assertTrue(table.multiRead(Collections.emptyList()).isEmpty());
+    });
+
+    // Delete the even rows in one call
+    List<Collection<Field<?>>> deleteKeys = new ArrayList<>();
+    for (int i = 0; i < max; i += 2) {
+      deleteKeys.add(keys.get(i));
+    }
+    getTransactionRunner().run(context -> {
+      StructuredTable table = context.getTable(SIMPLE_TABLE);
+      table.multiDelete(deleteKeys);
+    });
+    List<Collection<Field<?>>> remaining = new ArrayList<>();
+    for (int i = 1; i < max; i += 2) {
+      remaining.add(expected.get(i));
+    }
+    Assert.assertEquals(remaining, readSimpleStructuredRows(max));
+  }
+
+  @Test
+  public void testMultiScan() throws Exception {
+    int max = 100;
+    List<Collection<Field<?>>> expected = writeSimpleStructuredRows(max, "");
+
+    // Overlapping and unordered ranges should return each row once in key order
+    Range range1 = Range.create(Collections.singleton(Fields.intField(KEY, 50)), Range.Bound.INCLUSIVE,
+                                Collections.singleton(Fields.intField(KEY, 60)), Range.Bound.EXCLUSIVE);
+    Range range2 = Range.create(Collections.singleton(Fields.intField(KEY, 5)), Range.Bound.EXCLUSIVE,
+                                Collections.singleton(Fields.intField(KEY, 15)), Range.Bound.INCLUSIVE);
+    Range range3 = Range.create(Collections.singleton(Fields.intField(KEY, 10)), Range.Bound.INCLUSIVE,
+                                Collections.singleton(Fields.intField(KEY, 20)), Range.Bound.EXCLUSIVE);
+    Range range4 = Range.singleton(Arrays.asList(Fields.intField(KEY, 46), Fields.longField(KEY2, 46L)));
+    List<Collection<Field<?>>> expectedRows = new ArrayList<>(expected.subList(6, 20));
+    expectedRows.add(expected.get(46));
+    expectedRows.addAll(expected.subList(50, 60));
+    Assert.assertEquals(expectedRows, multiScanSimpleStructuredRows(Arrays.asList(range1, range2, range3, range4),
+                                                                    max));
+
+    // The limit applies to the combined result
+    Assert.assertEquals(expectedRows.subList(0, 16),
+                        multiScanSimpleStructuredRows(Arrays.asList(range1, range2, range3, range4), 16));
+
+    // Ranges with only one bound
+    Range lowRange = Range.to(Collections.singleton(Fields.intField(KEY, 3)), Range.Bound.EXCLUSIVE);
+    Range highRange = Range.from(Collections.singleton(Fields.intField(KEY, 97)), Range.Bound.INCLUSIVE);
+    expectedRows = new ArrayList<>(expected.subList(0, 3));
+    expectedRows.addAll(expected.subList(97, 100));
+    Assert.assertEquals(expectedRows, multiScanSimpleStructuredRows(Arrays.asList(highRange, lowRange), max));
+
+    // A range matching everything returns all rows
+    Assert.assertEquals(expected, multiScanSimpleStructuredRows(Arrays.asList(range1, Range.all()), max));
+
+    // No range matches nothing
+    Assert.assertEquals(Collections.emptyList(), multiScanSimpleStructuredRows(Collections.emptyList(), max));
+  }
+
   @Test
   public void testCompareAndSwap() throws Exception {
     // Write a record
@@ -561,10 +656,19 @@ public abstract class StructuredTableTest {
   }
 
   private List<Collection<Field<?>>> scanSimpleStructuredRows(Range range, int max) throws Exception {
+    return scanSimpleStructuredRows(table -> table.scan(range, max), max);
+  }
+
+  private List<Collection<Field<?>>> multiScanSimpleStructuredRows(Collection<Range> ranges,
+                                                                   int max) throws Exception {
+    return scanSimpleStructuredRows(table -> table.multiScan(ranges, max), max);
+  }
+
+  private List<Collection<Field<?>>> scanSimpleStructuredRows(TableScanner scanner, int max) throws Exception {
     List<Collection<Field<?>>> actual = new ArrayList<>(max);
     getTransactionRunner().run(context -> {
       StructuredTable table = context.getTable(SIMPLE_TABLE);
-      try (CloseableIterator<StructuredRow> iterator = table.scan(range, max)) {
+      try (CloseableIterator<StructuredRow> iterator = scanner.scan(table)) {
         while (iterator.hasNext()) {
           StructuredRow row = iterator.next();
           actual.add(Arrays.asList(Fields.intField(KEY, row.getInteger(KEY)),
@@ -578,4 +682,11 @@ public abstract class StructuredTableTest {
     });
     return actual;
   }
+
+  /**
+   * Functional interface for scanning a {@link StructuredTable}.
+   */
+  private interface TableScanner {
+    CloseableIterator<StructuredRow> scan(StructuredTable table) throws Exception;
+  }
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016 Cask Data, Inc.
+ * Copyright © 2016-2019 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -35,6 +35,7 @@ public abstract class MessageFetcher {
   private boolean includeStart = true;
   private Long startTime;
   private Transaction transaction;
+  private int partition;
 
   // by default there is virtually no limit
   private int limit = Integer.MAX_VALUE;
@@ -96,6 +97,21 @@ public abstract class MessageFetcher {
     return this;
   }
 
+  /**
+   * Sets the partition to fetch from. By default, messages are fetched from partition {@code 0}, which is the
+   * topic itself. Message ids are only valid within the partition that they were fetched from.
+   *
+   * @param partition the partition to fetch from, which must be smaller than the number of partitions of the topic
+   * @return this instance
+   */
+  public MessageFetcher setPartition(int partition) {
+    if (partition < 0) {
+      throw new IllegalArgumentException("Invalid message fetching partition. Partition must be >= 0");
+    }
+    this.partition = partition;
+    return this;
+  }
+
   @Nullable
   protected byte[] getStartOffset() {
     return startOffset;
@@ -119,6 +135,10 @@ public abstract class MessageFetcher {
     return limit;
   }
 
+  protected int getPartition() {
+    return partition;
+  }
+
   /**
    * Returns a {@link CloseableIterator} that iterates over messages fetched from the messaging system.
    *
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016 Cask Data, Inc.
+ * Copyright © 2016-2019 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -19,6 +19,7 @@ package io.cdap.cdap.messaging;
 import io.cdap.cdap.proto.id.TopicId;
 
 import java.util.Iterator;
+import javax.annotation.Nullable;
 
 /**
  * This class represents messages to be store to the messaging system.
@@ -29,11 +30,18 @@ public abstract class StoreRequest implements Iterable<byte[]> {
   private final TopicId topicId;
   private final boolean transactional;
   private final long transactionWritePointer;
+  private final byte[] partitionKey;
 
   protected StoreRequest(TopicId topicId, boolean transactional, long transactionWritePointer) {
+    this(topicId, transactional, transactionWritePointer, null);
+  }
+
+  protected StoreRequest(TopicId topicId, boolean transactional, long transactionWritePointer,
+                         @Nullable byte[] partitionKey) {
     this.topicId = topicId;
     this.transactional = transactional;
     this.transactionWritePointer = transactionWritePointer;
+    this.partitionKey = partitionKey;
   }
 
   public TopicId getTopicId() {
@@ -55,6 +63,16 @@ public abstract class StoreRequest implements Iterable<byte[]> {
     return transactionWritePointer;
   }
 
+  /**
+   * Returns the key for selecting the partition of the topic to publish to, or {@code null} if there is no key.
+   * Non-transactional messages published with the same key go to the same partition, hence are consumed in
+   * publish order, as long as the number of partitions of the topic is not changed.
+   */
+  @Nullable
+  public byte[] getPartitionKey() {
+    return partitionKey;
+  }
+
   /**
    * Returns {@code true} if there is payload in this request.
    */
@@ -0,0 +1,118 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.messaging;
+
+import io.cdap.cdap.proto.id.TopicId;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.annotation.Nullable;
+
+/**
+ * Helper class for topic partitions.
+ *
+ * A topic with more than one partition is stored as a set of topics, one per partition. Partition {@code 0} is the
+ * topic itself, so that a single partition topic is the same as a topic without partitions. Other partitions are
+ * stored as topics named {@code <topic>__p<partition>}, which have the {@link TopicMetadata#PARTITION_OF_KEY}
+ * property set to the name of the topic. Each partition has its own message ids, writers and caches, and messages
+ * are only ordered within a partition. Only messages published with a partition key are routed to other partitions.
+ * A consumer reads a partition with {@link MessageFetcher#setPartition(int)}, and the members of a consumer group
+ * share the partitions with {@link #getAssignedPartitionTopics(TopicMetadata, int, int)}.
+ */
+public final class TopicPartitions {
+
+  private static final String PARTITION_SEPARATOR = "__p";
+  private static final Pattern PARTITION_TOPIC_PATTERN = Pattern.compile("(.+)" + PARTITION_SEPARATOR + "[1-9][0-9]*");
+
+  private TopicPartitions() {
+    // prevent object creation
+  }
+
+  /**
+   * Returns the {@link TopicId} where messages of the given partition of a topic are stored.
+   *
+   * @param topicId the topic
+   * @param partition the partition, starting from {@code 0}
+   * @return the {@link TopicId} of the partition
+   */
+  public static TopicId getPartitionTopic(TopicId topicId, int partition) {
+    if (partition < 0) {
+      throw new IllegalArgumentException("Partition must be >= 0 for topic " + topicId);
+    }
+    if (partition == 0) {
+      return topicId;
+    }
+    return new TopicId(topicId.getNamespace(), topicId.getTopic() + PARTITION_SEPARATOR + partition);
+  }
+
+  /**
+   * Returns {@code true} if the given {@link TopicMetadata} is of a topic created for a partition of the given topic.
+   */
+  public static boolean isPartitionOf(TopicMetadata metadata, TopicId topicId) {
+    return metadata.getTopicId().getNamespace().equals(topicId.getNamespace())
+      && topicId.getTopic().equals(metadata.getPartitionOf());
+  }
+
+  /**
+   * Returns the topic that the given topic would be a partition of, based on the topic name only. The
+   * {@link TopicMetadata#getPartitionOf()} should be used to tell if a topic is actually a partition.
+   *
+   * @return the {@link TopicId} of the partitioned topic or {@code null} if the name is not a partition topic name
+   */
+  @Nullable
+  public static TopicId getPartitionedTopic(TopicId partitionTopic) {
+    Matcher matcher = PARTITION_TOPIC_PATTERN.matcher(partitionTopic.getTopic());
+    return matcher.matches() ? new TopicId(partitionTopic.getNamespace(), matcher.group(1)) : null;
+  }
+
+  /**
+   * Returns the partition that messages with the given key are published to.
+   * Messages with the same key are always published to the same partition, hence are ordered.
+   *
+   * @param key the partitioning key
+   * @param partitions number of partitions of the topic
+   * @return the partition, which is in the range of {@code [0, partitions)}
+   */
+  public static int getPartition(byte[] key, int partitions) {
+    return (Arrays.hashCode(key) & Integer.MAX_VALUE) % partitions;
+  }
+
+  /**
+   * Returns the partitions assigned to one member of a consumer group. Partitions are assigned in round robin
+   * to the members, such that each partition is consumed by exactly one member.
+   *
+   * @param metadata the {@link TopicMetadata} of the topic being consumed
+   * @param instanceId the id of the group member, starting from {@code 0}
+   * @param instanceCount the number of members in the group
+   * @return the {@link TopicId} of the assigned partitions, which can be empty if there are more members than
+   *         partitions
+   */
+  public static List<TopicId> getAssignedPartitionTopics(TopicMetadata metadata, int instanceId, int instanceCount) {
+    if (instanceCount <= 0 || instanceId < 0 || instanceId >= instanceCount) {
+      throw new IllegalArgumentException(String.format("Invalid instance id %d for consumer group of size %d",
+                                                       instanceId, instanceCount));
+    }
+    List<TopicId> topics = new ArrayList<>();
+    for (int i = instanceId; i < metadata.getPartitions(); i += instanceCount) {
+      topics.add(getPartitionTopic(metadata.getTopicId(), i));
+    }
+    return topics;
+  }
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016 Cask Data, Inc.
+ * Copyright © 2016-2019 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -39,6 +39,7 @@ public final class StoreRequestBuilder {
   private final TopicId topicId;
   private List<byte[]> payloads;
   private Long txWritePointer;
+  private byte[] partitionKey;
 
   /**
    * Creates a new {@link StoreRequestBuilder} instance.
@@ -98,6 +99,17 @@ public final class StoreRequestBuilder {
     return this;
   }
 
+  /**
+   * Sets the key for selecting the partition of the topic to publish to. Non-transactional messages published with
+   * the same key go to the same partition. Without a key, messages go to partition 0.
+   *
+   * @param partitionKey the partitioning key or {@code null} to not publish with a key
+   */
+  public StoreRequestBuilder setPartitionKey(@Nullable byte[] partitionKey) {
+    this.partitionKey = partitionKey;
+    return this;
+  }
+
   /**
    * Returns {@code true} if there is some payload in this builder.
    */
@@ -113,7 +125,7 @@ public final class StoreRequestBuilder {
       throw new IllegalArgumentException("Payload cannot be empty for non-transactional publish");
     }
     return new SimpleStoreRequest(topicId, txWritePointer != null, txWritePointer == null ? -1L : txWritePointer,
-                                  payloads);
+                                  partitionKey, payloads);
   }
 
   /**
@@ -135,8 +147,8 @@ public final class StoreRequestBuilder {
     private final List<byte[]> payloads;
 
     SimpleStoreRequest(TopicId topicId, boolean transactional, long transactionWritePointer,
-                       @Nullable List<byte[]> payloads) {
-      super(topicId, transactional, transactionWritePointer);
+                       @Nullable byte[] partitionKey, @Nullable List<byte[]> payloads) {
+      super(topicId, transactional, transactionWritePointer, partitionKey);
       this.payloads = payloads == null ? Collections.emptyList() : payloads;
     }
 
@@ -25,6 +25,7 @@ import com.google.inject.Provider;
 import com.google.inject.Scopes;
 import com.google.inject.multibindings.Multibinder;
 import com.google.inject.name.Names;
+import io.cdap.cdap.api.metrics.MetricsCollectionService;
 import io.cdap.cdap.common.conf.CConfiguration;
 import io.cdap.cdap.common.conf.Constants;
 import io.cdap.cdap.common.runtime.RuntimeModule;
@@ -121,8 +122,9 @@ public class MessagingServerRuntimeModule extends RuntimeModule {
         }
       });
 
-      bind(TableFactory.class).to(LevelDBTableFactory.class).in(Scopes.SINGLETON);
-      bind(MessagingService.class).to(CoreMessagingService.class).in(Scopes.SINGLETON);
+      bind(LevelDBTableFactory.class).in(Scopes.SINGLETON);
+      bind(TableFactory.class).to(LevelDBTableFactory.class);
+      bind(MessagingService.class).to(LocalMessagingService.class).in(Scopes.SINGLETON);
       expose(MessagingService.class);
 
       // TODO: Because of CDAP-7688, we need to run MessagingHttpService even in local mode so that we
@@ -138,6 +140,31 @@ public class MessagingServerRuntimeModule extends RuntimeModule {
     }
   }
 
+  /**
+   * The {@link CoreMessagingService} used in local mode. It owns the {@link LevelDBTableFactory}, hence closes it
+   * when the service stops.
+   */
+  private static final class LocalMessagingService extends CoreMessagingService {
+
+    private final LevelDBTableFactory tableFactory;
+
+    @Inject
+    LocalMessagingService(CConfiguration cConf, LevelDBTableFactory tableFactory,
+                          MetricsCollectionService metricsCollectionService) {
+      super(cConf, tableFactory, metricsCollectionService);
+      this.tableFactory = tableFactory;
+    }
+
+    @Override
+    protected void shutDown() throws Exception {
+      try {
+        super.shutDown();
+      } finally {
+        tableFactory.close();
+      }
+    }
+  }
+
   /**
    * A guice provider for {@link HBaseTableUtil}. We don't use {@link HBaseTableUtilFactory} as a provider
    * directly because the {@code @Inject} constructor of {@link HBaseTableUtilFactory} requires a
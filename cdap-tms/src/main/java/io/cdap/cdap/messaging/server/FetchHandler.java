@@ -38,22 +38,16 @@ import io.cdap.http.BodyProducer;
 import io.cdap.http.HttpResponder;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufInputStream;
-import io.netty.buffer.ByteBufOutputStream;
 import io.netty.buffer.Unpooled;
 import io.netty.handler.codec.http.DefaultHttpHeaders;
 import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.HttpHeaderNames;
 import io.netty.handler.codec.http.HttpResponseStatus;
-import org.apache.avro.generic.GenericData;
 import org.apache.avro.generic.GenericDatumReader;
-import org.apache.avro.generic.GenericDatumWriter;
 import org.apache.avro.generic.GenericRecord;
 import org.apache.avro.io.DatumReader;
-import org.apache.avro.io.DatumWriter;
 import org.apache.avro.io.Decoder;
 import org.apache.avro.io.DecoderFactory;
-import org.apache.avro.io.Encoder;
-import org.apache.avro.io.EncoderFactory;
 import org.apache.tephra.TransactionCodec;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -66,9 +60,11 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 import javax.annotation.Nullable;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
+import javax.ws.rs.QueryParam;
 
 /**
  * A netty http handler for handling message fetching REST API for the messaging system.
@@ -98,8 +94,12 @@ public final class FetchHandler extends AbstractHttpHandler {
   @Path("poll")
   public void poll(FullHttpRequest request, HttpResponder responder,
                    @PathParam("namespace") String namespace,
-                   @PathParam("topic") String topic) throws Exception {
+                   @PathParam("topic") String topic,
+                   @QueryParam("partition") @DefaultValue("0") int partition) throws Exception {
 
+    if (partition < 0) {
+      throw new BadRequestException("Partition must be >= 0. Got " + partition);
+    }
     TopicId topicId = new NamespaceId(namespace).topic(topic);
 
     // Currently only support avro
@@ -112,7 +112,7 @@ public final class FetchHandler extends AbstractHttpHandler {
     DatumReader<GenericRecord> datumReader = new GenericDatumReader<>(Schemas.V1.ConsumeRequest.SCHEMA);
 
     // Fetch the messages
-    CloseableIterator<RawMessage> iterator = fetchMessages(datumReader.read(null, decoder), topicId);
+    CloseableIterator<RawMessage> iterator = fetchMessages(datumReader.read(null, decoder), topicId, partition);
     try {
       responder.sendContent(HttpResponseStatus.OK, new MessagesBodyProducer(iterator, messageChunkSize),
                             new DefaultHttpHeaders().set(HttpHeaderNames.CONTENT_TYPE, "avro/binary"));
@@ -125,9 +125,9 @@ public final class FetchHandler extends AbstractHttpHandler {
   /**
    * Creates a {@link CloseableIterator} of {@link RawMessage} based on the given fetch request.
    */
-  private CloseableIterator<RawMessage> fetchMessages(GenericRecord fetchRequest,
-                                                      TopicId topicId) throws IOException, TopicNotFoundException {
-    MessageFetcher fetcher = messagingService.prepareFetch(topicId);
+  private CloseableIterator<RawMessage> fetchMessages(GenericRecord fetchRequest, TopicId topicId,
+                                                      int partition) throws IOException, TopicNotFoundException {
+    MessageFetcher fetcher = messagingService.prepareFetch(topicId).setPartition(partition);
 
     Object startFrom = fetchRequest.get("startFrom");
     if (startFrom != null) {
@@ -159,39 +159,24 @@ public final class FetchHandler extends AbstractHttpHandler {
   /**
    * A {@link BodyProducer} to encode and send back messages.
    * Instead of using GenericDatumWriter, we perform the array encoding manually so that we don't have to buffer
-   * all messages in memory before sending out.
+   * all messages in memory before sending out. Each chunk is a composite buffer that wraps the message id and payload
+   * arrays as returned by the {@link MessageFetcher}, with only the Avro length prefixes being written separately,
+   * hence the message content is never copied before it is written to the network.
    */
   private static class MessagesBodyProducer extends BodyProducer {
 
+    // Avro encodes a long as a zig-zag varint of at most 10 bytes
+    private static final int MAX_VARINT_SIZE = 10;
+
     private final CloseableIterator<RawMessage> iterator;
     private final List<RawMessage> messages;
     private final int messageChunkSize;
-    private final ByteBuf chunk;
-    private final Encoder encoder;
-    private final GenericRecord messageRecord;
-    private final DatumWriter<GenericRecord> messageWriter;
-    private boolean arrayStarted;
     private boolean arrayEnded;
 
     MessagesBodyProducer(CloseableIterator<RawMessage> iterator, int messageChunkSize) {
       this.iterator = iterator;
       this.messages = new ArrayList<>();
       this.messageChunkSize = messageChunkSize;
-      this.chunk = Unpooled.buffer(messageChunkSize);
-      this.encoder = EncoderFactory.get().directBinaryEncoder(new ByteBufOutputStream(chunk), null);
-
-      // These are for writing individual message (response is an array of messages)
-      this.messageRecord = new GenericData.Record(Schemas.V1.ConsumeResponse.SCHEMA.getElementType());
-      this.messageWriter = new GenericDatumWriter<GenericRecord>(Schemas.V1.ConsumeResponse.SCHEMA.getElementType()) {
-        @Override
-        protected void writeBytes(Object datum, Encoder out) throws IOException {
-          if (datum instanceof byte[]) {
-            out.writeBytes((byte[]) datum);
-          } else {
-            super.writeBytes(datum, out);
-          }
-        }
-      };
     }
 
     @Override
@@ -201,50 +186,68 @@ public final class FetchHandler extends AbstractHttpHandler {
         return Unpooled.EMPTY_BUFFER;
       }
 
-      chunk.clear();
-
-      if (!arrayStarted) {
-        arrayStarted = true;
-        encoder.writeArrayStart();
-      }
-
       // Try to buffer up to buffer size
       int size = 0;
       messages.clear();
       while (iterator.hasNext() && size < messageChunkSize) {
         RawMessage message = iterator.next();
         messages.add(message);
-
-        // Avro encodes bytes as (len + bytes), hence adding 8 to cater for the length of the id and payload
-        // Straightly speaking it can be up to 9 bytes each (hence 18 bytes),
-        // but we don't expect id and payload of such size
-        size += message.getId().length + message.getPayload().length + 8;
+        size += message.getId().length + message.getPayload().length + 2 * MAX_VARINT_SIZE;
+      }
+      if (!iterator.hasNext()) {
+        arrayEnded = true;
       }
 
-      encoder.setItemCount(messages.size());
+      // The response is an array of the ConsumeResponse element record, which is written as
+      // (block item count, [id length, id, payload length, payload]*), followed by a zero item count at the end.
+      // All the length prefixes of this chunk share the same array.
+      byte[] prefixes = new byte[(messages.size() * 2 + 2) * MAX_VARINT_SIZE];
+      ByteBuf[] buffers = new ByteBuf[messages.size() * 4 + 2];
+      int prefixOffset = 0;
+      int idx = 0;
+
+      if (!messages.isEmpty()) {
+        int len = encodeLong(messages.size(), prefixes, prefixOffset);
+        buffers[idx++] = Unpooled.wrappedBuffer(prefixes, prefixOffset, len);
+        prefixOffset += len;
+      }
       for (RawMessage message : messages) {
-        encoder.startItem();
-
-        // Write individual message (array element) with DatumWrite.
-        // This provides greater flexibility on schema evolution.
-        // The response will likely always be an array, but the element schema can evolve.
-        messageRecord.put("id", message.getId());
-        messageRecord.put("payload", message.getPayload());
-        messageWriter.write(messageRecord, encoder);
+        int len = encodeLong(message.getId().length, prefixes, prefixOffset);
+        buffers[idx++] = Unpooled.wrappedBuffer(prefixes, prefixOffset, len);
+        buffers[idx++] = Unpooled.wrappedBuffer(message.getId());
+        prefixOffset += len;
+
+        len = encodeLong(message.getPayload().length, prefixes, prefixOffset);
+        buffers[idx++] = Unpooled.wrappedBuffer(prefixes, prefixOffset, len);
+        buffers[idx++] = Unpooled.wrappedBuffer(message.getPayload());
+        prefixOffset += len;
       }
-
-      if (!iterator.hasNext()) {
-        arrayEnded = true;
-        encoder.writeArrayEnd();
+      if (arrayEnded) {
+        buffers[idx++] = Unpooled.wrappedBuffer(prefixes, prefixOffset, encodeLong(0L, prefixes, prefixOffset));
       }
 
-      return chunk.copy();
+      return Unpooled.wrappedBuffer(idx, buffers);
+    }
+
+    /**
+     * Encodes the given value with the Avro zig-zag varint encoding into the given array.
+     *
+     * @return number of bytes written
+     */
+    private static int encodeLong(long value, byte[] bytes, int offset) {
+      long n = (value << 1) ^ (value >> 63);
+      int pos = offset;
+      while ((n & ~0x7FL) != 0) {
+        bytes[pos++] = (byte) ((n & 0x7F) | 0x80);
+        n >>>= 7;
+      }
+      bytes[pos++] = (byte) n;
+      return pos - offset;
     }
 
     @Override
     public void finished() throws Exception {
       iterator.close();
-      chunk.release();
     }
 
     @Override
@@ -50,11 +50,14 @@ import org.apache.avro.io.EncoderFactory;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Base64;
 import java.util.Iterator;
 import java.util.List;
+import javax.annotation.Nullable;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
+import javax.ws.rs.QueryParam;
 
 /**
  * A netty http handler for handling message storage REST API for the messaging system.
@@ -73,10 +76,11 @@ public final class StoreHandler extends AbstractHttpHandler {
   @Path("/publish")
   public void publish(FullHttpRequest request, HttpResponder responder,
                       @PathParam("namespace") String namespace,
-                      @PathParam("topic") String topic) throws Exception {
+                      @PathParam("topic") String topic,
+                      @Nullable @QueryParam("key") String partitionKey) throws Exception {
 
     TopicId topicId = new NamespaceId(namespace).topic(topic);
-    StoreRequest storeRequest = createStoreRequest(topicId, request);
+    StoreRequest storeRequest = createStoreRequest(topicId, request, decodePartitionKey(partitionKey));
 
     // Empty payload is only allowed for transactional publish
     if (!storeRequest.isTransactional() && !storeRequest.hasPayload()) {
@@ -103,7 +107,7 @@ public final class StoreHandler extends AbstractHttpHandler {
                     @PathParam("topic") String topic) throws Exception {
 
     TopicId topicId = new NamespaceId(namespace).topic(topic);
-    StoreRequest storeRequest = createStoreRequest(topicId, request);
+    StoreRequest storeRequest = createStoreRequest(topicId, request, null);
 
     // It must be transactional with payload for store request
     if (!storeRequest.isTransactional() || !storeRequest.hasPayload()) {
@@ -130,7 +134,8 @@ public final class StoreHandler extends AbstractHttpHandler {
   /**
    * Creates a {@link StoreRequest} instance based on the given {@link HttpRequest}.
    */
-  private StoreRequest createStoreRequest(TopicId topicId, FullHttpRequest request) throws Exception {
+  private StoreRequest createStoreRequest(TopicId topicId, FullHttpRequest request,
+                                          @Nullable byte[] partitionKey) throws Exception {
     // Currently only support avro
     if (!"avro/binary".equals(request.headers().get(HttpHeaderNames.CONTENT_TYPE))) {
       throw new BadRequestException("Only avro/binary content type is supported.");
@@ -138,7 +143,22 @@ public final class StoreHandler extends AbstractHttpHandler {
 
     Decoder decoder = DecoderFactory.get().directBinaryDecoder(new ByteBufInputStream(request.content()), null);
     DatumReader<GenericRecord> datumReader = new GenericDatumReader<>(Schemas.V1.PublishRequest.SCHEMA);
-    return new GenericRecordStoreRequest(topicId, datumReader.read(null, decoder));
+    return new GenericRecordStoreRequest(topicId, datumReader.read(null, decoder), partitionKey);
+  }
+
+  /**
+   * Decodes the URL safe base64 encoded partition key.
+   */
+  @Nullable
+  private byte[] decodePartitionKey(@Nullable String partitionKey) throws BadRequestException {
+    if (partitionKey == null) {
+      return null;
+    }
+    try {
+      return Base64.getUrlDecoder().decode(partitionKey);
+    } catch (IllegalArgumentException e) {
+      throw new BadRequestException("Invalid partition key " + partitionKey + ". It must be URL safe base64 encoded.");
+    }
   }
 
   /**
@@ -177,12 +197,13 @@ public final class StoreHandler extends AbstractHttpHandler {
     private final List<ByteBuffer> payloads;
 
     @SuppressWarnings("unchecked")
-    GenericRecordStoreRequest(TopicId topicId, GenericRecord record) {
+    GenericRecordStoreRequest(TopicId topicId, GenericRecord record, @Nullable byte[] partitionKey) {
       super(topicId,
             record.get("transactionWritePointer") != null,
             record.get("transactionWritePointer") == null
               ? -1L
-              : Long.parseLong(record.get("transactionWritePointer").toString()));
+              : Long.parseLong(record.get("transactionWritePointer").toString()),
+            partitionKey);
 
       this.payloads = ((List<ByteBuffer>) record.get("messages"));
     }
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016-2018 Cask Data, Inc.
+ * Copyright © 2016-2019 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -18,6 +18,7 @@ package io.cdap.cdap.messaging.service;
 
 import com.google.common.base.Throwables;
 import io.cdap.cdap.api.dataset.lib.CloseableIterator;
+import io.cdap.cdap.api.messaging.TopicNotFoundException;
 import io.cdap.cdap.messaging.MessageFetcher;
 import io.cdap.cdap.messaging.TopicMetadata;
 import io.cdap.cdap.messaging.data.MessageId;
@@ -41,23 +42,24 @@ final class CoreMessageFetcher extends MessageFetcher {
 
   private static final Logger LOG = LoggerFactory.getLogger(CoreMessageFetcher.class);
 
-  private final TopicMetadata topicMetadata;
+  private final PartitionProvider partitionProvider;
   private final TableProvider<MessageTable> messageTableProvider;
   private final TableProvider<PayloadTable> payloadTableProvider;
 
-  CoreMessageFetcher(TopicMetadata topicMetadata,
+  CoreMessageFetcher(PartitionProvider partitionProvider,
                      TableProvider<MessageTable> messageTableProvider,
                      TableProvider<PayloadTable> payloadTableProvider) {
-    this.topicMetadata = topicMetadata;
+    this.partitionProvider = partitionProvider;
     this.messageTableProvider = messageTableProvider;
     this.payloadTableProvider = payloadTableProvider;
   }
 
   @Override
-  public CloseableIterator<RawMessage> fetch() throws IOException {
-    MessageTable messageTable = messageTableProvider.get();
+  public CloseableIterator<RawMessage> fetch() throws TopicNotFoundException, IOException {
+    TopicMetadata topicMetadata = partitionProvider.get(getPartition());
+    MessageTable messageTable = messageTableProvider.get(topicMetadata);
     try {
-      return new MessageCloseableIterator(messageTable);
+      return new MessageCloseableIterator(topicMetadata, messageTable);
     } catch (Throwable t) {
       closeQuietly(messageTable);
       throw t;
@@ -125,6 +127,7 @@ final class CoreMessageFetcher extends MessageFetcher {
   private final class MessageCloseableIterator implements CloseableIterator<RawMessage> {
 
     private final CloseableIterator<MessageTable.Entry> messageIterator;
+    private final TopicMetadata topicMetadata;
     private final TopicId topicId;
     private final MessageTable messageTable;
     private RawMessage nextMessage;
@@ -135,7 +138,8 @@ final class CoreMessageFetcher extends MessageFetcher {
     private int messageLimit;
     private PayloadTable payloadTable;
 
-    MessageCloseableIterator(MessageTable messageTable) throws IOException {
+    MessageCloseableIterator(TopicMetadata topicMetadata, MessageTable messageTable) throws IOException {
+      this.topicMetadata = topicMetadata;
       this.topicId = topicMetadata.getTopicId();
       this.messageTable = messageTable;
       this.inclusive = isIncludeStart();
@@ -191,7 +195,7 @@ final class CoreMessageFetcher extends MessageFetcher {
             // If the message entry is a reference to payload table, create the payload iterator
             try {
               if (payloadTable == null) {
-                payloadTable = payloadTableProvider.get();
+                payloadTable = payloadTableProvider.get(topicMetadata);
               }
 
               closeQuietly(payloadIterator);
@@ -247,4 +251,18 @@ final class CoreMessageFetcher extends MessageFetcher {
       closeQuietly(messageTable);
     }
   }
+
+  /**
+   * Provides the {@link TopicMetadata} of a partition of the topic being fetched.
+   */
+  interface PartitionProvider {
+
+    /**
+     * Returns the {@link TopicMetadata} of the given partition.
+     *
+     * @throws TopicNotFoundException if the partition does not exist
+     * @throws IOException if failed to get the metadata
+     */
+    TopicMetadata get(int partition) throws TopicNotFoundException, IOException;
+  }
 }
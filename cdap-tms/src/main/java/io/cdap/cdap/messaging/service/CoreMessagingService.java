@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016 Cask Data, Inc.
+ * Copyright © 2016-2019 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -41,6 +41,7 @@ import io.cdap.cdap.messaging.MessagingUtils;
 import io.cdap.cdap.messaging.RollbackDetail;
 import io.cdap.cdap.messaging.StoreRequest;
 import io.cdap.cdap.messaging.TopicMetadata;
+import io.cdap.cdap.messaging.TopicPartitions;
 import io.cdap.cdap.messaging.store.MessageTable;
 import io.cdap.cdap.messaging.store.MetadataTable;
 import io.cdap.cdap.messaging.store.PayloadTable;
@@ -54,6 +55,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -118,30 +120,73 @@ public class CoreMessagingService extends AbstractIdleService implements Messagi
 
   @Override
   public void createTopic(TopicMetadata topicMetadata) throws TopicAlreadyExistsException, IOException {
+    validatePartitionProperties(topicMetadata);
     try (MetadataTable metadataTable = createMetadataTable()) {
       Map<String, String> properties = createDefaultProperties();
       properties.putAll(topicMetadata.getProperties());
-      metadataTable.createTopic(new TopicMetadata(topicMetadata.getTopicId(), properties, true));
+      TopicMetadata metadata = new TopicMetadata(topicMetadata.getTopicId(), properties, true);
+      checkPartitionTopics(metadataTable, metadata, 1);
+      metadataTable.createTopic(metadata);
+      createPartitionTopics(metadataTable, metadata, 1);
     }
   }
 
   @Override
   public void updateTopic(TopicMetadata topicMetadata) throws TopicNotFoundException, IOException {
+    validatePartitionProperties(topicMetadata);
     try (MetadataTable metadataTable = createMetadataTable()) {
+      TopicMetadata existing = metadataTable.getMetadata(topicMetadata.getTopicId());
+      if (existing.getPartitionOf() != null) {
+        throw new IllegalArgumentException(String.format("Topic %s is a partition of topic %s and cannot be updated",
+                                                         existing.getTopicId(), existing.getPartitionOf()));
+      }
+      int existingPartitions = existing.getPartitions();
       Map<String, String> properties = createDefaultProperties();
+      if (existingPartitions > 1) {
+        // Keep the existing partitions if it is not part of the update
+        properties.put(TopicMetadata.PARTITIONS_KEY, Integer.toString(existingPartitions));
+      }
       properties.putAll(topicMetadata.getProperties());
-      metadataTable.updateTopic(new TopicMetadata(topicMetadata.getTopicId(), properties, true));
-      topicCache.invalidate(topicMetadata.getTopicId());
+      TopicMetadata metadata = new TopicMetadata(topicMetadata.getTopicId(), properties, true);
+      if (metadata.getPartitions() < existingPartitions) {
+        throw new IllegalArgumentException(String.format("Cannot reduce the number of partitions of topic %s from %d",
+                                                         metadata.getTopicId(), existingPartitions));
+      }
+      checkPartitionTopics(metadataTable, metadata, existingPartitions);
+
+      metadataTable.updateTopic(metadata);
+      topicCache.invalidate(metadata.getTopicId());
+
+      // Update existing partitions and create the new ones
+      for (int i = 1; i < existingPartitions; i++) {
+        TopicId partitionTopic = TopicPartitions.getPartitionTopic(metadata.getTopicId(), i);
+        metadataTable.updateTopic(createPartitionMetadata(partitionTopic, metadata));
+        topicCache.invalidate(partitionTopic);
+      }
+      createPartitionTopics(metadataTable, metadata, existingPartitions);
     }
   }
 
   @Override
   public void deleteTopic(TopicId topicId) throws TopicNotFoundException, IOException {
     try (MetadataTable metadataTable = createMetadataTable()) {
-      metadataTable.deleteTopic(topicId);
-      topicCache.invalidate(topicId);
-      messageTableWriterCache.invalidate(topicId);
-      payloadTableWriterCache.invalidate(topicId);
+      TopicMetadata metadata = metadataTable.getMetadata(topicId);
+      if (metadata.getPartitionOf() != null) {
+        throw new IllegalArgumentException(String.format("Topic %s is a partition of topic %s and cannot be deleted",
+                                                         topicId, metadata.getPartitionOf()));
+      }
+      deleteTopic(metadataTable, topicId);
+      for (int i = 1; i < metadata.getPartitions(); i++) {
+        TopicId partitionTopic = TopicPartitions.getPartitionTopic(topicId, i);
+        try {
+          // Only delete the topic if it was created as a partition of this topic
+          if (TopicPartitions.isPartitionOf(metadataTable.getMetadata(partitionTopic), topicId)) {
+            deleteTopic(metadataTable, partitionTopic);
+          }
+        } catch (TopicNotFoundException e) {
+          LOG.debug("Partition {} of topic {} does not exist", i, topicId);
+        }
+      }
     }
   }
 
@@ -159,16 +204,32 @@ public class CoreMessagingService extends AbstractIdleService implements Messagi
   @Override
   public List<TopicId> listTopics(NamespaceId namespaceId) throws IOException {
     try (MetadataTable metadataTable = createMetadataTable()) {
-      return metadataTable.listTopics(namespaceId);
+      // Partitions are internal topics, only the topic that they belong to is listed
+      List<TopicId> topics = new ArrayList<>();
+      for (TopicId topicId : metadataTable.listTopics(namespaceId)) {
+        if (TopicPartitions.getPartitionedTopic(topicId) == null) {
+          topics.add(topicId);
+          continue;
+        }
+        // Only names that can be a partition need the metadata lookup
+        try {
+          if (metadataTable.getMetadata(topicId).getPartitionOf() == null) {
+            topics.add(topicId);
+          }
+        } catch (TopicNotFoundException e) {
+          // The topic was deleted concurrently
+          LOG.trace("Topic {} no longer exists", topicId);
+        }
+      }
+      return topics;
     }
   }
 
   @Override
   public MessageFetcher prepareFetch(final TopicId topicId) throws TopicNotFoundException, IOException {
     final TopicMetadata metadata = getTopic(topicId);
-    return new CoreMessageFetcher(metadata,
-                                  () -> createMessageTable(metadata),
-                                  () -> createPayloadTable(metadata));
+    return new CoreMessageFetcher(partition -> getPartitionMetadata(metadata, partition),
+                                  this::createMessageTable, this::createPayloadTable);
   }
 
   @Nullable
@@ -178,8 +239,19 @@ public class CoreMessagingService extends AbstractIdleService implements Messagi
       TopicMetadata metadata = topicCache.get(request.getTopicId());
       if (request.isTransactional()) {
         ensureValidTxLifetime(request.getTransactionWritePointer());
+      } else if (metadata.getPartitions() > 1) {
+        // Non-transactional publishes to a partitioned topic go to the partition selected by the key.
+        // Messages without a key stay on partition 0, which is the topic itself, so that consumers that only
+        // fetch from the topic still see them.
+        // Transactional publish always goes to the requested topic since rollback and the payload table
+        // are addressed by the same topic.
+        byte[] partitionKey = request.getPartitionKey();
+        if (partitionKey != null) {
+          int partition = TopicPartitions.getPartition(partitionKey, metadata.getPartitions());
+          metadata = topicCache.get(TopicPartitions.getPartitionTopic(request.getTopicId(), partition));
+        }
       }
-      return messageTableWriterCache.get(request.getTopicId()).persist(request, metadata);
+      return messageTableWriterCache.get(metadata.getTopicId()).persist(request, metadata);
     } catch (ExecutionException e) {
       Throwable cause = Objects.firstNonNull(e.getCause(), e);
       Throwables.propagateIfPossible(cause, TopicNotFoundException.class, IOException.class);
@@ -370,6 +442,89 @@ public class CoreMessagingService extends AbstractIdleService implements Messagi
       });
   }
 
+  /**
+   * Returns the {@link TopicMetadata} of the given partition of a topic.
+   *
+   * @param metadata the {@link TopicMetadata} of the topic
+   * @param partition the partition, starting from {@code 0}
+   * @throws IllegalArgumentException if the topic doesn't have the given partition
+   */
+  private TopicMetadata getPartitionMetadata(TopicMetadata metadata,
+                                             int partition) throws TopicNotFoundException, IOException {
+    if (partition == 0) {
+      return metadata;
+    }
+    if (partition >= metadata.getPartitions()) {
+      throw new IllegalArgumentException(String.format("Partition %d does not exist in topic %s with %d partitions",
+                                                       partition, metadata.getTopicId(), metadata.getPartitions()));
+    }
+    return getTopic(TopicPartitions.getPartitionTopic(metadata.getTopicId(), partition));
+  }
+
+  /**
+   * Validates that the given {@link TopicMetadata} doesn't set the property that is reserved for topic partitions.
+   */
+  private void validatePartitionProperties(TopicMetadata topicMetadata) {
+    if (topicMetadata.getProperties().containsKey(TopicMetadata.PARTITION_OF_KEY)) {
+      throw new IllegalArgumentException(String.format("Property %s is reserved for topic partitions. Topic: %s",
+                                                       TopicMetadata.PARTITION_OF_KEY, topicMetadata.getTopicId()));
+    }
+  }
+
+  /**
+   * Checks that no topic other than a partition of the given topic exists with the name of a partition,
+   * starting from the given partition. This prevents existing topics from being taken over as partitions.
+   */
+  private void checkPartitionTopics(MetadataTable metadataTable, TopicMetadata metadata,
+                                    int fromPartition) throws IOException {
+    for (int i = Math.max(1, fromPartition); i < metadata.getPartitions(); i++) {
+      TopicId partitionTopic = TopicPartitions.getPartitionTopic(metadata.getTopicId(), i);
+      try {
+        if (!TopicPartitions.isPartitionOf(metadataTable.getMetadata(partitionTopic), metadata.getTopicId())) {
+          throw new IllegalArgumentException(String.format("Cannot create partition %d of topic %s because topic %s "
+                                                             + "already exists", i, metadata.getTopicId(),
+                                                           partitionTopic));
+        }
+      } catch (TopicNotFoundException e) {
+        // Expected, the partition can be created
+      }
+    }
+  }
+
+  /**
+   * Creates the topics for the partitions of the given topic, starting from the given partition.
+   * Partitions that already exist are left unchanged.
+   */
+  private void createPartitionTopics(MetadataTable metadataTable, TopicMetadata metadata,
+                                     int fromPartition) throws IOException {
+    for (int i = Math.max(1, fromPartition); i < metadata.getPartitions(); i++) {
+      TopicId partitionTopic = TopicPartitions.getPartitionTopic(metadata.getTopicId(), i);
+      try {
+        metadataTable.createTopic(createPartitionMetadata(partitionTopic, metadata));
+      } catch (TopicAlreadyExistsException e) {
+        LOG.debug("Partition topic {} already exists", partitionTopic);
+      }
+    }
+  }
+
+  /**
+   * Creates the {@link TopicMetadata} of a partition, which has the same properties as the topic it belongs to,
+   * except that it only has one partition and is marked as a partition of the topic.
+   */
+  private TopicMetadata createPartitionMetadata(TopicId partitionTopic, TopicMetadata metadata) {
+    Map<String, String> properties = new HashMap<>(metadata.getProperties());
+    properties.remove(TopicMetadata.PARTITIONS_KEY);
+    properties.put(TopicMetadata.PARTITION_OF_KEY, metadata.getTopicId().getTopic());
+    return new TopicMetadata(partitionTopic, properties, true);
+  }
+
+  private void deleteTopic(MetadataTable metadataTable, TopicId topicId) throws TopicNotFoundException, IOException {
+    metadataTable.deleteTopic(topicId);
+    topicCache.invalidate(topicId);
+    messageTableWriterCache.invalidate(topicId);
+    payloadTableWriterCache.invalidate(topicId);
+  }
+
   /**
    * Creates a new instance of {@link MetadataTable}.
    */
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016 Cask Data, Inc.
+ * Copyright © 2016-2019 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -16,6 +16,8 @@
 
 package io.cdap.cdap.messaging.service;
 
+import io.cdap.cdap.messaging.TopicMetadata;
+
 import java.io.IOException;
 
 /**
@@ -27,7 +29,7 @@ import java.io.IOException;
 interface TableProvider<T> {
 
   /**
-   * Provides an instance of messaging table of type {@code <T>}.
+   * Provides an instance of messaging table of type {@code <T>} for the given topic.
    */
-  T get() throws IOException;
+  T get(TopicMetadata topicMetadata) throws IOException;
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2017 Cask Data, Inc.
+ * Copyright © 2017-2019 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -23,6 +23,7 @@ import io.cdap.cdap.api.metrics.MetricsContext;
 import io.cdap.cdap.common.conf.CConfiguration;
 import io.cdap.cdap.common.conf.Constants;
 import io.cdap.cdap.messaging.MessagingServiceUtils;
+import io.cdap.cdap.messaging.TopicPartitions;
 import io.cdap.cdap.messaging.cache.MessageCache;
 import io.cdap.cdap.messaging.store.MessageTable;
 import io.cdap.cdap.proto.id.TopicId;
@@ -31,16 +32,20 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.annotation.Nullable;
 
 /**
- * The default implementation of {@link MessageTableCacheProvider}.
+ * The default implementation of {@link MessageTableCacheProvider}. Caches are created for the system topics, as well
+ * as for the partitions of partitioned system topics, with each partition getting the same cache limits as the
+ * system topic.
  */
 public class DefaultMessageTableCacheProvider implements MessageTableCacheProvider {
 
   private final CConfiguration cConf;
   private final MetricsCollectionService metricsCollectionService;
   private Map<TopicId, MessageCache<MessageTable.Entry>> topicMessageCaches;
+  private Map<TopicId, MessageCache.Limits> topicCacheLimits;
   private volatile boolean initialized;
 
   @Inject
@@ -58,14 +63,12 @@ public class DefaultMessageTableCacheProvider implements MessageTableCacheProvid
     if (!initialized) {
       synchronized (this) {
         if (!initialized) {
-          Map<TopicId, MessageCache<MessageTable.Entry>> caches = new HashMap<>();
+          Map<TopicId, MessageCache<MessageTable.Entry>> caches = new ConcurrentHashMap<>();
+          Map<TopicId, MessageCache.Limits> cacheLimits = new HashMap<>();
 
-          long cacheSize = cConf.getInt(Constants.MessagingSystem.CACHE_SIZE_MB) * 1024 * 1024;
+          long cacheSize = cConf.getLong(Constants.MessagingSystem.CACHE_SIZE_MB) * 1024 * 1024;
           Set<TopicId> systemTopics = MessagingServiceUtils.getSystemTopics(cConf, true);
           if (cacheSize > 0 && !systemTopics.isEmpty()) {
-            MessageTableEntryWeigher weigher = new MessageTableEntryWeigher();
-            MessageTableEntryComparator comparator = new MessageTableEntryComparator();
-
             // Just evenly distributed the cache among all system topics.
             // More sophisticated logic can be employed at runtime to monitor the metrics from MessageCache
             // for each topic and adjust the soft/hard limit accordingly to maximize efficiency in
@@ -76,19 +79,38 @@ public class DefaultMessageTableCacheProvider implements MessageTableCacheProvid
               // In future, it can be adjusted dynamically based on metrics
               MessageCache.Limits limits = new MessageCache.Limits(hardLimit / 2, hardLimit * 7 / 10, hardLimit);
               for (TopicId topic : systemTopics) {
-                caches.put(topic, new MessageCache<>(comparator, weigher, limits,
-                                                     createMetricsContext(cConf, topic, metricsCollectionService)));
+                cacheLimits.put(topic, limits);
+                caches.put(topic, createMessageCache(topic, limits));
               }
             }
           }
 
           topicMessageCaches = caches;
+          topicCacheLimits = cacheLimits;
           initialized = true;
         }
       }
     }
 
-    return topicMessageCaches.get(topicId);
+    MessageCache<MessageTable.Entry> cache = topicMessageCaches.get(topicId);
+    if (cache != null) {
+      return cache;
+    }
+
+    // Partitions of a system topic are cached the same way as the system topic
+    TopicId partitionedTopic = TopicPartitions.getPartitionedTopic(topicId);
+    MessageCache.Limits limits = partitionedTopic == null ? null : topicCacheLimits.get(partitionedTopic);
+    if (limits == null) {
+      return null;
+    }
+    synchronized (this) {
+      Map<TopicId, MessageCache<MessageTable.Entry>> caches = topicMessageCaches;
+      if (caches == null) {
+        // Cleared concurrently, don't cache until the next initialization
+        return null;
+      }
+      return caches.computeIfAbsent(topicId, topic -> createMessageCache(topic, limits));
+    }
   }
 
   @Override
@@ -108,6 +130,19 @@ public class DefaultMessageTableCacheProvider implements MessageTableCacheProvid
     }
   }
 
+  /**
+   * Creates a {@link MessageCache} for the given topic.
+   */
+  private MessageCache<MessageTable.Entry> createMessageCache(TopicId topicId, MessageCache.Limits limits) {
+    MetricsContext metricsContext = createMetricsContext(cConf, topicId, metricsCollectionService);
+    if (cConf.getBoolean(Constants.MessagingSystem.CACHE_OFF_HEAP_ENABLED)) {
+      int slabSize = cConf.getInt(Constants.MessagingSystem.CACHE_OFF_HEAP_SLAB_SIZE_KB) * 1024;
+      return new OffHeapMessageCache(topicId, limits, slabSize, metricsContext);
+    }
+    return new MessageCache<>(new MessageTableEntryComparator(), new MessageTableEntryWeigher(), limits,
+                              metricsContext);
+  }
+
   /**
    * Creates a {@link MetricsContext} for {@link MessageCache} to use for the given topic.
    */
@@ -0,0 +1,558 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.messaging.store.cache;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.AbstractIterator;
+import io.cdap.cdap.api.common.Bytes;
+import io.cdap.cdap.api.metrics.MetricsContext;
+import io.cdap.cdap.messaging.cache.MessageCache;
+import io.cdap.cdap.messaging.store.MessageFilter;
+import io.cdap.cdap.messaging.store.MessageTable;
+import io.cdap.cdap.proto.id.TopicId;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link MessageCache} for {@link MessageTable.Entry} of a single topic that keeps the cached messages in direct
+ * memory, so that a large cache doesn't add to the heap that the garbage collector has to manage.
+ *
+ * The direct memory is divided into fixed size slabs that are used as a ring buffer. Messages are appended to
+ * the ring in increasing order and evicted from the head of the ring, which matches the single writer, ordered
+ * nature of TMS. A message never spans two slabs. A message that doesn't fit in a slab resets the cache and is not
+ * cached, so that the cache always contains a contiguous range of messages. The ordering keys of the cached messages
+ * are kept in a ring of primitive arrays, which is binary searched on scan.
+ *
+ * The weight of the cache is the number of bytes between the head and the tail of the ring, which is bounded by the
+ * hard limit of the {@link MessageCache.Limits}. The min retain and reduce trigger limits are applied the same way
+ * as in {@link MessageCache}.
+ */
+final class OffHeapMessageCache extends MessageCache<MessageTable.Entry> {
+
+  private static final String METRICS_WEIGHT = "cache.weight";
+  private static final String METRICS_ENTRIES_ADDED = "cache.entries.added";
+  private static final String METRICS_ENTRIES_REMOVED = "cache.entries.removed";
+  private static final String METRICS_ADD_REQUESTS = "cache.add.requests";
+  private static final String METRICS_ADD_REDUCE_WEIGHT = "cache.add.reduce.weight";
+  private static final String METRICS_SCAN_REQUESTS = "cache.scan.requests";
+  private static final String METRICS_SCAN_HITS = "cache.scan.hits";
+  private static final String METRICS_SCAN_REDUCE_WEIGHT = "cache.scan.reduce.weight";
+  private static final String METRICS_SLABS_ALLOCATED_BYTES = "cache.slabs.allocated.bytes";
+
+  // Each cached message is stored as (flags, transaction write pointer, payload length, payload)
+  private static final int RECORD_HEADER_SIZE = 1 + Bytes.SIZEOF_LONG + Bytes.SIZEOF_INT;
+  private static final byte FLAG_TRANSACTIONAL = 1;
+  private static final byte FLAG_ROLLBACK = 2;
+  private static final byte FLAG_PAYLOAD = 4;
+  private static final int INITIAL_INDEX_SIZE = 1024;
+
+  private final TopicId topicId;
+  private final int maxSlabSize;
+  private final MetricsContext metricsContext;
+  private final AtomicBoolean needReduceWeight;
+  private final AtomicBoolean adding;
+  private final ReadWriteLock cacheLock;
+
+  private volatile Limits limits;
+  private int slabSize;
+  private ByteBuffer[] slabs;
+
+  // Ring index of the cached messages. The message with sequence number n is at index (n & indexMask).
+  // Messages in the range of [head, tail) are cached.
+  private int[] generations;
+  private long[] publishTimestamps;
+  private short[] sequenceIds;
+  private long[] positions;
+  private int indexMask;
+  private long head;
+  private long tail;
+
+  // The logical position in the ring of slabs of the first cached message and the next message to be added.
+  // The message at logical position p is stored in slab (p / slabSize) % slabs.length, at offset (p % slabSize).
+  private long headPosition;
+  private long tailPosition;
+
+  /**
+   * Creates a new instance of the cache.
+   *
+   * @param topicId the topic that messages in this cache belongs to
+   * @param limits the limits in bytes for maintaining cache weight
+   * @param maxSlabSize the maximum size in bytes of each direct memory slab
+   * @param metricsContext a {@link MetricsContext} for emitting metrics about this cache.
+   */
+  OffHeapMessageCache(TopicId topicId, Limits limits, int maxSlabSize, MetricsContext metricsContext) {
+    super(new MessageTableEntryComparator(), new MessageTableEntryWeigher(), limits, metricsContext);
+    Preconditions.checkArgument(maxSlabSize > 0, "Slab size must be greater than zero");
+    this.topicId = topicId;
+    this.maxSlabSize = maxSlabSize;
+    this.metricsContext = metricsContext;
+    this.needReduceWeight = new AtomicBoolean();
+    this.adding = new AtomicBoolean();
+    this.cacheLock = new ReentrantReadWriteLock();
+    this.generations = new int[INITIAL_INDEX_SIZE];
+    this.publishTimestamps = new long[INITIAL_INDEX_SIZE];
+    this.sequenceIds = new short[INITIAL_INDEX_SIZE];
+    this.positions = new long[INITIAL_INDEX_SIZE];
+    this.indexMask = INITIAL_INDEX_SIZE - 1;
+    allocateSlabs(limits);
+  }
+
+  @Override
+  public void addAll(Iterator<MessageTable.Entry> entries) {
+    if (!adding.compareAndSet(false, true)) {
+      // This is to guard against bug, otherwise this shouldn't happen
+      throw new ConcurrentModificationException(
+        "The MessageCache.addAll method shouldn't be called concurrently by multiple threads.");
+    }
+
+    try {
+      int entriesAdded = 0;
+      boolean reduced = false;
+      long newWeight;
+
+      cacheLock.writeLock().lock();
+      try {
+        while (entries.hasNext()) {
+          MessageTable.Entry entry = entries.next();
+
+          // Entries must be in strictly increasing order.
+          // Clear the cache to reset state. This is just for precaution, as this shouldn't happen,
+          // unless there is bug in the TMS system (from the caller side).
+          if (head < tail && compareKey(tail - 1, entry) >= 0) {
+            MessageTable.Entry largest = decode(tail - 1, false);
+            clearEntries();
+            throw new IllegalArgumentException("Cache entry must be in strictly increasing order. " +
+                                                 "Entry " + entry + " is smaller than or equal to " + largest);
+          }
+
+          byte[] payload = entry.getPayload();
+          int recordSize = RECORD_HEADER_SIZE + (payload == null ? 0 : payload.length);
+          if (recordSize > slabSize) {
+            // Cannot be cached. Clear the cache so that the cache remains a contiguous range of messages.
+            clearEntries();
+            continue;
+          }
+
+          long position = alignPosition(tailPosition, recordSize);
+          if (head == tail) {
+            headPosition = position;
+          }
+          long capacity = (long) slabSize * slabs.length;
+          if (position + recordSize - headPosition > capacity) {
+            reduceWeight();
+            reduced = true;
+            // The min retain can be close to the hard limit, hence remove more entries until there is enough room
+            while (head < tail && position + recordSize - headPosition > capacity) {
+              removeHead();
+            }
+            if (head == tail) {
+              headPosition = position;
+            }
+          }
+
+          append(entry, payload, position, recordSize);
+          entriesAdded++;
+        }
+        newWeight = getWeight();
+      } finally {
+        cacheLock.writeLock().unlock();
+      }
+
+      if (reduced) {
+        metricsContext.increment(METRICS_ADD_REDUCE_WEIGHT, 1L);
+      }
+      metricsContext.increment(METRICS_ADD_REQUESTS, 1L);
+      metricsContext.increment(METRICS_ENTRIES_ADDED, entriesAdded);
+      metricsContext.gauge(METRICS_WEIGHT, newWeight);
+
+      if (newWeight > limits.getReduceTrigger()) {
+        needReduceWeight.compareAndSet(false, true);
+      }
+    } finally {
+      adding.set(false);
+    }
+  }
+
+  @Override
+  public Scanner<MessageTable.Entry> scan(MessageTable.Entry startEntry, boolean includeStart,
+                                          int limit, MessageFilter<MessageTable.Entry> filter) {
+    List<MessageTable.Entry> entries = new ArrayList<>();
+    MessageTable.Entry firstInCache = null;
+    boolean hit = false;
+
+    // Acquire the read lock and copy the entries out of the direct memory.
+    cacheLock.readLock().lock();
+    try {
+      if (head < tail) {
+        firstInCache = decode(head, false);
+        hit = compareKey(head, startEntry) <= 0;
+      }
+      for (long seq = lowerBound(startEntry, includeStart); seq < tail && entries.size() < limit; seq++) {
+        MessageTable.Entry entry = decode(seq, true);
+        MessageFilter.Result result = filter.apply(entry);
+        if (result == MessageFilter.Result.ACCEPT) {
+          entries.add(entry);
+        } else if (result == MessageFilter.Result.HOLD) {
+          // Hold means not to scan more, so just break
+          break;
+        }
+      }
+    } finally {
+      cacheLock.readLock().unlock();
+    }
+
+    metricsContext.increment(METRICS_SCAN_REQUESTS, 1L);
+    if (hit) {
+      metricsContext.increment(METRICS_SCAN_HITS, 1L);
+    }
+    return new ListScanner(entries.iterator(), firstInCache);
+  }
+
+  @Override
+  public void updateEntries(MessageTable.Entry startEntry, MessageTable.Entry endEntry,
+                            EntryUpdater<MessageTable.Entry> updater) {
+    cacheLock.writeLock().lock();
+    try {
+      for (long seq = lowerBound(startEntry, true); seq < tail && compareKey(seq, endEntry) <= 0; seq++) {
+        CachingMessageTable.CacheMessageTableEntry entry = decode(seq, true);
+        try {
+          updater.updateEntry(entry);
+        } catch (RuntimeException e) {
+          clearEntries();
+          throw e;
+        }
+        // Only the rollback state can be altered. The ordering keys are only stored in the index.
+        if (entry.isRollback()) {
+          ByteBuffer slab = getSlab(positions[(int) (seq & indexMask)]);
+          int offset = getSlabOffset(positions[(int) (seq & indexMask)]);
+          slab.put(offset, (byte) (slab.get(offset) | FLAG_ROLLBACK));
+        }
+      }
+    } finally {
+      cacheLock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public void clear() {
+    cacheLock.writeLock().lock();
+    try {
+      clearEntries();
+    } finally {
+      cacheLock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public void resize(Limits limits) {
+    cacheLock.writeLock().lock();
+    try {
+      this.limits = limits;
+      int oldSlabSize = slabSize;
+      int oldSlabCount = slabs.length;
+      allocateSlabs(limits);
+      if (slabSize != oldSlabSize || slabs.length != oldSlabCount) {
+        // The layout of the ring changed, hence cached messages cannot be located anymore
+        clearEntries();
+      } else {
+        reduceWeight();
+      }
+    } finally {
+      cacheLock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public Limits getLimits() {
+    return limits;
+  }
+
+  /**
+   * Returns the current cache weight.
+   */
+  @VisibleForTesting
+  long getWeight() {
+    return tailPosition - headPosition;
+  }
+
+  /**
+   * Returns the number of messages in the cache.
+   */
+  @VisibleForTesting
+  long size() {
+    return tail - head;
+  }
+
+  /**
+   * Sets the limits and prepares the slabs for the limits. Slabs are allocated lazily when they are first written to.
+   */
+  private void allocateSlabs(Limits limits) {
+    this.limits = limits;
+    long hardLimit = limits.getHardLimit();
+    int newSlabSize = (int) Math.min(maxSlabSize, hardLimit);
+    int slabCount = newSlabSize <= 0 ? 0 : (int) (hardLimit / newSlabSize);
+    if (slabs != null && slabSize == newSlabSize && slabs.length == slabCount) {
+      return;
+    }
+    slabSize = newSlabSize;
+    slabs = new ByteBuffer[slabCount];
+    metricsContext.gauge(METRICS_SLABS_ALLOCATED_BYTES, 0L);
+  }
+
+  /**
+   * Returns the logical position in the ring that a record of the given size will be written to, if it is
+   * written after the given position. Records never span across slabs.
+   */
+  private long alignPosition(long position, int recordSize) {
+    int offset = (int) (position % slabSize);
+    return offset + recordSize > slabSize ? position + slabSize - offset : position;
+  }
+
+  /**
+   * Appends the given entry to the end of the ring.
+   */
+  private void append(MessageTable.Entry entry, @Nullable byte[] payload, long position, int recordSize) {
+    if (tail - head == generations.length) {
+      growIndex();
+    }
+
+    byte flags = 0;
+    if (entry.isTransactional()) {
+      flags |= FLAG_TRANSACTIONAL;
+    }
+    if (payload != null) {
+      flags |= FLAG_PAYLOAD;
+    }
+
+    // This is the only place that uses the buffer position. It is guarded by the write lock, and readers only use
+    // absolute gets and duplicates of the buffer.
+    ByteBuffer slab = getSlab(position);
+    slab.position(getSlabOffset(position));
+    slab.put(flags);
+    slab.putLong(entry.isTransactional() ? entry.getTransactionWritePointer() : 0L);
+    slab.putInt(payload == null ? 0 : payload.length);
+    if (payload != null) {
+      slab.put(payload);
+    }
+
+    int idx = (int) (tail & indexMask);
+    generations[idx] = entry.getGeneration();
+    publishTimestamps[idx] = entry.getPublishTimestamp();
+    sequenceIds[idx] = entry.getSequenceId();
+    positions[idx] = position;
+    tail++;
+    tailPosition = position + recordSize;
+  }
+
+  /**
+   * Decodes the message with the given sequence number.
+   *
+   * @param seq the sequence number of the message
+   * @param full {@code true} to decode the whole message, {@code false} to only decode the ordering keys
+   */
+  private CachingMessageTable.CacheMessageTableEntry decode(long seq, boolean full) {
+    int idx = (int) (seq & indexMask);
+    if (!full) {
+      return new CachingMessageTable.CacheMessageTableEntry(topicId, generations[idx],
+                                                            publishTimestamps[idx], sequenceIds[idx]);
+    }
+
+    ByteBuffer slab = getSlab(positions[idx]);
+    int offset = getSlabOffset(positions[idx]);
+    byte flags = slab.get(offset);
+    long txWritePointer = slab.getLong(offset + 1);
+    byte[] payload = null;
+    if ((flags & FLAG_PAYLOAD) != 0) {
+      payload = new byte[slab.getInt(offset + 1 + Bytes.SIZEOF_LONG)];
+      ByteBuffer buffer = slab.duplicate();
+      buffer.position(offset + RECORD_HEADER_SIZE);
+      buffer.get(payload);
+    }
+    return new CachingMessageTable.CacheMessageTableEntry(topicId, generations[idx],
+                                                          (flags & FLAG_TRANSACTIONAL) != 0, txWritePointer, payload,
+                                                          publishTimestamps[idx], sequenceIds[idx],
+                                                          (flags & FLAG_ROLLBACK) != 0);
+  }
+
+  /**
+   * Compares the ordering keys of the cached message with the given sequence number with the given entry,
+   * using the same ordering as {@link MessageTableEntryComparator}.
+   */
+  private int compareKey(long seq, MessageTable.Entry entry) {
+    int idx = (int) (seq & indexMask);
+    int cmp = Integer.compare(generations[idx], entry.getGeneration());
+    if (cmp != 0) {
+      return cmp;
+    }
+    cmp = Long.compare(publishTimestamps[idx], entry.getPublishTimestamp());
+    if (cmp != 0) {
+      return cmp;
+    }
+    return Integer.compare(sequenceIds[idx] & 0xFFFF, entry.getSequenceId() & 0xFFFF);
+  }
+
+  /**
+   * Returns the sequence number of the first cached message that is larger than, or equal to if
+   * {@code inclusive} is {@code true}, the given entry.
+   */
+  private long lowerBound(MessageTable.Entry entry, boolean inclusive) {
+    long low = head;
+    long high = tail;
+    while (low < high) {
+      long mid = (low + high) >>> 1;
+      int cmp = compareKey(mid, entry);
+      if (cmp < 0 || (cmp == 0 && !inclusive)) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Reduces the cache weight. Cached entries will be removed from the head of the ring until the cache weight is
+   * smaller than the min retain weight.
+   */
+  private void reduceWeight() {
+    int entriesRemoved = 0;
+    while (head < tail) {
+      long nextHeadPosition = head + 1 < tail ? positions[(int) ((head + 1) & indexMask)] : tailPosition;
+      // If removing the next entry is smaller than the min weight, we are done with the reduce logic
+      if (tailPosition - nextHeadPosition < limits.getMinRetain()) {
+        break;
+      }
+      removeHead();
+      entriesRemoved++;
+    }
+    metricsContext.increment(METRICS_ENTRIES_REMOVED, entriesRemoved);
+  }
+
+  private void removeHead() {
+    head++;
+    headPosition = head < tail ? positions[(int) (head & indexMask)] : tailPosition;
+  }
+
+  private void clearEntries() {
+    long removed = tail - head;
+    head = tail;
+    headPosition = tailPosition;
+    metricsContext.increment(METRICS_ENTRIES_REMOVED, removed);
+  }
+
+  /**
+   * Doubles the size of the ring index.
+   */
+  private void growIndex() {
+    int size = generations.length * 2;
+    int mask = size - 1;
+    int[] newGenerations = new int[size];
+    long[] newPublishTimestamps = new long[size];
+    short[] newSequenceIds = new short[size];
+    long[] newPositions = new long[size];
+    for (long seq = head; seq < tail; seq++) {
+      int idx = (int) (seq & indexMask);
+      int newIdx = (int) (seq & mask);
+      newGenerations[newIdx] = generations[idx];
+      newPublishTimestamps[newIdx] = publishTimestamps[idx];
+      newSequenceIds[newIdx] = sequenceIds[idx];
+      newPositions[newIdx] = positions[idx];
+    }
+    generations = newGenerations;
+    publishTimestamps = newPublishTimestamps;
+    sequenceIds = newSequenceIds;
+    positions = newPositions;
+    indexMask = mask;
+  }
+
+  private ByteBuffer getSlab(long position) {
+    int slabIdx = (int) ((position / slabSize) % slabs.length);
+    ByteBuffer slab = slabs[slabIdx];
+    if (slab == null) {
+      slab = slabs[slabIdx] = ByteBuffer.allocateDirect(slabSize);
+      int allocated = 0;
+      for (ByteBuffer buffer : slabs) {
+        allocated += buffer == null ? 0 : 1;
+      }
+      metricsContext.gauge(METRICS_SLABS_ALLOCATED_BYTES, (long) allocated * slabSize);
+    }
+    return slab;
+  }
+
+  private int getSlabOffset(long position) {
+    return (int) (position % slabSize);
+  }
+
+  /**
+   * A {@link Scanner} over the messages copied out of the cache.
+   */
+  private final class ListScanner extends AbstractIterator<MessageTable.Entry>
+    implements Scanner<MessageTable.Entry> {
+
+    private final Iterator<MessageTable.Entry> iterator;
+    private final MessageTable.Entry firstInCache;
+    private boolean closed;
+
+    private ListScanner(Iterator<MessageTable.Entry> iterator, @Nullable MessageTable.Entry firstInCache) {
+      this.iterator = iterator;
+      this.firstInCache = firstInCache;
+    }
+
+    @Override
+    protected MessageTable.Entry computeNext() {
+      if (!closed && iterator.hasNext()) {
+        return iterator.next();
+      }
+      close();
+      return endOfData();
+    }
+
+    @Nullable
+    @Override
+    public MessageTable.Entry getFirstInCache() {
+      return firstInCache;
+    }
+
+    @Override
+    public void close() {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      // Use compareAndSet to check if need to reduce weight. There will only be
+      // one winner to proceed with the reduce weight call.
+      if (needReduceWeight.compareAndSet(true, false)) {
+        cacheLock.writeLock().lock();
+        try {
+          reduceWeight();
+        } finally {
+          cacheLock.writeLock().unlock();
+        }
+        metricsContext.increment(METRICS_SCAN_REDUCE_WEIGHT, 1L);
+      }
+    }
+  }
+}
@@ -0,0 +1,328 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.messaging.store.leveldb;
+
+import io.cdap.cdap.common.conf.CConfiguration;
+import io.cdap.cdap.common.conf.Constants;
+import org.apache.twill.common.Threads;
+import org.iq80.leveldb.DB;
+import org.iq80.leveldb.DBException;
+import org.iq80.leveldb.WriteBatch;
+import org.iq80.leveldb.WriteOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * Writes {@link WriteBatch} to the LevelDB tables of the messaging system based on the configured {@link SyncMode}.
+ * A single instance is shared by all the data tables created by the same {@link LevelDBTableFactory}.
+ */
+final class LevelDBBatchWriter implements Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(LevelDBBatchWriter.class);
+  private static final WriteOptions SYNC_WRITE_OPTIONS = new WriteOptions().sync(true);
+  private static final WriteOptions ASYNC_WRITE_OPTIONS = new WriteOptions().sync(false);
+  // Marker for stopping the group commit thread
+  private static final PendingWrite STOP = new PendingWrite(null, null);
+
+  /**
+   * Controls how writes are synced to disk.
+   */
+  enum SyncMode {
+    /**
+     * Each write is synced to disk before returning.
+     */
+    SYNC,
+
+    /**
+     * Writes from all tables are queued and committed by a single thread, either periodically or when enough
+     * writes are queued. Only the last write to each LevelDB in a commit is synced to disk, which also
+     * persists all the previous writes to the same LevelDB. Callers return after their writes are synced.
+     */
+    GROUP,
+
+    /**
+     * Writes are not synced to disk. Recently acknowledged writes can be lost if the machine crashes.
+     */
+    ASYNC
+  }
+
+  private final SyncMode syncMode;
+  private final long commitIntervalNanos;
+  private final int maxCommitBatches;
+  private final BlockingQueue<PendingWrite> pendingWrites;
+  private final ExecutorService executor;
+  private volatile boolean closed;
+
+  LevelDBBatchWriter(CConfiguration cConf) {
+    this(SyncMode.valueOf(cConf.get(Constants.MessagingSystem.LOCAL_DATA_SYNC_MODE).toUpperCase()),
+         cConf.getLong(Constants.MessagingSystem.LOCAL_DATA_GROUP_COMMIT_INTERVAL_MS),
+         cConf.getInt(Constants.MessagingSystem.LOCAL_DATA_GROUP_COMMIT_MAX_BATCHES));
+  }
+
+  LevelDBBatchWriter(SyncMode syncMode, long commitIntervalMillis, int maxCommitBatches) {
+    this.syncMode = syncMode;
+    this.commitIntervalNanos = TimeUnit.MILLISECONDS.toNanos(commitIntervalMillis);
+    this.maxCommitBatches = Math.max(1, maxCommitBatches);
+    this.pendingWrites = new LinkedBlockingQueue<>();
+
+    if (syncMode == SyncMode.GROUP) {
+      this.executor = Executors.newSingleThreadExecutor(Threads.createDaemonThreadFactory("leveldb-tms-group-commit"));
+      this.executor.execute(this::runGroupCommit);
+    } else {
+      this.executor = null;
+    }
+  }
+
+  /**
+   * Returns the {@link SyncMode} used by this writer.
+   */
+  SyncMode getSyncMode() {
+    return syncMode;
+  }
+
+  /**
+   * Writes the given {@link WriteBatch} to the given LevelDB. This method returns once the write is completed
+   * based on the {@link SyncMode}.
+   *
+   * @param levelDB the LevelDB to write to
+   * @param writeBatch the batch to write. It must not be closed until this method returns.
+   * @throws IOException if the write failed
+   */
+  void write(DB levelDB, WriteBatch writeBatch) throws IOException {
+    switch (syncMode) {
+      case SYNC:
+        write(levelDB, writeBatch, SYNC_WRITE_OPTIONS);
+        break;
+      case ASYNC:
+        write(levelDB, writeBatch, ASYNC_WRITE_OPTIONS);
+        break;
+      case GROUP:
+        await(enqueue(new PendingWrite(levelDB, writeBatch)));
+        break;
+      default:
+        // This shouldn't happen
+        throw new IllegalStateException("Unsupported sync mode " + syncMode);
+    }
+  }
+
+  /**
+   * Waits for all the writes to the given LevelDB that are queued for group commit to be completed. This method
+   * must be called before closing a LevelDB that is being written through this writer.
+   *
+   * @param levelDB the LevelDB to flush the writes of
+   * @throws IOException if failed to wait for the writes
+   */
+  void flush(DB levelDB) throws IOException {
+    if (syncMode == SyncMode.GROUP) {
+      // Writes are committed in queue order, hence all writes queued before the marker are completed with it
+      await(enqueue(new PendingWrite(levelDB, null)));
+    }
+  }
+
+  /**
+   * Commits all the queued writes and stops the group commit thread. Writes after this method is called will fail.
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    if (executor == null) {
+      return;
+    }
+
+    // The group commit thread stops when it sees the marker, which is queued after all the pending writes
+    pendingWrites.add(STOP);
+    executor.shutdown();
+    try {
+      if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+        LOG.warn("Timeout in waiting for the LevelDB group commit thread to stop");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for the LevelDB group commit thread to stop");
+    }
+  }
+
+  private PendingWrite enqueue(PendingWrite write) throws IOException {
+    if (closed) {
+      throw new IOException("The LevelDB writer is already closed");
+    }
+    pendingWrites.add(write);
+
+    // If closed concurrently, the group commit thread might have stopped before the write was queued.
+    // The write can be failed if it is still in the queue, otherwise it was taken by the group commit thread.
+    if (closed && pendingWrites.remove(write)) {
+      throw new IOException("The LevelDB writer is already closed");
+    }
+    return write;
+  }
+
+  /**
+   * Waits for the given write to be completed. On interrupt, the write is removed from the queue if it is still
+   * there, otherwise it is being committed and this method keeps waiting, as the caller must not release the
+   * {@link WriteBatch} before the commit completes.
+   */
+  private void await(PendingWrite write) throws IOException {
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          write.completion.get();
+          return;
+        } catch (InterruptedException e) {
+          interrupted = true;
+          if (pendingWrites.remove(write)) {
+            throw new InterruptedIOException("Interrupted while waiting for the write to be committed");
+          }
+        } catch (ExecutionException e) {
+          throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private void write(DB levelDB, WriteBatch writeBatch, WriteOptions writeOptions) throws IOException {
+    try {
+      levelDB.write(writeBatch, writeOptions);
+    } catch (DBException e) {
+      throw new IOException(e);
+    }
+  }
+
+  /**
+   * Runs the group commit loop until the writer is closed or the thread is interrupted.
+   */
+  private void runGroupCommit() {
+    List<PendingWrite> writes = new ArrayList<>();
+    boolean stopped = false;
+    try {
+      while (!stopped) {
+        PendingWrite write = pendingWrites.take();
+
+        // Collects more writes until either the commit interval passed or there are enough writes
+        long deadline = System.nanoTime() + commitIntervalNanos;
+        while (write != null) {
+          if (write == STOP) {
+            stopped = true;
+            break;
+          }
+          writes.add(write);
+          if (writes.size() >= maxCommitBatches) {
+            break;
+          }
+          long waitNanos = deadline - System.nanoTime();
+          write = waitNanos > 0 ? pendingWrites.poll(waitNanos, TimeUnit.NANOSECONDS) : pendingWrites.poll();
+        }
+
+        commit(writes);
+        writes.clear();
+      }
+      LOG.debug("Group commit thread stopped");
+    } catch (InterruptedException e) {
+      LOG.debug("Group commit thread interrupted");
+      IOException failure = new InterruptedIOException("Group commit thread interrupted");
+      writes.forEach(write -> write.fail(failure));
+    }
+
+    // Fail the writes that were queued concurrently with the stop, and all writes after it
+    closed = true;
+    IOException failure = new IOException("The LevelDB writer is already closed");
+    PendingWrite write = pendingWrites.poll();
+    while (write != null) {
+      write.fail(failure);
+      write = pendingWrites.poll();
+    }
+  }
+
+  /**
+   * Commits the given writes. Writes to the same LevelDB are applied in order, with only the last one being synced.
+   */
+  private void commit(List<PendingWrite> writes) {
+    Map<DB, List<PendingWrite>> writesByDB = new LinkedHashMap<>();
+    for (PendingWrite write : writes) {
+      writesByDB.computeIfAbsent(write.levelDB, db -> new ArrayList<>()).add(write);
+    }
+
+    for (Map.Entry<DB, List<PendingWrite>> entry : writesByDB.entrySet()) {
+      List<PendingWrite> dbWrites = entry.getValue();
+      try {
+        // Flush markers don't have a batch to write
+        List<WriteBatch> batches = new ArrayList<>(dbWrites.size());
+        for (PendingWrite write : dbWrites) {
+          if (write.writeBatch != null) {
+            batches.add(write.writeBatch);
+          }
+        }
+        for (int i = 0; i < batches.size(); i++) {
+          WriteOptions writeOptions = i == batches.size() - 1 ? SYNC_WRITE_OPTIONS : ASYNC_WRITE_OPTIONS;
+          entry.getKey().write(batches.get(i), writeOptions);
+        }
+        dbWrites.forEach(PendingWrite::complete);
+      } catch (Exception e) {
+        // None of the writes are guaranteed to be persisted if the sync failed
+        IOException failure = new IOException("Failed to commit writes to LevelDB", e);
+        dbWrites.forEach(write -> write.fail(failure));
+      }
+    }
+  }
+
+  /**
+   * A write that is waiting to be committed. A write without {@link WriteBatch} is a marker for flushing the writes
+   * to the LevelDB.
+   */
+  private static final class PendingWrite {
+    private final DB levelDB;
+    private final WriteBatch writeBatch;
+    private final CompletableFuture<Void> completion;
+
+    private PendingWrite(@Nullable DB levelDB, @Nullable WriteBatch writeBatch) {
+      this.levelDB = levelDB;
+      this.writeBatch = writeBatch;
+      this.completion = new CompletableFuture<>();
+    }
+
+    void complete() {
+      completion.complete(null);
+    }
+
+    void fail(IOException failure) {
+      completion.completeExceptionally(failure);
+    }
+  }
+}
@@ -37,6 +37,7 @@ import org.iq80.leveldb.impl.Iq80DBFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.util.Deque;
@@ -50,8 +51,9 @@ import java.util.concurrent.TimeUnit;
 
 /**
  * A {@link TableFactory} for creating tables used by the messaging system using the LevelDB implementation.
+ * The {@link #close()} method should be called to release the LevelDB resources when the tables are no longer needed.
  */
-public final class LevelDBTableFactory implements TableFactory {
+public final class LevelDBTableFactory implements TableFactory, Closeable {
 
   private static final Logger LOG = LoggerFactory.getLogger(LevelDBTableFactory.class);
   private static final Iq80DBFactory LEVEL_DB_FACTORY = Iq80DBFactory.factory;
@@ -62,7 +64,10 @@ public final class LevelDBTableFactory implements TableFactory {
   private final String messageTableName;
   private final String payloadTableName;
   private final ConcurrentMap<File, DB> levelDBs;
+  private final LevelDBBatchWriter batchWriter;
+  private final ScheduledExecutorService cleanupExecutor;
 
+  private DB metadataDB;
   private LevelDBMetadataTable metadataTable;
 
   @VisibleForTesting
@@ -74,16 +79,18 @@ public final class LevelDBTableFactory implements TableFactory {
       .cacheSize(cConf.getLong(Constants.CFG_DATA_LEVELDB_CACHESIZE, Constants.DEFAULT_DATA_LEVELDB_CACHESIZE))
       .errorIfExists(false)
       .createIfMissing(true);
-    ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+    this.cleanupExecutor = Executors.newSingleThreadScheduledExecutor(
       Threads.createDaemonThreadFactory("leveldb-tms-data-cleanup"));
-    executor.scheduleAtFixedRate(new DataCleanup(), 0L,
-                                 Long.parseLong(cConf.get(Constants.MessagingSystem.LOCAL_DATA_CLEANUP_FREQUENCY)),
-                                 TimeUnit.SECONDS);
 
     this.metadataTableName = cConf.get(Constants.MessagingSystem.METADATA_TABLE_NAME);
     this.messageTableName = cConf.get(Constants.MessagingSystem.MESSAGE_TABLE_NAME);
     this.payloadTableName = cConf.get(Constants.MessagingSystem.PAYLOAD_TABLE_NAME);
     this.levelDBs = new ConcurrentHashMap<>();
+    this.batchWriter = new LevelDBBatchWriter(cConf);
+    LOG.debug("Messaging LevelDB tables use sync mode {}", batchWriter.getSyncMode());
+
+    long cleanupFrequency = Long.parseLong(cConf.get(Constants.MessagingSystem.LOCAL_DATA_CLEANUP_FREQUENCY));
+    cleanupExecutor.scheduleAtFixedRate(new DataCleanup(), 0L, cleanupFrequency, TimeUnit.SECONDS);
   }
 
   @Override
@@ -93,19 +100,47 @@ public final class LevelDBTableFactory implements TableFactory {
     }
 
     File dbPath = getMetadataDBPath(metadataTableName);
-    metadataTable = new LevelDBMetadataTable(LEVEL_DB_FACTORY.open(dbPath, dbOptions));
+    metadataDB = LEVEL_DB_FACTORY.open(dbPath, dbOptions);
+    metadataTable = new LevelDBMetadataTable(metadataDB);
     LOG.info("Messaging metadata table created at {}", dbPath);
     return metadataTable;
   }
 
   @Override
   public MessageTable createMessageTable(TopicMetadata topicMetadata) throws IOException {
-    return new LevelDBMessageTable(getLevelDB(topicMetadata, messageTableName), topicMetadata);
+    return new LevelDBMessageTable(getLevelDB(topicMetadata, messageTableName), topicMetadata, batchWriter);
   }
 
   @Override
   public PayloadTable createPayloadTable(TopicMetadata topicMetadata) throws IOException {
-    return new LevelDBPayloadTable(getLevelDB(topicMetadata, payloadTableName), topicMetadata);
+    return new LevelDBPayloadTable(getLevelDB(topicMetadata, payloadTableName), topicMetadata, batchWriter);
+  }
+
+  /**
+   * Stops the data cleanup, commits all pending writes and closes all the LevelDB opened by this factory.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    // Let the running cleanup finish instead of interrupting the LevelDB operations
+    cleanupExecutor.shutdown();
+    try {
+      if (!cleanupExecutor.awaitTermination(1, TimeUnit.MINUTES)) {
+        LOG.warn("Timeout in waiting for the messaging LevelDB data cleanup to stop");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    try {
+      batchWriter.close();
+    } finally {
+      for (DB db : levelDBs.values()) {
+        Closeables.closeQuietly(db);
+      }
+      levelDBs.clear();
+      Closeables.closeQuietly(metadataDB);
+      metadataDB = null;
+      metadataTable = null;
+    }
   }
 
   /**
@@ -181,7 +216,7 @@ public final class LevelDBTableFactory implements TableFactory {
               break;
             }
             // We can safely remove and close the levelDB as no one should be accessing them anymore
-            Closeables.closeQuietly(levelDBs.remove(dataDBPath));
+            closeLevelDB(dataDBPath);
             filesToDelete.add(dataDBPath);
 
             // Payload table
@@ -190,7 +225,7 @@ public final class LevelDBTableFactory implements TableFactory {
               break;
             }
             // We can safely remove and close the levelDB as no one should be accessing them anymore
-            Closeables.closeQuietly(levelDBs.remove(dataDBPath));
+            closeLevelDB(dataDBPath);
             filesToDelete.add(dataDBPath);
           }
 
@@ -206,19 +241,30 @@ public final class LevelDBTableFactory implements TableFactory {
           File dataDBPath = getDataDBPath(messageTableName, metadata.getTopicId(), metadata.getGeneration());
           DB levelDB = levelDBs.get(dataDBPath);
           if (levelDB != null && dataDBPath.exists()) {
-            new LevelDBMessageTable(levelDB, metadata).pruneMessages(now);
+            new LevelDBMessageTable(levelDB, metadata, batchWriter).pruneMessages(now);
           }
 
           // Payload table
           dataDBPath = getDataDBPath(payloadTableName, metadata.getTopicId(), metadata.getGeneration());
           levelDB = levelDBs.get(dataDBPath);
           if (levelDB != null && dataDBPath.exists()) {
-            new LevelDBPayloadTable(levelDB, metadata).pruneMessages(now);
+            new LevelDBPayloadTable(levelDB, metadata, batchWriter).pruneMessages(now);
           }
         }
       } catch (IOException ex) {
         LOG.debug("Unable to perform data cleanup in TMS LevelDB tables", ex);
       }
     }
+
+    /**
+     * Removes and closes the LevelDB of the given path, after the writes queued for it are completed.
+     */
+    private void closeLevelDB(File dbPath) throws IOException {
+      DB levelDB = levelDBs.remove(dbPath);
+      if (levelDB != null) {
+        batchWriter.flush(levelDB);
+        Closeables.closeQuietly(levelDB);
+      }
+    }
   }
 }
@@ -30,6 +30,8 @@ import io.cdap.cdap.common.logging.Loggers;
 import io.cdap.cdap.common.service.AbstractRetryableScheduledService;
 import io.cdap.cdap.common.service.RetryStrategy;
 import io.cdap.cdap.common.utils.ImmutablePair;
+import io.cdap.cdap.messaging.TopicMetadata;
+import io.cdap.cdap.messaging.TopicPartitions;
 import io.cdap.cdap.messaging.data.MessageId;
 import io.cdap.cdap.proto.id.TopicId;
 import org.slf4j.Logger;
@@ -37,13 +39,19 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import javax.annotation.Nullable;
 import javax.xml.ws.handler.MessageContext;
 
 /**
  * Abstract base class for implementing message polling logic for reading messages from TMS.
+ * By default it consumes from a single topic. Sub-classes can consume from multiple partitions of a partitioned
+ * topic by overriding {@link #getAssignedTopics()}, in which case partitions are fetched in round robin, each with
+ * its own message id.
  *
  * @param <T> the type that each message will be decoded to.
  */
@@ -56,8 +64,9 @@ public abstract class AbstractMessagingPollingService<T> extends AbstractRetryab
   private final MetricsContext metricsContext;
   private final int fetchSize;
   private final long emptyFetchDelayMillis;
-  private boolean messageIdInitialized;
-  private String messageId;
+  private final Map<TopicId, String> messageIds;
+  private List<TopicId> assignedTopics;
+  private int nextTopicIndex;
 
   protected AbstractMessagingPollingService(TopicId topicId, MetricsContext metricsContext, int fetchSize,
                                             long emptyFetchDelayMillis, RetryStrategy retryStrategy) {
@@ -66,6 +75,7 @@ public abstract class AbstractMessagingPollingService<T> extends AbstractRetryab
     this.metricsContext = metricsContext;
     this.fetchSize = fetchSize;
     this.emptyFetchDelayMillis = emptyFetchDelayMillis;
+    this.messageIds = new HashMap<>();
   }
 
   /**
@@ -75,6 +85,19 @@ public abstract class AbstractMessagingPollingService<T> extends AbstractRetryab
     return topicId;
   }
 
+  /**
+   * Returns the list of topics that this service is fetching from. By default it only contains the topic
+   * returned by {@link #getTopicId()}. Sub-classes can override this method to consume from the partitions of
+   * a partitioned topic as a member of a consumer group, by using
+   * {@link TopicPartitions#getAssignedPartitionTopics(TopicMetadata, int, int)}.
+   * This method is called once before the first fetch.
+   *
+   * @throws Exception if failed to determine the topics
+   */
+  protected List<TopicId> getAssignedTopics() throws Exception {
+    return Collections.singletonList(topicId);
+  }
+
   /**
    * Returns the {@link MessageContext} that this service used for interacting with TMS.
    */
@@ -100,6 +123,24 @@ public abstract class AbstractMessagingPollingService<T> extends AbstractRetryab
   @Nullable
   protected abstract String loadMessageId() throws IOException;
 
+  /**
+   * Loads last persisted message id of the given topic partition. By default it calls {@link #loadMessageId()}
+   * for the topic returned by {@link #getTopicId()}. Sub-classes that override {@link #getAssignedTopics()}
+   * must override this method to keep message ids per partition.
+   *
+   * @param topicId the topic partition to load the message id for
+   * @return the last persisted message id or {@code null} to have first fetch starts from the first available message
+   *         in the topic partition.
+   * @throws IOException if failed to load the message id
+   */
+  @Nullable
+  protected String loadMessageId(TopicId topicId) throws IOException {
+    if (!topicId.equals(this.topicId)) {
+      throw new UnsupportedOperationException("Message id is not available for topic partition " + topicId);
+    }
+    return loadMessageId();
+  }
+
   /**
    * Processes the give list of messages. If {@link Exception} is raised from this method,
    * all messages as provided through the {@code messages} parameter will be replayed in the next call.
@@ -114,6 +155,26 @@ public abstract class AbstractMessagingPollingService<T> extends AbstractRetryab
   @Nullable
   protected abstract String processMessages(Iterator<ImmutablePair<String, T>> messages) throws Exception;
 
+  /**
+   * Processes the give list of messages fetched from the given topic partition. By default it calls
+   * {@link #processMessages(Iterator)} for the topic returned by {@link #getTopicId()}. Sub-classes that override
+   * {@link #getAssignedTopics()} must override this method to keep message ids per partition.
+   *
+   * @param topicId the topic partition that the messages were fetched from
+   * @param messages an {@link Iterator} of {@link ImmutablePair}, with the {@link ImmutablePair#first}
+   *                 as the message id, and the {@link ImmutablePair#second} as the decoded message
+   * @return the message ID for the next fetch from the same partition to start from (exclusively)
+   * @throws Exception if there is error processing messages.
+   * @see #processMessages(Iterator)
+   */
+  @Nullable
+  protected String processMessages(TopicId topicId, Iterator<ImmutablePair<String, T>> messages) throws Exception {
+    if (!topicId.equals(this.topicId)) {
+      throw new UnsupportedOperationException("Processing messages is not supported for topic partition " + topicId);
+    }
+    return processMessages(messages);
+  }
+
   /**
    * Perform post processing after a batch of messages has been processed and before the next batch of
    * messages is fetched.
@@ -153,11 +214,19 @@ public abstract class AbstractMessagingPollingService<T> extends AbstractRetryab
    * Fetching messages from TMS.
    */
   protected List<Message> fetchMessages(@Nullable String messageId) throws TopicNotFoundException, IOException {
+    return fetchMessages(topicId, messageId);
+  }
+
+  /**
+   * Fetching messages from the given topic partition in TMS.
+   */
+  protected List<Message> fetchMessages(TopicId topicId,
+                                        @Nullable String messageId) throws TopicNotFoundException, IOException {
     List<Message> messages = new ArrayList<>();
     LOG.trace("Fetching from topic '{}' with messageId '{}'", topicId, messageId);
     MessageFetcher messageFetcher = getMessagingContext().getMessageFetcher();
-    try (CloseableIterator<Message> iterator = messageFetcher.fetch(getTopicId().getNamespace(),
-                                                                    getTopicId().getTopic(), fetchSize, messageId)) {
+    try (CloseableIterator<Message> iterator = messageFetcher.fetch(topicId.getNamespace(),
+                                                                    topicId.getTopic(), fetchSize, messageId)) {
       while (iterator.hasNext() && state() == State.RUNNING) {
         messages.add(iterator.next());
       }
@@ -171,16 +240,33 @@ public abstract class AbstractMessagingPollingService<T> extends AbstractRetryab
    * @return number of milliseconds to sleep before the next fetch and process should happen.
    */
   private long fetchAndProcessMessages() throws Exception {
-    // Fetch the messageId if hasn't been fetched
-    if (!messageIdInitialized) {
-      messageId = loadMessageId();
-      messageIdInitialized = true;
+    if (assignedTopics == null) {
+      assignedTopics = getAssignedTopics();
+    }
+    if (assignedTopics.isEmpty()) {
+      // There can be more consumers than partitions
+      return emptyFetchDelayMillis;
     }
 
     long startTime = System.currentTimeMillis();
 
-    // Collects batch of messages for processing.
-    List<Message> messages = fetchMessages(messageId);
+    // Fetch from the partitions in round robin, until there are messages from one of them
+    List<Message> messages = Collections.emptyList();
+    TopicId fetchTopic = null;
+    for (int i = 0; i < assignedTopics.size() && messages.isEmpty() && state() == State.RUNNING; i++) {
+      fetchTopic = assignedTopics.get(nextTopicIndex);
+      nextTopicIndex = (nextTopicIndex + 1) % assignedTopics.size();
+
+      // Fetch the messageId if hasn't been fetched
+      if (!messageIds.containsKey(fetchTopic)) {
+        messageIds.put(fetchTopic, loadMessageId(fetchTopic));
+      }
+
+      // Collects batch of messages for processing.
+      messages = fetchTopic.equals(topicId)
+        ? fetchMessages(messageIds.get(fetchTopic))
+        : fetchMessages(fetchTopic, messageIds.get(fetchTopic));
+    }
     metricsContext.gauge("tms.fetch.time.ms", System.currentTimeMillis() - startTime);
     metricsContext.increment("tms.fetch.messages", messages.size());
 
@@ -192,8 +278,10 @@ public abstract class AbstractMessagingPollingService<T> extends AbstractRetryab
     startTime = System.currentTimeMillis();
 
     MessageIterator iterator = new MessageIterator(messages.iterator());
-    String messageId = processMessages(iterator);
-    this.messageId = messageId == null ? this.messageId : messageId;
+    String messageId = processMessages(fetchTopic, iterator);
+    if (messageId != null) {
+      messageIds.put(fetchTopic, messageId);
+    }
 
     long endTime = System.currentTimeMillis();
     metricsContext.gauge("process.duration.ms", endTime - startTime);
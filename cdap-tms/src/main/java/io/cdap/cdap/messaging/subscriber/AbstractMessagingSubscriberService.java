@@ -92,6 +92,43 @@ public abstract class AbstractMessagingSubscriberService<T> extends AbstractMess
    */
   protected abstract void storeMessageId(StructuredTableContext context, String messageId) throws Exception;
 
+  /**
+   * Loads last persisted message id of the given topic partition. This method will be called from a transaction.
+   * By default it calls {@link #loadMessageId(StructuredTableContext)} for the topic returned by
+   * {@link #getTopicId()}. Sub-classes that override {@link #getAssignedTopics()} must override this method.
+   *
+   * @param context the {@link StructuredTableContext} for getting dataset instances.
+   * @param topicId the topic partition to load the message id for
+   * @return the last persisted message id or {@code null} to have first fetch starts from the first available message
+   *         in the topic partition.
+   * @throws Exception if failed to load the message id
+   */
+  @Nullable
+  protected String loadMessageId(StructuredTableContext context, TopicId topicId) throws Exception {
+    if (!topicId.equals(getTopicId())) {
+      throw new UnsupportedOperationException("Message id is not available for topic partition " + topicId);
+    }
+    return loadMessageId(context);
+  }
+
+  /**
+   * Persists the given message id of the given topic partition. This method will be called from the same
+   * transaction as the call to {@link #processMessages(StructuredTableContext, Iterator)}.
+   * By default it calls {@link #storeMessageId(StructuredTableContext, String)} for the topic returned by
+   * {@link #getTopicId()}. Sub-classes that override {@link #getAssignedTopics()} must override this method.
+   *
+   * @param context the {@link StructuredTableContext} for getting dataset instances
+   * @param topicId the topic partition that the messages were fetched from
+   * @param messageId the message id that has been processed up to
+   * @throws Exception if failed to persist the message id
+   */
+  protected void storeMessageId(StructuredTableContext context, TopicId topicId, String messageId) throws Exception {
+    if (!topicId.equals(getTopicId())) {
+      throw new UnsupportedOperationException("Message id cannot be stored for topic partition " + topicId);
+    }
+    storeMessageId(context, messageId);
+  }
+
   /**
    * Whether the message should run in its own transaction because it is expected to be an expensive operation.
    *
@@ -131,9 +168,22 @@ public abstract class AbstractMessagingSubscriberService<T> extends AbstractMess
     return TransactionRunners.run(getTransactionRunner(), (TxCallable<String>) this::loadMessageId);
   }
 
+  @Nullable
+  @Override
+  protected String loadMessageId(TopicId topicId) {
+    return TransactionRunners.run(getTransactionRunner(),
+                                  (TxCallable<String>) context -> loadMessageId(context, topicId));
+  }
+
   @Nullable
   @Override
   protected String processMessages(Iterator<ImmutablePair<String, T>> messages) throws Exception {
+    return processMessages(getTopicId(), messages);
+  }
+
+  @Nullable
+  @Override
+  protected String processMessages(TopicId topicId, Iterator<ImmutablePair<String, T>> messages) throws Exception {
     MessageTrackingIterator iterator;
 
     // Process the notifications and record the message id of where the processing is up to.
@@ -148,7 +198,7 @@ public abstract class AbstractMessagingSubscriberService<T> extends AbstractMess
 
       // Persist the message id of the last message being consumed from the iterator
       if (lastMessageId != null) {
-        storeMessageId(context, lastMessageId);
+        storeMessageId(context, topicId, lastMessageId);
       }
       return trackingIterator;
     }, Exception.class);
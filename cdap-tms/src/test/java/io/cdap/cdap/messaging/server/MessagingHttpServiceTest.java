@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016-2018 Cask Data, Inc.
+ * Copyright © 2016-2019 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -31,10 +31,12 @@ import io.cdap.cdap.common.conf.Constants;
 import io.cdap.cdap.common.guice.ConfigModule;
 import io.cdap.cdap.common.guice.InMemoryDiscoveryModule;
 import io.cdap.cdap.common.metrics.NoOpMetricsCollectionService;
+import io.cdap.cdap.messaging.MessageFetcher;
 import io.cdap.cdap.messaging.MessagingService;
 import io.cdap.cdap.messaging.RollbackDetail;
 import io.cdap.cdap.messaging.StoreRequest;
 import io.cdap.cdap.messaging.TopicMetadata;
+import io.cdap.cdap.messaging.TopicPartitions;
 import io.cdap.cdap.messaging.client.ClientMessagingService;
 import io.cdap.cdap.messaging.client.StoreRequestBuilder;
 import io.cdap.cdap.messaging.data.MessageId;
@@ -56,8 +58,10 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -596,4 +600,116 @@ public class MessagingHttpServiceTest {
                           .map(RawMessage::getPayload)
                           .map(Bytes::toString).collect(Collectors.toList()));
   }
+
+  @Test
+  public void testPartitionedTopic() throws Exception {
+    NamespaceId nsId = new NamespaceId("ns3");
+    TopicId topicId = nsId.topic("testPartitionedTopic");
+    client.createTopic(new TopicMetadata(topicId, TopicMetadata.PARTITIONS_KEY, "2"));
+    Assert.assertEquals(2, client.getTopic(topicId).getPartitions());
+
+    // Partitions are not listed as topics, but other topics with partition like names are
+    TopicId otherTopic = TopicPartitions.getPartitionTopic(topicId, 3);
+    client.createTopic(new TopicMetadata(otherTopic));
+    Assert.assertEquals(new HashSet<>(Arrays.asList(topicId, otherTopic)), new HashSet<>(client.listTopics(nsId)));
+
+    // Partitions cannot be updated or deleted directly
+    try {
+      client.deleteTopic(TopicPartitions.getPartitionTopic(topicId, 1));
+      Assert.fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // Expected
+    }
+
+    // Non-transactional publishes without a key stay on partition 0
+    for (int i = 0; i < 4; i++) {
+      client.publish(StoreRequestBuilder.of(topicId).addPayload("m" + i).build());
+    }
+    Assert.assertEquals(Arrays.asList("m0", "m1", "m2", "m3"), fetchPayloads(client.prepareFetch(topicId)));
+    Assert.assertTrue(fetchPayloads(client.prepareFetch(topicId).setPartition(1)).isEmpty());
+
+    // Publishes with a key go to the partition of the key, and are ordered within the partition
+    Map<Integer, List<String>> expected = new HashMap<>();
+    expected.put(0, new ArrayList<>(Arrays.asList("m0", "m1", "m2", "m3")));
+    expected.put(1, new ArrayList<>());
+    for (int i = 0; i < 20; i++) {
+      byte[] key = Bytes.toBytes("key" + (i % 5));
+      client.publish(StoreRequestBuilder.of(topicId).setPartitionKey(key).addPayload("k" + i).build());
+      expected.get(TopicPartitions.getPartition(key, 2)).add("k" + i);
+    }
+
+    // Every message is read back by fetching from all partitions
+    Set<String> received = new HashSet<>();
+    for (int partition = 0; partition < 2; partition++) {
+      List<String> payloads = fetchPayloads(client.prepareFetch(topicId).setPartition(partition));
+      Assert.assertEquals(expected.get(partition), payloads);
+      received.addAll(payloads);
+    }
+    Assert.assertEquals(24, received.size());
+
+    // Members of a consumer group together read every message, each from its own partitions
+    TopicMetadata metadata = client.getTopic(topicId);
+    Set<String> groupReceived = new HashSet<>();
+    for (int instanceId = 0; instanceId < 3; instanceId++) {
+      List<TopicId> assigned = TopicPartitions.getAssignedPartitionTopics(metadata, instanceId, 3);
+      Assert.assertEquals(instanceId < 2 ? 1 : 0, assigned.size());
+      for (TopicId partitionTopic : assigned) {
+        for (String payload : fetchPayloads(client.prepareFetch(partitionTopic))) {
+          Assert.assertTrue(groupReceived.add(payload));
+        }
+      }
+    }
+    Assert.assertEquals(received, groupReceived);
+
+    // Fetching from a partition that doesn't exist fails
+    try {
+      client.prepareFetch(topicId).setPartition(2).fetch();
+      Assert.fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // Expected
+    }
+
+    // Increase the number of partitions
+    client.updateTopic(new TopicMetadata(topicId, TopicMetadata.PARTITIONS_KEY, "3"));
+    Assert.assertEquals(3, client.getTopic(topicId).getPartitions());
+    client.getTopic(TopicPartitions.getPartitionTopic(topicId, 2));
+
+    // Cannot take over an existing topic as a partition
+    try {
+      client.updateTopic(new TopicMetadata(topicId, TopicMetadata.PARTITIONS_KEY, "4"));
+      Assert.fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // Expected
+    }
+
+    // Reducing the number of partitions is not allowed
+    try {
+      client.updateTopic(new TopicMetadata(topicId, TopicMetadata.PARTITIONS_KEY, "1"));
+      Assert.fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // Expected
+    }
+
+    // Deleting the topic deletes all partitions
+    client.deleteTopic(topicId);
+    for (int partition = 1; partition < 3; partition++) {
+      try {
+        client.getTopic(TopicPartitions.getPartitionTopic(topicId, partition));
+        Assert.fail("Expected TopicNotFoundException");
+      } catch (TopicNotFoundException e) {
+        // Expected
+      }
+    }
+    // Topics that are not partitions are not deleted
+    client.getTopic(otherTopic);
+    client.deleteTopic(otherTopic);
+  }
+
+  private List<String> fetchPayloads(MessageFetcher fetcher) throws Exception {
+    List<String> payloads = new ArrayList<>();
+    try (CloseableIterator<RawMessage> iterator = fetcher.fetch()) {
+      iterator.forEachRemaining(message -> payloads.add(Bytes.toString(message.getPayload())));
+    }
+    return payloads;
+  }
 }
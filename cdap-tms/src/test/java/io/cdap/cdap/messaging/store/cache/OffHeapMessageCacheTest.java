@@ -0,0 +1,245 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.messaging.store.cache;
+
+import io.cdap.cdap.api.common.Bytes;
+import io.cdap.cdap.api.metrics.MetricsContext;
+import io.cdap.cdap.api.metrics.NoopMetricsContext;
+import io.cdap.cdap.messaging.cache.MessageCache;
+import io.cdap.cdap.messaging.store.MessageFilter;
+import io.cdap.cdap.messaging.store.MessageTable;
+import io.cdap.cdap.proto.id.NamespaceId;
+import io.cdap.cdap.proto.id.TopicId;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+/**
+ * Unit test for {@link OffHeapMessageCache}.
+ */
+public class OffHeapMessageCacheTest {
+
+  private static final MetricsContext NOOP_METRICS = new NoopMetricsContext();
+  private static final TopicId TOPIC = NamespaceId.SYSTEM.topic("offheap");
+
+  // Each entry created by the entry method takes 20 bytes, hence a slab of 60 bytes holds 3 entries.
+  private static final int SLAB_SIZE = 60;
+
+  @Test
+  public void testBasic() {
+    OffHeapMessageCache cache = new OffHeapMessageCache(TOPIC, new MessageCache.Limits(100, 140, 180),
+                                                        SLAB_SIZE, NOOP_METRICS);
+    MessageFilter<MessageTable.Entry> filter = MessageFilter.alwaysAccept();
+
+    // Scan an empty cache
+    try (MessageCache.Scanner<MessageTable.Entry> scanner = cache.scan(lookup(0), true, 10, filter)) {
+      Assert.assertNull(scanner.getFirstInCache());
+      Assert.assertFalse(scanner.hasNext());
+    }
+
+    cache.addAll(entries(1, 6));
+    Assert.assertEquals(5, cache.size());
+    Assert.assertEquals(100, cache.getWeight());
+
+    try (MessageCache.Scanner<MessageTable.Entry> scanner = cache.scan(lookup(0), true, 10, filter)) {
+      Assert.assertEquals(1, scanner.getFirstInCache().getPublishTimestamp());
+      List<MessageTable.Entry> entries = new ArrayList<>();
+      scanner.forEachRemaining(entries::add);
+      Assert.assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L), timestamps(entries));
+      for (MessageTable.Entry entry : entries) {
+        Assert.assertEquals(1, entry.getGeneration());
+        Assert.assertEquals(TOPIC, entry.getTopicId());
+        Assert.assertArrayEquals(payload(entry.getPublishTimestamp()), entry.getPayload());
+      }
+    }
+
+    // Inclusive and exclusive start, with limit
+    Assert.assertEquals(Arrays.asList(3L, 4L), scan(cache, 3, true, 2, filter));
+    Assert.assertEquals(Arrays.asList(4L, 5L), scan(cache, 3, false, 10, filter));
+    Assert.assertEquals(Collections.emptyList(), scan(cache, 5, false, 10, filter));
+
+    // Hold on the entry with timestamp 4
+    MessageFilter<MessageTable.Entry> holdFilter = new MessageFilter<MessageTable.Entry>() {
+      @Override
+      public Result apply(MessageTable.Entry entry) {
+        return entry.getPublishTimestamp() == 4 ? Result.HOLD : Result.ACCEPT;
+      }
+    };
+    Assert.assertEquals(Arrays.asList(1L, 2L, 3L), scan(cache, 0, true, 10, holdFilter));
+
+    cache.clear();
+    Assert.assertEquals(0, cache.size());
+    Assert.assertEquals(0, cache.getWeight());
+    Assert.assertEquals(Collections.emptyList(), scan(cache, 0, true, 10, filter));
+  }
+
+  @Test
+  public void testRingEviction() {
+    OffHeapMessageCache cache = new OffHeapMessageCache(TOPIC, new MessageCache.Limits(100, 140, 180),
+                                                        SLAB_SIZE, NOOP_METRICS);
+    MessageFilter<MessageTable.Entry> filter = MessageFilter.alwaysAccept();
+
+    // Fill up all three slabs, which goes over the reduce trigger
+    cache.addAll(entries(0, 9));
+    Assert.assertEquals(180, cache.getWeight());
+
+    // First scan gives all entries, since reduction only performed at scanner close
+    Assert.assertEquals(LongStream.range(0, 9).boxed().collect(Collectors.toList()),
+                        scan(cache, 0, true, 20, filter));
+
+    // Reduced to the min retain
+    Assert.assertEquals(Arrays.asList(4L, 5L, 6L, 7L, 8L), scan(cache, 0, true, 20, filter));
+    Assert.assertEquals(100, cache.getWeight());
+
+    // Add more entries, which wrap around the ring and hit the hard limit on adding entry 13
+    cache.addAll(entries(9, 14));
+    Assert.assertEquals(120, cache.getWeight());
+    Assert.assertEquals(Arrays.asList(8L, 9L, 10L, 11L, 12L, 13L), scan(cache, 0, true, 20, filter));
+  }
+
+  @Test
+  public void testLargeEntry() {
+    OffHeapMessageCache cache = new OffHeapMessageCache(TOPIC, new MessageCache.Limits(100, 140, 180),
+                                                        SLAB_SIZE, NOOP_METRICS);
+    MessageFilter<MessageTable.Entry> filter = MessageFilter.alwaysAccept();
+
+    cache.addAll(entries(1, 4));
+
+    // An entry that doesn't fit in a slab resets the cache
+    List<MessageTable.Entry> entries = new ArrayList<>();
+    entries.add(new CachingMessageTable.CacheMessageTableEntry(TOPIC, 1, false, 0L, new byte[SLAB_SIZE],
+                                                               4L, (short) 0, false));
+    entries.add(entry(5));
+    cache.addAll(entries.iterator());
+
+    try (MessageCache.Scanner<MessageTable.Entry> scanner = cache.scan(lookup(0), true, 10, filter)) {
+      Assert.assertEquals(5L, scanner.getFirstInCache().getPublishTimestamp());
+    }
+    Assert.assertEquals(Collections.singletonList(5L), scan(cache, 0, true, 10, filter));
+  }
+
+  @Test
+  public void testOrdering() {
+    OffHeapMessageCache cache = new OffHeapMessageCache(TOPIC, new MessageCache.Limits(100, 140, 180),
+                                                        SLAB_SIZE, NOOP_METRICS);
+    cache.addAll(entries(5, 8));
+
+    try {
+      cache.addAll(entries(3, 4));
+      Assert.fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // Expected
+    }
+
+    // The cache is cleared on error
+    Assert.assertEquals(0, cache.size());
+    cache.addAll(entries(8, 10));
+    Assert.assertEquals(Arrays.asList(8L, 9L), scan(cache, 0, true, 10, MessageFilter.alwaysAccept()));
+  }
+
+  @Test
+  public void testRollback() {
+    OffHeapMessageCache cache = new OffHeapMessageCache(TOPIC, new MessageCache.Limits(100, 140, 180),
+                                                        SLAB_SIZE, NOOP_METRICS);
+    List<MessageTable.Entry> entries = new ArrayList<>();
+    for (long i = 0; i < 5; i++) {
+      entries.add(new CachingMessageTable.CacheMessageTableEntry(TOPIC, 1, true, 100L + i, payload(i),
+                                                                 i, (short) 0, false));
+    }
+    cache.addAll(entries.iterator());
+
+    cache.updateEntries(lookup(1), lookup(3), new MessageCache.EntryUpdater<MessageTable.Entry>() {
+      @Override
+      public void updateEntry(MessageTable.Entry entry) {
+        ((CachingMessageTable.CacheMessageTableEntry) entry).rollback();
+      }
+    });
+
+    try (MessageCache.Scanner<MessageTable.Entry> scanner = cache.scan(lookup(0), true, 10,
+                                                                       MessageFilter.alwaysAccept())) {
+      for (long i = 0; i < 5; i++) {
+        CachingMessageTable.CacheMessageTableEntry entry = (CachingMessageTable.CacheMessageTableEntry) scanner.next();
+        Assert.assertEquals(i, entry.getPublishTimestamp());
+        Assert.assertTrue(entry.isTransactional());
+        Assert.assertEquals(100L + i, entry.getTransactionWritePointer());
+        Assert.assertEquals(i >= 1 && i <= 3, entry.isRollback());
+      }
+      Assert.assertFalse(scanner.hasNext());
+    }
+  }
+
+  @Test
+  public void testManyEntries() {
+    // Use a large cache so that the index has to grow
+    OffHeapMessageCache cache = new OffHeapMessageCache(TOPIC, new MessageCache.Limits(100000, 140000, 200000),
+                                                        SLAB_SIZE * 100, NOOP_METRICS);
+    cache.addAll(entries(0, 5000));
+    Assert.assertEquals(5000, cache.size());
+    Assert.assertEquals(LongStream.range(3000, 3100).boxed().collect(Collectors.toList()),
+                        scan(cache, 3000, true, 100, MessageFilter.alwaysAccept()));
+
+    // Resize the cache clears it since the slab layout is changed
+    cache.resize(new MessageCache.Limits(50, 70, 100));
+    Assert.assertEquals(0, cache.size());
+    cache.addAll(entries(5000, 5010));
+    Assert.assertEquals(Arrays.asList(5006L, 5007L, 5008L, 5009L),
+                        scan(cache, 0, true, 100, MessageFilter.alwaysAccept()));
+  }
+
+  private List<Long> scan(OffHeapMessageCache cache, long startTimestamp, boolean includeStart, int limit,
+                          MessageFilter<MessageTable.Entry> filter) {
+    List<MessageTable.Entry> entries = new ArrayList<>();
+    try (MessageCache.Scanner<MessageTable.Entry> scanner = cache.scan(lookup(startTimestamp), includeStart,
+                                                                       limit, filter)) {
+      scanner.forEachRemaining(entries::add);
+    }
+    return timestamps(entries);
+  }
+
+  private List<Long> timestamps(List<MessageTable.Entry> entries) {
+    return entries.stream().map(MessageTable.Entry::getPublishTimestamp).collect(Collectors.toList());
+  }
+
+  private Iterator<MessageTable.Entry> entries(long start, long end) {
+    List<MessageTable.Entry> entries = new ArrayList<>();
+    for (long i = start; i < end; i++) {
+      entries.add(entry(i));
+    }
+    return entries.iterator();
+  }
+
+  private MessageTable.Entry entry(long timestamp) {
+    return new CachingMessageTable.CacheMessageTableEntry(TOPIC, 1, false, 0L, payload(timestamp),
+                                                          timestamp, (short) 0, false);
+  }
+
+  private MessageTable.Entry lookup(long timestamp) {
+    return new CachingMessageTable.CacheMessageTableEntry(TOPIC, 1, timestamp, (short) 0);
+  }
+
+  private byte[] payload(long timestamp) {
+    // 7 bytes payload, which makes 20 bytes for each entry in the cache
+    return Bytes.toBytes(String.format("p%06d", timestamp));
+  }
+}
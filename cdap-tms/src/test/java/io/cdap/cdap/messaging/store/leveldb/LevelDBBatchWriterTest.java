@@ -0,0 +1,152 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.messaging.store.leveldb;
+
+import io.cdap.cdap.api.common.Bytes;
+import org.iq80.leveldb.DB;
+import org.iq80.leveldb.Options;
+import org.iq80.leveldb.WriteBatch;
+import org.iq80.leveldb.impl.Iq80DBFactory;
+import org.junit.Assert;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for {@link LevelDBBatchWriter}. It also logs the write throughput of each sync mode,
+ * with concurrent writers to multiple LevelDB, similar to publishing to multiple topics.
+ */
+public class LevelDBBatchWriterTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(LevelDBBatchWriterTest.class);
+
+  private static final int DB_COUNT = 4;
+  private static final int WRITERS_PER_DB = 4;
+  private static final int BATCHES_PER_WRITER = 50;
+
+  @ClassRule
+  public static final TemporaryFolder TEMP_FOLDER = new TemporaryFolder();
+
+  @Test
+  public void testSync() throws Exception {
+    testWrites(new LevelDBBatchWriter(LevelDBBatchWriter.SyncMode.SYNC, 0, 0));
+  }
+
+  @Test
+  public void testGroupCommit() throws Exception {
+    testWrites(new LevelDBBatchWriter(LevelDBBatchWriter.SyncMode.GROUP, 2, 256));
+  }
+
+  @Test
+  public void testGroupCommitNoInterval() throws Exception {
+    // Only group the writes that are queued while the previous commit is in progress
+    testWrites(new LevelDBBatchWriter(LevelDBBatchWriter.SyncMode.GROUP, 0, 1));
+  }
+
+  @Test
+  public void testAsync() throws Exception {
+    testWrites(new LevelDBBatchWriter(LevelDBBatchWriter.SyncMode.ASYNC, 0, 0));
+  }
+
+  @Test
+  public void testGroupCommitFlushAndClose() throws Exception {
+    LevelDBBatchWriter batchWriter = new LevelDBBatchWriter(LevelDBBatchWriter.SyncMode.GROUP, 2, 256);
+    DB db = Iq80DBFactory.factory.open(TEMP_FOLDER.newFolder(), new Options().createIfMissing(true));
+    try {
+      try (WriteBatch writeBatch = db.createWriteBatch()) {
+        writeBatch.put(Bytes.toBytes("key"), Bytes.toBytes("value"));
+        batchWriter.write(db, writeBatch);
+      }
+      batchWriter.flush(db);
+      batchWriter.close();
+      Assert.assertArrayEquals(Bytes.toBytes("value"), db.get(Bytes.toBytes("key")));
+
+      // Writes after close must fail instead of waiting forever
+      try (WriteBatch writeBatch = db.createWriteBatch()) {
+        writeBatch.put(Bytes.toBytes("key2"), Bytes.toBytes("value2"));
+        batchWriter.write(db, writeBatch);
+        Assert.fail("Expected IOException");
+      } catch (IOException e) {
+        // Expected
+      }
+      Assert.assertNull(db.get(Bytes.toBytes("key2")));
+    } finally {
+      batchWriter.close();
+      db.close();
+    }
+  }
+
+  private void testWrites(LevelDBBatchWriter batchWriter) throws Exception {
+    Options options = new Options().createIfMissing(true);
+    List<DB> dbs = new ArrayList<>();
+    for (int i = 0; i < DB_COUNT; i++) {
+      dbs.add(Iq80DBFactory.factory.open(TEMP_FOLDER.newFolder(), options));
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(DB_COUNT * WRITERS_PER_DB);
+    try {
+      long startTime = System.nanoTime();
+      List<Future<?>> futures = new ArrayList<>();
+      for (DB db : dbs) {
+        for (int writer = 0; writer < WRITERS_PER_DB; writer++) {
+          int writerId = writer;
+          futures.add(executor.submit(() -> {
+            for (int i = 0; i < BATCHES_PER_WRITER; i++) {
+              try (WriteBatch writeBatch = db.createWriteBatch()) {
+                writeBatch.put(Bytes.toBytes(writerId + ":" + i), Bytes.toBytes(i));
+                batchWriter.write(db, writeBatch);
+              }
+            }
+            return null;
+          }));
+        }
+      }
+      for (Future<?> future : futures) {
+        future.get(60, TimeUnit.SECONDS);
+      }
+      long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+      int totalBatches = DB_COUNT * WRITERS_PER_DB * BATCHES_PER_WRITER;
+      LOG.info("Sync mode {}: {} batches written in {} ms ({} batches/sec)", batchWriter.getSyncMode(),
+               totalBatches, elapsedMillis, totalBatches * 1000L / Math.max(1L, elapsedMillis));
+
+      // All writes must be visible once acknowledged
+      for (DB db : dbs) {
+        for (int writer = 0; writer < WRITERS_PER_DB; writer++) {
+          for (int i = 0; i < BATCHES_PER_WRITER; i++) {
+            Assert.assertArrayEquals(Bytes.toBytes(i), db.get(Bytes.toBytes(writer + ":" + i)));
+          }
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+      batchWriter.close();
+      for (DB db : dbs) {
+        db.close();
+      }
+    }
+  }
+}
@@ -346,6 +346,9 @@ public class TestBase {
     messagingContext = new MultiThreadMessagingContext(messagingService);
     firstInit = false;
     previewManager = injector.getInstance(PreviewManager.class);
+    if (previewManager instanceof Service) {
+      ((Service) previewManager).startAndWait();
+    }
     provisioningService = injector.getInstance(ProvisioningService.class);
     provisioningService.startAndWait();
     metadataSubscriberService.startAndWait();
@@ -405,6 +408,8 @@ public class TestBase {
     cConf.setBoolean(Constants.Explore.EXPLORE_ENABLED, true);
     cConf.setBoolean(Constants.Explore.START_ON_DEMAND, false);
     cConf.set(Constants.AppFabric.SYSTEM_ARTIFACTS_DIR, "");
+    // Don't start preview environments in the background for tests that don't use preview
+    cConf.setInt(Constants.Preview.RUNNER_POOL_SIZE, 0);
 
     // Setup test case specific configurations.
     // The system properties are usually setup by TestConfiguration class using @ClassRule
@@ -470,6 +475,9 @@ public class TestBase {
       return;
     }
 
+    if (previewManager instanceof Service) {
+      ((Service) previewManager).stopAndWait();
+    }
     if (cConf.getBoolean(Constants.Security.Authorization.ENABLED)) {
       InstanceId instance = new InstanceId(cConf.get(Constants.INSTANCE_NAME));
       Principal principal = new Principal(System.getProperty("user.name"), Principal.PrincipalType.USER);
@@ -15,6 +15,8 @@
  */
 package io.cdap.cdap.api.metrics;
 
+import java.util.Objects;
+
 /**
  * Metrics message id
  */
@@ -30,4 +32,22 @@ public class MetricsMessageId {
     this.writeTimestamp = writeTimestamp;
     this.payloadSequenceId = payloadSequenceId;
   }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    MetricsMessageId that = (MetricsMessageId) o;
+    return publishTimestamp == that.publishTimestamp && sequenceId == that.sequenceId
+      && writeTimestamp == that.writeTimestamp && payloadSequenceId == that.payloadSequenceId;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(publishTimestamp, sequenceId, writeTimestamp, payloadSequenceId);
+  }
 }
@@ -33,4 +33,24 @@ public class MetricsProcessorStatus {
     this.lastProcessedTimestamp = lastProcessedTimestamp;
     this.messagesProcessed = messagesProcessed;
   }
+
+  public MetricsMessageId getMessageId() {
+    return messageId;
+  }
+
+  public long getOldestMetricsTimestamp() {
+    return oldestMetricsTimestamp;
+  }
+
+  public long getLatestMetricsTimestamp() {
+    return latestMetricsTimestamp;
+  }
+
+  public long getMessagesProcessed() {
+    return messagesProcessed;
+  }
+
+  public long getLastProcessedTimestamp() {
+    return lastProcessedTimestamp;
+  }
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2017 Cask Data, Inc.
+ * Copyright © 2017-2019 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -22,14 +22,18 @@ import io.cdap.cdap.common.io.ByteBuffers;
 import io.cdap.cdap.common.io.Syncable;
 import io.cdap.cdap.logging.serialize.LoggingEvent;
 import io.cdap.cdap.logging.serialize.LoggingEventSerializer;
+import io.cdap.cdap.logging.write.LogFileIndex;
 import org.apache.avro.Schema;
 import org.apache.avro.file.DataFileWriter;
 import org.apache.avro.generic.GenericDatumWriter;
 import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
 import org.apache.twill.filesystem.Location;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.Flushable;
 import java.io.IOException;
@@ -41,27 +45,42 @@ import java.nio.ByteBuffer;
  *
  * Since there is no way to check the state of the underlying file on an exception,
  * all methods of this class assume that the file state is bad on any exception and close the file.
+ *
+ * While writing, the events are grouped into blocks of the sync interval size, each starting at a sync position of
+ * the file, and a {@link LogFileIndex} of the blocks is written next to the log file when it is closed.
  */
 
 class LogFileOutputStream implements Closeable, Flushable, Syncable {
   private static final Logger LOG = LoggerFactory.getLogger(LogFileOutputStream.class);
 
   private final Location location;
+  private final String filePermissions;
+  private final int syncIntervalBytes;
   private final long createTime;
   private final Closeable closeable;
   private final LoggingEventSerializer serializer;
+  private final LogFileIndex.Builder indexBuilder;
+  private final GenericDatumWriter<GenericRecord> datumWriter;
+  // Buffer for the encoded event being appended, reused across events
+  private final ExposedByteArrayOutputStream encodedBuffer;
 
   private OutputStream outputStream;
   private DataFileWriter<GenericRecord> dataFileWriter;
   private long fileSize;
+  private BinaryEncoder encoder;
 
   LogFileOutputStream(Location location, String filePermissions,
                       int syncIntervalBytes, long createTime, Closeable closeable) throws IOException {
     this.location = location;
+    this.filePermissions = filePermissions;
+    this.syncIntervalBytes = syncIntervalBytes;
     this.closeable = closeable;
     this.serializer = new LoggingEventSerializer();
+    this.indexBuilder = new LogFileIndex.Builder();
 
     Schema schema = serializer.getAvroSchema();
+    this.datumWriter = new GenericDatumWriter<>(schema);
+    this.encodedBuffer = new ExposedByteArrayOutputStream();
     try {
       this.outputStream =
         filePermissions.isEmpty() ? location.getOutputStream() : location.getOutputStream(filePermissions);
@@ -82,18 +101,33 @@ class LogFileOutputStream implements Closeable, Flushable, Syncable {
   }
 
   void append(ILoggingEvent event) throws IOException {
+    // Events are always appended in encoded form, so that the size of the current block is known.
     // If the event is already a LoggingEvent, we don't need to re-encode.
+    encodedBuffer.reset();
     if (event instanceof LoggingEvent) {
       ByteBuffer encoded = ((LoggingEvent) event).getEncoded();
       if (encoded != null) {
         // TODO: CDAP-8735 Remove the copying after upgraded to Avro 1.7.4+
-        dataFileWriter.appendEncoded(ByteBuffers.copy(encoded));
+        ByteBuffers.writeToStream(encoded, encodedBuffer);
       } else {
-        dataFileWriter.append(((LoggingEvent) event).getRecord());
+        encode(((LoggingEvent) event).getRecord());
       }
-      return;
+    } else {
+      encode(serializer.toGenericRecord(event));
+    }
+    dataFileWriter.appendEncoded(encodedBuffer.toByteBuffer());
+
+    // The current block starts at the last sync position. The Avro writer syncs by itself when the same number of
+    // bytes reaches the sync interval, hence the sync below doesn't add extra sync markers to the file.
+    indexBuilder.add(fileSize, event, encodedBuffer.size());
+    if (indexBuilder.getBlockBytes() >= syncIntervalBytes) {
+      flush();
     }
-    dataFileWriter.append(serializer.toGenericRecord(event));
+  }
+
+  private void encode(GenericRecord record) throws IOException {
+    encoder = EncoderFactory.get().directBinaryEncoder(encodedBuffer, encoder);
+    datumWriter.write(record, encoder);
   }
 
   /**
@@ -115,6 +149,7 @@ class LogFileOutputStream implements Closeable, Flushable, Syncable {
   @Override
   public void flush() throws IOException {
     fileSize = dataFileWriter.sync();
+    indexBuilder.endBlock();
   }
 
   @Override
@@ -132,8 +167,32 @@ class LogFileOutputStream implements Closeable, Flushable, Syncable {
     LOG.trace("Closing file {}", location);
     try {
       dataFileWriter.close();
+      indexBuilder.endBlock();
+      writeIndex();
     } finally {
       closeable.close();
     }
   }
+
+  private void writeIndex() {
+    try {
+      indexBuilder.build().write(location, filePermissions);
+    } catch (IOException e) {
+      // The index is optional for reading the log file
+      LOG.warn("Failed to write index for log file {}", location, e);
+    }
+  }
+
+  /**
+   * A {@link ByteArrayOutputStream} that exposes the written raw buffer as ByteBuffer.
+   */
+  private static final class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+
+    /**
+     * Returns a {@link ByteBuffer} that represents the valid content in the buffer.
+     */
+    ByteBuffer toByteBuffer() {
+      return ByteBuffer.wrap(buf, 0, count);
+    }
+  }
 }
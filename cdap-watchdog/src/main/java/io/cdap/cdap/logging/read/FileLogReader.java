@@ -21,23 +21,36 @@ import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
 import com.google.inject.Inject;
 import io.cdap.cdap.api.dataset.lib.AbstractCloseableIterator;
 import io.cdap.cdap.api.dataset.lib.CloseableIterator;
+import io.cdap.cdap.common.conf.CConfiguration;
+import io.cdap.cdap.common.conf.Constants;
 import io.cdap.cdap.common.logging.LoggingContext;
 import io.cdap.cdap.logging.context.LoggingContextHelper;
 import io.cdap.cdap.logging.filter.AndFilter;
 import io.cdap.cdap.logging.filter.Filter;
 import io.cdap.cdap.logging.meta.FileMetaDataReader;
 import io.cdap.cdap.logging.write.LogLocation;
+import org.apache.twill.common.Threads;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Reads log events from a file.
@@ -46,10 +59,19 @@ public class FileLogReader implements LogReader {
   private static final Logger LOG = LoggerFactory.getLogger(FileLogReader.class);
 
   private final FileMetaDataReader fileMetadataReader;
+  private final int parallelism;
+  private final ExecutorService executor;
 
   @Inject
-  public FileLogReader(FileMetaDataReader fileMetadataReader) {
+  public FileLogReader(CConfiguration cConf, FileMetaDataReader fileMetadataReader) {
     this.fileMetadataReader = fileMetadataReader;
+    this.parallelism = Math.max(1, cConf.getInt(Constants.LogQuery.FILE_READ_PARALLELISM));
+    // Threads are only kept while there are files to read
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(parallelism, parallelism, 60L, TimeUnit.SECONDS,
+                                                         new LinkedBlockingQueue<>(),
+                                                         Threads.createDaemonThreadFactory("log-file-reader-%d"));
+    executor.allowCoreThreadTimeOut(true);
+    this.executor = executor;
   }
 
   @Override
@@ -75,12 +97,34 @@ public class FileLogReader implements LogReader {
         return;
       }
 
-      for (LogLocation file : sortedFilesInRange) {
-        LOG.trace("Reading file {}", file);
-        file.readLog(logFilter, fromTimeMs, Long.MAX_VALUE, maxEvents - callback.getCount(), callback);
-        if (callback.getCount() >= maxEvents) {
-          break;
+      // Files are read ahead in parallel, each up to maxEvents. The events of a file are only returned once
+      // all the events of the previous files are, so that they are in order.
+      Deque<Future<List<LogEvent>>> pending = new ArrayDeque<>();
+      int submitted = 0;
+      try {
+        for (LogLocation file : sortedFilesInRange) {
+          while (pending.size() < parallelism && submitted < sortedFilesInRange.size()) {
+            LogLocation nextFile = sortedFilesInRange.get(submitted++);
+            pending.add(executor.submit(() -> readLog(nextFile, logFilter, fromTimeMs, maxEvents)));
+          }
+          List<LogEvent> events = Futures.getUnchecked(pending.poll());
+          int remaining = maxEvents - callback.getCount();
+          if (events.size() > remaining && remaining < maxEvents) {
+            // The file has more events than needed. Read it again with the remaining count to end at the
+            // same event as a sequential read, which keeps the events with the same timestamp together.
+            LOG.trace("Reading file {} with maxEvents={}", file, remaining);
+            file.readLog(logFilter, fromTimeMs, Long.MAX_VALUE, remaining, callback);
+            break;
+          }
+          for (LogEvent event : events) {
+            callback.handle(event);
+          }
+          if (callback.getCount() >= maxEvents) {
+            break;
+          }
         }
+      } finally {
+        cancel(pending);
       }
     } catch (Throwable e) {
       LOG.error("Got exception: ", e);
@@ -107,21 +151,26 @@ public class FileLogReader implements LogReader {
       long fromTimeMs = readRange.getToMillis() - 1;
 
       LOG.trace("Using fromTimeMs={}, readRange={}", fromTimeMs, readRange);
+      // Files are read ahead in parallel from the latest one, each up to maxEvents. Only the events needed to
+      // reach maxEvents are kept from a file, which are the last ones in the file.
+      List<LogLocation> files = Lists.reverse(sortedFilesInRange);
       List<Collection<LogEvent>> logSegments = Lists.newLinkedList();
+      Deque<Future<Collection<LogEvent>>> pending = new ArrayDeque<>();
+      int submitted = 0;
       int count = 0;
-      for (LogLocation file : Lists.reverse(sortedFilesInRange)) {
-        try {
-          LOG.trace("Reading file {}", file);
-
-          Collection<LogEvent> events = file.readLogPrev(logFilter, fromTimeMs, maxEvents - count);
-          logSegments.add(events);
-          count += events.size();
-          if (count >= maxEvents) {
-            break;
+      try {
+        while (count < maxEvents && (submitted < files.size() || !pending.isEmpty())) {
+          while (pending.size() < parallelism && submitted < files.size()) {
+            LogLocation file = files.get(submitted++);
+            pending.add(executor.submit(() -> readLogPrev(file, logFilter, fromTimeMs, maxEvents)));
           }
-        } catch (IOException e) {
-          LOG.warn("Got exception reading log file {}", file, e);
+          Collection<LogEvent> events = Futures.getUnchecked(pending.poll());
+          int skip = Math.max(0, events.size() - (maxEvents - count));
+          logSegments.add(skip == 0 ? events : Lists.newArrayList(Iterables.skip(events, skip)));
+          count += events.size() - skip;
         }
+      } finally {
+        cancel(pending);
       }
 
       for (LogEvent event : Iterables.concat(Lists.reverse(logSegments))) {
@@ -201,6 +250,40 @@ public class FileLogReader implements LogReader {
     }
   }
 
+  /**
+   * Reads the log events from a file, starting from fromTimeMs, up to maxEvents.
+   */
+  private static List<LogEvent> readLog(LogLocation file, Filter logFilter, long fromTimeMs, int maxEvents) {
+    LOG.trace("Reading file {}", file);
+    List<LogEvent> events = new ArrayList<>();
+    try (CloseableIterator<LogEvent> iterator = file.readLog(logFilter, fromTimeMs, Long.MAX_VALUE, maxEvents)) {
+      iterator.forEachRemaining(events::add);
+    }
+    return events;
+  }
+
+  /**
+   * Reads the last maxEvents log events from a file that are not after fromTimeMs.
+   */
+  private static Collection<LogEvent> readLogPrev(LogLocation file, Filter logFilter, long fromTimeMs, int maxEvents) {
+    try {
+      LOG.trace("Reading file {}", file);
+      return file.readLogPrev(logFilter, fromTimeMs, maxEvents);
+    } catch (IOException e) {
+      LOG.warn("Got exception reading log file {}", file, e);
+      return Collections.emptyList();
+    }
+  }
+
+  /**
+   * Cancels the reads of the files that are not needed anymore.
+   */
+  private static void cancel(Collection<? extends Future<?>> futures) {
+    for (Future<?> future : futures) {
+      future.cancel(false);
+    }
+  }
+
   /**
    * See {@link com.google.common.collect.Iterators#concat(Iterator)}. The difference is that the input types and return
    * type are CloseableIterator, which closes the inputs that it has opened.
@@ -19,8 +19,14 @@ package io.cdap.cdap.logging.serialize;
 import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
 import io.cdap.cdap.api.common.Bytes;
 import io.cdap.cdap.logging.LoggingUtil;
+import io.cdap.cdap.logging.filter.AndFilter;
+import io.cdap.cdap.logging.filter.Filter;
+import io.cdap.cdap.logging.filter.LogLevelExpression;
+import io.cdap.cdap.logging.filter.MdcExpression;
+import io.cdap.cdap.logging.filter.OrFilter;
 import org.apache.avro.Schema;
 import org.apache.avro.generic.GenericArray;
 import org.apache.avro.generic.GenericData;
@@ -29,6 +35,7 @@ import org.apache.avro.generic.GenericDatumWriter;
 import org.apache.avro.generic.GenericRecord;
 import org.apache.avro.io.BinaryDecoder;
 import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DatumReader;
 import org.apache.avro.io.Decoder;
 import org.apache.avro.io.DecoderFactory;
 import org.apache.avro.io.EncoderFactory;
@@ -36,6 +43,8 @@ import org.apache.avro.io.EncoderFactory;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import javax.annotation.concurrent.NotThreadSafe;
 
 /**
@@ -45,6 +54,9 @@ import javax.annotation.concurrent.NotThreadSafe;
 @NotThreadSafe
 public final class LoggingEventSerializer {
 
+  // Fields of the logging event that are always decoded, which are the ones a Filter can inspect and the timestamp
+  private static final List<String> FILTER_FIELDS = ImmutableList.of("timestamp", "level", "mdc");
+
   private final GenericDatumReader<GenericRecord> datumReader = new GenericDatumReader<>(getAvroSchema());
   private BinaryDecoder decoder;
 
@@ -168,10 +180,25 @@ public final class LoggingEventSerializer {
     return datum;
   }
 
+  /**
+   * Creates a {@link DatumReader} for reading logging events that only fully decodes the events matching the
+   * given {@link Filter}. For each event, the fields used by the filter are decoded first and the filter is
+   * evaluated on them. The remaining fields of an event that doesn't match are skipped without being decoded,
+   * and the returned record only contains the timestamp, level and MDC of the event.
+   * <p>
+   * The filter is only evaluated by the reader if it is composed of {@link AndFilter}, {@link OrFilter},
+   * {@link LogLevelExpression} and {@link MdcExpression}, and if the data is written with the schema
+   * returned by the {@link #getAvroSchema()} method. Otherwise, all events are fully decoded.
+   * Callers still need to apply the filter on the events read.
+   */
+  public DatumReader<GenericRecord> createDatumReader(Filter filter) {
+    return new FilteringDatumReader(getAvroSchema(), filter);
+  }
+
   /**
    * Skips data from the decoder based on the schema.
    */
-  private void skip(Schema schema, Decoder decoder) throws IOException {
+  private static void skip(Schema schema, Decoder decoder) throws IOException {
     switch (schema.getType()) {
       case RECORD:
         for (Schema.Field f : schema.getFields()) {
@@ -197,7 +224,7 @@ public final class LoggingEventSerializer {
         }
         break;
       case UNION:
-        decoder.readIndex();
+        skip(schema.getTypes().get(decoder.readIndex()), decoder);
         break;
       case FIXED:
         decoder.skipFixed(schema.getFixedSize());
@@ -228,4 +255,97 @@ public final class LoggingEventSerializer {
         break;
     }
   }
+
+  /**
+   * A {@link DatumReader} that evaluates a {@link Filter} on the encoded logging events before decoding them.
+   */
+  private static final class FilteringDatumReader implements DatumReader<GenericRecord> {
+
+    private final Schema schema;
+    private final Filter filter;
+    private final boolean filterSupported;
+    private final Schema headerSchema;
+    private final Schema bodySchema;
+    private final GenericDatumReader<GenericRecord> datumReader;
+    private final GenericDatumReader<GenericRecord> headerReader;
+    private final GenericDatumReader<GenericRecord> bodyReader;
+    private boolean evaluateFilter;
+
+    FilteringDatumReader(Schema schema, Filter filter) {
+      this.schema = schema;
+      this.filter = filter;
+      this.filterSupported = filter != Filter.EMPTY_FILTER && isSupported(filter);
+
+      // The header contains the fields up to the last one used by the filter, the body contains the rest
+      List<Schema.Field> fields = schema.getFields();
+      int headerSize = 0;
+      for (String name : FILTER_FIELDS) {
+        headerSize = Math.max(headerSize, schema.getField(name).pos() + 1);
+      }
+      this.headerSchema = createRecordSchema(schema.getName() + "Header", fields.subList(0, headerSize));
+      this.bodySchema = createRecordSchema(schema.getName() + "Body", fields.subList(headerSize, fields.size()));
+      this.datumReader = new GenericDatumReader<>(schema);
+      this.headerReader = new GenericDatumReader<>(headerSchema);
+      this.bodyReader = new GenericDatumReader<>(bodySchema);
+    }
+
+    @Override
+    public void setSchema(Schema schema) {
+      datumReader.setSchema(schema);
+      evaluateFilter = filterSupported && this.schema.equals(schema);
+    }
+
+    @Override
+    public GenericRecord read(GenericRecord reuse, Decoder in) throws IOException {
+      if (!evaluateFilter) {
+        return datumReader.read(reuse, in);
+      }
+
+      GenericRecord record = new GenericData.Record(schema);
+      GenericRecord header = headerReader.read(null, in);
+      for (Schema.Field field : headerSchema.getFields()) {
+        record.put(field.name(), header.get(field.pos()));
+      }
+
+      if (!filter.match(new LoggingEvent(record))) {
+        skip(bodySchema, in);
+        record.put("hasCallerData", false);
+        return record;
+      }
+
+      GenericRecord body = bodyReader.read(null, in);
+      for (Schema.Field field : bodySchema.getFields()) {
+        record.put(field.name(), body.get(field.pos()));
+      }
+      return record;
+    }
+
+    private static Schema createRecordSchema(String name, List<Schema.Field> fields) {
+      List<Schema.Field> copies = new ArrayList<>(fields.size());
+      for (Schema.Field field : fields) {
+        copies.add(new Schema.Field(field.name(), field.schema(), field.doc(), field.defaultValue()));
+      }
+      Schema schema = Schema.createRecord(name, null, null, false);
+      schema.setFields(copies);
+      return schema;
+    }
+
+    /**
+     * Returns whether the given {@link Filter} only inspects the fields in {@code FILTER_FIELDS}.
+     */
+    private static boolean isSupported(Filter filter) {
+      if (filter instanceof AndFilter || filter instanceof OrFilter) {
+        List<? extends Filter> expressions = filter instanceof AndFilter
+          ? ((AndFilter) filter).getExpressions() : ((OrFilter) filter).getExpressions();
+        for (Filter expression : expressions) {
+          if (!isSupported(expression)) {
+            return false;
+          }
+        }
+        return true;
+      }
+      return filter instanceof LogLevelExpression || filter instanceof MdcExpression
+        || filter instanceof Filter.EmptyFilter;
+    }
+  }
 }
@@ -0,0 +1,414 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.logging.write;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import com.google.common.collect.ImmutableList;
+import io.cdap.cdap.common.io.Locations;
+import io.cdap.cdap.logging.filter.AndFilter;
+import io.cdap.cdap.logging.filter.Filter;
+import io.cdap.cdap.logging.filter.LogLevelExpression;
+import io.cdap.cdap.logging.filter.MdcExpression;
+import io.cdap.cdap.logging.filter.OrFilter;
+import org.apache.twill.filesystem.Location;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * A sparse index of a log file, which is written as a sidecar file next to the log file when the log file is closed.
+ * The index divides the log file into blocks, each starting at a sync position of the Avro file. For each block,
+ * it keeps the range of event timestamps and a summary of the log levels and MDC properties of the events,
+ * so that readers can seek to the block to start reading from, and skip the blocks that cannot match a
+ * {@link Filter}.
+ */
+public final class LogFileIndex {
+
+  private static final Logger LOG = LoggerFactory.getLogger(LogFileIndex.class);
+
+  private static final String INDEX_FILE_SUFFIX = ".idx";
+  private static final int MAGIC = 0x4c494458;
+  private static final int VERSION = 1;
+  // Maximum number of distinct values of a MDC property recorded per block
+  private static final int MAX_MDC_VALUES = 16;
+
+  private final List<Block> blocks;
+  // maxTimestamps[i] is the largest timestamp in blocks [0, i]
+  private final long[] maxTimestamps;
+  // minTimestamps[i] is the smallest timestamp in blocks [i, n)
+  private final long[] minTimestamps;
+
+  private LogFileIndex(List<Block> blocks) {
+    this.blocks = blocks;
+    this.maxTimestamps = new long[blocks.size()];
+    this.minTimestamps = new long[blocks.size()];
+
+    long max = Long.MIN_VALUE;
+    for (int i = 0; i < blocks.size(); i++) {
+      max = Math.max(max, blocks.get(i).getMaxTimestamp());
+      maxTimestamps[i] = max;
+    }
+    long min = Long.MAX_VALUE;
+    for (int i = blocks.size() - 1; i >= 0; i--) {
+      min = Math.min(min, blocks.get(i).getMinTimestamp());
+      minTimestamps[i] = min;
+    }
+  }
+
+  /**
+   * Returns the location of the index file of the given log file.
+   */
+  public static Location getIndexLocation(Location logFile) {
+    return Locations.getParent(logFile).append(logFile.getName() + INDEX_FILE_SUFFIX);
+  }
+
+  /**
+   * Reads the index of the given log file.
+   *
+   * @param logFile the log file
+   * @return the {@link LogFileIndex} or {@code null} if the log file doesn't have a valid index
+   */
+  @Nullable
+  static LogFileIndex read(Location logFile) {
+    Location indexLocation = getIndexLocation(logFile);
+    try {
+      if (!indexLocation.exists()) {
+        return null;
+      }
+      try (DataInputStream input = new DataInputStream(new BufferedInputStream(indexLocation.getInputStream()))) {
+        return decode(input);
+      }
+    } catch (IOException e) {
+      LOG.debug("Failed to read log file index {}. Reading log file without index.", indexLocation, e);
+      return null;
+    }
+  }
+
+  /**
+   * Writes this index as the index file of the given log file.
+   *
+   * @param logFile the log file
+   * @param filePermissions the permissions of the index file, or an empty string to use the default permissions
+   * @throws IOException if failed to write the index file
+   */
+  public void write(Location logFile, String filePermissions) throws IOException {
+    Location indexLocation = getIndexLocation(logFile);
+    try (OutputStream os = filePermissions.isEmpty()
+      ? indexLocation.getOutputStream() : indexLocation.getOutputStream(filePermissions);
+         DataOutputStream output = new DataOutputStream(new BufferedOutputStream(os))) {
+      encode(output);
+    } catch (IOException e) {
+      Locations.deleteQuietly(indexLocation);
+      throw e;
+    }
+  }
+
+  /**
+   * Returns the blocks of the log file, in file order.
+   */
+  List<Block> getBlocks() {
+    return blocks;
+  }
+
+  /**
+   * Returns the index of the first block that may contain events with timestamp at or after the given time, or the
+   * number of blocks if there is no such block. All blocks before the returned one only contain events before the
+   * given time.
+   */
+  int findFirstBlock(long timeMs) {
+    int low = 0;
+    int high = blocks.size();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (maxTimestamps[mid] < timeMs) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Returns the index of the last block that may contain events with timestamp at or before the given time, or
+   * {@code -1} if there is no such block. All blocks after the returned one only contain events after the given time.
+   */
+  int findLastBlock(long timeMs) {
+    int low = 0;
+    int high = blocks.size();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (minTimestamps[mid] <= timeMs) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low - 1;
+  }
+
+  /**
+   * Returns the position of the end of the given block, which is the start of the next block, or {@code -1} for
+   * the last block.
+   */
+  long getEndPosition(int blockIdx) {
+    return blockIdx + 1 < blocks.size() ? blocks.get(blockIdx + 1).getPosition() : -1L;
+  }
+
+  private void encode(DataOutputStream output) throws IOException {
+    output.writeInt(MAGIC);
+    output.writeInt(VERSION);
+    output.writeInt(blocks.size());
+    for (Block block : blocks) {
+      output.writeLong(block.position);
+      output.writeLong(block.minTimestamp);
+      output.writeLong(block.maxTimestamp);
+      output.writeLong(block.lastTimestamp);
+      output.writeInt(block.maxLevel);
+      output.writeInt(block.mdc.size());
+      for (Map.Entry<String, Set<String>> entry : block.mdc.entrySet()) {
+        output.writeUTF(entry.getKey());
+        Set<String> values = entry.getValue();
+        if (values == null) {
+          output.writeInt(-1);
+          continue;
+        }
+        output.writeInt(values.size());
+        for (String value : values) {
+          output.writeUTF(value);
+        }
+      }
+    }
+  }
+
+  private static LogFileIndex decode(DataInputStream input) throws IOException {
+    if (input.readInt() != MAGIC) {
+      throw new IOException("Not a log file index");
+    }
+    int version = input.readInt();
+    if (version != VERSION) {
+      throw new IOException("Unsupported log file index version " + version);
+    }
+    int size = input.readInt();
+    List<Block> blocks = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      long position = input.readLong();
+      long minTimestamp = input.readLong();
+      long maxTimestamp = input.readLong();
+      long lastTimestamp = input.readLong();
+      int maxLevel = input.readInt();
+      int mdcSize = input.readInt();
+      Map<String, Set<String>> mdc = new HashMap<>();
+      for (int j = 0; j < mdcSize; j++) {
+        String key = input.readUTF();
+        int valueSize = input.readInt();
+        Set<String> values = null;
+        if (valueSize >= 0) {
+          values = new HashSet<>();
+          for (int k = 0; k < valueSize; k++) {
+            values.add(input.readUTF());
+          }
+        }
+        mdc.put(key, values);
+      }
+      blocks.add(new Block(position, minTimestamp, maxTimestamp, lastTimestamp, maxLevel, mdc));
+    }
+    return new LogFileIndex(Collections.unmodifiableList(blocks));
+  }
+
+  /**
+   * A block of a log file.
+   */
+  static final class Block {
+    private final long position;
+    private final long minTimestamp;
+    private final long maxTimestamp;
+    private final long lastTimestamp;
+    private final int maxLevel;
+    // MDC key to the values seen in the block, or to null if there are too many of them
+    private final Map<String, Set<String>> mdc;
+
+    private Block(long position, long minTimestamp, long maxTimestamp, long lastTimestamp, int maxLevel,
+                  Map<String, Set<String>> mdc) {
+      this.position = position;
+      this.minTimestamp = minTimestamp;
+      this.maxTimestamp = maxTimestamp;
+      this.lastTimestamp = lastTimestamp;
+      this.maxLevel = maxLevel;
+      this.mdc = mdc;
+    }
+
+    /**
+     * Returns the sync position in the log file where this block starts.
+     */
+    long getPosition() {
+      return position;
+    }
+
+    long getMinTimestamp() {
+      return minTimestamp;
+    }
+
+    long getMaxTimestamp() {
+      return maxTimestamp;
+    }
+
+    /**
+     * Returns the timestamp of the last event in this block.
+     */
+    long getLastTimestamp() {
+      return lastTimestamp;
+    }
+
+    /**
+     * Returns {@code false} if none of the events in this block can match the given filter.
+     */
+    boolean mayMatch(Filter filter) {
+      if (filter instanceof AndFilter) {
+        for (Filter expression : ((AndFilter) filter).getExpressions()) {
+          if (!mayMatch(expression)) {
+            return false;
+          }
+        }
+        return true;
+      }
+      if (filter instanceof OrFilter) {
+        for (Filter expression : ((OrFilter) filter).getExpressions()) {
+          if (mayMatch(expression)) {
+            return true;
+          }
+        }
+        return false;
+      }
+      if (filter instanceof LogLevelExpression) {
+        return maxLevel >= ((LogLevelExpression) filter).getLevel().toInt();
+      }
+      if (filter instanceof MdcExpression) {
+        MdcExpression expression = (MdcExpression) filter;
+        if (!mdc.containsKey(expression.getKey())) {
+          return false;
+        }
+        Set<String> values = mdc.get(expression.getKey());
+        return values == null || values.contains(expression.getValue());
+      }
+      // Other filters are evaluated on the events
+      return true;
+    }
+  }
+
+  /**
+   * Builds a {@link LogFileIndex} while a log file is being written.
+   */
+  public static final class Builder {
+    private final List<Block> blocks = new ArrayList<>();
+
+    private long position = -1L;
+    private long blockBytes;
+    private long minTimestamp;
+    private long maxTimestamp;
+    private long lastTimestamp;
+    private int maxLevel;
+    private Map<String, Set<String>> mdc;
+
+    /**
+     * Adds an event to the current block, starting a new block if there is none.
+     *
+     * @param blockPosition the sync position in the log file where a new block would start
+     * @param event the event written to the log file
+     * @param size the encoded size of the event
+     */
+    public void add(long blockPosition, ILoggingEvent event, int size) {
+      long timestamp = event.getTimeStamp();
+      int level = event.getLevel() == null ? Level.ERROR_INT : event.getLevel().toInt();
+      if (position < 0) {
+        position = blockPosition;
+        blockBytes = 0L;
+        minTimestamp = timestamp;
+        maxTimestamp = timestamp;
+        maxLevel = level;
+        mdc = new HashMap<>();
+      }
+      blockBytes += size;
+      minTimestamp = Math.min(minTimestamp, timestamp);
+      maxTimestamp = Math.max(maxTimestamp, timestamp);
+      lastTimestamp = timestamp;
+      maxLevel = Math.max(maxLevel, level);
+
+      Map<String, String> eventMdc = event.getMDCPropertyMap();
+      if (eventMdc == null) {
+        return;
+      }
+      for (Map.Entry<String, String> entry : eventMdc.entrySet()) {
+        String key = entry.getKey();
+        if (!mdc.containsKey(key)) {
+          mdc.put(key, new HashSet<>());
+        }
+        Set<String> values = mdc.get(key);
+        if (values == null || entry.getValue() == null || values.contains(entry.getValue())) {
+          continue;
+        }
+        if (values.size() < MAX_MDC_VALUES) {
+          values.add(entry.getValue());
+        } else {
+          mdc.put(key, null);
+        }
+      }
+    }
+
+    /**
+     * Returns the number of encoded bytes added to the current block.
+     */
+    public long getBlockBytes() {
+      return position < 0 ? 0L : blockBytes;
+    }
+
+    /**
+     * Ends the current block. This method must be called after the events of the block are synced to the log file,
+     * so that the next block starts at a new sync position.
+     */
+    public void endBlock() {
+      if (position < 0) {
+        return;
+      }
+      blocks.add(new Block(position, minTimestamp, maxTimestamp, lastTimestamp, maxLevel, mdc));
+      position = -1L;
+      mdc = null;
+    }
+
+    /**
+     * Builds the {@link LogFileIndex} from the blocks ended so far.
+     */
+    public LogFileIndex build() {
+      return new LogFileIndex(ImmutableList.copyOf(blocks));
+    }
+  }
+}
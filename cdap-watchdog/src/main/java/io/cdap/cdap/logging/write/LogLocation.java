@@ -30,13 +30,12 @@ import io.cdap.cdap.logging.filter.Filter;
 import io.cdap.cdap.logging.read.Callback;
 import io.cdap.cdap.logging.read.LogEvent;
 import io.cdap.cdap.logging.read.LogOffset;
-import io.cdap.cdap.logging.serialize.LogSchema;
 import io.cdap.cdap.logging.serialize.LoggingEvent;
+import io.cdap.cdap.logging.serialize.LoggingEventSerializer;
 import io.cdap.cdap.proto.id.NamespaceId;
 import io.cdap.cdap.security.impersonation.Impersonator;
 import org.apache.avro.file.DataFileReader;
 import org.apache.avro.file.SeekableInput;
-import org.apache.avro.generic.GenericDatumReader;
 import org.apache.avro.generic.GenericRecord;
 import org.apache.twill.filesystem.Location;
 import org.slf4j.Logger;
@@ -50,6 +49,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.concurrent.Callable;
+import javax.annotation.Nullable;
 
 /**
  * LogLocation representing a log file and methods to read the file's contents.
@@ -150,10 +150,15 @@ public class LogLocation {
    */
   @SuppressWarnings("WeakerAccess")
   public Collection<LogEvent> readLogPrev(Filter logFilter, long fromTimeMs, final int maxEvents) throws IOException {
+    LogFileIndex index = readIndex();
+    if (index != null) {
+      return readLogPrev(index, logFilter, fromTimeMs, maxEvents);
+    }
+
     Deque<Collection<LogEvent>> logSegments = new LinkedList<>();
     int count = 0;
     try {
-      try (DataFileReader<GenericRecord> dataFileReader = createReader()) {
+      try (DataFileReader<GenericRecord> dataFileReader = createReader(logFilter)) {
 
         if (!dataFileReader.hasNext()) {
           return ImmutableList.of();
@@ -206,6 +211,37 @@ public class LogLocation {
     return Lists.newArrayList(Iterables.skip(Iterables.concat(logSegments), skip));
   }
 
+  /**
+   * Reads the previous log events using the {@link LogFileIndex} of the file. Starting from the last block that can
+   * contain events before fromTimeMs, blocks are read backwards, skipping the ones that cannot match the filter.
+   */
+  private Collection<LogEvent> readLogPrev(LogFileIndex index, Filter logFilter, long fromTimeMs, int maxEvents) {
+    Deque<Collection<LogEvent>> logSegments = new LinkedList<>();
+    int count = 0;
+    try (DataFileReader<GenericRecord> dataFileReader = createReader(logFilter)) {
+      List<LogFileIndex.Block> blocks = index.getBlocks();
+      for (int i = index.findLastBlock(fromTimeMs); i >= 0 && count < maxEvents; i--) {
+        LogFileIndex.Block block = blocks.get(i);
+        if (block.getMinTimestamp() > fromTimeMs || !block.mayMatch(logFilter)) {
+          continue;
+        }
+        dataFileReader.seek(block.getPosition());
+        List<LogEvent> logSegment = readToEndSyncPosition(dataFileReader, logFilter, fromTimeMs,
+                                                          index.getEndPosition(i));
+        if (!logSegment.isEmpty()) {
+          logSegments.addFirst(logSegment);
+          count = count + logSegment.size();
+        }
+        LOG.trace("Read log events {} from indexed block at position {}", count, block.getPosition());
+      }
+    } catch (IOException e) {
+      READ_FAILURE_LOG.warn("Got exception while reading log file {}", location, e);
+    }
+
+    int skip = count >= maxEvents ? count - maxEvents : 0;
+    return Lists.newArrayList(Iterables.skip(Iterables.concat(logSegments), skip));
+  }
+
   /**
    *  Read current block in Avro file from current block sync marker to next block sync marker
    */
@@ -259,6 +295,8 @@ public class LogLocation {
     private final long maxEvents;
 
     private DataFileReader<GenericRecord> dataFileReader;
+    private LogFileIndex index;
+    private int blockIdx;
 
     private ILoggingEvent loggingEvent;
     private GenericRecord datum;
@@ -275,8 +313,16 @@ public class LogLocation {
       this.maxEvents = maxEvents;
 
       try {
-        dataFileReader = createReader();
-        if (dataFileReader.hasNext()) {
+        dataFileReader = createReader(logFilter);
+        index = readIndex();
+        if (index != null) {
+          // All events before the first block are before fromTimeMs
+          int firstBlock = index.findFirstBlock(fromTimeMs);
+          if (firstBlock > 0) {
+            prevTimestamp = index.getBlocks().get(firstBlock - 1).getLastTimestamp();
+          }
+          seekToBlock(firstBlock);
+        } else if (dataFileReader.hasNext()) {
           datum = dataFileReader.next();
           loggingEvent = new LoggingEvent(datum);
           loggingEvent.prepareForDeferredProcessing();
@@ -315,7 +361,7 @@ public class LogLocation {
     private void computeNext() {
       try {
         // read events from file
-        while (next == null && dataFileReader.hasNext()) {
+        while (next == null && hasNextEvent()) {
           loggingEvent = new LoggingEvent(dataFileReader.next(datum));
           loggingEvent.prepareForDeferredProcessing();
 
@@ -338,6 +384,43 @@ public class LogLocation {
       }
     }
 
+    /**
+     * Returns whether there are more events to read. If the file has an index, this moves the reader to the next
+     * block that can contain matching events once the current block is fully read.
+     */
+    private boolean hasNextEvent() throws IOException {
+      if (index == null) {
+        return dataFileReader.hasNext();
+      }
+      while (blockIdx < index.getBlocks().size()) {
+        long endPosition = index.getEndPosition(blockIdx);
+        if (endPosition < 0 || dataFileReader.previousSync() < endPosition) {
+          return dataFileReader.hasNext();
+        }
+        seekToBlock(blockIdx + 1);
+      }
+      return false;
+    }
+
+    /**
+     * Seeks to the first block, starting from the given one, that can contain events matching the filter and
+     * not before fromTimeMs.
+     */
+    private void seekToBlock(int idx) throws IOException {
+      List<LogFileIndex.Block> blocks = index.getBlocks();
+      while (idx < blocks.size()
+        && (blocks.get(idx).getMaxTimestamp() < fromTimeMs || !blocks.get(idx).mayMatch(logFilter))) {
+        // Keep track of the last timestamp as if the events in the skipped block were read
+        prevTimestamp = blocks.get(idx).getLastTimestamp();
+        idx++;
+      }
+      blockIdx = idx;
+      if (idx < blocks.size()) {
+        LOG.trace("Seeking to indexed block at position {}", blocks.get(idx).getPosition());
+        dataFileReader.seek(blocks.get(idx).getPosition());
+      }
+    }
+
     @Override
     public void close() {
       try {
@@ -371,10 +454,23 @@ public class LogLocation {
     }
   }
 
-  private DataFileReader<GenericRecord> createReader() throws IOException {
+  /**
+   * Reads the {@link LogFileIndex} of this file, which is only available for files written by the current
+   * logging framework after they are closed.
+   */
+  @Nullable
+  private LogFileIndex readIndex() {
+    return VERSION_1.equals(frameworkVersion) ? LogFileIndex.read(location) : null;
+  }
+
+  /**
+   * Creates a {@link DataFileReader} for reading this file. Events that don't match the given {@link Filter} are
+   * not fully decoded by the reader.
+   */
+  private DataFileReader<GenericRecord> createReader(Filter logFilter) throws IOException {
     boolean shouldImpersonate = this.getFrameworkVersion().equals(VERSION_0);
     return new DataFileReader<>(new LocationSeekableInput(location, namespaceId, impersonator, shouldImpersonate),
-                                new GenericDatumReader<GenericRecord>(LogSchema.LoggingEvent.SCHEMA));
+                                new LoggingEventSerializer().createDatumReader(logFilter));
   }
 
   /**
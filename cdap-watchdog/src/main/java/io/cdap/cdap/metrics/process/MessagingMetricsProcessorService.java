@@ -18,6 +18,7 @@ package io.cdap.cdap.metrics.process;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Throwables;
+import com.google.common.math.IntMath;
 import com.google.common.reflect.TypeToken;
 import com.google.common.util.concurrent.AbstractExecutionThreadService;
 import com.google.inject.Inject;
@@ -94,6 +95,8 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
   private final long metricsProcessIntervalMillis;
   private final List<ProcessMetricsThread> processMetricsThreads;
   private final String processMetricName;
+  private final String compactionRatioMetricName;
+  private final MetricsPreAggregator preAggregator;
   private final String metricsPrefixForDelayMetrics;
   private long metricsProcessedCount;
 
@@ -156,6 +159,15 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
     this.metricsProcessIntervalMillis = metricsProcessIntervalMillis < Constants.Metrics.PROCESS_INTERVAL_MILLIS ?
       metricsProcessIntervalMillis : Constants.Metrics.PROCESS_INTERVAL_MILLIS;
     this.processMetricName = String.format("metrics.%s.process.count", instanceId);
+    this.compactionRatioMetricName = String.format("%s.compaction.ratio.percent", metricsPrefixForDelayMetrics);
+
+    // Metrics are merged within time buckets that align with all the metrics table resolutions
+    int minimumResolution = cConf.getInt(Constants.Metrics.METRICS_MINIMUM_RESOLUTION_SECONDS);
+    int timeBucketSeconds = minimumResolution > 0 && minimumResolution < Constants.Metrics.MINUTE_RESOLUTION
+      ? IntMath.gcd(minimumResolution, Constants.Metrics.MINUTE_RESOLUTION) : Constants.Metrics.MINUTE_RESOLUTION;
+    this.preAggregator = new MetricsPreAggregator(timeBucketSeconds,
+                                                  cConf.getLong(Constants.Metrics.PROCESSOR_FLUSH_INTERVAL_MS),
+                                                  cConf.getInt(Constants.Metrics.PROCESSOR_FLUSH_SIZE));
   }
 
   private MetricsConsumerMetaTable getMetaTable() {
@@ -218,7 +230,7 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
 
     // Persist metricsFromAllTopics and messageId's after all ProcessMetricsThread's complete.
     // No need to make a copy of metricsFromAllTopics and topicProcessMetaMap because no thread is writing to them
-    persistMetricsAndTopicProcessMeta(metricsFromAllTopics, topicProcessMetaMap);
+    persistMetricsAndTopicProcessMeta(metricsFromAllTopics, topicProcessMetaMap, true);
   }
 
   @Override
@@ -232,18 +244,25 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
   }
 
   /**
-   * Persist metrics from all topics into metric store and messageId's of the last persisted metrics of each topic
-   * into metrics meta table
+   * Merges metrics from all topics into the {@link MetricsPreAggregator}. If the merged metrics need to be flushed,
+   * persist them into metric store and messageId's of the last persisted metrics of each topic into metrics meta table.
    *
    * @param metricValues a deque of {@link MetricValues}
    * @param topicProcessMetaMap a map with each key {@link TopicIdMetaKey} representing a topic
    *                            and {@link TopicProcessMeta} which has info on messageId and processing stats
+   * @param forceFlush {@code true} to persist the merged metrics regardless of the flush interval and size
    */
   private void persistMetricsAndTopicProcessMeta(Deque<MetricValues> metricValues,
-                                                 Map<TopicIdMetaKey, TopicProcessMeta> topicProcessMetaMap) {
+                                                 Map<TopicIdMetaKey, TopicProcessMeta> topicProcessMetaMap,
+                                                 boolean forceFlush) {
     try {
-      if (!metricValues.isEmpty()) {
-        persistMetrics(metricValues, topicProcessMetaMap);
+      metricValues.forEach(preAggregator::add);
+      if (!preAggregator.isEmpty()) {
+        if (!forceFlush && !preAggregator.isFlushRequired(System.currentTimeMillis())) {
+          // The messageId's can only be persisted after all the metrics fetched before them are persisted
+          return;
+        }
+        persistMetrics(topicProcessMetaMap);
       }
       persistTopicProcessMeta(topicProcessMetaMap);
     } catch (Exception e) {
@@ -264,14 +283,14 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
   }
 
   /**
-   * Persist metrics into metric store
-   *
-   * @param metricValues a non-empty deque of {@link MetricValues}
+   * Persist the merged metrics in the non-empty {@link MetricsPreAggregator} into metric store
    */
-  private void persistMetrics(Deque<MetricValues> metricValues,
-                              Map<TopicIdMetaKey, TopicProcessMeta> topicProcessMetaMap) {
+  private void persistMetrics(Map<TopicIdMetaKey, TopicProcessMeta> topicProcessMetaMap) {
     long now = System.currentTimeMillis();
-    long lastMetricTime = metricValues.peekLast().getTimestamp();
+    long lastMetricTime = preAggregator.getLastTimestamp();
+    long metricsCount = preAggregator.getInputCount();
+    long compactionRatioPercent = Math.round(preAggregator.getCompactionRatio() * 100);
+    List<MetricValues> metricValues = preAggregator.flush(now);
     List<MetricValue> topicLevelDelays = new ArrayList<>();
 
     //add topic level delay metrics
@@ -285,11 +304,12 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
                                            MetricType.GAUGE, delay));
     }
     List<MetricValue> processorMetrics = new ArrayList<>(topicLevelDelays);
-    processorMetrics.add(new MetricValue(processMetricName, MetricType.COUNTER, metricValues.size()));
+    processorMetrics.add(new MetricValue(processMetricName, MetricType.COUNTER, metricsCount));
+    processorMetrics.add(new MetricValue(compactionRatioMetricName, MetricType.GAUGE, compactionRatioPercent));
 
     metricValues.add(new MetricValues(metricsContextMap, TimeUnit.MILLISECONDS.toSeconds(now), processorMetrics));
     metricStore.add(metricValues);
-    metricsProcessedCount += metricValues.size();
+    metricsProcessedCount += metricsCount;
     PROGRESS_LOG.debug("{} metrics persisted. Last metric's timestamp: {}",
                        metricsProcessedCount, lastMetricTime);
   }
@@ -449,7 +469,7 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
           iterator.remove();
         }
         // Persist the copy of metrics and MessageId's
-        persistMetricsAndTopicProcessMeta(metricsCopy, topicProcessMetaMapCopy);
+        persistMetricsAndTopicProcessMeta(metricsCopy, topicProcessMetaMapCopy, false);
       } catch (Exception e) {
         LOG.warn("Failed to persist metrics. Will be retried in next iteration.", e);
       } finally {
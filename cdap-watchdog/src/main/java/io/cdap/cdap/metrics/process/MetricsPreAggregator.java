@@ -0,0 +1,187 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.metrics.process;
+
+import io.cdap.cdap.api.metrics.MetricType;
+import io.cdap.cdap.api.metrics.MetricValue;
+import io.cdap.cdap.api.metrics.MetricValues;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Buffers {@link MetricValues} in memory and merges the ones that will be written to the same cells of the
+ * metrics tables, so that fewer facts are written to the metric store. Metric values with the same tags, time bucket
+ * and name are merged by adding up counters and keeping the last value of gauges.
+ *
+ * This class is not thread safe.
+ */
+final class MetricsPreAggregator {
+
+  private final int timeBucketSeconds;
+  private final long flushIntervalMillis;
+  private final int flushSize;
+  private final Map<BucketKey, Map<String, MetricValue>> buckets;
+
+  private int size;
+  private long inputCount;
+  private long inputValueCount;
+  private long lastTimestamp;
+  private long lastFlushTime;
+
+  /**
+   * Creates a new instance.
+   *
+   * @param timeBucketSeconds size of the time bucket in seconds. It must divide all the metrics table resolutions
+   *                          so that merging doesn't move values across cells of any table.
+   * @param flushIntervalMillis maximum time in milliseconds to buffer metrics before flushing
+   * @param flushSize maximum number of merged metric values to buffer before flushing
+   */
+  MetricsPreAggregator(int timeBucketSeconds, long flushIntervalMillis, int flushSize) {
+    if (timeBucketSeconds <= 0) {
+      throw new IllegalArgumentException("Time bucket size must be positive: " + timeBucketSeconds);
+    }
+    this.timeBucketSeconds = timeBucketSeconds;
+    this.flushIntervalMillis = flushIntervalMillis;
+    this.flushSize = flushSize;
+    this.buckets = new LinkedHashMap<>();
+    this.lastFlushTime = System.currentTimeMillis();
+  }
+
+  /**
+   * Adds the given {@link MetricValues} to this aggregator.
+   */
+  void add(MetricValues metricValues) {
+    inputCount++;
+    lastTimestamp = metricValues.getTimestamp();
+
+    long bucketTimestamp = metricValues.getTimestamp() / timeBucketSeconds * timeBucketSeconds;
+    Map<String, MetricValue> values = buckets.computeIfAbsent(new BucketKey(metricValues.getTags(), bucketTimestamp),
+                                                              k -> new LinkedHashMap<>());
+    for (MetricValue metricValue : metricValues.getMetrics()) {
+      inputValueCount++;
+      MetricValue existing = values.get(metricValue.getName());
+      if (existing == null) {
+        values.put(metricValue.getName(), metricValue);
+        size++;
+      } else if (existing.getType() == MetricType.COUNTER && metricValue.getType() == MetricType.COUNTER) {
+        values.put(metricValue.getName(), new MetricValue(metricValue.getName(), MetricType.COUNTER,
+                                                          existing.getValue() + metricValue.getValue()));
+      } else {
+        // Last value wins for gauges
+        values.put(metricValue.getName(), metricValue);
+      }
+    }
+  }
+
+  /**
+   * Returns {@code true} if the buffered metrics should be flushed, based on the flush interval and size.
+   */
+  boolean isFlushRequired(long currentTimeMillis) {
+    return size >= flushSize || currentTimeMillis - lastFlushTime >= flushIntervalMillis;
+  }
+
+  /**
+   * Returns {@code true} if there is nothing buffered.
+   */
+  boolean isEmpty() {
+    return inputCount == 0;
+  }
+
+  /**
+   * Returns the number of {@link MetricValues} added since the last flush.
+   */
+  long getInputCount() {
+    return inputCount;
+  }
+
+  /**
+   * Returns the number of merged metric values buffered.
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * Returns the ratio between the number of metric values added and the number of merged metric values buffered.
+   */
+  double getCompactionRatio() {
+    return size == 0 ? 1.0d : (double) inputValueCount / size;
+  }
+
+  /**
+   * Returns the timestamp of the last {@link MetricValues} added since the last flush.
+   */
+  long getLastTimestamp() {
+    return lastTimestamp;
+  }
+
+  /**
+   * Removes all the buffered metrics.
+   *
+   * @param currentTimeMillis the current time, which is used as the last flush time
+   * @return the merged {@link MetricValues}, in the order of the first appearance of each tags and time bucket
+   */
+  List<MetricValues> flush(long currentTimeMillis) {
+    List<MetricValues> result = new ArrayList<>(buckets.size());
+    for (Map.Entry<BucketKey, Map<String, MetricValue>> entry : buckets.entrySet()) {
+      BucketKey key = entry.getKey();
+      result.add(new MetricValues(key.tags, key.timestamp, new ArrayList<>(entry.getValue().values())));
+    }
+    buckets.clear();
+    size = 0;
+    inputCount = 0;
+    inputValueCount = 0;
+    lastFlushTime = currentTimeMillis;
+    return result;
+  }
+
+  /**
+   * Key for metric values of the same tags and time bucket.
+   */
+  private static final class BucketKey {
+    private final Map<String, String> tags;
+    private final long timestamp;
+    private final int hashCode;
+
+    BucketKey(Map<String, String> tags, long timestamp) {
+      this.tags = tags;
+      this.timestamp = timestamp;
+      this.hashCode = Objects.hash(tags, timestamp);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      BucketKey other = (BucketKey) o;
+      return timestamp == other.timestamp && tags.equals(other.tags);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+}
@@ -0,0 +1,444 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.metrics.query;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.collect.ImmutableList;
+import io.cdap.cdap.api.dataset.lib.cube.AggregationFunction;
+import io.cdap.cdap.api.dataset.lib.cube.TimeValue;
+import io.cdap.cdap.api.metrics.MetricDataQuery;
+import io.cdap.cdap.api.metrics.MetricStore;
+import io.cdap.cdap.api.metrics.MetricTimeSeries;
+import io.cdap.cdap.api.metrics.MetricsContext;
+import io.cdap.cdap.api.metrics.MetricsProcessorStatus;
+import io.cdap.cdap.common.utils.ImmutablePair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+
+/**
+ * Caches the results of {@link MetricDataQuery} executed on the {@link MetricStore}. Cached results are validated
+ * against the progress of the metrics processor, which is given by the persisted message ids of the metrics topics
+ * in {@link MetricStore#getMetricsProcessorStats()}.
+ * <ul>
+ *   <li>
+ *     Results of total and hour resolution queries stay valid until the processor persists metrics with timestamps
+ *     in the query time range.
+ *   </li>
+ *   <li>
+ *     Results of minute and second resolution queries are cached without the query time range, so that the same
+ *     query polled with a moving time range can use them. Only the time buckets starting from the oldest metrics
+ *     persisted since the result was cached, which is usually the newest bucket, and the buckets after the cached
+ *     time range are queried from the {@link MetricStore} and merged into the cached result.
+ *   </li>
+ * </ul>
+ * The metrics processor processes messages of each topic in publish order, and metrics are published shortly after
+ * they are emitted. Hence metrics persisted after a result was cached are assumed to be no older than the oldest
+ * metrics of the message batch persisted before the result was cached.
+ *
+ * This class is thread safe.
+ */
+final class MetricsQueryCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MetricsQueryCache.class);
+
+  private static final int HOUR_RESOLUTION = 3600;
+  private static final int TOTAL_RESOLUTION = Integer.MAX_VALUE;
+
+  private static final String HITS_METRIC = "query.cache.hits";
+  private static final String PARTIAL_HITS_METRIC = "query.cache.partial.hits";
+  private static final String MISSES_METRIC = "query.cache.misses";
+  private static final String HIT_RATE_METRIC = "query.cache.hit.rate.percent";
+  private static final String SIZE_METRIC = "query.cache.size.bytes";
+
+  private final MetricStore metricStore;
+  private final long entryTTLMillis;
+  private final long statusRefreshIntervalMillis;
+  private final Cache<CacheKey, CacheEntry> cache;
+  private final AtomicLong cacheBytes;
+  private final AtomicLong requestCount;
+  private final AtomicLong hitCount;
+
+  private volatile ProcessorStatus processorStatus;
+  private volatile MetricsContext metricsContext;
+
+  /**
+   * Creates a new instance.
+   *
+   * @param metricStore the {@link MetricStore} for executing queries
+   * @param maxBytes maximum estimated size in bytes of the cached results
+   * @param entryTTLMillis maximum time in milliseconds that a result stays in the cache
+   * @param statusRefreshIntervalMillis interval in milliseconds to read the progress of the metrics processor
+   */
+  MetricsQueryCache(MetricStore metricStore, long maxBytes, long entryTTLMillis, long statusRefreshIntervalMillis) {
+    this.metricStore = metricStore;
+    this.entryTTLMillis = entryTTLMillis;
+    this.statusRefreshIntervalMillis = statusRefreshIntervalMillis;
+    this.cacheBytes = new AtomicLong();
+    this.requestCount = new AtomicLong();
+    this.hitCount = new AtomicLong();
+    this.cache = CacheBuilder.newBuilder()
+      .maximumWeight(maxBytes)
+      .weigher((CacheKey key, CacheEntry entry) -> entry.weight)
+      .removalListener((RemovalNotification<CacheKey, CacheEntry> notification) ->
+                         cacheBytes.addAndGet(-notification.getValue().weight))
+      .build();
+  }
+
+  /**
+   * Sets the {@link MetricsContext} for emitting metrics about the cache.
+   */
+  void setMetricsContext(MetricsContext metricsContext) {
+    this.metricsContext = metricsContext;
+  }
+
+  /**
+   * Returns the estimated size in bytes of the cached results.
+   */
+  @VisibleForTesting
+  long getSize() {
+    return cacheBytes.get();
+  }
+
+  /**
+   * Executes the given query, using the cached result whenever possible.
+   */
+  Collection<MetricTimeSeries> query(MetricDataQuery query) {
+    Map<String, MetricsProcessorStatus> status = getProcessorStatus();
+    if (status.isEmpty()) {
+      // Without the progress of the metrics processor, there is no way to tell if a cached result is up to date
+      return metricStore.query(query);
+    }
+
+    long now = System.currentTimeMillis();
+    boolean mergeable = isMergeable(query);
+    CacheKey key = new CacheKey(query, mergeable);
+    CacheEntry entry = cache.getIfPresent(key);
+    if (entry != null && now - entry.creationTime >= entryTTLMillis) {
+      entry = null;
+    }
+
+    // Timestamp of the oldest metrics that may have been persisted since the result was cached
+    long changedFrom = entry == null ? Long.MIN_VALUE : getChangedFrom(entry.processorStatus, status);
+    int resolution = query.getResolution();
+
+    if (!mergeable) {
+      // Total resolution has a single time bucket, which is changed by any new metrics
+      boolean valid = resolution == TOTAL_RESOLUTION ? changedFrom == Long.MAX_VALUE
+                                                     : changedFrom > key.endTs + resolution - 1;
+      if (entry != null && valid) {
+        emitMetrics(HITS_METRIC, true);
+        return entry.series;
+      }
+      List<MetricTimeSeries> result = ImmutableList.copyOf(metricStore.query(query));
+      put(key, new CacheEntry(result, key.startTs, key.endTs, status, now));
+      emitMetrics(MISSES_METRIC, false);
+      return result;
+    }
+
+    long startTs = alignUp(query.getStartTs(), resolution);
+    long endTs = alignDown(query.getEndTs(), resolution);
+
+    // The first time bucket to query from the metric store
+    long refreshFrom = startTs;
+    if (entry != null && entry.startTs <= startTs) {
+      refreshFrom = Math.max(startTs, Math.min(entry.endTs + resolution, alignDown(changedFrom, resolution)));
+    }
+
+    if (refreshFrom > endTs) {
+      emitMetrics(HITS_METRIC, true);
+      return select(entry.series, startTs, endTs);
+    }
+
+    if (refreshFrom == startTs) {
+      List<MetricTimeSeries> result = ImmutableList.copyOf(metricStore.query(query));
+      put(key, new CacheEntry(result, startTs, endTs, status, now));
+      emitMetrics(MISSES_METRIC, false);
+      return result;
+    }
+
+    MetricDataQuery refreshQuery = new MetricDataQuery(refreshFrom, query.getEndTs(), resolution, query.getLimit(),
+                                                       query.getMetrics(), query.getSliceByTags(),
+                                                       query.getGroupByTags(), null);
+    List<MetricTimeSeries> result = merge(select(entry.series, startTs, refreshFrom - 1),
+                                          metricStore.query(refreshQuery));
+    put(key, new CacheEntry(result, startTs, endTs, status, entry.creationTime));
+    emitMetrics(PARTIAL_HITS_METRIC, true);
+    return result;
+  }
+
+  private void put(CacheKey key, CacheEntry entry) {
+    cacheBytes.addAndGet(entry.weight);
+    cache.put(key, entry);
+  }
+
+  private void emitMetrics(String outcomeMetric, boolean hit) {
+    long requests = requestCount.incrementAndGet();
+    long hits = hit ? hitCount.incrementAndGet() : hitCount.get();
+
+    MetricsContext context = metricsContext;
+    if (context == null) {
+      return;
+    }
+    context.increment(outcomeMetric, 1L);
+    context.gauge(HIT_RATE_METRIC, hits * 100 / requests);
+    context.gauge(SIZE_METRIC, cacheBytes.get());
+  }
+
+  /**
+   * Returns the progress of the metrics processor, which is read from the {@link MetricStore} at most once per
+   * the refresh interval. An empty map is returned if the progress is not available.
+   */
+  private Map<String, MetricsProcessorStatus> getProcessorStatus() {
+    long now = System.currentTimeMillis();
+    ProcessorStatus status = processorStatus;
+    if (status == null || now - status.readTime >= statusRefreshIntervalMillis) {
+      Map<String, MetricsProcessorStatus> topicStatus;
+      try {
+        topicStatus = metricStore.getMetricsProcessorStats();
+      } catch (Exception e) {
+        LOG.debug("Failed to read the metrics processor status. Metrics query results will not be cached.", e);
+        topicStatus = Collections.emptyMap();
+      }
+      status = new ProcessorStatus(topicStatus, now);
+      processorStatus = status;
+    }
+    return status.topicStatus;
+  }
+
+  /**
+   * Returns the timestamp of the oldest metrics that may have been persisted by the metrics processor between
+   * the two given progress, or {@link Long#MAX_VALUE} if nothing was persisted.
+   */
+  private static long getChangedFrom(Map<String, MetricsProcessorStatus> cachedStatus,
+                                     Map<String, MetricsProcessorStatus> currentStatus) {
+    long changedFrom = Long.MAX_VALUE;
+    for (Map.Entry<String, MetricsProcessorStatus> entry : currentStatus.entrySet()) {
+      MetricsProcessorStatus cached = cachedStatus.get(entry.getKey());
+      if (cached == null) {
+        return Long.MIN_VALUE;
+      }
+      MetricsProcessorStatus current = entry.getValue();
+      if (!Objects.equals(cached.getMessageId(), current.getMessageId())) {
+        changedFrom = Math.min(changedFrom,
+                               Math.min(cached.getOldestMetricsTimestamp(), current.getOldestMetricsTimestamp()));
+      }
+    }
+    return changedFrom;
+  }
+
+  /**
+   * Returns {@code true} if the result of the given query can be cached without the time range and merged with
+   * the result of a query of a later time range.
+   */
+  private static boolean isMergeable(MetricDataQuery query) {
+    int resolution = query.getResolution();
+    if (resolution >= HOUR_RESOLUTION || query.getInterpolator() != null) {
+      return false;
+    }
+    long startTs = alignUp(query.getStartTs(), resolution);
+    long endTs = alignDown(query.getEndTs(), resolution);
+    // The limit must not truncate the result
+    return startTs <= endTs && query.getLimit() >= (endTs - startTs) / resolution + 1;
+  }
+
+  /**
+   * Returns the time series with only the values in the given time range. Time series without value are excluded.
+   */
+  private static List<MetricTimeSeries> select(List<MetricTimeSeries> series, long startTs, long endTs) {
+    List<MetricTimeSeries> result = new ArrayList<>(series.size());
+    for (MetricTimeSeries timeSeries : series) {
+      List<TimeValue> timeValues = timeSeries.getTimeValues();
+      if (!timeValues.isEmpty() && timeValues.get(0).getTimestamp() >= startTs
+        && timeValues.get(timeValues.size() - 1).getTimestamp() <= endTs) {
+        result.add(timeSeries);
+        continue;
+      }
+      List<TimeValue> selected = new ArrayList<>();
+      for (TimeValue timeValue : timeValues) {
+        if (timeValue.getTimestamp() >= startTs && timeValue.getTimestamp() <= endTs) {
+          selected.add(timeValue);
+        }
+      }
+      if (!selected.isEmpty()) {
+        result.add(new MetricTimeSeries(timeSeries.getMetricName(), timeSeries.getTagValues(), selected));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Appends the values of the newer time series to the values of the older time series with the same metric name
+   * and tag values.
+   */
+  private static List<MetricTimeSeries> merge(List<MetricTimeSeries> older, Collection<MetricTimeSeries> newer) {
+    Map<ImmutablePair<String, Map<String, String>>, List<TimeValue>> merged = new LinkedHashMap<>();
+    for (MetricTimeSeries timeSeries : older) {
+      merged.put(ImmutablePair.of(timeSeries.getMetricName(), timeSeries.getTagValues()),
+                 new ArrayList<>(timeSeries.getTimeValues()));
+    }
+    for (MetricTimeSeries timeSeries : newer) {
+      merged.computeIfAbsent(ImmutablePair.of(timeSeries.getMetricName(), timeSeries.getTagValues()),
+                             k -> new ArrayList<>()).addAll(timeSeries.getTimeValues());
+    }
+
+    ImmutableList.Builder<MetricTimeSeries> result = ImmutableList.builder();
+    for (Map.Entry<ImmutablePair<String, Map<String, String>>, List<TimeValue>> entry : merged.entrySet()) {
+      result.add(new MetricTimeSeries(entry.getKey().getFirst(), entry.getKey().getSecond(), entry.getValue()));
+    }
+    return result.build();
+  }
+
+  private static long alignUp(long ts, int resolution) {
+    return ts % resolution == 0 ? ts : (ts / resolution + 1) * resolution;
+  }
+
+  private static long alignDown(long ts, int resolution) {
+    return ts / resolution * resolution;
+  }
+
+  /**
+   * Normalized {@link MetricDataQuery} as the cache key.
+   */
+  private static final class CacheKey {
+    private final int resolution;
+    private final long startTs;
+    private final long endTs;
+    private final int limit;
+    private final Map<String, AggregationFunction> metrics;
+    private final Map<String, String> sliceByTags;
+    private final Set<String> groupByTags;
+    private final String interpolator;
+    private final long maxAllowedGap;
+    private final int hashCode;
+
+    /**
+     * Creates a key for the given query.
+     *
+     * @param query the query
+     * @param mergeable if {@code true}, the time range and limit of the query are not part of the key
+     */
+    CacheKey(MetricDataQuery query, boolean mergeable) {
+      this.resolution = query.getResolution();
+      if (mergeable || resolution == TOTAL_RESOLUTION) {
+        this.startTs = 0L;
+        this.endTs = 0L;
+        this.limit = 0;
+      } else {
+        this.startTs = alignUp(query.getStartTs(), resolution);
+        this.endTs = alignDown(query.getEndTs(), resolution);
+        this.limit = query.getLimit();
+      }
+      this.metrics = new HashMap<>(query.getMetrics());
+      this.sliceByTags = new HashMap<>(query.getSliceByTags());
+      // The order of group by tags doesn't affect the query result
+      this.groupByTags = new HashSet<>(query.getGroupByTags());
+      this.interpolator = query.getInterpolator() == null ? null : query.getInterpolator().getClass().getName();
+      this.maxAllowedGap = query.getInterpolator() == null ? 0L : query.getInterpolator().getMaxAllowedGap();
+      this.hashCode = Objects.hash(resolution, startTs, endTs, limit, metrics, sliceByTags, groupByTags,
+                                   interpolator, maxAllowedGap);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      CacheKey other = (CacheKey) o;
+      return resolution == other.resolution && startTs == other.startTs && endTs == other.endTs
+        && limit == other.limit && maxAllowedGap == other.maxAllowedGap
+        && Objects.equals(interpolator, other.interpolator) && metrics.equals(other.metrics)
+        && sliceByTags.equals(other.sliceByTags) && groupByTags.equals(other.groupByTags);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+
+  /**
+   * A cached query result.
+   */
+  private static final class CacheEntry {
+    private final List<MetricTimeSeries> series;
+    // Time range of the cached time buckets
+    private final long startTs;
+    private final long endTs;
+    // Progress of the metrics processor before the result was queried
+    private final Map<String, MetricsProcessorStatus> processorStatus;
+    private final long creationTime;
+    private final int weight;
+
+    CacheEntry(List<MetricTimeSeries> series, long startTs, long endTs,
+               Map<String, MetricsProcessorStatus> processorStatus, long creationTime) {
+      this.series = series;
+      this.startTs = startTs;
+      this.endTs = endTs;
+      this.processorStatus = processorStatus;
+      this.creationTime = creationTime;
+      this.weight = estimateWeight(series);
+    }
+
+    /**
+     * Estimates the heap size in bytes of the given time series.
+     */
+    private static int estimateWeight(List<MetricTimeSeries> series) {
+      long weight = 128L;
+      for (MetricTimeSeries timeSeries : series) {
+        weight += 64L + 2L * timeSeries.getMetricName().length();
+        for (Map.Entry<String, String> tag : timeSeries.getTagValues().entrySet()) {
+          weight += 96L + 2L * tag.getKey().length() + (tag.getValue() == null ? 0L : 2L * tag.getValue().length());
+        }
+        // Each TimeValue object and its reference in the list
+        weight += 40L * timeSeries.getTimeValues().size();
+      }
+      return (int) Math.min(Integer.MAX_VALUE, weight);
+    }
+  }
+
+  /**
+   * Progress of the metrics processor of each metrics topic, and the time when it was read.
+   */
+  private static final class ProcessorStatus {
+    private final Map<String, MetricsProcessorStatus> topicStatus;
+    private final long readTime;
+
+    ProcessorStatus(@Nullable Map<String, MetricsProcessorStatus> topicStatus, long readTime) {
+      this.topicStatus = topicStatus == null ? Collections.emptyMap() : topicStatus;
+      this.readTime = readTime;
+    }
+  }
+}
@@ -34,6 +34,7 @@ import io.cdap.cdap.api.metrics.MetricDataQuery;
 import io.cdap.cdap.api.metrics.MetricSearchQuery;
 import io.cdap.cdap.api.metrics.MetricStore;
 import io.cdap.cdap.api.metrics.MetricTimeSeries;
+import io.cdap.cdap.api.metrics.MetricsCollectionService;
 import io.cdap.cdap.api.metrics.TagValue;
 import io.cdap.cdap.common.conf.CConfiguration;
 import io.cdap.cdap.common.conf.Constants;
@@ -41,6 +42,7 @@ import io.cdap.cdap.common.utils.TimeMathParser;
 import io.cdap.cdap.proto.MetricQueryRequest;
 import io.cdap.cdap.proto.MetricQueryResult;
 import io.cdap.cdap.proto.MetricTagValue;
+import io.cdap.cdap.proto.id.NamespaceId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -74,6 +76,8 @@ public class MetricsQueryHelper {
 
   private final MetricStore metricStore;
   private final int minResolution;
+  @Nullable
+  private final MetricsQueryCache queryCache;
 
   private static final Map<String, String> tagNameToHuman;
   private static final Map<String, String> humanToTagName;
@@ -125,6 +129,24 @@ public class MetricsQueryHelper {
     this.metricStore = metricStore;
     int minimumResolution = cConf.getInt(Constants.Metrics.METRICS_MINIMUM_RESOLUTION_SECONDS);
     this.minResolution = minimumResolution < 60 ? minimumResolution : 60;
+    long cacheSize = cConf.getLong(Constants.Metrics.QUERY_CACHE_SIZE_BYTES);
+    this.queryCache = cacheSize <= 0 ? null : new MetricsQueryCache(
+      metricStore, cacheSize, TimeUnit.SECONDS.toMillis(cConf.getLong(Constants.Metrics.QUERY_CACHE_ENTRY_TTL_SECONDS)),
+      cConf.getLong(Constants.Metrics.QUERY_CACHE_STATUS_REFRESH_INTERVAL_MS));
+  }
+
+  /**
+   * Setter method for the optional binding on the {@link MetricsCollectionService} for emitting metrics about
+   * the query result cache.
+   */
+  @SuppressWarnings("unused")
+  @Inject(optional = true)
+  public void setMetricsCollectionService(MetricsCollectionService metricsCollectionService) {
+    if (queryCache != null) {
+      queryCache.setMetricsContext(metricsCollectionService.getContext(ImmutableMap.of(
+        Constants.Metrics.Tag.NAMESPACE, NamespaceId.SYSTEM.getNamespace(),
+        Constants.Metrics.Tag.COMPONENT, Constants.Service.METRICS)));
+    }
   }
 
   public List<MetricTagValue> searchTags(List<String> tags) {
@@ -335,7 +357,7 @@ public class MetricsQueryHelper {
                                                 timeRange.getCount(), toMetrics(queryRequest.getMetrics()),
                                                 tagsSliceBy, transformGroupByTags(queryRequest.getGroupBy()),
                                                 timeRange.getInterpolate());
-    Collection<MetricTimeSeries> queryResult = metricStore.query(query);
+    Collection<MetricTimeSeries> queryResult = queryCache == null ? metricStore.query(query) : queryCache.query(query);
 
     long endTime = timeRange.getEnd();
     if (timeRange.getResolutionInSeconds() == Integer.MAX_VALUE && endTime == 0) {
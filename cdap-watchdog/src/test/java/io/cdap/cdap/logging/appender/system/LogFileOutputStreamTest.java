@@ -0,0 +1,129 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.logging.appender.system;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import io.cdap.cdap.api.dataset.lib.CloseableIterator;
+import io.cdap.cdap.logging.filter.AndFilter;
+import io.cdap.cdap.logging.filter.Filter;
+import io.cdap.cdap.logging.filter.LogLevelExpression;
+import io.cdap.cdap.logging.filter.MdcExpression;
+import io.cdap.cdap.logging.filter.OrFilter;
+import io.cdap.cdap.logging.read.LogEvent;
+import io.cdap.cdap.logging.write.LogFileIndex;
+import io.cdap.cdap.logging.write.LogLocation;
+import org.apache.twill.filesystem.LocalLocationFactory;
+import org.apache.twill.filesystem.Location;
+import org.junit.Assert;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Tests for the {@link LogFileIndex} written by {@link LogFileOutputStream}.
+ */
+public class LogFileOutputStreamTest {
+
+  @ClassRule
+  public static final TemporaryFolder TMP_FOLDER = new TemporaryFolder();
+
+  private static final Level[] LEVELS = { Level.DEBUG, Level.INFO, Level.WARN, Level.ERROR };
+
+  @Test
+  public void testIndexedRead() throws Exception {
+    Location location = new LocalLocationFactory(TMP_FOLDER.newFolder()).create("test.avro");
+    Logger logger = (Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
+
+    // Use a small sync interval to have many blocks in the index
+    LogFileOutputStream outputStream = new LogFileOutputStream(location, "", 1024, 0L, () -> { });
+    outputStream.flush();
+    for (int i = 0; i < 2000; i++) {
+      // Only a few ERROR events, and a run that only logs in a part of the file
+      Level level = i % 500 == 7 ? Level.ERROR : LEVELS[i % 3];
+      LoggingEvent event = new LoggingEvent("io.cdap.Test", logger, level, "message " + i, null, null);
+      // Some events have the same timestamp
+      event.setTimeStamp(1000L + i / 2);
+      event.setMDCPropertyMap(ImmutableMap.of("app", "app" + (i % 2), "run", "run" + (i / 400)));
+      outputStream.append(event);
+      if (i % 300 == 0) {
+        outputStream.flush();
+      }
+    }
+    outputStream.close();
+
+    Location indexLocation = LogFileIndex.getIndexLocation(location);
+    Assert.assertTrue(indexLocation.exists());
+
+    List<Filter> filters = ImmutableList.of(
+      Filter.EMPTY_FILTER,
+      new LogLevelExpression("ERROR"),
+      new MdcExpression("run", "run2"),
+      new MdcExpression("run", "unknown"),
+      new AndFilter(ImmutableList.of(new MdcExpression("app", "app1"), new LogLevelExpression("WARN"))),
+      new OrFilter(ImmutableList.of(new MdcExpression("run", "run0"), new LogLevelExpression("ERROR"))));
+    long[][] ranges = { {0L, Long.MAX_VALUE}, {1300L, 1600L}, {1500L, 1501L}, {5000L, 6000L} };
+
+    // Reading with the index should give the same result as reading without
+    LogLocation logLocation = new LogLocation(LogLocation.VERSION_1, 1000L, 0L, location, "default", null);
+    List<List<String>> indexedResults = new ArrayList<>();
+    for (Filter filter : filters) {
+      for (long[] range : ranges) {
+        for (int maxEvents : new int[] { 1, 10, 5000 }) {
+          indexedResults.add(readLog(logLocation, filter, range[0], range[1], maxEvents));
+          indexedResults.add(toMessages(logLocation.readLogPrev(filter, range[1], maxEvents)));
+        }
+      }
+    }
+
+    Assert.assertTrue(indexLocation.delete());
+    int i = 0;
+    for (Filter filter : filters) {
+      for (long[] range : ranges) {
+        for (int maxEvents : new int[] { 1, 10, 5000 }) {
+          Assert.assertEquals(indexedResults.get(i++), readLog(logLocation, filter, range[0], range[1], maxEvents));
+          Assert.assertEquals(indexedResults.get(i++),
+                              toMessages(logLocation.readLogPrev(filter, range[1], maxEvents)));
+        }
+      }
+    }
+  }
+
+  private List<String> readLog(LogLocation logLocation, Filter filter, long fromTimeMs, long toTimeMs, int maxEvents) {
+    List<LogEvent> events = new ArrayList<>();
+    try (CloseableIterator<LogEvent> iterator = logLocation.readLog(filter, fromTimeMs, toTimeMs, maxEvents)) {
+      iterator.forEachRemaining(events::add);
+    }
+    return toMessages(events);
+  }
+
+  private List<String> toMessages(Collection<LogEvent> events) {
+    List<String> messages = new ArrayList<>();
+    for (LogEvent event : events) {
+      messages.add(event.getLoggingEvent().getMessage());
+    }
+    return messages;
+  }
+}
@@ -21,6 +21,7 @@ import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.classic.spi.IThrowableProxy;
 import ch.qos.logback.classic.spi.LoggerContextVO;
 import ch.qos.logback.classic.spi.ThrowableProxy;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 import io.cdap.cdap.common.logging.ComponentLoggingContext;
@@ -29,12 +30,20 @@ import io.cdap.cdap.common.logging.ServiceLoggingContext;
 import io.cdap.cdap.common.logging.logback.TestLoggingContext;
 import io.cdap.cdap.logging.appender.LogMessage;
 import io.cdap.cdap.logging.context.LoggingContextHelper;
+import io.cdap.cdap.logging.filter.AndFilter;
+import io.cdap.cdap.logging.filter.LogLevelExpression;
+import io.cdap.cdap.logging.filter.MdcExpression;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.DatumReader;
+import org.apache.avro.io.DecoderFactory;
 import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.HashMap;
@@ -182,6 +191,62 @@ public class LoggingEventSerializerTest {
     Assert.assertEquals(timestamp, serializer.decodeEventTimestamp(ByteBuffer.wrap(bytes)));
   }
 
+  @Test
+  public void testFilteringDatumReader() throws IOException {
+    LoggingEventSerializer serializer = new LoggingEventSerializer();
+    DatumReader<GenericRecord> datumReader = serializer.createDatumReader(
+      new AndFilter(ImmutableList.of(new MdcExpression("mdc1", "mdc-val1"), new LogLevelExpression("WARN"))));
+    datumReader.setSchema(serializer.getAvroSchema());
+
+    // An event that matches the filter is fully decoded
+    ch.qos.logback.classic.spi.LoggingEvent iLoggingEvent = new ch.qos.logback.classic.spi.LoggingEvent();
+    iLoggingEvent.setThreadName("thread-1");
+    iLoggingEvent.setLevel(Level.ERROR);
+    iLoggingEvent.setMessage("Log message1");
+    iLoggingEvent.setLoggerName("loggerName1");
+    iLoggingEvent.setThrowableProxy(new ThrowableProxy(new Exception("Test Exception")));
+    iLoggingEvent.prepareForDeferredProcessing();
+    ((ThrowableProxy) iLoggingEvent.getThrowableProxy()).calculatePackagingData();
+    iLoggingEvent.setCallerData(new StackTraceElement[] {
+      new StackTraceElement("com.Class1", "methodName1", "fileName1", 10)
+    });
+    iLoggingEvent.getMDCPropertyMap().put("mdc1", "mdc-val1");
+    iLoggingEvent.setTimeStamp(1234567890L);
+
+    ILoggingEvent event = new LogMessage(iLoggingEvent, LoggingContextAccessor.getLoggingContext());
+    ILoggingEvent actualEvent = new LoggingEvent(
+      datumReader.read(null, DecoderFactory.get().binaryDecoder(serializer.toBytes(event), null)));
+    actualEvent.prepareForDeferredProcessing();
+    assertLoggingEventEquals(iLoggingEvent, actualEvent);
+
+    // An event that doesn't match the filter only has the fields that the filter uses decoded
+    iLoggingEvent.setLevel(Level.INFO);
+    event = new LogMessage(iLoggingEvent, LoggingContextAccessor.getLoggingContext());
+    actualEvent = new LoggingEvent(
+      datumReader.read(null, DecoderFactory.get().binaryDecoder(serializer.toBytes(event), null)));
+    actualEvent.prepareForDeferredProcessing();
+    Assert.assertEquals(iLoggingEvent.getTimeStamp(), actualEvent.getTimeStamp());
+    Assert.assertEquals(Level.INFO, actualEvent.getLevel());
+    Assert.assertEquals("mdc-val1", actualEvent.getMDCPropertyMap().get("mdc1"));
+    Assert.assertNull(actualEvent.getMessage());
+    Assert.assertNull(actualEvent.getThrowableProxy());
+    Assert.assertFalse(actualEvent.hasCallerData());
+
+    // Multiple events encoded back to back should be decoded from the right positions
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    for (Level level : new Level[] { Level.INFO, Level.ERROR, Level.DEBUG, Level.WARN }) {
+      iLoggingEvent.setLevel(level);
+      os.write(serializer.toBytes(new LogMessage(iLoggingEvent, LoggingContextAccessor.getLoggingContext())));
+    }
+    BinaryDecoder decoder = DecoderFactory.get().binaryDecoder(os.toByteArray(), null);
+    for (Level level : new Level[] { Level.INFO, Level.ERROR, Level.DEBUG, Level.WARN }) {
+      actualEvent = new LoggingEvent(datumReader.read(null, decoder));
+      Assert.assertEquals(level, actualEvent.getLevel());
+      Assert.assertEquals(level.isGreaterOrEqual(Level.WARN) ? "Log message1" : null, actualEvent.getMessage());
+    }
+    Assert.assertTrue(decoder.isEnd());
+  }
+
   static void assertLoggingEventEquals(ILoggingEvent expected, ILoggingEvent actual) {
     expected.getMDCPropertyMap().putAll(
       ImmutableMap.of(".namespaceId", "TEST_ACCT_ID1", ".applicationId", "TEST_APP_ID1", ".runId", "RUN1",
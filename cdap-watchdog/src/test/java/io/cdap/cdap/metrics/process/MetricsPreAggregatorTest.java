@@ -0,0 +1,112 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.metrics.process;
+
+import com.google.common.collect.ImmutableMap;
+import io.cdap.cdap.api.metrics.MetricType;
+import io.cdap.cdap.api.metrics.MetricValue;
+import io.cdap.cdap.api.metrics.MetricValues;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Unit test for {@link MetricsPreAggregator}.
+ */
+public class MetricsPreAggregatorTest {
+
+  private static final Map<String, String> TAGS_1 = ImmutableMap.of("ns", "ns1", "app", "app1");
+  private static final Map<String, String> TAGS_2 = ImmutableMap.of("ns", "ns1", "app", "app2");
+
+  @Test
+  public void testMerge() {
+    MetricsPreAggregator aggregator = new MetricsPreAggregator(10, Long.MAX_VALUE, Integer.MAX_VALUE);
+    Assert.assertTrue(aggregator.isEmpty());
+
+    // Counters and gauges in the same time bucket, with the tags in different order
+    aggregator.add(new MetricValues(TAGS_1, "counter", 100L, 1L, MetricType.COUNTER));
+    aggregator.add(new MetricValues(ImmutableMap.of("app", "app1", "ns", "ns1"), "counter", 105L, 2L,
+                                    MetricType.COUNTER));
+    aggregator.add(new MetricValues(TAGS_1, "gauge", 101L, 5L, MetricType.GAUGE));
+    aggregator.add(new MetricValues(TAGS_1, "gauge", 109L, 3L, MetricType.GAUGE));
+
+    // Different tags
+    aggregator.add(new MetricValues(TAGS_2, "counter", 100L, 10L, MetricType.COUNTER));
+
+    // Different time bucket
+    aggregator.add(new MetricValues(TAGS_1, "counter", 110L, 4L, MetricType.COUNTER));
+
+    Assert.assertFalse(aggregator.isEmpty());
+    Assert.assertEquals(6L, aggregator.getInputCount());
+    Assert.assertEquals(4, aggregator.size());
+    Assert.assertEquals(1.5d, aggregator.getCompactionRatio(), 0.0001d);
+    Assert.assertEquals(110L, aggregator.getLastTimestamp());
+
+    List<MetricValues> result = aggregator.flush(System.currentTimeMillis());
+    Assert.assertEquals(3, result.size());
+
+    Assert.assertEquals(TAGS_1, result.get(0).getTags());
+    Assert.assertEquals(100L, result.get(0).getTimestamp());
+    Map<String, MetricValue> values = toMap(result.get(0));
+    Assert.assertEquals(2, values.size());
+    Assert.assertEquals(MetricType.COUNTER, values.get("counter").getType());
+    Assert.assertEquals(3L, values.get("counter").getValue());
+    Assert.assertEquals(MetricType.GAUGE, values.get("gauge").getType());
+    Assert.assertEquals(3L, values.get("gauge").getValue());
+
+    Assert.assertEquals(TAGS_2, result.get(1).getTags());
+    Assert.assertEquals(100L, result.get(1).getTimestamp());
+    Assert.assertEquals(10L, toMap(result.get(1)).get("counter").getValue());
+
+    Assert.assertEquals(TAGS_1, result.get(2).getTags());
+    Assert.assertEquals(110L, result.get(2).getTimestamp());
+    Assert.assertEquals(4L, toMap(result.get(2)).get("counter").getValue());
+
+    // Everything is removed after flush
+    Assert.assertTrue(aggregator.isEmpty());
+    Assert.assertEquals(0, aggregator.size());
+    Assert.assertTrue(aggregator.flush(System.currentTimeMillis()).isEmpty());
+  }
+
+  @Test
+  public void testFlushRequired() {
+    MetricsPreAggregator aggregator = new MetricsPreAggregator(1, 1000L, 2);
+    long flushTime = System.currentTimeMillis();
+    aggregator.flush(flushTime);
+
+    aggregator.add(new MetricValues(TAGS_1, "counter", 100L, 1L, MetricType.COUNTER));
+    Assert.assertFalse(aggregator.isFlushRequired(flushTime + 999L));
+    Assert.assertTrue(aggregator.isFlushRequired(flushTime + 1000L));
+
+    // Merged values don't count towards the flush size
+    aggregator.add(new MetricValues(TAGS_1, "counter", 100L, 1L, MetricType.COUNTER));
+    Assert.assertFalse(aggregator.isFlushRequired(flushTime));
+    aggregator.add(new MetricValues(TAGS_2, "counter", 100L, 1L, MetricType.COUNTER));
+    Assert.assertTrue(aggregator.isFlushRequired(flushTime));
+  }
+
+  private Map<String, MetricValue> toMap(MetricValues metricValues) {
+    Map<String, MetricValue> result = new HashMap<>();
+    for (MetricValue value : metricValues.getMetrics()) {
+      result.put(value.getName(), value);
+    }
+    return result;
+  }
+}
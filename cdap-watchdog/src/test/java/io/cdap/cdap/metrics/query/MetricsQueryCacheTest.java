@@ -0,0 +1,341 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.metrics.query;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import io.cdap.cdap.api.dataset.lib.cube.AggregationFunction;
+import io.cdap.cdap.api.dataset.lib.cube.TimeValue;
+import io.cdap.cdap.api.metrics.MetricDataQuery;
+import io.cdap.cdap.api.metrics.MetricDeleteQuery;
+import io.cdap.cdap.api.metrics.MetricSearchQuery;
+import io.cdap.cdap.api.metrics.MetricStore;
+import io.cdap.cdap.api.metrics.MetricTimeSeries;
+import io.cdap.cdap.api.metrics.MetricValues;
+import io.cdap.cdap.api.metrics.MetricsContext;
+import io.cdap.cdap.api.metrics.MetricsMessageId;
+import io.cdap.cdap.api.metrics.MetricsProcessorStatus;
+import io.cdap.cdap.api.metrics.TagValue;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Unit test for {@link MetricsQueryCache}.
+ */
+public class MetricsQueryCacheTest {
+
+  private static final String METRIC = "system.process.events.in";
+  private static final Map<String, String> TAGS = ImmutableMap.of("ns", "ns1");
+
+  @Test
+  public void testTotalAndHourQueries() {
+    TestMetricStore store = new TestMetricStore();
+    MetricsQueryCache cache = new MetricsQueryCache(store, Long.MAX_VALUE, Long.MAX_VALUE, 0L);
+
+    store.addValue(100L, 1L);
+    store.addValue(4000L, 2L);
+    store.setProcessorStatus(1L, 100L);
+
+    MetricDataQuery total = createQuery(0L, 0L, Integer.MAX_VALUE, 1);
+    assertSame(store.compute(total), cache.query(total));
+    Assert.assertEquals(1, store.getQueries().size());
+
+    // Hit, as nothing was persisted by the processor
+    assertSame(store.compute(total), cache.query(total));
+    Assert.assertEquals(1, store.getQueries().size());
+
+    // Any new metrics invalidate the total query
+    store.addValue(5000L, 3L);
+    store.setProcessorStatus(2L, 5000L);
+    assertSame(store.compute(total), cache.query(total));
+    Assert.assertEquals(2, store.getQueries().size());
+
+    // Hour query stays valid as long as newer metrics are persisted
+    MetricDataQuery hour = createQuery(0L, 3599L, 3600, 1);
+    assertSame(store.compute(hour), cache.query(hour));
+    Assert.assertEquals(3, store.getQueries().size());
+
+    store.addValue(7200L, 4L);
+    store.setProcessorStatus(3L, 7200L);
+    assertSame(store.compute(hour), cache.query(hour));
+    Assert.assertEquals(3, store.getQueries().size());
+
+    // Metrics within the hour invalidate it
+    store.addValue(3500L, 5L);
+    store.setProcessorStatus(4L, 3500L);
+    assertSame(store.compute(hour), cache.query(hour));
+    Assert.assertEquals(4, store.getQueries().size());
+  }
+
+  @Test
+  public void testMinuteQueries() {
+    TestMetricStore store = new TestMetricStore();
+    MetricsQueryCache cache = new MetricsQueryCache(store, Long.MAX_VALUE, Long.MAX_VALUE, 0L);
+
+    for (long ts = 0; ts < 600; ts += 10) {
+      store.addValue(ts, 1L);
+    }
+    store.setProcessorStatus(1L, 590L);
+
+    MetricDataQuery query = createQuery(0L, 599L, 60, 10);
+    assertSame(store.compute(query), cache.query(query));
+    Assert.assertEquals(1, store.getQueries().size());
+
+    assertSame(store.compute(query), cache.query(query));
+    Assert.assertEquals(1, store.getQueries().size());
+
+    // New metrics in the newest bucket and the next bucket, with a moving query time range
+    store.addValue(595L, 1L);
+    store.addValue(610L, 1L);
+    store.setProcessorStatus(2L, 595L);
+    query = createQuery(30L, 659L, 60, 11);
+    assertSame(store.compute(query), cache.query(query));
+    Assert.assertEquals(2, store.getQueries().size());
+    // Only the newest bucket and after are queried
+    Assert.assertEquals(540L, store.getQueries().get(1).getStartTs());
+
+    // Query with earlier start time can't use the cached result
+    query = createQuery(0L, 659L, 60, 11);
+    assertSame(store.compute(query), cache.query(query));
+    Assert.assertEquals(3, store.getQueries().size());
+    Assert.assertEquals(0L, store.getQueries().get(2).getStartTs());
+
+    // The cached result is used for query of a shorter time range
+    query = createQuery(120L, 300L, 60, 4);
+    assertSame(store.compute(query), cache.query(query));
+    Assert.assertEquals(3, store.getQueries().size());
+  }
+
+  @Test
+  public void testNoProcessorStatus() {
+    TestMetricStore store = new TestMetricStore();
+    MetricsQueryCache cache = new MetricsQueryCache(store, Long.MAX_VALUE, Long.MAX_VALUE, 0L);
+    store.addValue(100L, 1L);
+
+    MetricDataQuery query = createQuery(0L, 0L, Integer.MAX_VALUE, 1);
+    assertSame(store.compute(query), cache.query(query));
+    assertSame(store.compute(query), cache.query(query));
+    Assert.assertEquals(2, store.getQueries().size());
+    Assert.assertEquals(0L, cache.getSize());
+  }
+
+  @Test
+  public void testMetrics() {
+    TestMetricStore store = new TestMetricStore();
+    MetricsQueryCache cache = new MetricsQueryCache(store, Long.MAX_VALUE, Long.MAX_VALUE, 0L);
+    TestMetricsContext context = new TestMetricsContext();
+    cache.setMetricsContext(context);
+
+    store.addValue(100L, 1L);
+    store.setProcessorStatus(1L, 100L);
+
+    MetricDataQuery query = createQuery(0L, 0L, Integer.MAX_VALUE, 1);
+    cache.query(query);
+    cache.query(query);
+    cache.query(query);
+    cache.query(query);
+
+    Assert.assertEquals(3L, (long) context.counters.get("query.cache.hits"));
+    Assert.assertEquals(1L, (long) context.counters.get("query.cache.misses"));
+    Assert.assertEquals(75L, (long) context.gauges.get("query.cache.hit.rate.percent"));
+    Assert.assertTrue(cache.getSize() > 0L);
+    Assert.assertEquals(cache.getSize(), (long) context.gauges.get("query.cache.size.bytes"));
+  }
+
+  @Test
+  public void testEviction() {
+    TestMetricStore store = new TestMetricStore();
+    for (long ts = 0; ts < 3600; ts++) {
+      store.addValue(ts, 1L);
+    }
+    store.setProcessorStatus(1L, 3599L);
+
+    MetricsQueryCache cache = new MetricsQueryCache(store, 100000L, Long.MAX_VALUE, 0L);
+    MetricDataQuery query = createQuery(0L, 0L, Integer.MAX_VALUE, 1);
+    cache.query(query);
+    cache.query(query);
+    Assert.assertEquals(1, store.getQueries().size());
+    Assert.assertTrue(cache.getSize() > 0L);
+
+    // Result that is bigger than the cache is evicted
+    query = createQuery(0L, 3599L, 1, 3600);
+    cache.query(query);
+    cache.query(query);
+    Assert.assertEquals(3, store.getQueries().size());
+    Assert.assertTrue(cache.getSize() >= 0L && cache.getSize() <= 100000L);
+  }
+
+  private MetricDataQuery createQuery(long startTs, long endTs, int resolution, int limit) {
+    return new MetricDataQuery(startTs, endTs, resolution, limit, ImmutableMap.of(METRIC, AggregationFunction.SUM),
+                               TAGS, ImmutableList.of(), null);
+  }
+
+  private void assertSame(Collection<MetricTimeSeries> expected, Collection<MetricTimeSeries> actual) {
+    Assert.assertEquals(new HashSet<>(expected), new HashSet<>(actual));
+  }
+
+  /**
+   * A {@link MetricStore} of a single metric, which records all the queries.
+   */
+  private static final class TestMetricStore implements MetricStore {
+
+    private final Map<Long, Long> values = new TreeMap<>();
+    private final List<MetricDataQuery> queries = new ArrayList<>();
+    private Map<String, MetricsProcessorStatus> processorStatus = Collections.emptyMap();
+
+    void addValue(long ts, long value) {
+      values.merge(ts, value, Long::sum);
+    }
+
+    void setProcessorStatus(long messageId, long oldestTs) {
+      processorStatus = ImmutableMap.of("metrics0", new MetricsProcessorStatus(
+        new MetricsMessageId(messageId, (short) 0, 0L, (short) 0), oldestTs, oldestTs, 1L, oldestTs));
+    }
+
+    List<MetricDataQuery> getQueries() {
+      return queries;
+    }
+
+    @Override
+    public void setMetricsContext(MetricsContext metricsContext) {
+      // no-op
+    }
+
+    @Override
+    public void add(MetricValues metricValues) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void add(Collection<? extends MetricValues> metricValues) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Collection<MetricTimeSeries> query(MetricDataQuery query) {
+      queries.add(query);
+      return compute(query);
+    }
+
+    /**
+     * Computes the query result without recording the query.
+     */
+    Collection<MetricTimeSeries> compute(MetricDataQuery query) {
+      if (!TAGS.equals(query.getSliceByTags())) {
+        return Collections.emptyList();
+      }
+
+      int resolution = query.getResolution();
+      Map<Long, Long> buckets = new TreeMap<>();
+      for (Map.Entry<Long, Long> entry : values.entrySet()) {
+        long ts = resolution == Integer.MAX_VALUE ? 0L : entry.getKey() / resolution * resolution;
+        if (resolution == Integer.MAX_VALUE || (ts >= query.getStartTs() && ts <= query.getEndTs())) {
+          buckets.merge(ts, entry.getValue(), Long::sum);
+        }
+      }
+      if (buckets.isEmpty()) {
+        return Collections.emptyList();
+      }
+      List<TimeValue> timeValues = new ArrayList<>();
+      for (Map.Entry<Long, Long> entry : buckets.entrySet()) {
+        if (timeValues.size() >= query.getLimit()) {
+          break;
+        }
+        timeValues.add(new TimeValue(entry.getKey(), entry.getValue()));
+      }
+      return Collections.singletonList(new MetricTimeSeries(METRIC, Collections.emptyMap(), timeValues));
+    }
+
+    @Override
+    public void deleteBefore(long timestamp) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void deleteTTLExpired() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void delete(MetricDeleteQuery query) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void deleteAll() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Collection<TagValue> findNextAvailableTags(MetricSearchQuery query) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Collection<String> findMetricNames(MetricSearchQuery query) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Map<String, MetricsProcessorStatus> getMetricsProcessorStats() {
+      return processorStatus;
+    }
+  }
+
+  /**
+   * A {@link MetricsContext} that keeps the emitted metrics in memory.
+   */
+  private static final class TestMetricsContext implements MetricsContext {
+
+    private final Map<String, Long> counters = new HashMap<>();
+    private final Map<String, Long> gauges = new HashMap<>();
+
+    @Override
+    public void increment(String metricName, long value) {
+      counters.merge(metricName, value, Long::sum);
+    }
+
+    @Override
+    public void gauge(String metricName, long value) {
+      gauges.put(metricName, value);
+    }
+
+    @Override
+    public MetricsContext childContext(Map<String, String> tags) {
+      return this;
+    }
+
+    @Override
+    public MetricsContext childContext(String tagName, String tagValue) {
+      return this;
+    }
+
+    @Override
+    public Map<String, String> getTags() {
+      return Collections.emptyMap();
+    }
+  }
+}